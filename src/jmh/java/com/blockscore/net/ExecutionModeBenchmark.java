@@ -0,0 +1,105 @@
+package com.blockscore.net;
+
+import com.blockscore.models.Company;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares blocking-style callers on platform threads against virtual threads. Each operation makes a burst
+ * of concurrent *Sync calls to a local stand-in server that answers after a short delay, as a slow API would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExecutionModeBenchmark {
+    private static final int RESPONSE_DELAY_MILLIS = 50;
+
+    @Param({"PLATFORM_THREADS", "VIRTUAL_THREADS"})
+    ExecutionMode mExecutionMode;
+
+    @Param({"100", "1000"})
+    int mConcurrentCalls;
+
+    private MockWebServer mServer;
+    private BlockscoreApiClient mClient;
+    private ExecutorService mCallers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) {
+                return new MockResponse().setBody("{\"id\":\"c1\"}")
+                        .setBodyDelay(RESPONSE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        });
+        mServer.start();
+
+        BlockscoreConfig config = new BlockscoreConfig.Builder("sk_test").setEndpoint(mServer.url("/").toString()).build();
+        mClient = new BlockscoreApiClient.Builder()
+                .setConfig(config)
+                .setConnectionPool(new BlockscoreConnectionPool(mConcurrentCalls, 1, TimeUnit.MINUTES
+                        , BlockscoreConnectionPool.UNLIMITED))
+                .setMaxAsyncRequests(mConcurrentCalls)
+                .setExecutionMode(mExecutionMode)
+                .build();
+
+        //The platform baseline is the unbounded cached pool Retrofit uses for its own calls.
+        ExecutorService callers = mExecutionMode.newExecutor("Benchmark-Caller-");
+        mCallers = callers != null ? callers : Executors.newCachedThreadPool();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        mCallers.shutdownNow();
+        mServer.shutdown();
+    }
+
+    @Benchmark
+    public int concurrentSyncCalls() throws Exception {
+        List<Future<Company>> results = new ArrayList<Future<Company>>(mConcurrentCalls);
+        for (int i = 0; i < mConcurrentCalls; i++) {
+            results.add(mCallers.submit(new Callable<Company>() {
+                @Override
+                public Company call() {
+                    return mClient.getCompanySync("c1");
+                }
+            }));
+        }
+
+        int completed = 0;
+        for (Future<Company> result : results) {
+            if (result.get() != null) {
+                completed++;
+            }
+        }
+        return completed;
+    }
+}
@@ -0,0 +1,72 @@
+package com.blockscore.net;
+
+import com.blockscore.models.Company;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the direct path taken by the *Sync methods with the Observable path they used to take. Both make
+ * the same request to a local stand-in server over a kept-alive connection, so the difference is the cost of
+ * subscribing, handing off to a dispatcher thread and waiting on a latch. Run with '-prof gc' to compare
+ * allocations as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SyncPathBenchmark {
+    private MockWebServer mServer;
+    private BlockscoreApiClient mClient;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.setServerSocketFactory(new NoDelayServerSocketFactory());
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) {
+                return new MockResponse().setBody("{\"id\":\"c1\"}");
+            }
+        });
+        mServer.start();
+
+        BlockscoreConfig config = new BlockscoreConfig.Builder("sk_test").setEndpoint(mServer.url("/").toString()).build();
+        mClient = new BlockscoreApiClient.Builder()
+                .setConfig(config)
+                .setConnectionPool(new BlockscoreConnectionPool(1, 1, TimeUnit.MINUTES, BlockscoreConnectionPool.UNLIMITED))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Benchmark
+    public Company direct() {
+        return mClient.getCompanySync("c1");
+    }
+
+    @Benchmark
+    public Company throughObservable() {
+        return mClient.getCompany("c1").toBlocking().first();
+    }
+}
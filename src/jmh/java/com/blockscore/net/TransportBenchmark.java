@@ -0,0 +1,188 @@
+package com.blockscore.net;
+
+import com.blockscore.models.Company;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.OkUrlFactory;
+import com.squareup.okhttp.ResponseBody;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.client.UrlConnectionClient;
+import retrofit.converter.JacksonConverter;
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the transport the client used to have, Retrofit's HttpURLConnection client bridged onto OkHttp through
+ * OkUrlFactory and buffering each body, with OkHttp's call API parsing straight from the response stream. Both
+ * fetch and parse the same company from a local stand-in server over a kept-alive connection. Run with '-prof gc'
+ * to compare allocations as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TransportBenchmark {
+    @Param({"64", "16384"})
+    int mBodyBytes;
+
+    private MockWebServer mServer;
+    private JacksonConverter mConverter;
+    private String mUrl;
+    private List<Header> mHeaders;
+    private UrlConnectionBridge mBridge;
+    private OkHttpClient mOkHttpClient;
+    private com.squareup.okhttp.Request mRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        char[] name = new char[Math.max(mBodyBytes - 32, 1)];
+        Arrays.fill(name, 'a');
+        final String body = "{\"id\":\"c1\",\"entity_name\":\"" + new String(name) + "\"}";
+        mServer = new MockWebServer();
+        mServer.setServerSocketFactory(new NoDelayServerSocketFactory());
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) {
+                return new MockResponse().setBody(body).setHeader("Content-Type", "application/json");
+            }
+        });
+        mServer.start();
+
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        mConverter = new JacksonConverter(mapper);
+        BlockscoreConfig config = new BlockscoreConfig.Builder("sk_test").build();
+        mUrl = mServer.url("/companies/c1").toString();
+        mHeaders = new ArrayList<Header>();
+        mHeaders.add(new Header("Accept", config.getAcceptHeader()));
+        mHeaders.add(new Header("Authorization", config.getAuthorizationHeader()));
+
+        mBridge = new UrlConnectionBridge(createOkHttpClient());
+        mOkHttpClient = createOkHttpClient();
+        mRequest = new com.squareup.okhttp.Request.Builder()
+                .url(mUrl)
+                .header("Accept", config.getAcceptHeader())
+                .header("Authorization", config.getAuthorizationHeader())
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Benchmark
+    public Object urlConnectionBridge() throws Exception {
+        Response response = mBridge.execute(new Request("GET", mUrl, mHeaders, null));
+        return mConverter.fromBody(response.getBody(), Company.class);
+    }
+
+    @Benchmark
+    public Object callApi() throws Exception {
+        final ResponseBody body = mOkHttpClient.newCall(mRequest).execute().body();
+        try {
+            return mConverter.fromBody(new TypedInput() {
+                @Override
+                public String mimeType() {
+                    return body.contentType().toString();
+                }
+
+                @Override
+                public long length() {
+                    return -1;
+                }
+
+                @Override
+                public InputStream in() throws IOException {
+                    return body.byteStream();
+                }
+            }, Company.class);
+        } finally {
+            body.close();
+        }
+    }
+
+    @NotNull
+    private static OkHttpClient createOkHttpClient() {
+        OkHttpClient client = new OkHttpClient();
+        client.setConnectTimeout(30, TimeUnit.SECONDS);
+        client.setReadTimeout(30, TimeUnit.SECONDS);
+        return client;
+    }
+
+    /**
+     * The client's old transport: Retrofit's HttpURLConnection client, opening its connections through OkHttp and
+     * reading each body into a buffer before it is parsed.
+     */
+    private static final class UrlConnectionBridge extends UrlConnectionClient {
+        private static final int BUFFER_SIZE = 4096;
+
+        private final OkUrlFactory mOkUrlFactory;
+
+        UrlConnectionBridge(@NotNull final OkHttpClient client) {
+            mOkUrlFactory = new OkUrlFactory(client);
+        }
+
+        @Override
+        public Response execute(final Request request) throws IOException {
+            Response response = super.execute(request);
+            TypedInput body = response.getBody();
+            InputStream in = body.in();
+            try {
+                return new Response(response.getUrl(), response.getStatus(), response.getReason()
+                        , response.getHeaders(), new TypedByteArray(body.mimeType(), readFully(in)));
+            } finally {
+                in.close();
+            }
+        }
+
+        @Override
+        protected HttpURLConnection openConnection(final Request request) throws IOException {
+            return mOkUrlFactory.open(new URL(request.getUrl()));
+        }
+
+        @NotNull
+        private static byte[] readFully(@NotNull final InputStream in) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        }
+    }
+}
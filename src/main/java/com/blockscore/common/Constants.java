@@ -9,12 +9,13 @@ import org.jetbrains.annotations.NotNull;
 public final class Constants {
     public static final String AUTHORIZATION_HEADER = "Authorization";
     public static final String ACCEPT_HEADER = "Accept";
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
 
     private static final boolean DEBUG_MODE = false;
     private static final String BLOCKSCORE_DOMAIN = "https://api.blockscore.com";
     private static final String BLOCKSCORE_DEV_DOMAIN = "http://127.0.0.1:5400";
     private static final String VERSION_CODE = "3";
-    private static final String ACCEPT_CONTENTS = "application/vnd.blockscore+json;version=%s";
+    private static final String ACCEPT_CONTENTS = "application/vnd.blockscore+json;version=" + VERSION_CODE;
 
     private Constants() {
         //Does nothing.
@@ -26,7 +27,7 @@ public final class Constants {
      */
     @NotNull
     public static String getAcceptHeaders() {
-        return String.format(ACCEPT_CONTENTS, VERSION_CODE);
+        return ACCEPT_CONTENTS;
     }
 
     /**
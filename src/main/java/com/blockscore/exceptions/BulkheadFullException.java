@@ -0,0 +1,25 @@
+package com.blockscore.exceptions;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Exception thrown when a call is turned away because its bulkhead has as many calls in flight and waiting
+ * as it allows. The call was not sent.
+ */
+public class BulkheadFullException extends RuntimeException {
+    private final String mBulkhead;
+
+    public BulkheadFullException(@NotNull final String bulkhead) {
+        super(String.format("The %s bulkhead is full.", bulkhead));
+        mBulkhead = bulkhead;
+    }
+
+    /**
+     * Gets the name of the bulkhead that was full.
+     * @return Bulkhead name.
+     */
+    @NotNull
+    public String getBulkhead() {
+        return mBulkhead;
+    }
+}
@@ -0,0 +1,38 @@
+package com.blockscore.exceptions;
+
+import com.blockscore.net.Endpoint;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Exception thrown when a call fails fast because the circuit breaker for its endpoint is open.
+ * The call was not sent.
+ */
+public class CircuitOpenException extends RuntimeException {
+    private final Endpoint mEndpoint;
+    private final long mRetryAfterMillis;
+
+    public CircuitOpenException(@NotNull final Endpoint endpoint, final long retryAfterMillis) {
+        super(String.format("The circuit breaker for %s is open. Calls fail fast for another %d ms."
+                , endpoint.getMethodName(), retryAfterMillis));
+        mEndpoint = endpoint;
+        mRetryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * Gets the endpoint whose circuit breaker is open.
+     * @return Endpoint.
+     */
+    @NotNull
+    public Endpoint getEndpoint() {
+        return mEndpoint;
+    }
+
+    /**
+     * Gets how long until the circuit breaker lets a trial call through. (ms)
+     * @return Time until the next trial call, or 1 if a trial call is already in flight, since when it ends isn't
+     * known.
+     */
+    public long getRetryAfterMillis() {
+        return mRetryAfterMillis;
+    }
+}
@@ -0,0 +1,39 @@
+package com.blockscore.exceptions;
+
+import com.blockscore.net.Endpoint;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Exception thrown when a create is repeated with an idempotency key whose earlier create was sent, but never
+ * answered with the record it made. The earlier create may or may not have made a record, so this one was not
+ * sent. Once you know, {@link com.blockscore.net.IdempotencyJournal#forget(Endpoint, String) forget} the key.
+ */
+public class IdempotencyOutcomeUnknownException extends RuntimeException {
+    private final Endpoint mEndpoint;
+    private final String mKey;
+
+    public IdempotencyOutcomeUnknownException(@NotNull final Endpoint endpoint, @NotNull final String key) {
+        super(String.format("A %s call with idempotency key %s was sent, but whether it made a record is unknown."
+                , endpoint.getMethodName(), key));
+        mEndpoint = endpoint;
+        mKey = key;
+    }
+
+    /**
+     * Gets the create endpoint that was called.
+     * @return Endpoint.
+     */
+    @NotNull
+    public Endpoint getEndpoint() {
+        return mEndpoint;
+    }
+
+    /**
+     * Gets the idempotency key of the create.
+     * @return Idempotency key.
+     */
+    @NotNull
+    public String getKey() {
+        return mKey;
+    }
+}
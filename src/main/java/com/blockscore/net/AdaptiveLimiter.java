@@ -0,0 +1,212 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caps the number of calls in flight with a limit that follows the server's latency, in the style of TCP Vegas.
+ * The lowest latency seen stands for an idle server; when latency rises above it, the extra time is read as
+ * calls queueing on the server and the limit comes down. While latency stays near the idle value the limit goes
+ * up. Failures that signal overload cut the limit by a tenth. Callers wait in a first-come, first-served queue,
+ * and asynchronous callers wait without holding a thread.
+ */
+final class AdaptiveLimiter {
+    private static final int ALPHA = 3;
+    private static final int BETA = 6;
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final int PROBE_INTERVAL = 1000;
+
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final ArrayDeque<Runnable> mWaiters = new ArrayDeque<Runnable>();
+    private final int mMinLimit;
+    private final int mMaxLimit;
+    private final ConcurrencyLimiterStatistics mStatistics = new ConcurrencyLimiterStatistics();
+    private double mLimit;
+    private int mInFlight;
+    private long mNoLoadRttNanos = Long.MAX_VALUE;
+    private int mSamplesSinceProbe;
+
+    /**
+     * Creates a limiter.
+     * @param minLimit Lowest the limit may go.
+     * @param initialLimit Limit to start with.
+     * @param maxLimit Highest the limit may go.
+     */
+    AdaptiveLimiter(final int minLimit, final int initialLimit, final int maxLimit) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max");
+        }
+        mMinLimit = minLimit;
+        mMaxLimit = maxLimit;
+        mLimit = initialLimit;
+        publish();
+    }
+
+    /**
+     * Blocks until a call may be started.
+     * @param deadlineNanos When the call must be finished, on the {@link System#nanoTime()} clock, or
+     *                      {@link Exchange#NO_DEADLINE}.
+     * @throws InterruptedIOException If the deadline passes first, or the thread is interrupted.
+     */
+    void acquire(final long deadlineNanos) throws InterruptedIOException {
+        final CountDownLatch granted = new CountDownLatch(1);
+        Runnable waiter = new Runnable() {
+            @Override
+            public void run() {
+                granted.countDown();
+            }
+        };
+        if (acquireOrEnqueue(waiter)) {
+            return;
+        }
+
+        try {
+            if (deadlineNanos == Exchange.NO_DEADLINE) {
+                granted.await();
+            } else if (!granted.await(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                if (cancelAsync(waiter)) {
+                    throw new InterruptedIOException("Deadline exceeded while waiting for a concurrency slot");
+                }
+                //The slot was granted just as the deadline passed, so the call goes ahead and fails on the wire.
+            }
+        } catch (InterruptedException e) {
+            if (!cancelAsync(waiter)) {
+                release();
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a concurrency slot");
+        }
+    }
+
+    /**
+     * Runs the given action as soon as a call may be started, without blocking. The action runs on the calling
+     * thread if a slot is free, otherwise on the thread that frees one.
+     * @param onAcquired Action to run once the slot is held.
+     */
+    void acquireAsync(@NotNull final Runnable onAcquired) {
+        if (acquireOrEnqueue(onAcquired)) {
+            onAcquired.run();
+        }
+    }
+
+    /**
+     * Gives up waiting for a slot requested with {@link #acquireAsync(Runnable)}.
+     * @param onAcquired Action that was waiting.
+     * @return True if the action was still waiting and will not run; false if it already holds the slot.
+     */
+    boolean cancelAsync(@NotNull final Runnable onAcquired) {
+        mLock.lock();
+        try {
+            boolean removed = mWaiters.remove(onAcquired);
+            publish();
+            return removed;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Frees a slot after a call that says nothing about the server's health, such as one cancelled by its caller.
+     */
+    void release() {
+        mLock.lock();
+        try {
+            mInFlight--;
+        } finally {
+            mLock.unlock();
+        }
+        grantWaiters();
+    }
+
+    /**
+     * Frees a slot and adjusts the limit to how the call went.
+     * @param rttNanos Time from sending the call to getting its response.
+     * @param dropped True if the call failed in a way that signals overload.
+     */
+    void release(final long rttNanos, final boolean dropped) {
+        mLock.lock();
+        try {
+            //The limit only goes up when it is actually being used.
+            boolean saturated = mInFlight * 2 >= mLimit;
+            mInFlight--;
+            if (dropped) {
+                mLimit = Math.max(mMinLimit, mLimit * BACKOFF_RATIO);
+            } else {
+                update(rttNanos, saturated);
+            }
+        } finally {
+            mLock.unlock();
+        }
+        grantWaiters();
+    }
+
+    @NotNull
+    ConcurrencyLimiterStatistics getStatistics() {
+        return mStatistics;
+    }
+
+    private void update(final long rttNanos, final boolean saturated) {
+        if (++mSamplesSinceProbe >= PROBE_INTERVAL) {
+            //Forgets the idle latency now and then, in case the route to the server has changed.
+            mSamplesSinceProbe = 0;
+            mNoLoadRttNanos = rttNanos;
+        } else if (rttNanos < mNoLoadRttNanos) {
+            mNoLoadRttNanos = rttNanos;
+        }
+        if (rttNanos <= 0) {
+            return;
+        }
+
+        double queueSize = Math.ceil(mLimit * (1 - (double) mNoLoadRttNanos / rttNanos));
+        if (queueSize <= ALPHA && saturated) {
+            mLimit = Math.min(mMaxLimit, mLimit + 1);
+        } else if (queueSize >= BETA) {
+            mLimit = Math.max(mMinLimit, mLimit - 1);
+        }
+    }
+
+    private boolean acquireOrEnqueue(@NotNull final Runnable waiter) {
+        mLock.lock();
+        try {
+            if (mInFlight < (int) mLimit && mWaiters.isEmpty()) {
+                mInFlight++;
+                return true;
+            }
+            mWaiters.add(waiter);
+            return false;
+        } finally {
+            publish();
+            mLock.unlock();
+        }
+    }
+
+    private void grantWaiters() {
+        while (true) {
+            Runnable next;
+            mLock.lock();
+            try {
+                next = mInFlight < (int) mLimit ? mWaiters.poll() : null;
+                if (next != null) {
+                    mInFlight++;
+                }
+                publish();
+            } finally {
+                mLock.unlock();
+            }
+            if (next == null) {
+                return;
+            }
+            //Hands the slot straight to the next waiter.
+            next.run();
+        }
+    }
+
+    private void publish() {
+        mStatistics.update((int) mLimit, mInFlight, mWaiters.size());
+    }
+}
@@ -0,0 +1,191 @@
+package com.blockscore.net;
+
+import com.blockscore.exceptions.CircuitOpenException;
+import com.squareup.okhttp.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Handles a single attempt of a call. It reports the outcome to the endpoint's circuit breaker, if there is
+ * one, and holds back the outcome of an attempt worth retrying, so the caller only hears about the last
+ * attempt. Retries are for idempotent endpoints only, after network failures, server errors or 429 responses,
+ * only while the circuit breaker is closed, and only while the deadline leaves room for the backoff.
+ */
+final class AttemptHandler implements BlockscoreClient.ResponseHandler {
+    /**
+     * Backoff of an attempt whose outcome went to the caller.
+     */
+    static final long NO_RETRY = -1;
+
+    private final RateLimiter mRateLimiter;
+    @Nullable
+    private final PriorityScheduler mScheduler;
+    private final RetryPolicy mRetryPolicy;
+    private final ParsingHandler<?> mDelegate;
+    private final int mAttempt;
+    private final long mDeadlineNanos;
+    private final Runnable mOnRetry;
+    @Nullable
+    private final CircuitBreaker mBreaker;
+    private final AtomicBoolean mRecorded = new AtomicBoolean();
+    private final AtomicReference<BulkheadLimiter> mBulkhead = new AtomicReference<BulkheadLimiter>();
+    private final AtomicBoolean mHoldsSchedulerSlot = new AtomicBoolean();
+    private volatile long mPermit = CircuitBreaker.NOT_A_TRIAL;
+    private volatile long mBackoffNanos = NO_RETRY;
+
+    /**
+     * Creates the handler for one attempt.
+     * @param engine Engine making the call.
+     * @param delegate Handler delivering the outcome to the caller.
+     * @param attempt Number of this attempt, starting at 1.
+     * @param deadlineNanos When the call must be finished, on the {@link System#nanoTime()} clock, or
+     *                      {@link Exchange#NO_DEADLINE}.
+     * @param onRetry Action starting the next attempt, or null if the caller checks
+     *                {@link #getBackoffNanos()} itself.
+     */
+    AttemptHandler(@NotNull final CallEngine engine, @NotNull final ParsingHandler<?> delegate, final int attempt
+            , final long deadlineNanos, @Nullable final Runnable onRetry) {
+        mRateLimiter = engine.getRateLimiter();
+        mScheduler = engine.getScheduler();
+        mRetryPolicy = engine.getRetryPolicy();
+        mDelegate = delegate;
+        mAttempt = attempt;
+        mDeadlineNanos = deadlineNanos;
+        mOnRetry = onRetry;
+        mBreaker = engine.getCircuitBreaker(delegate.getEndpoint());
+    }
+
+    /**
+     * Asks the circuit breaker to let the attempt through. If it won't, the caller gets a
+     * {@link CircuitOpenException} and the attempt must go no further.
+     * @return True if the attempt may go ahead.
+     */
+    boolean tryAcquire() {
+        if (mBreaker == null) {
+            return true;
+        }
+        long permit = mBreaker.tryAcquire();
+        if (permit != CircuitBreaker.REFUSED) {
+            mPermit = permit;
+            return true;
+        }
+        mRecorded.set(true);
+        mDelegate.fail(new CircuitOpenException(mDelegate.getEndpoint(), mBreaker.getRetryAfterMillis())).run();
+        return false;
+    }
+
+    /**
+     * Makes the attempt hold a bulkhead slot, which it hands back once it has an outcome or is abandoned.
+     * @param bulkhead Bulkhead the slot was taken from.
+     */
+    void holdBulkhead(@NotNull final BulkheadLimiter bulkhead) {
+        mBulkhead.set(bulkhead);
+    }
+
+    /**
+     * Makes the attempt hold a slot in the priority scheduler, handed back the same way as a bulkhead slot.
+     */
+    void holdSchedulerSlot() {
+        mHoldsSchedulerSlot.set(true);
+    }
+
+    /**
+     * Hands back the bulkhead and scheduler slots, and tells the circuit breaker the attempt will never
+     * complete unless its outcome was already recorded.
+     */
+    void abandon() {
+        releaseSlots();
+        if (mBreaker != null && mRecorded.compareAndSet(false, true)) {
+            mBreaker.onAbandoned(mPermit);
+        }
+    }
+
+    @NotNull
+    @Override
+    public Runnable onResponse(@NotNull final Response response) throws IOException {
+        //Client errors say nothing about the endpoint's health.
+        record(CallEngine.isOverloaded(response.code()));
+        try {
+            if (CallEngine.isOverloaded(response.code()) && shouldRetry()) {
+                //The rate limiter still sees the response, so the next attempt waits out a 429's Retry-After.
+                mRateLimiter.onResponse(mDelegate.getEndpoint(), response);
+                return getRetryAction();
+            }
+            return mDelegate.onResponse(response);
+        } finally {
+            releaseSlots();
+        }
+    }
+
+    @Override
+    public void onFailure(@NotNull final IOException e) {
+        releaseSlots();
+        record(true);
+        if (shouldRetry()) {
+            getRetryAction().run();
+        } else {
+            mDelegate.onFailure(e);
+        }
+    }
+
+    @Override
+    public void onNotSent() {
+        mDelegate.onNotSent();
+    }
+
+    /**
+     * Gets the wait before the next attempt.
+     * @return Backoff, or {@link #NO_RETRY} if the outcome went to the caller.
+     */
+    long getBackoffNanos() {
+        return mBackoffNanos;
+    }
+
+    private void releaseSlots() {
+        if (mHoldsSchedulerSlot.getAndSet(false) && mScheduler != null) {
+            mScheduler.release();
+        }
+        BulkheadLimiter bulkhead = mBulkhead.getAndSet(null);
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+    }
+
+    private void record(final boolean failed) {
+        if (mBreaker != null && mRecorded.compareAndSet(false, true)) {
+            if (failed) {
+                mBreaker.onFailure(mPermit);
+            } else {
+                mBreaker.onSuccess(mPermit);
+            }
+        }
+    }
+
+    private boolean shouldRetry() {
+        if (!mDelegate.getEndpoint().isIdempotent() || mAttempt >= mRetryPolicy.getMaxAttempts()
+                || Thread.currentThread().isInterrupted()
+                || mBreaker != null && mBreaker.getState() != CircuitState.CLOSED) {
+            return false;
+        }
+        long backoffNanos = mRetryPolicy.getBackoffNanos(mAttempt);
+        if (mDeadlineNanos != Exchange.NO_DEADLINE && System.nanoTime() + backoffNanos - mDeadlineNanos >= 0) {
+            return false;
+        }
+        mBackoffNanos = backoffNanos;
+        return true;
+    }
+
+    @NotNull
+    private Runnable getRetryAction() {
+        return mOnRetry != null ? mOnRetry : new Runnable() {
+            @Override
+            public void run() {
+                //The blocking caller picks up the backoff and retries.
+            }
+        };
+    }
+}
@@ -1,10 +1,8 @@
 package com.blockscore.net;
 
 import com.blockscore.common.BlockscoreErrorType;
-import com.blockscore.common.Constants;
 import com.blockscore.exceptions.APIException;
 import com.blockscore.exceptions.InvalidRequestException;
-import com.blockscore.exceptions.NoApiKeyFoundException;
 import com.blockscore.models.Company;
 import com.blockscore.models.Person;
 import com.blockscore.models.QuestionSet;
@@ -21,22 +19,20 @@ import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.squareup.okhttp.OkHttpClient;
-import com.squareup.okhttp.OkUrlFactory;
+import com.squareup.okhttp.Cache;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import retrofit.*;
-import retrofit.client.Request;
-import retrofit.client.UrlConnectionClient;
 import retrofit.converter.JacksonConverter;
 import rx.Observable;
 
-import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.File;
 import java.text.SimpleDateFormat;
-import java.util.Base64;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -44,17 +40,21 @@ import java.util.concurrent.TimeUnit;
  * Created by Tony Dieppa on 9/29/14.
  */
 public class BlockscoreApiClient {
-    private static RestAdapter.LogLevel sLogLevel = RestAdapter.LogLevel.NONE;
-    private static String sApiKey;
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
 
-    private final BlockscoreRetrofitAPI mRestAdapter;
+    private static volatile RestAdapter.LogLevel sLogLevel = RestAdapter.LogLevel.NONE;
+
+    private final BlockscoreClient mClient;
+    private final CallEngine mEngine;
+    private final CallOptions mOptions;
 
     /**
-     * Initializes the API client with the API key. Must be done first or else all calls will fail.
+     * Initializes the API client with the API key. Must be done before making calls with a client created by
+     * {@link #BlockscoreApiClient()} or else all calls will fail.
      * @param apiKey API key to use.
      */
     public static void init(@NotNull final String apiKey) {
-        sApiKey = apiKey + ":";
+        BlockscoreConfig.setLegacyApiKey(apiKey);
     }
 
     /**
@@ -67,10 +67,30 @@ public class BlockscoreApiClient {
         }
     }
 
+    /**
+     * Creates an API client using the settings given to {@link #init(String)} and {@link #useVerboseLogs(boolean)}.
+     * It shares the default connection pool with every other default client.
+     */
     public BlockscoreApiClient() {
-        RestAdapter.Builder restBuilder = new RestAdapter.Builder()
-                .setClient(new BlockscoreClient())
-                .setEndpoint(Constants.getDomain());
+        this(new Builder());
+    }
+
+    /**
+     * Creates an API client with its own config. It shares the default connection pool with every other default client.
+     * @param config Config to use.
+     */
+    public BlockscoreApiClient(@NotNull final BlockscoreConfig config) {
+        this(new Builder().setConfig(config));
+    }
+
+    private BlockscoreApiClient(@NotNull final Builder builder) {
+        final BlockscoreConfig config = builder.mConfig != null ? builder.mConfig
+                : BlockscoreConfig.fromLegacySettings(sLogLevel);
+        mClient = new BlockscoreClient(config, builder.mConnectionPool, builder.mHttp2Enabled
+                , builder.mMaxConcurrentStreams, builder.mMaxAsyncRequests, builder.mExecutionMode
+                , builder.mSslSocketFactory, builder.mHostnameVerifier, builder.mBulkheads.values()
+                , builder.mHttpCacheDirectory == null ? null
+                : new Cache(builder.mHttpCacheDirectory, builder.mMaxHttpCacheBytes));
 
         ObjectMapper mapper = new ObjectMapper();
         mapper.setVisibilityChecker(mapper.getSerializationConfig().getDefaultVisibilityChecker()
@@ -82,20 +102,223 @@ public class BlockscoreApiClient {
         mapper.setSerializationInclusion(JsonInclude.Include.NON_DEFAULT);
         mapper.setDateFormat(new SimpleDateFormat("yyyy-MM-dd"));
         JacksonConverter converter = new JacksonConverter(mapper);
-        restBuilder.setConverter(converter);
-
-        //Sets up the authentication headers and accept headers.
-        restBuilder.setRequestInterceptor(new RequestInterceptor() {
-            @Override
-            public void intercept(RequestFacade request) {
-                request.addHeader(Constants.AUTHORIZATION_HEADER, getEncodedAuthorization());
-                request.addHeader(Constants.ACCEPT_HEADER, Constants.getAcceptHeaders());
+        AdaptiveLimiter concurrencyLimiter = builder.mMaxConcurrencyLimit == 0 ? null
+                : new AdaptiveLimiter(builder.mMinConcurrencyLimit, builder.mInitialConcurrencyLimit
+                , builder.mMaxConcurrencyLimit);
+        mEngine = new CallEngine(mClient, config, converter, new BlockscoreErrorHandler(), concurrencyLimiter
+                , builder.mCircuitBreakerListener, builder.mCoalesceReads, builder.mBulkheads.values()
+                , builder.mMaxScheduledCalls == 0 ? null
+                : new PriorityScheduler(builder.mMaxScheduledCalls, builder.mAgingNanos), builder.mJournal
+                , builder.mMaxCacheEntries == 0 ? null
+                : new ResponseCache(builder.mMaxCacheEntries, builder.mCacheTtlNanos)
+                , builder.mMaxSearchCacheEntries == 0 ? null
+                : new ResponseCache(builder.mMaxSearchCacheEntries, builder.mSearchFreshnessNanos), builder.mStore);
+        mOptions = CallOptions.DEFAULT;
+    }
+
+    private BlockscoreApiClient(@NotNull final BlockscoreApiClient parent, @NotNull final CallOptions options) {
+        mClient = parent.mClient;
+        mEngine = parent.mEngine;
+        mOptions = options;
+    }
+
+    /**
+     * Creates a view of this client whose calls must finish within the given time, counted from when each call
+     * is made. A call that runs past its deadline is cancelled on the wire and fails with an
+     * {@link java.io.InterruptedIOException}. The view shares this client's connections and settings.
+     * @param deadline Time each call may take.
+     * @param timeUnit Unit of the deadline.
+     * @return Client view with the deadline.
+     */
+    @NotNull
+    public BlockscoreApiClient withDeadline(final long deadline, @NotNull final TimeUnit timeUnit) {
+        if (deadline <= 0) {
+            throw new IllegalArgumentException("deadline <= 0");
+        }
+        return new BlockscoreApiClient(this, mOptions.withDeadlineMillis(Math.max(1, timeUnit.toMillis(deadline))));
+    }
+
+    /**
+     * Creates a view of this client whose calls are made in the given bulkhead. Keep the view around as the client
+     * for a whole kind of work, such as a batch job, or create one for a single call. The view shares this
+     * client's connection pool and settings.
+     * @param name Name of a bulkhead added with {@link Builder#addBulkhead(Bulkhead)}.
+     * @return Client view using the bulkhead.
+     */
+    @NotNull
+    public BlockscoreApiClient withBulkhead(@NotNull final String name) {
+        if (mEngine.getBulkheadStatistics(name) == null) {
+            throw new IllegalArgumentException("Unknown bulkhead: " + name);
+        }
+        return new BlockscoreApiClient(this, mOptions.withBulkhead(name));
+    }
+
+    /**
+     * Creates a view of this client whose calls are scheduled with the given priority, whatever their endpoint's
+     * configured priority. The view shares this client's connections and settings.
+     * @param priority Priority to use.
+     * @return Client view with the priority.
+     * @see Builder#enablePriorityScheduling(int, long, TimeUnit)
+     */
+    @NotNull
+    public BlockscoreApiClient withPriority(@NotNull final Priority priority) {
+        return new BlockscoreApiClient(this, mOptions.withPriority(priority));
+    }
+
+    /**
+     * Creates a view of this client whose create calls carry the given idempotency key, so that repeating a create
+     * with the same key can't make a second record. With a journal set through
+     * {@link Builder#setIdempotencyJournal(IdempotencyJournal)}, a create whose key is already in the journal isn't
+     * sent again; the record it made is read back instead. Only {@link Endpoint#getReadEndpoint() creates that can
+     * be read back} use the key. Use a new key for every record you mean to create.
+     * <p>A create that was sent but never answered with its record, because of a network failure, a server
+     * error or a crash, leaves its key pending. Repeating it then fails with
+     * {@link com.blockscore.exceptions.IdempotencyOutcomeUnknownException} rather than risk a second record; once
+     * you know whether the record was made, {@link IdempotencyJournal#forget(Endpoint, String) forget} the key.
+     * A create that never went out, because it couldn't connect, ran past its deadline or was cancelled while
+     * still queued in the client, leaves nothing pending and can simply be repeated.
+     * The journal can't close every gap: without one, or from another process, a repeat is sent again, and only
+     * a server that honours the Idempotency-Key header keeps it from making a second record.</p>
+     * @param key Idempotency key, up to 255 printable ASCII characters without spaces.
+     * @return Client view with the idempotency key.
+     */
+    @NotNull
+    public BlockscoreApiClient withIdempotencyKey(@NotNull final String key) {
+        if (key.isEmpty() || key.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency keys must be 1 to 255 characters long.");
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) <= ' ' || key.charAt(i) > '~') {
+                throw new IllegalArgumentException("Idempotency keys must be printable ASCII without spaces.");
             }
-        });
-        restBuilder.setErrorHandler(new BlockscoreErrorHandler());
+        }
+        return new BlockscoreApiClient(this, mOptions.withIdempotencyKey(key));
+    }
+
+    /**
+     * Gets the byte counters for this client's traffic, before and after compression.
+     * @return Transfer statistics.
+     */
+    @NotNull
+    public TransferStatistics getTransferStatistics() {
+        return mClient.getTransferStatistics();
+    }
+
+    /**
+     * Gets the counters for this client's HTTP cache, including the bytes and parse time it saved.
+     * @return HTTP cache statistics, or null if the HTTP cache was not enabled.
+     * @see Builder#setHttpCache(File, long)
+     */
+    @Nullable
+    public HttpCacheStatistics getHttpCacheStatistics() {
+        return mClient.getHttpCacheStatistics();
+    }
 
-        restBuilder.setLogLevel(sLogLevel);
-        mRestAdapter = restBuilder.build().create(BlockscoreRetrofitAPI.class);
+    /**
+     * Gets the counters for this client's rate limiter, including how many calls are waiting right now.
+     * @return Rate limiter statistics.
+     */
+    @NotNull
+    public RateLimiterStatistics getRateLimiterStatistics() {
+        return mEngine.getRateLimiterStatistics();
+    }
+
+    /**
+     * Gets the gauges for this client's adaptive concurrency limiter, including its current limit.
+     * @return Concurrency limiter statistics, or null if adaptive concurrency was not enabled.
+     * @see Builder#enableAdaptiveConcurrency(int, int)
+     */
+    @Nullable
+    public ConcurrencyLimiterStatistics getConcurrencyLimiterStatistics() {
+        return mEngine.getConcurrencyLimiterStatistics();
+    }
+
+    /**
+     * Gets the counters for this client's hedged reads.
+     * @return Hedging statistics.
+     * @see BlockscoreConfig.Builder#setHedgePolicy(Endpoint, HedgePolicy)
+     */
+    @NotNull
+    public HedgingStatistics getHedgingStatistics() {
+        return mEngine.getHedgingStatistics();
+    }
+
+    /**
+     * Gets the counters for this client's coalesced reads.
+     * @return Coalescing statistics.
+     * @see Builder#enableRequestCoalescing()
+     */
+    @NotNull
+    public CoalescingStatistics getCoalescingStatistics() {
+        return mEngine.getCoalescingStatistics();
+    }
+
+    /**
+     * Gets the hit, miss and eviction counters of this client's response cache.
+     * @return Cache statistics, or null if the response cache was not enabled.
+     * @see Builder#enableResponseCache(int, long, TimeUnit)
+     */
+    @Nullable
+    public CacheStatistics getCacheStatistics() {
+        return mEngine.getCacheStatistics();
+    }
+
+    /**
+     * Gets the counters of this client's watchlist search cache, including how much API search time it saved.
+     * @return Search cache statistics, or null if the search cache was not enabled.
+     * @see Builder#enableSearchCache(int, long, TimeUnit)
+     */
+    @Nullable
+    public SearchCacheStatistics getSearchCacheStatistics() {
+        return mEngine.getSearchCacheStatistics();
+    }
+
+    /**
+     * Gets the queue depths and wait-time histograms of this client's priority scheduler, per priority.
+     * @return Scheduler statistics, or null if priority scheduling was not enabled.
+     * @see Builder#enablePriorityScheduling(int, long, TimeUnit)
+     */
+    @Nullable
+    public SchedulerStatistics getSchedulerStatistics() {
+        return mEngine.getSchedulerStatistics();
+    }
+
+    /**
+     * Gets the gauges and counters for one of this client's bulkheads.
+     * @param name Bulkhead name.
+     * @return Bulkhead statistics.
+     * @see Builder#addBulkhead(Bulkhead)
+     */
+    @NotNull
+    public BulkheadStatistics getBulkheadStatistics(@NotNull final String name) {
+        BulkheadStatistics statistics = mEngine.getBulkheadStatistics(name);
+        if (statistics == null) {
+            throw new IllegalArgumentException("Unknown bulkhead: " + name);
+        }
+        return statistics;
+    }
+
+    /**
+     * Gets the state of an endpoint's circuit breaker.
+     * @param endpoint Endpoint.
+     * @return Circuit breaker state, or null if the endpoint has no circuit breaker.
+     * @see BlockscoreConfig.Builder#setCircuitBreakerPolicy(CircuitBreakerPolicy)
+     */
+    @Nullable
+    public CircuitState getCircuitState(@NotNull final Endpoint endpoint) {
+        return mEngine.getCircuitState(endpoint);
+    }
+
+    /**
+     * Opens connections to the API ahead of the first calls, so they don't pay for DNS, TCP and TLS setup.
+     * The TLS sessions are kept, so connections opened later resume them instead of doing a full handshake.
+     * Blocks until warm-up is done.
+     * @param connections Number of connections to open. Capped at the connection pool's idle connection limit.
+     * @return Warm-up result, including how long it took.
+     */
+    @NotNull
+    public WarmUpResult warmUp(final int connections) {
+        return mClient.warmUp(connections);
     }
 
     /**
@@ -105,7 +328,7 @@ public class BlockscoreApiClient {
      * @param callback Callback to use.
      */
     public void createVerification(@NotNull final Person person, @NotNull final Callback<Verification> callback) {
-        mRestAdapter.createVerification(person, callback);
+        mEngine.enqueue(Endpoint.CREATE_VERIFICATION, mOptions, callback, person);
     }
 
     /**
@@ -116,7 +339,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public Observable<Verification> createVerification(@NotNull final Person person) {
-        return mRestAdapter.createVerification(person);
+        return mEngine.observe(Endpoint.CREATE_VERIFICATION, mOptions, person);
     }
 
     /**
@@ -127,7 +350,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public Verification createVerificationSync(@NotNull final Person person) {
-        return mRestAdapter.createVerification(person).toBlocking().first();
+        return mEngine.execute(Endpoint.CREATE_VERIFICATION, mOptions, person);
     }
 
     /**
@@ -137,7 +360,7 @@ public class BlockscoreApiClient {
      * @param callback Callback to use.
      */
     public void getVerification(@NotNull final String id, final Callback<Verification> callback) {
-        mRestAdapter.getVerification(id, callback);
+        mEngine.enqueue(Endpoint.GET_VERIFICATION, mOptions, callback, id);
     }
 
     /**
@@ -148,7 +371,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public Observable<Verification> getVerification(@NotNull final String id) {
-        return mRestAdapter.getVerification(id);
+        return mEngine.observe(Endpoint.GET_VERIFICATION, mOptions, id);
     }
 
     /**
@@ -159,7 +382,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public Verification getVerificationSync(@NotNull final String id) {
-        return mRestAdapter.getVerification(id).toBlocking().first();
+        return mEngine.execute(Endpoint.GET_VERIFICATION, mOptions, id);
     }
 
     /**
@@ -168,7 +391,7 @@ public class BlockscoreApiClient {
      * @param callback Callback to use.
      */
     public void listVerifications(@NotNull final Callback<List<Verification>> callback) {
-        mRestAdapter.listVerifications(callback);
+        mEngine.enqueue(Endpoint.LIST_VERIFICATIONS, mOptions, callback);
     }
 
     /**
@@ -178,7 +401,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public Observable<List<Verification>> listVerifications() {
-        return mRestAdapter.listVerifications();
+        return mEngine.observe(Endpoint.LIST_VERIFICATIONS, mOptions);
     }
 
     /**
@@ -188,7 +411,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public List<Verification> listVerificationsSync() {
-        return mRestAdapter.listVerifications().toBlocking().first();
+        return mEngine.execute(Endpoint.LIST_VERIFICATIONS, mOptions);
     }
 
     /**
@@ -199,7 +422,7 @@ public class BlockscoreApiClient {
      */
     public void createQuestionSet(@NotNull final QuestionSetRequest request
             , @NotNull final Callback<QuestionSet> callback) {
-        mRestAdapter.createQuestionSet(request, callback);
+        mEngine.enqueue(Endpoint.CREATE_QUESTION_SET, mOptions, callback, request);
     }
 
     /**
@@ -210,7 +433,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public Observable<QuestionSet> createQuestionSet(@NotNull final QuestionSetRequest request) {
-        return mRestAdapter.createQuestionSet(request);
+        return mEngine.observe(Endpoint.CREATE_QUESTION_SET, mOptions, request);
     }
 
     /**
@@ -221,7 +444,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public QuestionSet createQuestionSetSync(@NotNull final QuestionSetRequest request) {
-        return mRestAdapter.createQuestionSet(request).toBlocking().first();
+        return mEngine.execute(Endpoint.CREATE_QUESTION_SET, mOptions, request);
     }
 
     /**
@@ -234,7 +457,7 @@ public class BlockscoreApiClient {
     public void scoreQuestionSet(@NotNull final String questionSetId
             , @NotNull final AnswerRequest answers
             , @NotNull final Callback<QuestionSet> callback) {
-        mRestAdapter.scoreQuestionSet(questionSetId, answers, callback);
+        mEngine.enqueue(Endpoint.SCORE_QUESTION_SET, mOptions, callback, questionSetId, answers);
     }
 
     /**
@@ -247,7 +470,7 @@ public class BlockscoreApiClient {
     @NotNull
     public Observable<QuestionSet> scoreQuestionSet(@NotNull final String questionSetId
             , @NotNull final AnswerRequest answers) {
-        return mRestAdapter.scoreQuestionSet(questionSetId, answers);
+        return mEngine.observe(Endpoint.SCORE_QUESTION_SET, mOptions, questionSetId, answers);
     }
 
     /**
@@ -260,7 +483,7 @@ public class BlockscoreApiClient {
     @NotNull
     public QuestionSet scoreQuestionSetSync(@NotNull final String questionSetId
             , @NotNull final AnswerRequest answers) {
-        return mRestAdapter.scoreQuestionSet(questionSetId, answers).toBlocking().first();
+        return mEngine.execute(Endpoint.SCORE_QUESTION_SET, mOptions, questionSetId, answers);
     }
 
     /**
@@ -271,7 +494,7 @@ public class BlockscoreApiClient {
      */
     public void getQuestionSet(@NotNull final String questionSetId
             , @NotNull final Callback<QuestionSet> callback) {
-        mRestAdapter.getQuestionSet(questionSetId, callback);
+        mEngine.enqueue(Endpoint.GET_QUESTION_SET, mOptions, callback, questionSetId);
     }
 
     /**
@@ -281,7 +504,7 @@ public class BlockscoreApiClient {
      * @return Observable containing the question set.
      */
     public Observable<QuestionSet> getQuestionSet(@NotNull final String questionSetId) {
-        return mRestAdapter.getQuestionSet(questionSetId);
+        return mEngine.observe(Endpoint.GET_QUESTION_SET, mOptions, questionSetId);
     }
 
     /**
@@ -291,7 +514,7 @@ public class BlockscoreApiClient {
      * @return The question set.
      */
     public QuestionSet getQuestionSetSync(@NotNull final String questionSetId) {
-        return mRestAdapter.getQuestionSet(questionSetId).toBlocking().first();
+        return mEngine.execute(Endpoint.GET_QUESTION_SET, mOptions, questionSetId);
     }
 
     /**
@@ -300,7 +523,7 @@ public class BlockscoreApiClient {
      * @param callback Callback to use.
      */
     public void listQuestionSet(@NotNull final Callback<List<QuestionSet>> callback) {
-        mRestAdapter.listQuestionSets(callback);
+        mEngine.enqueue(Endpoint.LIST_QUESTION_SETS, mOptions, callback);
     }
 
     /**
@@ -310,7 +533,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public Observable<List<QuestionSet>> listQuestionSet() {
-        return mRestAdapter.listQuestionSets();
+        return mEngine.observe(Endpoint.LIST_QUESTION_SETS, mOptions);
     }
 
     /**
@@ -320,7 +543,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public List<QuestionSet> listQuestionSetSync() {
-        return mRestAdapter.listQuestionSets().toBlocking().first();
+        return mEngine.execute(Endpoint.LIST_QUESTION_SETS, mOptions);
     }
 
     /**
@@ -330,7 +553,7 @@ public class BlockscoreApiClient {
      * @param callback Callback to use.
      */
     public void createCompany(@NotNull final Company company, @NotNull final Callback<Company> callback) {
-        mRestAdapter.createCompany(company, callback);
+        mEngine.enqueue(Endpoint.CREATE_COMPANY, mOptions, callback, company);
     }
 
     /**
@@ -341,7 +564,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public Observable<Company> createCompany(@NotNull final Company company) {
-        return mRestAdapter.createCompany(company);
+        return mEngine.observe(Endpoint.CREATE_COMPANY, mOptions, company);
     }
 
     /**
@@ -352,7 +575,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public Company createCompanySync(@NotNull final Company company) {
-        return mRestAdapter.createCompany(company).toBlocking().first();
+        return mEngine.execute(Endpoint.CREATE_COMPANY, mOptions, company);
     }
 
     /**
@@ -362,7 +585,7 @@ public class BlockscoreApiClient {
      * @param callback Callback to use.
      */
     public void getCompany(@NotNull final String id, @NotNull final Callback<Company> callback) {
-        mRestAdapter.getCompany(id, callback);
+        mEngine.enqueue(Endpoint.GET_COMPANY, mOptions, callback, id);
     }
 
     /**
@@ -373,7 +596,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public Observable<Company> getCompany(@NotNull final String id) {
-        return mRestAdapter.getCompany(id);
+        return mEngine.observe(Endpoint.GET_COMPANY, mOptions, id);
     }
 
     /**
@@ -384,7 +607,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public Company getCompanySync(@NotNull final String id) {
-        return mRestAdapter.getCompany(id).toBlocking().first();
+        return mEngine.execute(Endpoint.GET_COMPANY, mOptions, id);
     }
 
     /**
@@ -393,7 +616,7 @@ public class BlockscoreApiClient {
      * @param callback Callback to use.
      */
     public void listCompanies(@NotNull final Callback<List<Company>> callback) {
-        mRestAdapter.listCompanies(callback);
+        mEngine.enqueue(Endpoint.LIST_COMPANIES, mOptions, callback);
     }
 
     /**
@@ -403,7 +626,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public Observable<List<Company>> listCompanies() {
-        return mRestAdapter.listCompanies();
+        return mEngine.observe(Endpoint.LIST_COMPANIES, mOptions);
     }
 
     /**
@@ -413,7 +636,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public List<Company> listCompaniesSync() {
-        return mRestAdapter.listCompanies().toBlocking().first();
+        return mEngine.execute(Endpoint.LIST_COMPANIES, mOptions);
     }
 
     /**
@@ -424,7 +647,7 @@ public class BlockscoreApiClient {
      */
     public void createWatchlistCandidate(@NotNull final WatchlistCandidate candidate
             , @NotNull final Callback<WatchlistCandidate> callback) {
-        mRestAdapter.createWatchlistCandidate(candidate, callback);
+        mEngine.enqueue(Endpoint.CREATE_WATCHLIST_CANDIDATE, mOptions, callback, candidate);
     }
 
     /**
@@ -435,7 +658,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public Observable<WatchlistCandidate> createWatchlistCandidate(@NotNull final WatchlistCandidate candidate) {
-        return mRestAdapter.createWatchlistCandidate(candidate);
+        return mEngine.observe(Endpoint.CREATE_WATCHLIST_CANDIDATE, mOptions, candidate);
     }
 
     /**
@@ -446,7 +669,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public WatchlistCandidate createWatchlistCandidateSync(@NotNull final WatchlistCandidate candidate) {
-        return mRestAdapter.createWatchlistCandidate(candidate).toBlocking().first();
+        return mEngine.execute(Endpoint.CREATE_WATCHLIST_CANDIDATE, mOptions, candidate);
     }
 
     /**
@@ -458,7 +681,7 @@ public class BlockscoreApiClient {
      */
     public void updateWatchlistCandidate(@NotNull final String id, @NotNull final WatchlistCandidate candidate
             , @NotNull final Callback<WatchlistCandidate> callback) {
-        mRestAdapter.updateWatchlistCandidate(id, candidate, callback);
+        mEngine.enqueue(Endpoint.UPDATE_WATCHLIST_CANDIDATE, mOptions, callback, id, candidate);
     }
 
     /**
@@ -471,7 +694,7 @@ public class BlockscoreApiClient {
     @NotNull
     public Observable<WatchlistCandidate> updateWatchlistCandidate(@NotNull final String id
             , @NotNull final WatchlistCandidate candidate) {
-        return mRestAdapter.updateWatchlistCandidate(id, candidate);
+        return mEngine.observe(Endpoint.UPDATE_WATCHLIST_CANDIDATE, mOptions, id, candidate);
     }
 
     /**
@@ -484,7 +707,7 @@ public class BlockscoreApiClient {
     @NotNull
     public WatchlistCandidate updateWatchlistCandidateSync(@NotNull final String id
             , @NotNull final WatchlistCandidate candidate) {
-        return mRestAdapter.updateWatchlistCandidate(id, candidate).toBlocking().first();
+        return mEngine.execute(Endpoint.UPDATE_WATCHLIST_CANDIDATE, mOptions, id, candidate);
     }
 
     /**
@@ -494,7 +717,7 @@ public class BlockscoreApiClient {
      * @param callback Callback to use.
      */
     public void getWatchlistCandidate(@NotNull final String id, @NotNull final Callback<WatchlistCandidate> callback) {
-        mRestAdapter.getWatchlistCandidate(id, callback);
+        mEngine.enqueue(Endpoint.GET_WATCHLIST_CANDIDATE, mOptions, callback, id);
     }
 
     /**
@@ -505,7 +728,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public Observable<WatchlistCandidate> getWatchlistCandidate(@NotNull final String id) {
-        return mRestAdapter.getWatchlistCandidate(id);
+        return mEngine.observe(Endpoint.GET_WATCHLIST_CANDIDATE, mOptions, id);
     }
 
     /**
@@ -516,7 +739,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public WatchlistCandidate getWatchlistCandidateSync(@NotNull final String id) {
-        return mRestAdapter.getWatchlistCandidate(id).toBlocking().first();
+        return mEngine.execute(Endpoint.GET_WATCHLIST_CANDIDATE, mOptions, id);
     }
 
     /**
@@ -525,7 +748,7 @@ public class BlockscoreApiClient {
      * @param callback Callback to use.
      */
     public void listWatchlistCandidate(@NotNull final Callback<List<WatchlistCandidate>> callback) {
-        mRestAdapter.listWatchlistCandidate(callback);
+        mEngine.enqueue(Endpoint.LIST_WATCHLIST_CANDIDATES, mOptions, callback);
     }
 
     /**
@@ -535,7 +758,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public Observable<List<WatchlistCandidate>> listWatchlistCandidate() {
-        return mRestAdapter.listWatchlistCandidate();
+        return mEngine.observe(Endpoint.LIST_WATCHLIST_CANDIDATES, mOptions);
     }
 
     /**
@@ -545,7 +768,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public List<WatchlistCandidate> listWatchlistCandidateSync() {
-        return mRestAdapter.listWatchlistCandidate().toBlocking().first();
+        return mEngine.execute(Endpoint.LIST_WATCHLIST_CANDIDATES, mOptions);
     }
 
     /**
@@ -555,7 +778,7 @@ public class BlockscoreApiClient {
      */
     public void getWatchlistCandidateHistory(@NotNull final String id
             , @NotNull final Callback<WatchlistCandidate> callback) {
-        mRestAdapter.getWatchlistCandidateHistory(id, callback);
+        mEngine.enqueue(Endpoint.GET_WATCHLIST_CANDIDATE_HISTORY, mOptions, callback, id);
     }
 
     /**
@@ -565,7 +788,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public Observable<List<WatchlistCandidate>> getWatchlistCandidateHistory(@NotNull final String id) {
-        return mRestAdapter.getWatchlistCandidateHistory(id);
+        return mEngine.observe(Endpoint.GET_WATCHLIST_CANDIDATE_HISTORY, mOptions, id);
     }
 
     /**
@@ -575,7 +798,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public List<WatchlistCandidate> getWatchlistCandidateHistorySync(@NotNull final String id) {
-        return mRestAdapter.getWatchlistCandidateHistory(id).toBlocking().first();
+        return mEngine.execute(Endpoint.GET_WATCHLIST_CANDIDATE_HISTORY, mOptions, id);
     }
 
     /**
@@ -585,7 +808,7 @@ public class BlockscoreApiClient {
      */
     public void deleteWatchlistCandidate(@NotNull final String id
             , @NotNull final Callback<WatchlistCandidate> callback) {
-        mRestAdapter.deleteWatchlistCandidate(id, callback);
+        mEngine.enqueue(Endpoint.DELETE_WATCHLIST_CANDIDATE, mOptions, callback, id);
     }
 
     /**
@@ -595,7 +818,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public Observable<WatchlistCandidate> deleteWatchlistCandidate(@NotNull final String id) {
-        return mRestAdapter.deleteWatchlistCandidate(id);
+        return mEngine.observe(Endpoint.DELETE_WATCHLIST_CANDIDATE, mOptions, id);
     }
 
     /**
@@ -605,7 +828,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public WatchlistCandidate deleteWatchlistCandidateSync(@NotNull final String id) {
-        return mRestAdapter.deleteWatchlistCandidate(id).toBlocking().first();
+        return mEngine.execute(Endpoint.DELETE_WATCHLIST_CANDIDATE, mOptions, id);
     }
 
     /**
@@ -615,7 +838,7 @@ public class BlockscoreApiClient {
      */
     public void getWatchlistCandidateHits(@NotNull final String id
             , @NotNull final Callback<WatchlistHit> callback) {
-        mRestAdapter.getWatchlistCandidateHits(id, callback);
+        mEngine.enqueue(Endpoint.GET_WATCHLIST_CANDIDATE_HITS, mOptions, callback, id);
     }
 
     /**
@@ -625,7 +848,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public Observable<List<WatchlistHit>> getWatchlistCandidateHits(@NotNull final String id) {
-        return mRestAdapter.getWatchlistCandidateHits(id);
+        return mEngine.observe(Endpoint.GET_WATCHLIST_CANDIDATE_HITS, mOptions, id);
     }
 
     /**
@@ -635,7 +858,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public List<WatchlistHit> getWatchlistCandidateHitsSync(@NotNull final String id) {
-        return mRestAdapter.getWatchlistCandidateHits(id).toBlocking().first();
+        return mEngine.execute(Endpoint.GET_WATCHLIST_CANDIDATE_HITS, mOptions, id);
     }
 
     /**
@@ -645,7 +868,7 @@ public class BlockscoreApiClient {
      */
     public void searchWatchlists(@NotNull final SearchRequest searchRequest
             , @NotNull final Callback<WatchlistSearchResults> callback) {
-        mRestAdapter.searchWatchlists(searchRequest, callback);
+        mEngine.enqueue(Endpoint.SEARCH_WATCHLISTS, mOptions, callback, searchRequest);
     }
 
     /**
@@ -655,7 +878,7 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public Observable<WatchlistSearchResults> searchWatchlists(@NotNull final SearchRequest searchRequest) {
-        return mRestAdapter.searchWatchlists(searchRequest);
+        return mEngine.observe(Endpoint.SEARCH_WATCHLISTS, mOptions, searchRequest);
     }
 
     /**
@@ -665,53 +888,326 @@ public class BlockscoreApiClient {
      */
     @NotNull
     public WatchlistSearchResults searchWatchlistsSync(@NotNull final SearchRequest searchRequest) {
-        return mRestAdapter.searchWatchlists(searchRequest).toBlocking().first();
+        return mEngine.execute(Endpoint.SEARCH_WATCHLISTS, mOptions, searchRequest);
     }
 
     /**
-     * Encodes the API key for Basic authentication.
-     * @return API key encoded with Base 64.
+     * Builds API clients with a custom network setup.
      */
-    @NotNull
-    private String getEncodedAuthorization() {
-        if (sApiKey == null || sApiKey.isEmpty()) {
-            throw new NoApiKeyFoundException();
+    public static final class Builder {
+        private static final int DEFAULT_MAX_CONCURRENT_STREAMS = 100;
+        private static final int DEFAULT_MAX_ASYNC_REQUESTS = 64;
+        private static final int INITIAL_CONCURRENCY_LIMIT = 20;
+
+        @Nullable
+        private BlockscoreConfig mConfig;
+        @NotNull
+        private BlockscoreConnectionPool mConnectionPool = BlockscoreConnectionPool.getDefault();
+        private boolean mHttp2Enabled;
+        private int mMaxConcurrentStreams = DEFAULT_MAX_CONCURRENT_STREAMS;
+        private int mMaxAsyncRequests = DEFAULT_MAX_ASYNC_REQUESTS;
+        private int mMinConcurrencyLimit;
+        private int mInitialConcurrencyLimit;
+        private int mMaxConcurrencyLimit;
+        @NotNull
+        private ExecutionMode mExecutionMode = ExecutionMode.PLATFORM_THREADS;
+        @Nullable
+        private CircuitBreakerListener mCircuitBreakerListener;
+        private boolean mCoalesceReads;
+        private final Map<String, Bulkhead> mBulkheads = new LinkedHashMap<String, Bulkhead>();
+        private int mMaxScheduledCalls;
+        private long mAgingNanos;
+        @Nullable
+        private IdempotencyJournal mJournal;
+        @Nullable
+        private RecordStore mStore;
+        private int mMaxCacheEntries;
+        private long mCacheTtlNanos;
+        private int mMaxSearchCacheEntries;
+        @Nullable
+        private File mHttpCacheDirectory;
+        private long mMaxHttpCacheBytes;
+        private long mSearchFreshnessNanos;
+        @Nullable
+        private SSLSocketFactory mSslSocketFactory;
+        @Nullable
+        private HostnameVerifier mHostnameVerifier;
+
+        /**
+         * Sets the config to use. Without one, the settings given to {@link #init(String)} are used.
+         * @param config Config to use.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder setConfig(@NotNull final BlockscoreConfig config) {
+            mConfig = config;
+            return this;
         }
 
-        try {
-            return "Basic " + Base64.getEncoder().encodeToString(sApiKey.getBytes("utf-8"));
-        } catch (UnsupportedEncodingException e) {
-            throw new NoApiKeyFoundException("UTF-8 encoding is not supported by your configuration. This is required.");
+        /**
+         * Sets the connection pool to use. Clients built with the same pool share their connections.
+         * @param connectionPool Connection pool to use.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder setConnectionPool(@NotNull final BlockscoreConnectionPool connectionPool) {
+            mConnectionPool = connectionPool;
+            return this;
         }
-    }
 
-    /**
-     * Handles the network layer.
-     */
-    private static final class BlockscoreClient extends UrlConnectionClient {
-        private static final int CONNECT_TIMEOUT_MILLIS = 30 * 1000;
-        private static final int READ_TIMEOUT_MILLIS = 30 * 1000;
+        /**
+         * Turns on HTTP/2. When the runtime supports ALPN, concurrent calls are multiplexed over a few
+         * connections; otherwise the client falls back to HTTP/1.1.
+         * @param maxConcurrentStreams Maximum number of requests in flight to a single host.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder enableHttp2(final int maxConcurrentStreams) {
+            if (maxConcurrentStreams < 1) {
+                throw new IllegalArgumentException("maxConcurrentStreams < 1");
+            }
+            mHttp2Enabled = true;
+            mMaxConcurrentStreams = maxConcurrentStreams;
+            return this;
+        }
 
-        private final OkUrlFactory mOkUrlFactory;
+        /**
+         * Sets how many Observable and callback calls may be on the wire at once. Each of them holds a thread until
+         * its response has been read; calls beyond this wait in a queue without holding one. Defaults to 64.
+         * @param maxAsyncRequests Maximum number of calls in flight.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder setMaxAsyncRequests(final int maxAsyncRequests) {
+            if (maxAsyncRequests < 1) {
+                throw new IllegalArgumentException("maxAsyncRequests < 1");
+            }
+            mMaxAsyncRequests = maxAsyncRequests;
+            return this;
+        }
 
-        public BlockscoreClient() {
-            mOkUrlFactory = new OkUrlFactory(generateHTTPClient());
+        /**
+         * Turns on the adaptive concurrency limiter, which caps the calls in flight across every call style. The
+         * cap starts at 20, clamped to the given range. It grows while latency stays flat and shrinks when latency
+         * climbs or the API answers with server errors or 429s.
+         * @param minLimit Lowest the cap may go.
+         * @param maxLimit Highest the cap may go.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder enableAdaptiveConcurrency(final int minLimit, final int maxLimit) {
+            if (minLimit < 1 || maxLimit < minLimit) {
+                throw new IllegalArgumentException("Limits must satisfy 1 <= minLimit <= maxLimit");
+            }
+            mMinConcurrencyLimit = minLimit;
+            mInitialConcurrencyLimit = Math.max(minLimit, Math.min(maxLimit, INITIAL_CONCURRENCY_LIMIT));
+            mMaxConcurrencyLimit = maxLimit;
+            return this;
         }
 
-        public BlockscoreClient(OkHttpClient client) {
-            mOkUrlFactory = new OkUrlFactory(client);
+        /**
+         * Turns on coalescing of reads: while a call to an idempotent endpoint is in flight, identical calls
+         * join it instead of being sent, whichever style they are made in. Every caller gets the same outcome, in
+         * model objects of its own. Calls only count as identical if they are made through views with the same
+         * deadline, bulkhead and priority.
+         * @return This builder.
+         * @see Endpoint#isIdempotent()
+         */
+        @NotNull
+        public Builder enableRequestCoalescing() {
+            mCoalesceReads = true;
+            return this;
         }
 
-        private OkHttpClient generateHTTPClient() {
-            OkHttpClient client = new OkHttpClient();
-            client.setConnectTimeout(CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
-            client.setReadTimeout(READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
-            return client;
+        /**
+         * Turns on the priority scheduler, which caps the calls in flight across every call style and, once the cap
+         * is reached, lets waiting calls go most urgent first. Priorities come from
+         * {@link BlockscoreConfig.Builder#setPriority(Endpoint, Priority)} or {@link #withPriority(Priority)}. A call
+         * moves up one priority for every aging interval it waits, so background work keeps moving under a steady
+         * stream of urgent calls.
+         * @param maxConcurrentCalls Maximum number of calls past the scheduler at once, including calls waiting on
+         *                           the rate limiter.
+         * @param agingInterval How long a call waits to move up a priority.
+         * @param timeUnit Unit of the aging interval.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder enablePriorityScheduling(final int maxConcurrentCalls, final long agingInterval
+                , @NotNull final TimeUnit timeUnit) {
+            if (maxConcurrentCalls < 1) {
+                throw new IllegalArgumentException("maxConcurrentCalls < 1");
+            }
+            if (agingInterval <= 0) {
+                throw new IllegalArgumentException("agingInterval <= 0");
+            }
+            mMaxScheduledCalls = maxConcurrentCalls;
+            mAgingNanos = timeUnit.toNanos(agingInterval);
+            return this;
         }
 
-        @Override
-        protected HttpURLConnection openConnection(Request request) throws IOException {
-            return mOkUrlFactory.open(new URL(request.getUrl()));
+        /**
+         * Turns on the response cache for {@link #getVerification(String)}, {@link #getCompany(String)},
+         * {@link #getQuestionSet(String)}, {@link #getWatchlistCandidate(String)},
+         * {@link #getWatchlistCandidateHits(String)} and {@link #getWatchlistCandidateHistory(String)}, whichever
+         * style they are called in. A read whose response is cached and still fresh isn't sent; it is answered at
+         * once, on the calling thread, with a copy of what the first read got. Once the cache is full, the least
+         * recently read entry makes room. Only successful responses are cached. The candidate that
+         * {@link #createWatchlistCandidate(WatchlistCandidate)} or
+         * {@link #updateWatchlistCandidate(String, WatchlistCandidate)} returns goes straight into the cache, and
+         * updating or deleting a candidate through this client drops its cached hits and history. Changes made
+         * elsewhere only show once the entries expire.
+         * @param maxEntries Maximum number of responses kept.
+         * @param ttl How long a response is served from the cache after it was received.
+         * @param timeUnit Unit of the time to live.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder enableResponseCache(final int maxEntries, final long ttl, @NotNull final TimeUnit timeUnit) {
+            if (maxEntries < 1) {
+                throw new IllegalArgumentException("maxEntries < 1");
+            }
+            if (ttl <= 0) {
+                throw new IllegalArgumentException("ttl <= 0");
+            }
+            mMaxCacheEntries = maxEntries;
+            mCacheTtlNanos = timeUnit.toNanos(ttl);
+            return this;
+        }
+
+        /**
+         * Turns on the cache for {@link #searchWatchlists(SearchRequest)}, whichever style it is called in. A
+         * search for the same candidate and match type as one made within the freshness window isn't sent; it is
+         * answered at once, on the calling thread, with a copy of the earlier results.
+         * Updating or deleting the candidate through this client drops its results. Once the cache is full, the
+         * least recently used results make room.
+         * @param maxEntries Maximum number of searches kept.
+         * @param freshness How long results are served from the cache after they were received.
+         * @param timeUnit Unit of the freshness window.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder enableSearchCache(final int maxEntries, final long freshness, @NotNull final TimeUnit timeUnit) {
+            if (maxEntries < 1) {
+                throw new IllegalArgumentException("maxEntries < 1");
+            }
+            if (freshness <= 0) {
+                throw new IllegalArgumentException("freshness <= 0");
+            }
+            mMaxSearchCacheEntries = maxEntries;
+            mSearchFreshnessNanos = timeUnit.toNanos(freshness);
+            return this;
+        }
+
+        /**
+         * Turns on the on-disk HTTP cache. Responses the API marks as cacheable are kept in the directory, served
+         * from it while fresh and revalidated with If-None-Match or If-Modified-Since once stale. When the cache
+         * answers with a body this client already parsed, going by its ETag or Last-Modified date, the objects
+         * parsed the first time are copied rather than parsing it again. Use a directory of its own for each API
+         * key, and only one client per directory.
+         * @param directory Directory to keep the cache in.
+         * @param maxSizeBytes Most space the cache may take up.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder setHttpCache(@NotNull final File directory, final long maxSizeBytes) {
+            if (maxSizeBytes <= 0) {
+                throw new IllegalArgumentException("maxSizeBytes <= 0");
+            }
+            mHttpCacheDirectory = directory;
+            mMaxHttpCacheBytes = maxSizeBytes;
+            return this;
+        }
+
+        /**
+         * Sets the journal that creates made with idempotency keys are recorded in. The client doesn't close it.
+         * @param journal Journal to use.
+         * @return This builder.
+         * @see BlockscoreApiClient#withIdempotencyKey(String)
+         */
+        @NotNull
+        public Builder setIdempotencyJournal(@NotNull final IdempotencyJournal journal) {
+            mJournal = journal;
+            return this;
+        }
+
+        /**
+         * Sets the store that fetched and created verifications and companies are kept in, so that reading them
+         * again, even after a restart, doesn't call the API. The client doesn't close it. The store holds the
+         * personal details of everyone verified; see {@link RecordStore} for how to keep them safe.
+         * @param store Store to use.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder setRecordStore(@NotNull final RecordStore store) {
+            mStore = store;
+            return this;
+        }
+
+        /**
+         * Adds a bulkhead that calls can be made in, through {@link BlockscoreApiClient#withBulkhead(String)}.
+         * Calls in a bulkhead run on its own threads and connection quota, so a backlog in one bulkhead never
+         * delays calls made in another or outside of any.
+         * @param bulkhead Bulkhead to add.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder addBulkhead(@NotNull final Bulkhead bulkhead) {
+            if (mBulkheads.containsKey(bulkhead.getName())) {
+                throw new IllegalArgumentException("Duplicate bulkhead: " + bulkhead.getName());
+            }
+            mBulkheads.put(bulkhead.getName(), bulkhead);
+            return this;
+        }
+
+        /**
+         * Sets the listener told about every circuit breaker state change. It is called on whichever thread made
+         * the change, so it should return quickly.
+         * @param listener Listener to notify.
+         * @return This builder.
+         * @see BlockscoreConfig.Builder#setCircuitBreakerPolicy(CircuitBreakerPolicy)
+         */
+        @NotNull
+        public Builder setCircuitBreakerListener(@NotNull final CircuitBreakerListener listener) {
+            mCircuitBreakerListener = listener;
+            return this;
+        }
+
+        /**
+         * Sets the kind of threads that network calls and callbacks run on. With
+         * {@link ExecutionMode#VIRTUAL_THREADS} each call gets its own virtual thread, so blocking-style code can
+         * have many thousands of calls in flight; raise {@link #setMaxAsyncRequests(int)} to match. Defaults to
+         * platform threads.
+         * @param executionMode Execution mode to use.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder setExecutionMode(@NotNull final ExecutionMode executionMode) {
+            mExecutionMode = executionMode;
+            return this;
+        }
+
+        /**
+         * Sets the TLS socket factory and hostname verifier. Mostly useful for pointing the client at a
+         * local stand-in server.
+         * @param sslSocketFactory Socket factory for TLS connections.
+         * @param hostnameVerifier Hostname verifier for TLS connections.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder setSsl(@NotNull final SSLSocketFactory sslSocketFactory
+                , @NotNull final HostnameVerifier hostnameVerifier) {
+            mSslSocketFactory = sslSocketFactory;
+            mHostnameVerifier = hostnameVerifier;
+            return this;
+        }
+
+        /**
+         * Builds the API client.
+         * @return API client.
+         */
+        @NotNull
+        public BlockscoreApiClient build() {
+            return new BlockscoreApiClient(this);
         }
     }
 
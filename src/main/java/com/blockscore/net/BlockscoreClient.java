@@ -0,0 +1,484 @@
+package com.blockscore.net;
+
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Dispatcher;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.ResponseBody;
+import okio.BufferedSink;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import retrofit.RestAdapter;
+import retrofit.mime.TypedOutput;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Handles the network layer. Requests go straight through OkHttp's call API and bodies are streamed
+ * in both directions, so there is no HttpURLConnection in between.
+ */
+final class BlockscoreClient {
+    private static final RestAdapter.Log SYSTEM_LOG = new RestAdapter.Log() {
+        @Override
+        public void log(final String message) {
+            System.out.println(message);
+        }
+    };
+
+    private final BlockscoreConnectionPool mConnectionPool;
+    private final HostLimiter mStreamLimiter;
+    private final TransferStatistics mTransferStatistics = new TransferStatistics();
+    @Nullable
+    private final HttpCacheStatistics mHttpCacheStatistics;
+    private final OkHttpClient mClient;
+    private final Map<Endpoint, OkHttpClient> mEndpointClients = new EnumMap<Endpoint, OkHttpClient>(Endpoint.class);
+    private final Map<String, Map<Endpoint, OkHttpClient>> mBulkheadClients = new HashMap<String, Map<Endpoint, OkHttpClient>>();
+    private final Map<String, Dispatcher> mBulkheadDispatchers = new HashMap<String, Dispatcher>();
+    private final String mEndpoint;
+    private final ExecutorService mExecutor;
+
+    /**
+     * Creates the network layer.
+     * @param config Client config.
+     * @param connectionPool Connection pool to share.
+     * @param http2Enabled True to negotiate HTTP/2 (falling back to HTTP/1.1) instead of always using HTTP/1.1.
+     * @param maxConcurrentStreams Maximum number of requests multiplexed to a single host when HTTP/2 is enabled.
+     * @param maxAsyncRequests Maximum number of asynchronous requests on the wire at once. Any more are queued.
+     * @param executionMode Kind of threads asynchronous requests run on.
+     * @param sslSocketFactory Socket factory for TLS connections, or null for the platform default.
+     * @param hostnameVerifier Hostname verifier for TLS connections, or null for the platform default.
+     * @param bulkheads Bulkheads, each of which gets a dispatcher of its own.
+     */
+    BlockscoreClient(@NotNull final BlockscoreConfig config, @NotNull final BlockscoreConnectionPool connectionPool
+            , final boolean http2Enabled
+            , final int maxConcurrentStreams, final int maxAsyncRequests, @NotNull final ExecutionMode executionMode
+            , @Nullable final SSLSocketFactory sslSocketFactory, @Nullable final HostnameVerifier hostnameVerifier
+            , @NotNull final Collection<Bulkhead> bulkheads, @Nullable final Cache httpCache) {
+        mConnectionPool = connectionPool;
+        mHttpCacheStatistics = httpCache == null ? null : new HttpCacheStatistics();
+        mExecutor = executionMode.newExecutor("Blockscore-");
+        mStreamLimiter = http2Enabled ? new HostLimiter(maxConcurrentStreams) : null;
+        mClient = generateHTTPClient(config, http2Enabled, maxAsyncRequests, sslSocketFactory, hostnameVerifier
+                , httpCache);
+        mEndpoint = config.getEndpoint();
+
+        //Endpoints with the same timeouts share a client.
+        Map<TimeoutProfile, OkHttpClient> profileClients = new HashMap<TimeoutProfile, OkHttpClient>();
+        profileClients.put(config.getDefaultTimeoutProfile(), mClient);
+        for (Endpoint endpoint : Endpoint.values()) {
+            TimeoutProfile profile = config.getTimeoutProfile(endpoint);
+            OkHttpClient client = profileClients.get(profile);
+            if (client == null) {
+                client = mClient.clone();
+                applyTimeouts(client, profile);
+                profileClients.put(profile, client);
+            }
+            mEndpointClients.put(endpoint, client);
+        }
+
+        //Each bulkhead's calls queue and run on its own dispatcher, with the same timeouts as everyone else's.
+        for (Bulkhead bulkhead : bulkheads) {
+            ExecutorService executor = executionMode.newExecutor("Blockscore-" + bulkhead.getName() + "-");
+            Dispatcher dispatcher = executor == null ? new Dispatcher() : new Dispatcher(executor);
+            dispatcher.setMaxRequests(bulkhead.getMaxConcurrentCalls());
+            dispatcher.setMaxRequestsPerHost(bulkhead.getMaxConcurrentCalls());
+            Map<OkHttpClient, OkHttpClient> clones = new IdentityHashMap<OkHttpClient, OkHttpClient>();
+            Map<Endpoint, OkHttpClient> clients = new EnumMap<Endpoint, OkHttpClient>(Endpoint.class);
+            for (Map.Entry<Endpoint, OkHttpClient> entry : mEndpointClients.entrySet()) {
+                OkHttpClient client = clones.get(entry.getValue());
+                if (client == null) {
+                    client = entry.getValue().clone();
+                    client.setDispatcher(dispatcher);
+                    clones.put(entry.getValue(), client);
+                }
+                clients.put(entry.getKey(), client);
+            }
+            mBulkheadClients.put(bulkhead.getName(), clients);
+            mBulkheadDispatchers.put(bulkhead.getName(), dispatcher);
+        }
+    }
+
+    private OkHttpClient generateHTTPClient(@NotNull final BlockscoreConfig config, final boolean http2Enabled
+            , final int maxAsyncRequests, @Nullable final SSLSocketFactory sslSocketFactory
+            , @Nullable final HostnameVerifier hostnameVerifier, @Nullable final Cache httpCache) {
+        OkHttpClient client = new OkHttpClient();
+
+        //Per-host limits are enforced by the host limiters, which also cover blocking calls.
+        Dispatcher dispatcher = mExecutor == null ? new Dispatcher() : new Dispatcher(mExecutor);
+        dispatcher.setMaxRequests(maxAsyncRequests);
+        dispatcher.setMaxRequestsPerHost(maxAsyncRequests);
+        client.setDispatcher(dispatcher);
+
+        applyTimeouts(client, config.getDefaultTimeoutProfile());
+        if (http2Enabled) {
+            //HTTP/2 is chosen through ALPN when the runtime supports it, otherwise the connection stays on HTTP/1.1.
+            client.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        } else {
+            client.setProtocols(Collections.singletonList(Protocol.HTTP_1_1));
+        }
+        if (sslSocketFactory != null) {
+            client.setSslSocketFactory(sslSocketFactory);
+        }
+        if (hostnameVerifier != null) {
+            client.setHostnameVerifier(hostnameVerifier);
+        }
+        client.interceptors().add(new LoggingInterceptor(config.getLogLevel(), SYSTEM_LOG));
+        client.interceptors().add(new GzipInterceptor(config.isRequestCompressionEnabled(), mTransferStatistics));
+        if (httpCache != null) {
+            //OkHttp revalidates cached responses with If-None-Match and If-Modified-Since on its own.
+            client.setCache(httpCache);
+            client.interceptors().add(new HttpCacheInterceptor(mHttpCacheStatistics));
+        }
+        client.networkInterceptors().add(new SendTimeInterceptor());
+        mConnectionPool.attach(client);
+        return client;
+    }
+
+    private static void applyTimeouts(@NotNull final OkHttpClient client, @NotNull final TimeoutProfile profile) {
+        client.setConnectTimeout(profile.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS);
+        client.setReadTimeout(profile.getReadTimeoutMillis(), TimeUnit.MILLISECONDS);
+        client.setWriteTimeout(profile.getWriteTimeoutMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the executor requests run on when the client was set up for virtual threads.
+     * @return Executor, or null if the library defaults are used.
+     */
+    @Nullable
+    ExecutorService getExecutor() {
+        return mExecutor;
+    }
+
+    /**
+     * Gets the executor of the dispatcher that runs a bulkhead's requests, or everyone else's. Work handed to it
+     * runs on a thread of its own rather than waiting for a free request slot.
+     * @param bulkhead Name of the bulkhead, or null for the shared dispatcher.
+     * @return Executor.
+     */
+    @NotNull
+    Executor getDispatchExecutor(@Nullable final String bulkhead) {
+        Dispatcher dispatcher = bulkhead == null ? mClient.getDispatcher() : mBulkheadDispatchers.get(bulkhead);
+        return dispatcher.getExecutorService();
+    }
+
+    /**
+     * Gets the byte counters for this client's traffic.
+     * @return Transfer statistics.
+     */
+    @NotNull
+    TransferStatistics getTransferStatistics() {
+        return mTransferStatistics;
+    }
+
+    /**
+     * Gets the counters for this client's HTTP cache.
+     * @return HTTP cache statistics, or null if there is no HTTP cache.
+     */
+    @Nullable
+    HttpCacheStatistics getHttpCacheStatistics() {
+        return mHttpCacheStatistics;
+    }
+
+    /**
+     * Opens connections to the endpoint ahead of time and leaves them idle in the pool. Blocks until every
+     * warm-up request has finished.
+     * @param connections Number of connections to open. Capped at the pool's idle connection limit.
+     * @return Warm-up result.
+     */
+    @NotNull
+    WarmUpResult warmUp(final int connections) {
+        final int count = Math.min(connections, mConnectionPool.getMaxIdleConnections());
+        long start = System.nanoTime();
+        if (count <= 0) {
+            return new WarmUpResult(connections, 0, mConnectionPool.getIdleConnectionCount(), 0);
+        }
+
+        //A HEAD request needs no credentials and has no body, so its connection goes straight back to the pool.
+        final com.squareup.okhttp.Request request = new com.squareup.okhttp.Request.Builder()
+                .url(mEndpoint)
+                .head()
+                .build();
+        final CountDownLatch ready = new CountDownLatch(count);
+        final CountDownLatch done = new CountDownLatch(count);
+        final AtomicInteger opened = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        //Starts every request together so none of them reuses another's connection.
+                        ready.countDown();
+                        ready.await();
+                        com.squareup.okhttp.Response response = mClient.newCall(request).execute();
+                        response.body().close();
+                        opened.incrementAndGet();
+                    } catch (IOException e) {
+                        //Warm-up is best effort. The failure shows up in the result.
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "Blockscore-WarmUp-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return new WarmUpResult(connections, opened.get(), mConnectionPool.getIdleConnectionCount(), elapsedMillis);
+    }
+
+    /**
+     * Sends a request and handles the response on the calling thread.
+     * @param endpoint Endpoint being called, or null if unknown.
+     * @param request Request to send.
+     * @param deadlineNanos When the call must be finished, on the {@link System#nanoTime()} clock, or
+     *                      {@link Exchange#NO_DEADLINE}.
+     * @param handler Handler for the response or failure.
+     */
+    void execute(@Nullable final Endpoint endpoint, @NotNull final com.squareup.okhttp.Request request
+            , final long deadlineNanos, @NotNull final ResponseHandler handler) {
+        Exchange exchange = newExchange(request);
+        Runnable delivery;
+        try {
+            exchange.acquire();
+            Call call = getClient(endpoint).newCall(exchange.tag(request));
+            exchange.setCall(call);
+            exchange.cancelOnInterrupt(Thread.currentThread());
+            if (deadlineNanos != Exchange.NO_DEADLINE) {
+                exchange.startDeadline(deadlineNanos - System.nanoTime());
+            }
+            com.squareup.okhttp.Response response = call.execute();
+            try {
+                delivery = handler.onResponse(response);
+            } finally {
+                closeQuietly(response.body());
+            }
+        } catch (IOException e) {
+            exchange.finish();
+            if (exchange.isInterrupted()) {
+                //Reading the socket can clear the interrupt that broke it off, so it is restored for the caller.
+                Thread.currentThread().interrupt();
+            }
+            if (!exchange.isSent()) {
+                handler.onNotSent();
+            }
+            handler.onFailure(exchange.translate(e));
+            return;
+        } finally {
+            exchange.finish();
+        }
+        delivery.run();
+    }
+
+    /**
+     * Sends a request without blocking the calling thread. While the host is at its limit the request waits
+     * as a queued object rather than a parked thread.
+     * @param endpoint Endpoint being called, or null if unknown.
+     * @param bulkhead Name of the bulkhead whose dispatcher runs the request, or null for the shared one.
+     * @param request Request to send.
+     * @param deadlineNanos When the call must be finished, on the {@link System#nanoTime()} clock, or
+     *                      {@link Exchange#NO_DEADLINE}.
+     * @param handler Handler for the response or failure.
+     * @return Exchange, which can be cancelled.
+     */
+    @NotNull
+    Exchange enqueue(@Nullable final Endpoint endpoint, @Nullable final String bulkhead
+            , @NotNull final com.squareup.okhttp.Request request, final long deadlineNanos
+            , @NotNull final ResponseHandler handler) {
+        return enqueue(endpoint, bulkhead, request, deadlineNanos, handler, null);
+    }
+
+    /**
+     * Sends a request without blocking the calling thread, and says so if it is dropped before it goes out.
+     * @param endpoint Endpoint being called, or null if unknown.
+     * @param bulkhead Name of the bulkhead whose dispatcher runs the request, or null for the shared one.
+     * @param request Request to send.
+     * @param deadlineNanos When the call must be finished, on the {@link System#nanoTime()} clock, or
+     *                      {@link Exchange#NO_DEADLINE}.
+     * @param handler Handler for the response or failure.
+     * @param onDropped Action run if the exchange is cancelled, or runs past its deadline, while it still waits
+     *                  for its host permits, or null. It may run on the timer thread, so it must not block.
+     * @return Exchange, which can be cancelled.
+     */
+    @NotNull
+    Exchange enqueue(@Nullable final Endpoint endpoint, @Nullable final String bulkhead
+            , @NotNull final com.squareup.okhttp.Request request, final long deadlineNanos
+            , @NotNull final ResponseHandler handler, @Nullable final Runnable onDropped) {
+        final Exchange exchange = newExchange(request);
+        final OkHttpClient client = bulkhead == null || endpoint == null ? getClient(endpoint)
+                : mBulkheadClients.get(bulkhead).get(endpoint);
+        if (deadlineNanos != Exchange.NO_DEADLINE) {
+            exchange.startDeadline(deadlineNanos - System.nanoTime());
+        }
+        exchange.acquireAsync(new Runnable() {
+            @Override
+            public void run() {
+                Call call = client.newCall(exchange.tag(request));
+                exchange.setCall(call);
+                call.enqueue(new ExchangeCallback(exchange, handler));
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                if (onDropped != null) {
+                    onDropped.run();
+                }
+                //This runs on the timer thread or the canceller's, so the handler hears of it from the dispatcher.
+                client.getDispatcher().getExecutorService().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handler.onNotSent();
+                        if (exchange.isDeadlineExceeded()) {
+                            handler.onFailure(exchange.translate(new InterruptedIOException("Canceled")));
+                        }
+                    }
+                });
+            }
+        });
+        return exchange;
+    }
+
+    private static void closeQuietly(@Nullable final ResponseBody body) {
+        if (body != null) {
+            try {
+                body.close();
+            } catch (IOException e) {
+                //The exchange is over either way.
+            }
+        }
+    }
+
+    @NotNull
+    private Exchange newExchange(@NotNull final com.squareup.okhttp.Request request) {
+        return new Exchange(request.url().getHost(), mConnectionPool.getHostLimiter(), mStreamLimiter);
+    }
+
+    @NotNull
+    private OkHttpClient getClient(@Nullable final Endpoint endpoint) {
+        return endpoint == null ? mClient : mEndpointClients.get(endpoint);
+    }
+
+    /**
+     * Handles the outcome of a request sent with {@link #enqueue(Endpoint, String, com.squareup.okhttp.Request, long,
+     * ResponseHandler)}. Both methods run on one of OkHttp's dispatcher threads.
+     */
+    interface ResponseHandler {
+        /**
+         * Reads the response. The body is closed and the exchange finished once this returns, and only then is
+         * the returned action run, so the result reaches the caller after the connection is back in the pool.
+         * @param response Response, with its body still open.
+         * @return Action delivering the result.
+         * @throws IOException If the body could not be read.
+         */
+        @NotNull
+        Runnable onResponse(@NotNull com.squareup.okhttp.Response response) throws IOException;
+
+        /**
+         * Called when the request fails or runs past its deadline. Not called when the exchange is cancelled
+         * by its caller.
+         * @param e Failure.
+         */
+        void onFailure(@NotNull IOException e);
+
+        /**
+         * Called when the exchange ends before its request went out, so the server never saw it: cancelled or
+         * past its deadline while waiting for host permits or a connection, or failed to connect. Comes before
+         * {@link #onFailure(IOException)}, if that is called at all.
+         */
+        void onNotSent();
+    }
+
+    /**
+     * Finishes the exchange once OkHttp is done with the call, then hands the outcome to the handler.
+     */
+    private static final class ExchangeCallback implements com.squareup.okhttp.Callback {
+        private final Exchange mExchange;
+        private final ResponseHandler mHandler;
+
+        ExchangeCallback(@NotNull final Exchange exchange, @NotNull final ResponseHandler handler) {
+            mExchange = exchange;
+            mHandler = handler;
+        }
+
+        @Override
+        public void onFailure(final com.squareup.okhttp.Request request, final IOException e) {
+            mExchange.finish();
+            if (!mExchange.isSent()) {
+                mHandler.onNotSent();
+            }
+            if (!mExchange.isCancelled() || mExchange.isDeadlineExceeded()) {
+                mHandler.onFailure(mExchange.translate(e));
+            }
+        }
+
+        @Override
+        public void onResponse(final com.squareup.okhttp.Response response) {
+            Runnable delivery;
+            try {
+                delivery = mHandler.onResponse(response);
+            } catch (IOException e) {
+                delivery = null;
+                onFailure(response.request(), e);
+            } finally {
+                closeQuietly(response.body());
+                mExchange.finish();
+            }
+            if (delivery != null) {
+                delivery.run();
+            }
+        }
+    }
+
+    /**
+     * Streams a Retrofit request body straight into OkHttp's sink.
+     */
+    static final class TypedOutputRequestBody extends RequestBody {
+        private final TypedOutput mBody;
+        private final MediaType mMediaType;
+
+        TypedOutputRequestBody(@NotNull final TypedOutput body) {
+            mBody = body;
+            mMediaType = MediaType.parse(body.mimeType());
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mMediaType;
+        }
+
+        @Override
+        public long contentLength() {
+            return mBody.length();
+        }
+
+        @Override
+        public void writeTo(final BufferedSink sink) throws IOException {
+            mBody.writeTo(sink.outputStream());
+        }
+    }
+}
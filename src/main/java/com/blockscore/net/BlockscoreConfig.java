@@ -0,0 +1,536 @@
+package com.blockscore.net;
+
+import com.blockscore.common.Constants;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import retrofit.RestAdapter;
+
+import java.nio.charset.Charset;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable settings for a single API client. Each client carries its own config, so clients for
+ * different API keys can be used side by side.
+ */
+public final class BlockscoreConfig {
+    private static final long DEFAULT_TIMEOUT_MILLIS = 30 * 1000;
+    private static final long DEFAULT_WRITE_TIMEOUT_MILLIS = 10 * 1000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Nullable
+    private static volatile String sLegacyAuthorizationHeader;
+
+    @Nullable
+    private final String mAuthorizationHeader;
+
+    private final boolean mUsesLegacyApiKey;
+
+    @NotNull
+    private final String mAcceptHeader;
+
+    @NotNull
+    private final String mEndpoint;
+
+    @NotNull
+    private final RestAdapter.LogLevel mLogLevel;
+
+    @NotNull
+    private final TimeoutProfile mDefaultTimeoutProfile;
+
+    @NotNull
+    private final Map<Endpoint, TimeoutProfile> mTimeoutProfiles;
+
+    private final boolean mRequestCompressionEnabled;
+
+    @Nullable
+    private final RateLimit mRateLimit;
+
+    @NotNull
+    private final Map<Endpoint, RateLimit> mRateLimits;
+
+    @Nullable
+    private final String mRateLimitScopeHeader;
+
+    @NotNull
+    private final RetryPolicy mRetryPolicy;
+
+    @Nullable
+    private final CircuitBreakerPolicy mCircuitBreakerPolicy;
+
+    @NotNull
+    private final Map<Endpoint, CircuitBreakerPolicy> mCircuitBreakerPolicies;
+
+    @NotNull
+    private final Map<Endpoint, HedgePolicy> mHedgePolicies;
+
+    @NotNull
+    private final Map<Endpoint, Priority> mPriorities;
+
+    private BlockscoreConfig(@NotNull final Builder builder) {
+        mAuthorizationHeader = encodeAuthorization(builder.mApiKey);
+        mUsesLegacyApiKey = builder.mUsesLegacyApiKey;
+        mAcceptHeader = Constants.getAcceptHeaders();
+        mEndpoint = builder.mEndpoint;
+        mLogLevel = builder.mLogLevel;
+        mDefaultTimeoutProfile = new TimeoutProfile(builder.mConnectTimeoutMillis, builder.mReadTimeoutMillis
+                , builder.mWriteTimeoutMillis, TimeUnit.MILLISECONDS);
+        mTimeoutProfiles = Collections.unmodifiableMap(new EnumMap<Endpoint, TimeoutProfile>(builder.mTimeoutProfiles));
+        mRequestCompressionEnabled = builder.mRequestCompressionEnabled;
+        mRateLimit = builder.mRateLimit;
+        mRateLimits = Collections.unmodifiableMap(new EnumMap<Endpoint, RateLimit>(builder.mRateLimits));
+        mRateLimitScopeHeader = builder.mRateLimitScopeHeader;
+        mRetryPolicy = builder.mRetryPolicy;
+        mCircuitBreakerPolicy = builder.mCircuitBreakerPolicy;
+        mCircuitBreakerPolicies = Collections.unmodifiableMap(
+                new EnumMap<Endpoint, CircuitBreakerPolicy>(builder.mCircuitBreakerPolicies));
+        mHedgePolicies = Collections.unmodifiableMap(new EnumMap<Endpoint, HedgePolicy>(builder.mHedgePolicies));
+        mPriorities = Collections.unmodifiableMap(new EnumMap<Endpoint, Priority>(builder.mPriorities));
+    }
+
+    /**
+     * Sets the API key given to {@link BlockscoreApiClient#init(String)}. Configs from {@link #fromLegacySettings}
+     * use it from their next call on, even if they were created before it was set.
+     * @param apiKey API key to use.
+     */
+    static void setLegacyApiKey(@NotNull final String apiKey) {
+        sLegacyAuthorizationHeader = encodeAuthorization(apiKey);
+    }
+
+    /**
+     * Creates a config from the settings given to {@link BlockscoreApiClient#init(String)} and
+     * {@link BlockscoreApiClient#useVerboseLogs(boolean)}. The API key is read on every call, as it always was.
+     * @param logLevel Log level.
+     * @return Config.
+     */
+    @NotNull
+    static BlockscoreConfig fromLegacySettings(@NotNull final RestAdapter.LogLevel logLevel) {
+        Builder builder = new Builder();
+        builder.mUsesLegacyApiKey = true;
+        return builder.setLogLevel(logLevel).build();
+    }
+
+    /**
+     * Gets the precomputed value of the Authorization header.
+     * @return Authorization header, or null if no API key was set.
+     */
+    @Nullable
+    public String getAuthorizationHeader() {
+        return mUsesLegacyApiKey ? sLegacyAuthorizationHeader : mAuthorizationHeader;
+    }
+
+    /**
+     * Gets the precomputed value of the Accept header.
+     * @return Accept header.
+     */
+    @NotNull
+    public String getAcceptHeader() {
+        return mAcceptHeader;
+    }
+
+    /**
+     * Gets the API endpoint.
+     * @return Endpoint.
+     */
+    @NotNull
+    public String getEndpoint() {
+        return mEndpoint;
+    }
+
+    /**
+     * Gets the network log level.
+     * @return Log level.
+     */
+    @NotNull
+    public RestAdapter.LogLevel getLogLevel() {
+        return mLogLevel;
+    }
+
+    /**
+     * Gets the connect timeout. (ms)
+     * @return Connect timeout.
+     */
+    public long getConnectTimeoutMillis() {
+        return mDefaultTimeoutProfile.getConnectTimeoutMillis();
+    }
+
+    /**
+     * Gets the read timeout. (ms)
+     * @return Read timeout.
+     */
+    public long getReadTimeoutMillis() {
+        return mDefaultTimeoutProfile.getReadTimeoutMillis();
+    }
+
+    /**
+     * Gets the timeouts used by endpoints without a timeout profile of their own.
+     * @return Default timeout profile.
+     */
+    @NotNull
+    public TimeoutProfile getDefaultTimeoutProfile() {
+        return mDefaultTimeoutProfile;
+    }
+
+    /**
+     * Gets the timeouts for an endpoint.
+     * @param endpoint Endpoint.
+     * @return Timeout profile.
+     */
+    @NotNull
+    public TimeoutProfile getTimeoutProfile(@NotNull final Endpoint endpoint) {
+        TimeoutProfile profile = mTimeoutProfiles.get(endpoint);
+        return profile == null ? mDefaultTimeoutProfile : profile;
+    }
+
+    /**
+     * Indicates whether request bodies are gzipped.
+     * @return True if request bodies are compressed.
+     */
+    public boolean isRequestCompressionEnabled() {
+        return mRequestCompressionEnabled;
+    }
+
+    /**
+     * Gets the rate limit shared by all calls.
+     * @return Rate limit, or null if calls are only limited per endpoint.
+     */
+    @Nullable
+    public RateLimit getRateLimit() {
+        return mRateLimit;
+    }
+
+    /**
+     * Gets the rate limit for an endpoint, which applies on top of the shared one.
+     * @param endpoint Endpoint.
+     * @return Rate limit, or null if the endpoint has no limit of its own.
+     */
+    @Nullable
+    public RateLimit getRateLimit(@NotNull final Endpoint endpoint) {
+        return mRateLimits.get(endpoint);
+    }
+
+    /**
+     * Gets the response header that marks a 429 response as applying to every endpoint.
+     * @return Header name, or null if every 429 response only pauses its own endpoint.
+     */
+    @Nullable
+    public String getRateLimitScopeHeader() {
+        return mRateLimitScopeHeader;
+    }
+
+    /**
+     * Gets how calls to idempotent endpoints are retried.
+     * @return Retry policy.
+     */
+    @NotNull
+    public RetryPolicy getRetryPolicy() {
+        return mRetryPolicy;
+    }
+
+    /**
+     * Gets the circuit breaker policy for an endpoint.
+     * @param endpoint Endpoint.
+     * @return Circuit breaker policy, or null if the endpoint has no circuit breaker.
+     */
+    @Nullable
+    public CircuitBreakerPolicy getCircuitBreakerPolicy(@NotNull final Endpoint endpoint) {
+        CircuitBreakerPolicy policy = mCircuitBreakerPolicies.get(endpoint);
+        return policy == null ? mCircuitBreakerPolicy : policy;
+    }
+
+    /**
+     * Gets the hedge policy for an endpoint.
+     * @param endpoint Endpoint.
+     * @return Hedge policy, or null if calls to the endpoint are never hedged.
+     */
+    @Nullable
+    public HedgePolicy getHedgePolicy(@NotNull final Endpoint endpoint) {
+        return mHedgePolicies.get(endpoint);
+    }
+
+    /**
+     * Gets the priority calls to an endpoint are scheduled with, unless a client view sets another.
+     * @param endpoint Endpoint.
+     * @return Priority.
+     */
+    @NotNull
+    public Priority getPriority(@NotNull final Endpoint endpoint) {
+        Priority priority = mPriorities.get(endpoint);
+        return priority == null ? Priority.NORMAL : priority;
+    }
+
+    /**
+     * Encodes the API key for Basic authentication.
+     * @param apiKey API key.
+     * @return API key encoded with Base 64, or null if there is no key.
+     */
+    @Nullable
+    private static String encodeAuthorization(@Nullable final String apiKey) {
+        if (apiKey == null || apiKey.isEmpty()) {
+            return null;
+        }
+        return "Basic " + Base64.getEncoder().encodeToString((apiKey + ":").getBytes(UTF_8));
+    }
+
+    /**
+     * Builds API client configs.
+     */
+    public static final class Builder {
+        @Nullable
+        private String mApiKey;
+
+        private boolean mUsesLegacyApiKey;
+
+        @NotNull
+        private String mEndpoint = Constants.getDomain();
+
+        @NotNull
+        private RestAdapter.LogLevel mLogLevel = RestAdapter.LogLevel.NONE;
+
+        private long mConnectTimeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+        private long mReadTimeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+        private long mWriteTimeoutMillis = DEFAULT_WRITE_TIMEOUT_MILLIS;
+        private final Map<Endpoint, TimeoutProfile> mTimeoutProfiles = new EnumMap<Endpoint, TimeoutProfile>(Endpoint.class);
+        private boolean mRequestCompressionEnabled;
+        @Nullable
+        private RateLimit mRateLimit;
+        private final Map<Endpoint, RateLimit> mRateLimits = new EnumMap<Endpoint, RateLimit>(Endpoint.class);
+        @Nullable
+        private String mRateLimitScopeHeader;
+        @NotNull
+        private RetryPolicy mRetryPolicy = RetryPolicy.NONE;
+        @Nullable
+        private CircuitBreakerPolicy mCircuitBreakerPolicy;
+        private final Map<Endpoint, CircuitBreakerPolicy> mCircuitBreakerPolicies
+                = new EnumMap<Endpoint, CircuitBreakerPolicy>(Endpoint.class);
+        private final Map<Endpoint, HedgePolicy> mHedgePolicies = new EnumMap<Endpoint, HedgePolicy>(Endpoint.class);
+        private final Map<Endpoint, Priority> mPriorities = new EnumMap<Endpoint, Priority>(Endpoint.class);
+
+        /**
+         * Creates a config builder.
+         * @param apiKey API key to use.
+         */
+        public Builder(@NotNull final String apiKey) {
+            if (apiKey.isEmpty()) {
+                throw new IllegalArgumentException("apiKey is empty");
+            }
+            mApiKey = apiKey;
+        }
+
+        private Builder() {
+            //Used for the legacy static settings, which may not have an API key.
+        }
+
+        /**
+         * Sets the API endpoint. Defaults to the Blockscore API.
+         * @param endpoint Endpoint to use.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder setEndpoint(@NotNull final String endpoint) {
+            mEndpoint = endpoint;
+            return this;
+        }
+
+        /**
+         * Sets the network log level. Defaults to none.
+         * @param logLevel Log level to use.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder setLogLevel(@NotNull final RestAdapter.LogLevel logLevel) {
+            mLogLevel = logLevel;
+            return this;
+        }
+
+        /**
+         * Sets the connect timeout. Defaults to 30 seconds.
+         * @param timeout Timeout.
+         * @param timeUnit Unit of the timeout.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder setConnectTimeout(final long timeout, @NotNull final TimeUnit timeUnit) {
+            mConnectTimeoutMillis = toTimeoutMillis(timeout, timeUnit);
+            return this;
+        }
+
+        /**
+         * Sets the read timeout. Defaults to 30 seconds.
+         * @param timeout Timeout.
+         * @param timeUnit Unit of the timeout.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder setReadTimeout(final long timeout, @NotNull final TimeUnit timeUnit) {
+            mReadTimeoutMillis = toTimeoutMillis(timeout, timeUnit);
+            return this;
+        }
+
+        /**
+         * Sets the write timeout. Defaults to 10 seconds.
+         * @param timeout Timeout.
+         * @param timeUnit Unit of the timeout.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder setWriteTimeout(final long timeout, @NotNull final TimeUnit timeUnit) {
+            mWriteTimeoutMillis = toTimeoutMillis(timeout, timeUnit);
+            return this;
+        }
+
+        /**
+         * Sets the timeouts for a single endpoint, replacing the connect, read and write timeouts for it.
+         * @param endpoint Endpoint to configure.
+         * @param profile Timeouts to use.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder setTimeoutProfile(@NotNull final Endpoint endpoint, @NotNull final TimeoutProfile profile) {
+            mTimeoutProfiles.put(endpoint, profile);
+            return this;
+        }
+
+        /**
+         * Turns on gzip compression of request bodies. Only use this against servers that accept
+         * gzipped requests. Responses are always decompressed. Defaults to off.
+         * @param enabled True to compress request bodies.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder setRequestCompression(final boolean enabled) {
+            mRequestCompressionEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * Sets the rate limit shared by all calls. Calls over the limit wait their turn instead of being sent.
+         * Defaults to no limit, though 429 responses still pause calls until their Retry-After time.
+         * @param rateLimit Rate limit to use.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder setRateLimit(@NotNull final RateLimit rateLimit) {
+            mRateLimit = rateLimit;
+            return this;
+        }
+
+        /**
+         * Sets the rate limit for a single endpoint. Calls to it must fit both this limit and the shared one.
+         * @param endpoint Endpoint to configure.
+         * @param rateLimit Rate limit to use.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder setRateLimit(@NotNull final Endpoint endpoint, @NotNull final RateLimit rateLimit) {
+            mRateLimits.put(endpoint, rateLimit);
+            return this;
+        }
+
+        /**
+         * Sets a response header that marks a 429 response as applying to every endpoint, for use behind a proxy
+         * or gateway that sends one. A 429 response whose header has the value {@code global} pauses every call
+         * until its Retry-After time and halves the shared rate too. The Blockscore API itself sends no such
+         * header, so by default every 429 response only pauses its own endpoint.
+         * @param header Header name, such as {@code X-RateLimit-Scope}.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder setRateLimitScopeHeader(@NotNull final String header) {
+            mRateLimitScopeHeader = header;
+            return this;
+        }
+
+        /**
+         * Sets how calls to idempotent endpoints are retried. Defaults to {@link RetryPolicy#NONE}, so every call
+         * is sent once, as it always was; {@link RetryPolicy#STANDARD} suits most clients that want retries.
+         * @param retryPolicy Retry policy to use.
+         * @return This builder.
+         * @see Endpoint#isIdempotent()
+         */
+        @NotNull
+        public Builder setRetryPolicy(@NotNull final RetryPolicy retryPolicy) {
+            mRetryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Gives every endpoint its own circuit breaker with the given policy. While an endpoint's breaker is open,
+         * calls to it fail fast with a {@link com.blockscore.exceptions.CircuitOpenException} instead of waiting
+         * out timeouts. Defaults to no circuit breakers.
+         * @param policy Circuit breaker policy to use.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder setCircuitBreakerPolicy(@NotNull final CircuitBreakerPolicy policy) {
+            mCircuitBreakerPolicy = policy;
+            return this;
+        }
+
+        /**
+         * Sets the circuit breaker policy for a single endpoint, replacing the one set for all endpoints.
+         * @param endpoint Endpoint to configure.
+         * @param policy Circuit breaker policy to use.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder setCircuitBreakerPolicy(@NotNull final Endpoint endpoint, @NotNull final CircuitBreakerPolicy policy) {
+            mCircuitBreakerPolicies.put(endpoint, policy);
+            return this;
+        }
+
+        /**
+         * Turns on hedging for a read endpoint, such as {@link Endpoint#GET_VERIFICATION}: a call that is slow to
+         * be answered is sent a second time, the first response wins and the other request is cancelled. Only
+         * the winning response counts towards retries and circuit breakers. The server counts both requests
+         * against the rate limit, so the second one takes a permit from the rate limiter, and is skipped rather
+         * than queued when none is free. It takes no slot from the concurrency limiter or the bulkhead. Defaults
+         * to no hedging.
+         * @param endpoint Endpoint to configure. Must be idempotent.
+         * @param policy Hedge policy to use.
+         * @return This builder.
+         * @see Endpoint#isIdempotent()
+         */
+        @NotNull
+        public Builder setHedgePolicy(@NotNull final Endpoint endpoint, @NotNull final HedgePolicy policy) {
+            if (!endpoint.isIdempotent()) {
+                throw new IllegalArgumentException(endpoint.getMethodName() + " is not idempotent, so it can't be hedged.");
+            }
+            mHedgePolicies.put(endpoint, policy);
+            return this;
+        }
+
+        /**
+         * Sets the priority calls to an endpoint are scheduled with, for example {@link Priority#HIGH} for
+         * {@link Endpoint#CREATE_VERIFICATION} and {@link Priority#LOW} for {@link Endpoint#SEARCH_WATCHLISTS}.
+         * It only matters when the API client has priority scheduling on. Defaults to {@link Priority#NORMAL}.
+         * @param endpoint Endpoint to configure.
+         * @param priority Priority to use.
+         * @return This builder.
+         */
+        @NotNull
+        public Builder setPriority(@NotNull final Endpoint endpoint, @NotNull final Priority priority) {
+            mPriorities.put(endpoint, priority);
+            return this;
+        }
+
+        /**
+         * Builds the config.
+         * @return Config.
+         */
+        @NotNull
+        public BlockscoreConfig build() {
+            return new BlockscoreConfig(this);
+        }
+
+        private static long toTimeoutMillis(final long timeout, @NotNull final TimeUnit timeUnit) {
+            if (timeout < 0) {
+                throw new IllegalArgumentException("timeout < 0");
+            }
+            return timeUnit.toMillis(timeout);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.blockscore.net;
+
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+import org.jetbrains.annotations.NotNull;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Connection pool that can be shared by any number of API clients, so sockets (and their TLS sessions)
+ * opened by one client are reused by the others. Besides the idle sockets it keeps, the pool caps the requests
+ * in flight to each host across every client that shares it.
+ */
+public final class BlockscoreConnectionPool {
+    public static final int UNLIMITED = HostLimiter.UNLIMITED;
+
+    private static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+    private static final long DEFAULT_KEEP_ALIVE_MINUTES = 5;
+    private static final int TLS_SESSION_TIMEOUT_SECONDS = 24 * 60 * 60;
+
+    private static volatile BlockscoreConnectionPool sDefaultPool;
+
+    private final ConnectionPool mConnectionPool;
+    private final int mMaxIdleConnections;
+    private final long mKeepAliveDurationMillis;
+    private final HostLimiter mHostLimiter;
+    private final ReentrantLock mSslLock = new ReentrantLock();
+    private volatile SSLSocketFactory mSslSocketFactory;
+
+    /**
+     * Creates a new connection pool.
+     * @param maxIdleConnections Maximum number of idle connections to keep around.
+     * @param keepAliveDuration How long an idle connection is kept before being evicted.
+     * @param timeUnit Unit of the keep alive duration.
+     * @param maxRequestsPerHost Maximum number of requests in flight to a single host, or {@link #UNLIMITED}.
+     *                           Blocking and asynchronous calls count alike, and any more wait their turn.
+     *                           Over HTTP/1.1 each request in flight holds a socket of its own, so this caps the
+     *                           sockets open to the host too; over HTTP/2 requests share sockets, so it doesn't.
+     */
+    public BlockscoreConnectionPool(final int maxIdleConnections, final long keepAliveDuration
+            , @NotNull final TimeUnit timeUnit, final int maxRequestsPerHost) {
+        if (maxIdleConnections < 0) {
+            throw new IllegalArgumentException("maxIdleConnections < 0");
+        }
+        if (keepAliveDuration <= 0) {
+            throw new IllegalArgumentException("keepAliveDuration <= 0");
+        }
+        mMaxIdleConnections = maxIdleConnections;
+        mKeepAliveDurationMillis = timeUnit.toMillis(keepAliveDuration);
+        mHostLimiter = new HostLimiter(maxRequestsPerHost);
+        mConnectionPool = new ConnectionPool(maxIdleConnections, mKeepAliveDurationMillis);
+    }
+
+    /**
+     * Gets the pool shared by every API client that was not given a pool of its own.
+     * @return Default connection pool.
+     */
+    @NotNull
+    public static BlockscoreConnectionPool getDefault() {
+        BlockscoreConnectionPool pool = sDefaultPool;
+        if (pool == null) {
+            synchronized (BlockscoreConnectionPool.class) {
+                pool = sDefaultPool;
+                if (pool == null) {
+                    pool = new BlockscoreConnectionPool(DEFAULT_MAX_IDLE_CONNECTIONS, DEFAULT_KEEP_ALIVE_MINUTES
+                            , TimeUnit.MINUTES, UNLIMITED);
+                    sDefaultPool = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Gets the maximum number of idle connections kept in the pool.
+     * @return Max idle connections.
+     */
+    public int getMaxIdleConnections() {
+        return mMaxIdleConnections;
+    }
+
+    /**
+     * Gets how long an idle connection is kept alive. (ms)
+     * @return Keep alive duration.
+     */
+    public long getKeepAliveDurationMillis() {
+        return mKeepAliveDurationMillis;
+    }
+
+    /**
+     * Gets the maximum number of requests in flight to a single host. This is not a cap on sockets; see
+     * {@link #BlockscoreConnectionPool(int, long, TimeUnit, int)}.
+     * @return Max requests per host.
+     */
+    public int getMaxRequestsPerHost() {
+        return mHostLimiter.getLimit();
+    }
+
+    /**
+     * Gets the number of connections currently held by the pool.
+     * @return Connection count.
+     */
+    public int getConnectionCount() {
+        return mConnectionPool.getConnectionCount();
+    }
+
+    /**
+     * Gets the number of idle connections currently held by the pool.
+     * @return Idle connection count.
+     */
+    public int getIdleConnectionCount() {
+        return mConnectionPool.getIdleConnectionCount();
+    }
+
+    /**
+     * Closes and removes all idle connections in the pool.
+     */
+    public void evictAll() {
+        mConnectionPool.evictAll();
+    }
+
+    /**
+     * Attaches this pool to an HTTP client. Clients that were not given their own TLS socket factory share
+     * the pool's, so TLS sessions negotiated by one client are resumed by the others.
+     * @param client Client to configure.
+     */
+    void attach(@NotNull final OkHttpClient client) {
+        client.setConnectionPool(mConnectionPool);
+        if (client.getSslSocketFactory() == null) {
+            client.setSslSocketFactory(getSslSocketFactory());
+        }
+    }
+
+    @NotNull
+    private SSLSocketFactory getSslSocketFactory() {
+        SSLSocketFactory factory = mSslSocketFactory;
+        if (factory == null) {
+            //Loading the trust store does I/O, so this is a lock rather than a monitor that would pin a virtual thread.
+            mSslLock.lock();
+            try {
+                factory = mSslSocketFactory;
+                if (factory == null) {
+                    try {
+                        SSLContext context = SSLContext.getInstance("TLS");
+                        context.init(null, null, null);
+                        context.getClientSessionContext().setSessionTimeout(TLS_SESSION_TIMEOUT_SECONDS);
+                        factory = context.getSocketFactory();
+                    } catch (GeneralSecurityException e) {
+                        throw new IllegalStateException("TLS is not supported by your configuration. This is required.", e);
+                    }
+                    mSslSocketFactory = factory;
+                }
+            } finally {
+                mSslLock.unlock();
+            }
+        }
+        return factory;
+    }
+
+    /**
+     * Gets the per-host limit on requests in flight through this pool.
+     * @return Host limiter.
+     */
+    @NotNull
+    HostLimiter getHostLimiter() {
+        return mHostLimiter;
+    }
+}
@@ -0,0 +1,82 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A named compartment for a class of traffic, such as background sweeps. Calls made in a bulkhead run on their
+ * own dispatcher threads and count against their own limits, so a backlog in one bulkhead doesn't hold up calls
+ * in another. A call that arrives while the bulkhead's queue is full fails with a
+ * {@link com.blockscore.exceptions.BulkheadFullException}.
+ */
+public final class Bulkhead {
+    private final String mName;
+    private final int mMaxConcurrentCalls;
+    private final int mMaxQueuedCalls;
+
+    /**
+     * Creates a bulkhead.
+     * @param name Name the bulkhead is chosen by.
+     * @param maxConcurrentCalls Maximum number of calls in flight at once, and so of connections in use.
+     * @param maxQueuedCalls Maximum number of calls waiting for one of those to finish.
+     */
+    public Bulkhead(@NotNull final String name, final int maxConcurrentCalls, final int maxQueuedCalls) {
+        if (maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("maxConcurrentCalls < 1");
+        }
+        if (maxQueuedCalls < 0) {
+            throw new IllegalArgumentException("maxQueuedCalls < 0");
+        }
+        mName = name;
+        mMaxConcurrentCalls = maxConcurrentCalls;
+        mMaxQueuedCalls = maxQueuedCalls;
+    }
+
+    /**
+     * Gets the name the bulkhead is chosen by.
+     * @return Name.
+     */
+    @NotNull
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Gets the maximum number of calls in flight at once.
+     * @return Max concurrent calls.
+     */
+    public int getMaxConcurrentCalls() {
+        return mMaxConcurrentCalls;
+    }
+
+    /**
+     * Gets the maximum number of calls waiting for a free slot.
+     * @return Max queued calls.
+     */
+    public int getMaxQueuedCalls() {
+        return mMaxQueuedCalls;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Bulkhead)) {
+            return false;
+        }
+        Bulkhead that = (Bulkhead) o;
+        return mName.equals(that.mName) && mMaxConcurrentCalls == that.mMaxConcurrentCalls
+                && mMaxQueuedCalls == that.mMaxQueuedCalls;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * mName.hashCode() + mMaxConcurrentCalls) + mMaxQueuedCalls;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Bulkhead{name=%s, maxConcurrentCalls=%d, maxQueuedCalls=%d}"
+                , mName, mMaxConcurrentCalls, mMaxQueuedCalls);
+    }
+}
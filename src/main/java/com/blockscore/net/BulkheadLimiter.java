@@ -0,0 +1,162 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Enforces a bulkhead's limits: a fixed number of calls in flight, and a bounded first-come, first-served queue
+ * behind them. Calls that find the queue full are turned away at once rather than waiting. Asynchronous callers
+ * wait without holding a thread.
+ */
+final class BulkheadLimiter {
+    private static final int ACQUIRED = 0;
+    private static final int QUEUED = 1;
+    private static final int REJECTED = 2;
+
+    private final Bulkhead mBulkhead;
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final ArrayDeque<Runnable> mWaiters = new ArrayDeque<Runnable>();
+    private final BulkheadStatistics mStatistics = new BulkheadStatistics();
+    private int mInFlight;
+
+    BulkheadLimiter(@NotNull final Bulkhead bulkhead) {
+        mBulkhead = bulkhead;
+    }
+
+    /**
+     * Gets the name of the bulkhead.
+     * @return Bulkhead name.
+     */
+    @NotNull
+    String getName() {
+        return mBulkhead.getName();
+    }
+
+    /**
+     * Blocks until a call may be started.
+     * @param deadlineNanos When the call must be finished, on the {@link System#nanoTime()} clock, or
+     *                      {@link Exchange#NO_DEADLINE}.
+     * @return True once the slot is held, or false if the queue was full.
+     * @throws InterruptedIOException If the deadline passes first, or the thread is interrupted.
+     */
+    boolean acquire(final long deadlineNanos) throws InterruptedIOException {
+        final CountDownLatch granted = new CountDownLatch(1);
+        Runnable waiter = new Runnable() {
+            @Override
+            public void run() {
+                granted.countDown();
+            }
+        };
+        int outcome = acquireOrEnqueue(waiter);
+        if (outcome != QUEUED) {
+            return outcome == ACQUIRED;
+        }
+
+        try {
+            if (deadlineNanos == Exchange.NO_DEADLINE) {
+                granted.await();
+            } else if (!granted.await(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                if (cancelAsync(waiter)) {
+                    throw new InterruptedIOException("Deadline exceeded while waiting in the "
+                            + mBulkhead.getName() + " bulkhead");
+                }
+                //The slot was granted just as the deadline passed, so the call goes ahead and fails on the wire.
+            }
+        } catch (InterruptedException e) {
+            if (!cancelAsync(waiter)) {
+                release();
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting in the " + mBulkhead.getName() + " bulkhead");
+        }
+        return true;
+    }
+
+    /**
+     * Runs the given action as soon as a call may be started, without blocking. The action runs on the calling
+     * thread if a slot is free, otherwise on the thread that frees one.
+     * @param onAcquired Action to run once the slot is held.
+     * @return False if the queue was full, in which case the action never runs.
+     */
+    boolean acquireAsync(@NotNull final Runnable onAcquired) {
+        int outcome = acquireOrEnqueue(onAcquired);
+        if (outcome == ACQUIRED) {
+            onAcquired.run();
+        }
+        return outcome != REJECTED;
+    }
+
+    /**
+     * Gives up waiting for a slot requested with {@link #acquireAsync(Runnable)}.
+     * @param onAcquired Action that was waiting.
+     * @return True if the action was still waiting and will not run; false if it already holds the slot.
+     */
+    boolean cancelAsync(@NotNull final Runnable onAcquired) {
+        mLock.lock();
+        try {
+            boolean removed = mWaiters.remove(onAcquired);
+            publish();
+            return removed;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Frees a slot, handing it straight to the next waiter if there is one.
+     */
+    void release() {
+        Runnable next;
+        mLock.lock();
+        try {
+            next = mWaiters.poll();
+            if (next == null) {
+                mInFlight--;
+            }
+            publish();
+        } finally {
+            mLock.unlock();
+        }
+        if (next != null) {
+            next.run();
+        }
+    }
+
+    @NotNull
+    BulkheadStatistics getStatistics() {
+        return mStatistics;
+    }
+
+    /**
+     * Takes a slot, or queues the waiter if there is room.
+     * @param waiter Action to run once a slot is handed over.
+     * @return {@link #ACQUIRED}, {@link #QUEUED} or {@link #REJECTED}.
+     */
+    private int acquireOrEnqueue(@NotNull final Runnable waiter) {
+        mLock.lock();
+        try {
+            if (mInFlight < mBulkhead.getMaxConcurrentCalls() && mWaiters.isEmpty()) {
+                mInFlight++;
+                return ACQUIRED;
+            }
+            if (mWaiters.size() < mBulkhead.getMaxQueuedCalls()) {
+                mWaiters.add(waiter);
+                return QUEUED;
+            }
+            mStatistics.addRejectedCall();
+            return REJECTED;
+        } finally {
+            publish();
+            mLock.unlock();
+        }
+    }
+
+    private void publish() {
+        mStatistics.update(mInFlight, mWaiters.size());
+    }
+}
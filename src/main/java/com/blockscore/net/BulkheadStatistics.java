@@ -0,0 +1,45 @@
+package com.blockscore.net;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gauges and counters for a single bulkhead.
+ */
+public final class BulkheadStatistics {
+    private final AtomicLong mRejectedCalls = new AtomicLong();
+    private volatile int mInFlightCalls;
+    private volatile int mQueuedCalls;
+
+    /**
+     * Gets the number of calls in flight in the bulkhead right now.
+     * @return Calls in flight.
+     */
+    public int getInFlightCalls() {
+        return mInFlightCalls;
+    }
+
+    /**
+     * Gets the number of calls waiting for a slot in the bulkhead right now.
+     * @return Queued calls.
+     */
+    public int getQueuedCalls() {
+        return mQueuedCalls;
+    }
+
+    /**
+     * Gets the number of calls turned away because the bulkhead was full.
+     * @return Rejected calls.
+     */
+    public long getRejectedCalls() {
+        return mRejectedCalls.get();
+    }
+
+    void update(final int inFlightCalls, final int queuedCalls) {
+        mInFlightCalls = inFlightCalls;
+        mQueuedCalls = queuedCalls;
+    }
+
+    void addRejectedCall() {
+        mRejectedCalls.incrementAndGet();
+    }
+}
@@ -0,0 +1,74 @@
+package com.blockscore.net;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and the size gauge for the response cache of a single API client.
+ */
+public final class CacheStatistics {
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mEvictions = new AtomicLong();
+    private final AtomicLong mExpirations = new AtomicLong();
+    private volatile int mSize;
+
+    /**
+     * Gets the number of reads answered from the cache without being sent.
+     * @return Hits.
+     */
+    public long getHits() {
+        return mHits.get();
+    }
+
+    /**
+     * Gets the number of cacheable reads that had to be sent, including those whose entry had expired.
+     * @return Misses.
+     */
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    /**
+     * Gets the number of entries dropped to make room for newer ones.
+     * @return Evictions.
+     */
+    public long getEvictions() {
+        return mEvictions.get();
+    }
+
+    /**
+     * Gets the number of entries dropped because they were found past their time to live.
+     * @return Expirations.
+     */
+    public long getExpirations() {
+        return mExpirations.get();
+    }
+
+    /**
+     * Gets the number of entries in the cache right now.
+     * @return Cache size.
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    void addHit() {
+        mHits.incrementAndGet();
+    }
+
+    void addMiss() {
+        mMisses.incrementAndGet();
+    }
+
+    void addEviction() {
+        mEvictions.incrementAndGet();
+    }
+
+    void addExpiration() {
+        mExpirations.incrementAndGet();
+    }
+
+    void update(final int size) {
+        mSize = size;
+    }
+}
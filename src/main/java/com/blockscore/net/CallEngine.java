@@ -0,0 +1,1451 @@
+package com.blockscore.net;
+
+import com.blockscore.common.Constants;
+import com.blockscore.exceptions.BulkheadFullException;
+import com.blockscore.exceptions.NoApiKeyFoundException;
+import com.blockscore.models.WatchlistCandidate;
+import com.blockscore.models.request.SearchRequest;
+import com.blockscore.models.results.WatchlistSearchResults;
+import com.blockscore.models.base.BasicResponse;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.ResponseBody;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import retrofit.Callback;
+import retrofit.ErrorHandler;
+import retrofit.RetrofitError;
+import retrofit.client.Response;
+import retrofit.converter.ConversionException;
+import retrofit.converter.Converter;
+import retrofit.http.Body;
+import retrofit.http.DELETE;
+import retrofit.http.GET;
+import retrofit.http.PATCH;
+import retrofit.http.POST;
+import retrofit.http.PUT;
+import retrofit.http.Path;
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
+import rx.Observable;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.subscriptions.Subscriptions;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the calls of {@link BlockscoreRetrofitAPI} straight on OkHttp, with requests built from the interface's
+ * annotations.
+ * <p>
+ * Every call first passes its bulkhead, if it was made in one, then the priority scheduler when it is on, the
+ * client-side rate limiter and, when it is on, the adaptive concurrency limiter. Endpoints with a circuit breaker
+ * are checked before anything else, so calls to an unhealthy endpoint fail without waiting for anything.
+ * <p>
+ * Observable and callback calls go through OkHttp's dispatcher, so calls waiting for a limiter or a free slot are
+ * queued objects rather than parked threads, and unsubscribing cancels the call. A call on the wire still holds
+ * one of the dispatcher's threads until its response has been read, since OkHttp's transport blocks; there are
+ * never more such calls than the client's limit on asynchronous requests. Blocking calls run entirely on the
+ * calling thread, except for hedged reads, which need two requests in flight at once, and coalesced reads, which
+ * other callers may be waiting on too.
+ * <p>
+ * When coalescing is on, a read identical to one already in flight joins it instead of being sent. When the
+ * response cache is on, a read whose response is cached is answered right away, on the calling thread, without
+ * going through any of this. Candidate updates and deletes drop the candidate's cached reads, and the candidates
+ * that creates and updates return are written through to the cache. Watchlist searches have a cache of their own,
+ * keyed by candidate and match type, which candidate updates and deletes clear too. When there is a record store,
+ * verifications and companies are copied into it as they are fetched or created, and reads of them that miss the
+ * response cache are answered from it the same way.
+ */
+final class CallEngine {
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final Set<Endpoint> CANDIDATE_LISTS = EnumSet.of(Endpoint.GET_WATCHLIST_CANDIDATE_HITS
+            , Endpoint.GET_WATCHLIST_CANDIDATE_HISTORY);
+    private static final Set<Endpoint> CACHED_READS = EnumSet.of(Endpoint.GET_VERIFICATION, Endpoint.GET_COMPANY
+            , Endpoint.GET_QUESTION_SET, Endpoint.GET_WATCHLIST_CANDIDATE, Endpoint.GET_WATCHLIST_CANDIDATE_HITS
+            , Endpoint.GET_WATCHLIST_CANDIDATE_HISTORY);
+    private static final Set<Endpoint> STORED_READS = EnumSet.of(Endpoint.GET_VERIFICATION, Endpoint.GET_COMPANY);
+    //Hash bytes that tell clients apart in the record store.
+    private static final int STORE_SCOPE_BYTES = 16;
+
+    private final BlockscoreClient mClient;
+    private final BlockscoreConfig mConfig;
+    private final Converter mConverter;
+    private final ErrorHandler mErrorHandler;
+    private final String mBaseUrl;
+    private final RateLimiter mRateLimiter;
+    private final RetryPolicy mRetryPolicy;
+    @Nullable
+    private final AdaptiveLimiter mConcurrencyLimiter;
+    private final Map<Endpoint, CircuitBreaker> mCircuitBreakers = new EnumMap<Endpoint, CircuitBreaker>(Endpoint.class);
+    private final Map<Endpoint, Hedger> mHedgers = new EnumMap<Endpoint, Hedger>(Endpoint.class);
+    private final HedgingStatistics mHedgingStatistics = new HedgingStatistics();
+    @Nullable
+    private final Map<FlightKey, Flight> mFlights;
+    private final Map<String, BulkheadLimiter> mBulkheads = new HashMap<String, BulkheadLimiter>();
+    @Nullable
+    private final PriorityScheduler mScheduler;
+    @Nullable
+    private final IdempotencyJournal mJournal;
+    @Nullable
+    private final ResponseCache mCache;
+    @Nullable
+    private final ResponseCache mSearchCache;
+    @Nullable
+    private final SearchCacheStatistics mSearchCacheStatistics;
+    @Nullable
+    private final ParsedResponseMemo mParsedResponses;
+    @Nullable
+    private final RecordStore mStore;
+    @Nullable
+    private volatile StoreScope mStoreScope;
+    private final CoalescingStatistics mCoalescingStatistics = new CoalescingStatistics();
+    private final Map<Endpoint, MethodInfo> mMethodInfos = new EnumMap<Endpoint, MethodInfo>(Endpoint.class);
+
+    CallEngine(@NotNull final BlockscoreClient client, @NotNull final BlockscoreConfig config
+            , @NotNull final Converter converter, @NotNull final ErrorHandler errorHandler
+            , @Nullable final AdaptiveLimiter concurrencyLimiter
+            , @Nullable final CircuitBreakerListener circuitBreakerListener, final boolean coalesceReads
+            , @NotNull final Collection<Bulkhead> bulkheads, @Nullable final PriorityScheduler scheduler
+            , @Nullable final IdempotencyJournal journal, @Nullable final ResponseCache cache
+            , @Nullable final ResponseCache searchCache, @Nullable final RecordStore store) {
+        mClient = client;
+        mStore = store;
+        mCache = cache;
+        mSearchCache = searchCache;
+        mSearchCacheStatistics = searchCache == null ? null : new SearchCacheStatistics(searchCache.getStatistics());
+        HttpCacheStatistics httpCacheStatistics = client.getHttpCacheStatistics();
+        mParsedResponses = httpCacheStatistics == null ? null : new ParsedResponseMemo(httpCacheStatistics);
+        mScheduler = scheduler;
+        mJournal = journal;
+        for (Bulkhead bulkhead : bulkheads) {
+            mBulkheads.put(bulkhead.getName(), new BulkheadLimiter(bulkhead));
+        }
+        mFlights = coalesceReads ? new HashMap<FlightKey, Flight>() : null;
+        mConcurrencyLimiter = concurrencyLimiter;
+        mConfig = config;
+        mConverter = converter;
+        mErrorHandler = errorHandler;
+        String endpoint = config.getEndpoint();
+        mBaseUrl = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+        mRateLimiter = new RateLimiter(config);
+        mRetryPolicy = config.getRetryPolicy();
+        for (Endpoint each : Endpoint.values()) {
+            CircuitBreakerPolicy policy = config.getCircuitBreakerPolicy(each);
+            if (policy != null) {
+                mCircuitBreakers.put(each, new CircuitBreaker(each, policy, circuitBreakerListener));
+            }
+            HedgePolicy hedgePolicy = config.getHedgePolicy(each);
+            if (hedgePolicy != null) {
+                mHedgers.put(each, new Hedger(hedgePolicy, mHedgingStatistics));
+            }
+        }
+        Map<Endpoint, Type> callbackTypes = new EnumMap<Endpoint, Type>(Endpoint.class);
+        for (Method method : BlockscoreRetrofitAPI.class.getMethods()) {
+            Type[] parameterTypes = method.getGenericParameterTypes();
+            Endpoint methodEndpoint = Endpoint.forMethodName(method.getName());
+            if (methodEndpoint != null && parameterTypes.length > 0
+                    && parameterTypes[parameterTypes.length - 1] instanceof ParameterizedType) {
+                ParameterizedType last = (ParameterizedType) parameterTypes[parameterTypes.length - 1];
+                if (Callback.class.equals(last.getRawType())) {
+                    callbackTypes.put(methodEndpoint, last.getActualTypeArguments()[0]);
+                }
+            }
+        }
+        for (Method method : BlockscoreRetrofitAPI.class.getMethods()) {
+            Endpoint methodEndpoint = Endpoint.forMethodName(method.getName());
+            if (methodEndpoint != null && Observable.class.equals(method.getReturnType())) {
+                mMethodInfos.put(methodEndpoint, new MethodInfo(method, methodEndpoint, callbackTypes.get(methodEndpoint)));
+            }
+        }
+    }
+
+    /**
+     * Creates an Observable for an API call. Nothing is sent until it is subscribed to, and the deadline
+     * counts from subscription.
+     * @param endpoint Endpoint to call.
+     * @param options Options for the call.
+     * @param args Arguments of the call, as passed to the {@link BlockscoreRetrofitAPI} method.
+     * @param <T> Type of the response.
+     * @return Observable emitting the parsed response.
+     */
+    @NotNull
+    <T> Observable<T> observe(@NotNull final Endpoint endpoint, @NotNull final CallOptions options
+            , @Nullable final Object... args) {
+        return Observable.unsafeCreate(new Observable.OnSubscribe<T>() {
+            @Override
+            public void call(final Subscriber<? super T> subscriber) {
+                String createdId = getCreatedId(endpoint, options);
+                MethodInfo info = mMethodInfos.get(createdId == null ? endpoint : endpoint.getReadEndpoint());
+                final com.squareup.okhttp.Request request;
+                try {
+                    request = buildRequest(info, options, createdId == null ? args : new Object[] {createdId});
+                } catch (RuntimeException e) {
+                    subscriber.onError(e);
+                    return;
+                }
+
+                SubscriberHandler<T> handler = new SubscriberHandler<T>(info, request.urlString(), subscriber);
+                prepareCaching(handler, args);
+                if (answerFromCache(request, handler)) {
+                    return;
+                }
+                final Runnable cancel = submit(info, request, options, handler);
+                subscriber.add(Subscriptions.create(new Action0() {
+                    @Override
+                    public void call() {
+                        cancel.run();
+                    }
+                }));
+            }
+        });
+    }
+
+    /**
+     * Makes an API call without blocking and hands the outcome to a Retrofit callback, on one of OkHttp's
+     * dispatcher threads. A cached response is handed over on the calling thread instead.
+     * @param endpoint Endpoint to call.
+     * @param options Options for the call.
+     * @param callback Callback to notify.
+     * @param args Arguments of the call, as passed to the {@link BlockscoreRetrofitAPI} method, without the
+     *             callback.
+     * @param <T> Type of the response.
+     */
+    <T> void enqueue(@NotNull final Endpoint endpoint, @NotNull final CallOptions options
+            , @NotNull final Callback<T> callback, @Nullable final Object... args) {
+        String createdId = getCreatedId(endpoint, options);
+        MethodInfo info = mMethodInfos.get(createdId == null ? endpoint : endpoint.getReadEndpoint());
+        com.squareup.okhttp.Request request;
+        try {
+            request = buildRequest(info, options, createdId == null ? args : new Object[] {createdId});
+        } catch (RuntimeException e) {
+            //Retrofit reported these to the callback rather than throwing them.
+            String url = mBaseUrl + info.mPath;
+            new CallbackHandler<T>(info, url, callback).fail(RetrofitError.unexpectedError(url, e)).run();
+            return;
+        }
+        CallbackHandler<T> handler = new CallbackHandler<T>(info, request.urlString(), callback);
+        prepareCaching(handler, args);
+        if (!answerFromCache(request, handler)) {
+            submit(info, request, options, handler);
+        }
+    }
+
+    /**
+     * Makes an API call on the calling thread and waits for the parsed response.
+     * @param endpoint Endpoint to call.
+     * @param options Options for the call.
+     * @param args Arguments of the call, as passed to the {@link BlockscoreRetrofitAPI} method.
+     * @param <T> Type of the response.
+     * @return Parsed response.
+     */
+    <T> T execute(@NotNull final Endpoint endpoint, @NotNull final CallOptions options, @Nullable final Object... args) {
+        String createdId = getCreatedId(endpoint, options);
+        MethodInfo info = mMethodInfos.get(createdId == null ? endpoint : endpoint.getReadEndpoint());
+        com.squareup.okhttp.Request request = buildRequest(info, options
+                , createdId == null ? args : new Object[] {createdId});
+        BlockingHandler<T> handler = new BlockingHandler<T>(info, request.urlString());
+        prepareCaching(handler, args);
+        if (answerFromCache(request, handler)) {
+            return handler.getResult();
+        }
+        if (!handler.journalAs(options.getIdempotencyKey())) {
+            return handler.getResult();
+        }
+        BulkheadLimiter bulkhead = getBulkhead(options);
+        Priority priority = getPriority(endpoint, options);
+        if (!isCoalesced(endpoint)) {
+            executeAttempts(endpoint, request, toDeadlineNanos(options), bulkhead, priority, handler);
+            return handler.getResult();
+        }
+
+        //The flight's call goes out from the dispatcher even when a blocking caller leads it, so interrupting the
+        //leader only takes it out of the flight, like any other member.
+        Flight flight = join(options, handler);
+        if (flight.isLedBy(handler)) {
+            send(flight, request, options);
+        }
+        flight.await(handler);
+        return handler.getResult();
+    }
+
+    private void executeAttempts(@NotNull final Endpoint endpoint, @NotNull final com.squareup.okhttp.Request request
+            , final long deadlineNanos, @Nullable final BulkheadLimiter bulkhead, @NotNull final Priority priority
+            , @NotNull final ParsingHandler<?> handler) {
+        for (int attempt = 1; ; attempt++) {
+            AttemptHandler attemptHandler = new AttemptHandler(this, handler, attempt, deadlineNanos, null);
+            if (!attemptHandler.tryAcquire()) {
+                break;
+            }
+            try {
+                if (bulkhead != null) {
+                    if (!bulkhead.acquire(deadlineNanos)) {
+                        attemptHandler.abandon();
+                        handler.fail(new BulkheadFullException(bulkhead.getName())).run();
+                        break;
+                    }
+                    attemptHandler.holdBulkhead(bulkhead);
+                }
+                if (mScheduler != null) {
+                    mScheduler.acquire(priority, deadlineNanos);
+                    attemptHandler.holdSchedulerSlot();
+                }
+                mRateLimiter.acquire(endpoint, deadlineNanos);
+                if (mConcurrencyLimiter != null) {
+                    try {
+                        mConcurrencyLimiter.acquire(deadlineNanos);
+                    } catch (InterruptedIOException e) {
+                        //The call is never sent, so its rate limit permits go to the next one.
+                        mRateLimiter.refund(endpoint);
+                        throw e;
+                    }
+                }
+            } catch (InterruptedIOException e) {
+                attemptHandler.abandon();
+                handler.onFailure(e);
+                break;
+            }
+
+            if (!handler.beginJournalEntry()) {
+                attemptHandler.abandon();
+                if (mConcurrencyLimiter != null) {
+                    mConcurrencyLimiter.release();
+                }
+                mRateLimiter.refund(endpoint);
+                break;
+            }
+
+            if (mConcurrencyLimiter == null) {
+                executeAttempt(endpoint, request, deadlineNanos, bulkhead, attemptHandler);
+            } else {
+                LimitedHandler limited = new LimitedHandler(mConcurrencyLimiter, attemptHandler);
+                try {
+                    executeAttempt(endpoint, request, deadlineNanos, bulkhead, limited);
+                } finally {
+                    limited.abandon();
+                }
+            }
+
+            long backoffNanos = attemptHandler.getBackoffNanos();
+            if (backoffNanos == AttemptHandler.NO_RETRY) {
+                break;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(backoffNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                handler.onFailure(new InterruptedIOException("Interrupted while waiting to retry"));
+                break;
+            }
+        }
+    }
+
+    /**
+     * Starts an asynchronous call, or joins an identical one already in flight.
+     * @param info Method being called.
+     * @param request Request to send.
+     * @param options Options for the call.
+     * @param handler Handler delivering the outcome to the caller.
+     * @return Action cancelling the call, or leaving the flight it joined.
+     */
+    @NotNull
+    private Runnable submit(@NotNull final MethodInfo info, @NotNull final com.squareup.okhttp.Request request
+            , @NotNull final CallOptions options, @NotNull final ParsingHandler<?> handler) {
+        if (!handler.journalAs(options.getIdempotencyKey())) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    //The call was turned away before it started, so there is nothing to cancel.
+                }
+            };
+        }
+        if (!isCoalesced(info.mEndpoint)) {
+            final PendingCall call = new PendingCall(request, toDeadlineNanos(options), getBulkhead(options)
+                    , getPriority(info.mEndpoint, options), handler);
+            call.start();
+            return new Runnable() {
+                @Override
+                public void run() {
+                    call.cancel();
+                }
+            };
+        }
+
+        final Flight flight = join(options, handler);
+        if (flight.isLedBy(handler)) {
+            send(flight, request, options);
+        }
+        return new Runnable() {
+            @Override
+            public void run() {
+                flight.leave(handler);
+            }
+        };
+    }
+
+    /**
+     * Sends a flight's call without blocking, to be cancelled once every member has left.
+     * @param flight Flight, led by the caller sending it.
+     * @param request Request to send.
+     * @param options Options of the leader's call.
+     */
+    private void send(@NotNull final Flight flight, @NotNull final com.squareup.okhttp.Request request
+            , @NotNull final CallOptions options) {
+        final PendingCall call = new PendingCall(request, toDeadlineNanos(options), getBulkhead(options)
+                , getPriority(flight.getEndpoint(), options), flight);
+        flight.setCancelAction(new Runnable() {
+            @Override
+            public void run() {
+                call.cancel();
+            }
+        });
+        call.start();
+    }
+
+    /**
+     * Joins the flight of an identical read, or creates a new flight led by the given handler.
+     * @param options Options for the call.
+     * @param handler Handler delivering the outcome to the caller.
+     * @return Flight, which the caller must send if it leads it.
+     */
+    @NotNull
+    private Flight join(@NotNull final CallOptions options, @NotNull final ParsingHandler<?> handler) {
+        FlightKey key = new FlightKey(handler, options);
+        synchronized (mFlights) {
+            Flight flight = mFlights.get(key);
+            if (flight != null) {
+                flight.add(handler);
+                mCoalescingStatistics.addCoalescedCall();
+                return flight;
+            }
+            flight = new Flight(this, mFlights, key, handler);
+            mFlights.put(key, flight);
+            mCoalescingStatistics.addSentCall();
+            return flight;
+        }
+    }
+
+    /**
+     * Answers a call from its cache, if its response is there.
+     * @param request Request that would be sent.
+     * @param handler Handler delivering the outcome to the caller.
+     * @return True if the cached response was delivered, so the call must not be sent.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean answerFromCache(@NotNull final com.squareup.okhttp.Request request
+            , @NotNull final ParsingHandler<?> handler) {
+        ResponseCache cache = getCache(handler.getEndpoint());
+        String key = handler.getCacheKey();
+        Object value = cache == null || key == null ? null : cache.get(key, handler.getResponseType());
+        if (value == null) {
+            value = readStored(handler);
+            if (value == null) {
+                return false;
+            }
+            handler.remember(value);
+        }
+        if (value instanceof WatchlistSearchResults) {
+            mSearchCacheStatistics.addSavedSearchTime(((WatchlistSearchResults) value).getSearchTime());
+        }
+        //Callbacks get a response the way Retrofit would hand one over, with the status but no body.
+        com.squareup.okhttp.Response response = new com.squareup.okhttp.Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .build();
+        ((ParsingHandler<Object>) handler).success(value, response).run();
+        return true;
+    }
+
+    /**
+     * Reads a call's response back from the record store.
+     * @param handler Handler delivering the outcome to the caller.
+     * @return Parsed response, or null if it isn't stored or can't be parsed, so the call must be sent.
+     */
+    @Nullable
+    private Object readStored(@NotNull final ParsingHandler<?> handler) {
+        if (mStore == null || !STORED_READS.contains(handler.getEndpoint())) {
+            return null;
+        }
+        byte[] body = mStore.get(toStoreKey(handler.getUrl()));
+        if (body == null) {
+            return null;
+        }
+        try {
+            return mConverter.fromBody(new TypedByteArray("application/json; charset=UTF-8", body)
+                    , handler.getResponseType());
+        } catch (ConversionException e) {
+            //Stored by an older version of the models, perhaps; the call replaces it.
+            return null;
+        }
+    }
+
+    /**
+     * Gets the cache an endpoint's responses are kept in.
+     * @param endpoint Endpoint.
+     * @return Cache, or null if the endpoint's responses aren't cached.
+     */
+    @Nullable
+    ResponseCache getCache(@NotNull final Endpoint endpoint) {
+        if (endpoint == Endpoint.SEARCH_WATCHLISTS) {
+            return mSearchCache;
+        }
+        return CACHED_READS.contains(endpoint) ? mCache : null;
+    }
+
+    /**
+     * Keys a search by what it searches for. Drops the cached responses of the candidate a call updates or
+     * deletes, and makes the handler drop them again once the call is over, so calls made in the meantime can't
+     * put the old candidate back.
+     * @param handler Handler delivering the outcome to the caller.
+     * @param args Arguments of the call.
+     */
+    private void prepareCaching(@NotNull final ParsingHandler<?> handler, @Nullable final Object[] args) {
+        Endpoint endpoint = handler.getEndpoint();
+        if (endpoint == Endpoint.SEARCH_WATCHLISTS && mSearchCache != null && args[0] instanceof SearchRequest
+                && ((SearchRequest) args[0]).getId() != null) {
+            SearchRequest search = (SearchRequest) args[0];
+            handler.cacheAs(toSearchKey(search.getId(), search.getMatchType()));
+        } else if ((mCache != null || mSearchCache != null) && (endpoint == Endpoint.UPDATE_WATCHLIST_CANDIDATE
+                || endpoint == Endpoint.DELETE_WATCHLIST_CANDIDATE)) {
+            String id = String.valueOf(args[0]);
+            handler.invalidatesCandidate(id, invalidateCandidate(id));
+        }
+    }
+
+    /**
+     * Drops the cached responses for a candidate as a write to it is sent.
+     * @param id Candidate ID.
+     * @return Generation started for the candidate's own read, to pass to {@link #finishCandidateWrite(String, long)}.
+     */
+    private long invalidateCandidate(@NotNull final String id) {
+        invalidateCandidateLists(id);
+        return mCache == null ? ResponseCache.STALE : mCache.invalidate(toUrl(Endpoint.GET_WATCHLIST_CANDIDATE, id));
+    }
+
+    /**
+     * Drops the cached responses for a candidate again once a write to it is over.
+     * @param id Candidate ID.
+     * @param sentGeneration Generation that invalidating the candidate started when the write was sent.
+     * @return Generation to cache the candidate the write returned with. The cache refuses it if another write to
+     * the candidate overlapped this one, since the server may have applied that one last.
+     */
+    long finishCandidateWrite(@NotNull final String id, final long sentGeneration) {
+        invalidateCandidateLists(id);
+        return mCache == null ? ResponseCache.STALE
+                : mCache.invalidateWritten(toUrl(Endpoint.GET_WATCHLIST_CANDIDATE, id), sentGeneration);
+    }
+
+    /**
+     * Drops a candidate's cached hits, history and searches, which no write returns.
+     * @param id Candidate ID.
+     */
+    private void invalidateCandidateLists(@NotNull final String id) {
+        if (mCache != null) {
+            for (Endpoint read : CANDIDATE_LISTS) {
+                mCache.invalidate(toUrl(read, id));
+            }
+        }
+        if (mSearchCache != null) {
+            mSearchCache.invalidate(toSearchKey(id, null));
+            for (SearchRequest.MatchType matchType : SearchRequest.MatchType.values()) {
+                mSearchCache.invalidate(toSearchKey(id, matchType));
+            }
+        }
+    }
+
+    @NotNull
+    private static String toSearchKey(@NotNull final String candidateId
+            , @Nullable final SearchRequest.MatchType matchType) {
+        return candidateId + '\t' + (matchType == null ? "" : matchType.toString());
+    }
+
+    /**
+     * Builds the URL of a call whose only path parameter is an ID.
+     * @param endpoint Endpoint called.
+     * @param id ID in the path.
+     * @return Request URL.
+     */
+    @NotNull
+    private String toUrl(@NotNull final Endpoint endpoint, @NotNull final String id) {
+        MethodInfo info = mMethodInfos.get(endpoint);
+        String path = info.mPath;
+        for (String param : info.mPathParams) {
+            if (param != null) {
+                path = path.replace("{" + param + "}", encodePathValue(id));
+            }
+        }
+        return mBaseUrl + path;
+    }
+
+    @NotNull
+    private String toStoreKey(@NotNull final String url) {
+        //A client made before init() only learns its API key later, so the scope follows the current key.
+        String authorization = mConfig.getAuthorizationHeader();
+        StoreScope scope = mStoreScope;
+        if (scope == null || (scope.mAuthorization == null ? authorization != null
+                : !scope.mAuthorization.equals(authorization))) {
+            scope = new StoreScope(authorization, toStoreScope(authorization, mBaseUrl));
+            mStoreScope = scope;
+        }
+        return scope.mPrefix + (url.startsWith(mBaseUrl) ? url.substring(mBaseUrl.length()) : url);
+    }
+
+    /**
+     * Derives the prefix of a client's keys in the record store, so that clients with another API key or endpoint
+     * never see its records. The API key is hashed rather than written to the store.
+     * @param authorizationHeader Authorization header, or null if there is no API key.
+     * @param baseUrl Endpoint without a trailing slash.
+     * @return Key prefix.
+     */
+    @NotNull
+    private static String toStoreScope(@Nullable final String authorizationHeader, @NotNull final String baseUrl) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            //Every Java platform has SHA-256.
+            throw new IllegalStateException(e);
+        }
+        byte[] hash = digest.digest((authorizationHeader + '\n' + baseUrl).getBytes(Charset.forName("UTF-8")));
+        StringBuilder scope = new StringBuilder();
+        for (int i = 0; i < STORE_SCOPE_BYTES; i++) {
+            scope.append(Character.forDigit((hash[i] >> 4) & 0xf, 16)).append(Character.forDigit(hash[i] & 0xf, 16));
+        }
+        return scope.append('\t').toString();
+    }
+
+    /**
+     * Looks a create up in the idempotency journal.
+     * @param endpoint Endpoint called.
+     * @param options Options for the call.
+     * @return ID of the record an earlier create with the same key made, or null if the call must be sent.
+     */
+    @Nullable
+    private String getCreatedId(@NotNull final Endpoint endpoint, @NotNull final CallOptions options) {
+        String key = options.getIdempotencyKey();
+        if (key == null || mJournal == null || endpoint.getReadEndpoint() == null) {
+            return null;
+        }
+        return mJournal.getId(endpoint, key);
+    }
+
+    @Nullable
+    private BulkheadLimiter getBulkhead(@NotNull final CallOptions options) {
+        return options.getBulkhead() == null ? null : mBulkheads.get(options.getBulkhead());
+    }
+
+    @NotNull
+    private Priority getPriority(@NotNull final Endpoint endpoint, @NotNull final CallOptions options) {
+        return options.getPriority() != null ? options.getPriority() : mConfig.getPriority(endpoint);
+    }
+
+    private boolean isCoalesced(@NotNull final Endpoint endpoint) {
+        return mFlights != null && endpoint.isIdempotent();
+    }
+
+    private void executeAttempt(@NotNull final Endpoint endpoint, @NotNull final com.squareup.okhttp.Request request
+            , final long deadlineNanos, @Nullable final BulkheadLimiter bulkhead
+            , @NotNull final BlockscoreClient.ResponseHandler handler) {
+        Hedger hedger = mHedgers.get(endpoint);
+        if (hedger == null) {
+            mClient.execute(endpoint, request, deadlineNanos, handler);
+            return;
+        }
+        HedgedCall call = new HedgedCall(mClient, mRateLimiter, endpoint, request, deadlineNanos, bulkhead, hedger
+                , handler);
+        call.start();
+        call.await();
+    }
+
+    /**
+     * Parses a body. Bodies with a validator, and bodies that go into the record store, are read in full
+     * first; the parse is skipped if the HTTP cache answered with a body parsed before.
+     * @param handler Handler of the call.
+     * @param response Response.
+     * @param body Its body.
+     * @return Parsed object.
+     * @throws IOException If the body can't be read.
+     * @throws ConversionException If the body can't be parsed.
+     */
+    @Nullable
+    Object parse(@NotNull final ParsingHandler<?> handler, @NotNull final com.squareup.okhttp.Response response
+            , @NotNull final ResponseBody body) throws IOException, ConversionException {
+        Endpoint endpoint = handler.getEndpoint();
+        String url = handler.getUrl();
+        Type responseType = handler.getResponseType();
+        String validator = mParsedResponses == null || !endpoint.isIdempotent() ? null
+                : ParsedResponseMemo.getValidator(response);
+        //Creates are stored under the read that fetches what they made.
+        Endpoint storedRead = STORED_READS.contains(endpoint) ? endpoint : endpoint.getReadEndpoint();
+        boolean stored = mStore != null && STORED_READS.contains(storedRead);
+        if (validator == null && !stored) {
+            Object value = mConverter.fromBody(new StreamingTypedInput(body), responseType);
+            //Closed here rather than by the parser, which ignores failures to close such as a bad gzip trailer.
+            body.close();
+            return value;
+        }
+        if (validator != null && HttpCacheInterceptor.isFromCache(response)) {
+            Object parsed = mParsedResponses.get(url, responseType, validator);
+            if (parsed != null) {
+                return parsed;
+            }
+        }
+        //Read in full first, so the time recorded is the parse's alone.
+        byte[] bytes = body.bytes();
+        long startNanos = System.nanoTime();
+        Object value = mConverter.fromBody(new TypedByteArray(mimeType(body.contentType()), bytes), responseType);
+        long parseNanos = System.nanoTime() - startNanos;
+        if (value != null && validator != null) {
+            mParsedResponses.put(url, responseType, validator, value, parseNanos);
+        }
+        if (stored && value instanceof BasicResponse && ((BasicResponse) value).getId() != null) {
+            mStore.put(toStoreKey(toUrl(storedRead, ((BasicResponse) value).getId())), bytes);
+        }
+        return value;
+    }
+
+    /**
+     * Caches a candidate that a create or update returned, as a read of it.
+     * @param candidate Candidate with an ID.
+     * @param generation Generation when the create was sent, or the one
+     *                   {@link #finishCandidateWrite(String, long)} returned for an update.
+     */
+    void cacheCandidate(@NotNull final WatchlistCandidate candidate, final long generation) {
+        if (mCache != null) {
+            mCache.put(toUrl(Endpoint.GET_WATCHLIST_CANDIDATE, candidate.getId())
+                    , mMethodInfos.get(Endpoint.GET_WATCHLIST_CANDIDATE).mResponseType, candidate, generation);
+        }
+    }
+
+    @NotNull
+    RateLimiter getRateLimiter() {
+        return mRateLimiter;
+    }
+
+    @NotNull
+    RetryPolicy getRetryPolicy() {
+        return mRetryPolicy;
+    }
+
+    @Nullable
+    PriorityScheduler getScheduler() {
+        return mScheduler;
+    }
+
+    @Nullable
+    IdempotencyJournal getJournal() {
+        return mJournal;
+    }
+
+    @Nullable
+    CircuitBreaker getCircuitBreaker(@NotNull final Endpoint endpoint) {
+        return mCircuitBreakers.get(endpoint);
+    }
+
+    @NotNull
+    Converter getConverter() {
+        return mConverter;
+    }
+
+    @NotNull
+    ErrorHandler getErrorHandler() {
+        return mErrorHandler;
+    }
+
+    /**
+     * Gets the rate limiter's counters.
+     * @return Rate limiter statistics.
+     */
+    @NotNull
+    RateLimiterStatistics getRateLimiterStatistics() {
+        return mRateLimiter.getStatistics();
+    }
+
+    /**
+     * Gets the adaptive concurrency limiter's gauges.
+     * @return Concurrency limiter statistics, or null if the limiter is off.
+     */
+    @Nullable
+    ConcurrencyLimiterStatistics getConcurrencyLimiterStatistics() {
+        return mConcurrencyLimiter == null ? null : mConcurrencyLimiter.getStatistics();
+    }
+
+    /**
+     * Gets the counters for hedged reads.
+     * @return Hedging statistics.
+     */
+    @NotNull
+    HedgingStatistics getHedgingStatistics() {
+        return mHedgingStatistics;
+    }
+
+    /**
+     * Gets the counters for coalesced reads.
+     * @return Coalescing statistics.
+     */
+    @NotNull
+    CoalescingStatistics getCoalescingStatistics() {
+        return mCoalescingStatistics;
+    }
+
+    /**
+     * Gets the counters for the response cache.
+     * @return Cache statistics, or null if the cache is off.
+     */
+    @Nullable
+    CacheStatistics getCacheStatistics() {
+        return mCache == null ? null : mCache.getStatistics();
+    }
+
+    /**
+     * Gets the counters for the watchlist search cache.
+     * @return Search cache statistics, or null if the search cache is off.
+     */
+    @Nullable
+    SearchCacheStatistics getSearchCacheStatistics() {
+        return mSearchCacheStatistics;
+    }
+
+    /**
+     * Gets the gauges and wait-time histograms for the priority scheduler.
+     * @return Scheduler statistics, or null if priority scheduling is off.
+     */
+    @Nullable
+    SchedulerStatistics getSchedulerStatistics() {
+        return mScheduler == null ? null : mScheduler.getStatistics();
+    }
+
+    /**
+     * Gets the gauges and counters for a bulkhead.
+     * @param name Bulkhead name.
+     * @return Bulkhead statistics, or null if there is no bulkhead by that name.
+     */
+    @Nullable
+    BulkheadStatistics getBulkheadStatistics(@NotNull final String name) {
+        BulkheadLimiter bulkhead = mBulkheads.get(name);
+        return bulkhead == null ? null : bulkhead.getStatistics();
+    }
+
+    /**
+     * Gets the state of an endpoint's circuit breaker.
+     * @param endpoint Endpoint.
+     * @return Circuit breaker state, or null if the endpoint has no circuit breaker.
+     */
+    @Nullable
+    CircuitState getCircuitState(@NotNull final Endpoint endpoint) {
+        CircuitBreaker breaker = mCircuitBreakers.get(endpoint);
+        return breaker == null ? null : breaker.getState();
+    }
+
+    private static long toDeadlineNanos(@NotNull final CallOptions options) {
+        if (options.getDeadlineMillis() == CallOptions.NO_DEADLINE) {
+            return Exchange.NO_DEADLINE;
+        }
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.getDeadlineMillis());
+    }
+
+    @NotNull
+    private com.squareup.okhttp.Request buildRequest(@NotNull final MethodInfo info, @NotNull final CallOptions options
+            , @Nullable final Object[] args) {
+        String authorization = mConfig.getAuthorizationHeader();
+        if (authorization == null) {
+            throw new NoApiKeyFoundException();
+        }
+
+        String path = info.mPath;
+        RequestBody body = null;
+        for (int i = 0; i < info.mPathParams.length; i++) {
+            if (info.mPathParams[i] != null) {
+                path = path.replace("{" + info.mPathParams[i] + "}", encodePathValue(args[i]));
+            } else if (i == info.mBodyIndex) {
+                body = new BlockscoreClient.TypedOutputRequestBody(mConverter.toBody(args[i]));
+            }
+        }
+        if (body == null && info.mRequiresBody) {
+            body = RequestBody.create(null, new byte[0]);
+        }
+
+        com.squareup.okhttp.Request.Builder builder = new com.squareup.okhttp.Request.Builder()
+                .url(mBaseUrl + path)
+                .header(Constants.AUTHORIZATION_HEADER, authorization)
+                .header(Constants.ACCEPT_HEADER, mConfig.getAcceptHeader())
+                .method(info.mHttpMethod, body);
+        if (options.getIdempotencyKey() != null && info.mEndpoint.getReadEndpoint() != null) {
+            builder.header(Constants.IDEMPOTENCY_KEY_HEADER, options.getIdempotencyKey());
+        }
+        return builder.build();
+    }
+
+    @NotNull
+    private static String encodePathValue(@Nullable final Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Path parameter value must not be null.");
+        }
+        try {
+            //Same encoding as Retrofit's, so paths match whichever way a call is made.
+            return URLEncoder.encode(String.valueOf(value), "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported by your configuration. This is required.", e);
+        }
+    }
+
+    /**
+     * Delivers the outcome to an Rx subscriber.
+     * @param <T> Type of the response.
+     */
+    private final class SubscriberHandler<T> extends ParsingHandler<T> {
+        private final Subscriber<? super T> mSubscriber;
+
+        SubscriberHandler(@NotNull final MethodInfo info, @NotNull final String url
+                , @NotNull final Subscriber<? super T> subscriber) {
+            super(CallEngine.this, info.mEndpoint, info.mResponseType, url);
+            mSubscriber = subscriber;
+        }
+
+        @NotNull
+        @Override
+        Runnable success(@Nullable final T value, @NotNull final com.squareup.okhttp.Response response) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    if (!mSubscriber.isUnsubscribed()) {
+                        mSubscriber.onNext(value);
+                        mSubscriber.onCompleted();
+                    }
+                }
+            };
+        }
+
+        @NotNull
+        @Override
+        Runnable fail(@NotNull final Throwable failure) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    if (!mSubscriber.isUnsubscribed()) {
+                        mSubscriber.onError(failure);
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * Delivers the outcome to a Retrofit callback, the way Retrofit itself would.
+     * @param <T> Type of the response.
+     */
+    private final class CallbackHandler<T> extends ParsingHandler<T> {
+        private final Callback<T> mCallback;
+
+        CallbackHandler(@NotNull final MethodInfo info, @NotNull final String url, @NotNull final Callback<T> callback) {
+            super(CallEngine.this, info.mEndpoint, info.mCallbackResponseType, url);
+            mCallback = callback;
+        }
+
+        @NotNull
+        @Override
+        Runnable success(@Nullable final T value, @NotNull final com.squareup.okhttp.Response response) {
+            final Response retrofitResponse = toRetrofitResponse(response, null);
+            return new Runnable() {
+                @Override
+                public void run() {
+                    mCallback.success(value, retrofitResponse);
+                }
+            };
+        }
+
+        @NotNull
+        @Override
+        Runnable fail(@NotNull final Throwable failure) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    mCallback.failure(failure instanceof RetrofitError ? (RetrofitError) failure
+                            : RetrofitError.unexpectedError(getUrl(), failure));
+                }
+            };
+        }
+    }
+
+    /**
+     * Holds the outcome for a caller waiting on its own thread. Delivery happens on that same thread, or
+     * before the latch the caller waits on is released, so no synchronization is needed.
+     * @param <T> Type of the response.
+     */
+    private final class BlockingHandler<T> extends ParsingHandler<T> {
+        private T mResult;
+        private Throwable mError;
+
+        BlockingHandler(@NotNull final MethodInfo info, @NotNull final String url) {
+            super(CallEngine.this, info.mEndpoint, info.mResponseType, url);
+        }
+
+        @NotNull
+        @Override
+        Runnable success(@Nullable final T value, @NotNull final com.squareup.okhttp.Response response) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    mResult = value;
+                }
+            };
+        }
+
+        @NotNull
+        @Override
+        Runnable fail(@NotNull final Throwable failure) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    mError = failure;
+                }
+            };
+        }
+
+        /**
+         * Gets the parsed response, or throws the mapped failure.
+         * @return Parsed response.
+         */
+        @Nullable
+        T getResult() {
+            if (mError instanceof RuntimeException) {
+                throw (RuntimeException) mError;
+            } else if (mError instanceof Error) {
+                throw (Error) mError;
+            } else if (mError != null) {
+                //Matches toBlocking(), which the *Sync methods used to go through.
+                throw new RuntimeException(mError);
+            }
+            return mResult;
+        }
+    }
+
+    /**
+     * An asynchronous call on its way out: waiting for its bulkhead, the scheduler, the rate limiter and a
+     * concurrency slot, then on the wire, and back to the start for each retry. Cancelling it works at any stage,
+     * and a call cancelled or rejected while waiting is never sent and hands its rate limit permits back. Waits and
+     * retries resume on the dispatcher's executor rather than the timer thread, since they can end in a failure
+     * delivered to the caller.
+     */
+    private final class PendingCall implements Runnable {
+        private final com.squareup.okhttp.Request mRequest;
+        private final long mDeadlineNanos;
+        @Nullable
+        private final BulkheadLimiter mBulkhead;
+        private final Priority mPriority;
+        private final ParsingHandler<?> mHandler;
+        private final Executor mExecutor;
+        private final AtomicBoolean mQueued = new AtomicBoolean();
+        private final AtomicBoolean mHoldsReservation = new AtomicBoolean();
+        private volatile boolean mCancelled;
+        private volatile ScheduledFuture<?> mTimer;
+        private volatile Runnable mBulkheadWaiter;
+        private volatile Runnable mSchedulerWaiter;
+        private volatile Runnable mSlotWaiter;
+        private volatile LimitedHandler mLimitedHandler;
+        private volatile Exchange mExchange;
+        private volatile HedgedCall mHedgedCall;
+        private final Runnable mRetryAction = new Runnable() {
+            @Override
+            public void run() {
+                retry();
+            }
+        };
+        private volatile int mAttempt;
+        private volatile AttemptHandler mAttemptHandler;
+
+        PendingCall(@NotNull final com.squareup.okhttp.Request request, final long deadlineNanos
+                , @Nullable final BulkheadLimiter bulkhead, @NotNull final Priority priority
+                , @NotNull final ParsingHandler<?> handler) {
+            mRequest = request;
+            mDeadlineNanos = deadlineNanos;
+            mBulkhead = bulkhead;
+            mPriority = priority;
+            mHandler = handler;
+            mExecutor = mClient.getDispatchExecutor(bulkhead == null ? null : bulkhead.getName());
+        }
+
+        /**
+         * Checks the circuit breaker, waits for a slot in the bulkhead and then in the scheduler, takes the rate
+         * limiter's permits and sends the call once they are due.
+         */
+        void start() {
+            mAttempt++;
+            final AttemptHandler attemptHandler = new AttemptHandler(CallEngine.this, mHandler, mAttempt, mDeadlineNanos
+                    , mRetryAction);
+            mAttemptHandler = attemptHandler;
+            if (!attemptHandler.tryAcquire()) {
+                return;
+            }
+            final BulkheadLimiter bulkhead = mBulkhead;
+            if (bulkhead == null) {
+                enterScheduler(attemptHandler);
+                return;
+            }
+            Runnable bulkheadWaiter = new Runnable() {
+                @Override
+                public void run() {
+                    mBulkheadWaiter = null;
+                    attemptHandler.holdBulkhead(bulkhead);
+                    if (mCancelled) {
+                        attemptHandler.abandon();
+                    } else {
+                        enterScheduler(attemptHandler);
+                    }
+                }
+            };
+            mBulkheadWaiter = bulkheadWaiter;
+            if (!bulkhead.acquireAsync(bulkheadWaiter)) {
+                mBulkheadWaiter = null;
+                attemptHandler.abandon();
+                mHandler.fail(new BulkheadFullException(bulkhead.getName())).run();
+            }
+        }
+
+        private void enterScheduler(@NotNull final AttemptHandler attemptHandler) {
+            if (mScheduler == null) {
+                waitFor(reserve());
+                return;
+            }
+            Runnable schedulerWaiter = new Runnable() {
+                @Override
+                public void run() {
+                    mSchedulerWaiter = null;
+                    attemptHandler.holdSchedulerSlot();
+                    if (mCancelled) {
+                        attemptHandler.abandon();
+                    } else {
+                        waitFor(reserve());
+                    }
+                }
+            };
+            mSchedulerWaiter = schedulerWaiter;
+            mScheduler.acquireAsync(mPriority, schedulerWaiter);
+        }
+
+        private long reserve() {
+            mHoldsReservation.set(true);
+            return mRateLimiter.reserve(mHandler.getEndpoint());
+        }
+
+        /**
+         * Hands back the rate limiter's permits, unless the call has gone out or already handed them back.
+         */
+        private void refund() {
+            if (mHoldsReservation.getAndSet(false)) {
+                mRateLimiter.refund(mHandler.getEndpoint());
+            }
+        }
+
+        /**
+         * Fires when the wait is over.
+         */
+        @Override
+        public void run() {
+            if (!mCancelled) {
+                waitFor(mRateLimiter.getPauseNanos(mHandler.getEndpoint(), System.nanoTime()));
+            }
+        }
+
+        private void waitFor(final long waitNanos) {
+            if (waitNanos <= 0) {
+                send();
+                return;
+            }
+            try {
+                mRateLimiter.checkDeadline(waitNanos, mDeadlineNanos);
+            } catch (InterruptedIOException e) {
+                leaveQueue();
+                refund();
+                mAttemptHandler.abandon();
+                mHandler.onFailure(e);
+                return;
+            }
+            if (mQueued.compareAndSet(false, true)) {
+                mRateLimiter.getStatistics().addQueuedCalls(1);
+            }
+            mTimer = Timers.schedule(this, waitNanos, mExecutor);
+            if (mCancelled) {
+                cancel();
+            }
+        }
+
+        private void send() {
+            leaveQueue();
+            if (mCancelled) {
+                return;
+            }
+            final AttemptHandler attemptHandler = mAttemptHandler;
+            if (mConcurrencyLimiter == null) {
+                dispatch(attemptHandler);
+                return;
+            }
+            Runnable slotWaiter = new Runnable() {
+                @Override
+                public void run() {
+                    mSlotWaiter = null;
+                    LimitedHandler limited = new LimitedHandler(mConcurrencyLimiter, attemptHandler);
+                    mLimitedHandler = limited;
+                    if (mCancelled) {
+                        limited.abandon();
+                    } else {
+                        dispatch(limited);
+                    }
+                }
+            };
+            mSlotWaiter = slotWaiter;
+            mConcurrencyLimiter.acquireAsync(slotWaiter);
+        }
+
+        private void dispatch(@NotNull final BlockscoreClient.ResponseHandler handler) {
+            if (!mHandler.beginJournalEntry()) {
+                if (handler instanceof LimitedHandler) {
+                    ((LimitedHandler) handler).abandon();
+                }
+                mAttemptHandler.abandon();
+                refund();
+                return;
+            }
+            //The permits are spent once the call goes out.
+            mHoldsReservation.set(false);
+            Hedger hedger = mHedgers.get(mHandler.getEndpoint());
+            if (hedger != null) {
+                HedgedCall hedgedCall = new HedgedCall(mClient, mRateLimiter, mHandler.getEndpoint(), mRequest
+                        , mDeadlineNanos, mBulkhead, hedger, handler);
+                mHedgedCall = hedgedCall;
+                hedgedCall.start();
+                if (mCancelled) {
+                    hedgedCall.cancel();
+                }
+                return;
+            }
+            Exchange exchange = mClient.enqueue(mHandler.getEndpoint(), mBulkhead == null ? null : mBulkhead.getName()
+                    , mRequest, mDeadlineNanos, handler);
+            mExchange = exchange;
+            if (mCancelled) {
+                exchange.cancel();
+            }
+        }
+
+        private void retry() {
+            if (mCancelled) {
+                return;
+            }
+            mTimer = Timers.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mCancelled) {
+                        start();
+                    }
+                }
+            }, mAttemptHandler.getBackoffNanos(), mExecutor);
+            if (mCancelled) {
+                cancel();
+            }
+        }
+
+        /**
+         * Cancels the call, whether it is still waiting or already on the wire.
+         */
+        void cancel() {
+            mCancelled = true;
+            ScheduledFuture<?> timer = mTimer;
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            leaveQueue();
+            refund();
+            Runnable bulkheadWaiter = mBulkheadWaiter;
+            if (bulkheadWaiter != null && mBulkhead != null) {
+                mBulkhead.cancelAsync(bulkheadWaiter);
+            }
+            Runnable schedulerWaiter = mSchedulerWaiter;
+            if (schedulerWaiter != null && mScheduler != null) {
+                mScheduler.cancelAsync(schedulerWaiter);
+            }
+            Runnable slotWaiter = mSlotWaiter;
+            if (slotWaiter != null && mConcurrencyLimiter != null) {
+                mConcurrencyLimiter.cancelAsync(slotWaiter);
+            }
+            Exchange exchange = mExchange;
+            if (exchange != null) {
+                exchange.cancel();
+            }
+            HedgedCall hedgedCall = mHedgedCall;
+            if (hedgedCall != null) {
+                hedgedCall.cancel();
+            }
+            //A cancelled call never reaches its handler, so its slot is handed back here.
+            LimitedHandler limited = mLimitedHandler;
+            if (limited != null) {
+                limited.abandon();
+            }
+            AttemptHandler attemptHandler = mAttemptHandler;
+            if (attemptHandler != null) {
+                attemptHandler.abandon();
+            }
+        }
+
+        private void leaveQueue() {
+            if (mQueued.compareAndSet(true, false)) {
+                mRateLimiter.getStatistics().addQueuedCalls(-1);
+            }
+        }
+    }
+
+    /**
+     * Indicates whether a status code means the server is overloaded. Server errors are what the error handler
+     * turns into {@link com.blockscore.exceptions.APIException}.
+     * @param code HTTP status code.
+     * @return True for server errors and 429 responses.
+     */
+    static boolean isOverloaded(final int code) {
+        return code >= 500 || code == TOO_MANY_REQUESTS;
+    }
+
+    @Nullable
+    static String mimeType(@Nullable final MediaType mediaType) {
+        return mediaType == null ? null : mediaType.toString();
+    }
+
+    /**
+     * Lets the converter parse straight from the response stream. The stream is left open when the converter
+     * closes it, so the body can be closed afterwards.
+     */
+    private static final class StreamingTypedInput implements TypedInput {
+        private final ResponseBody mBody;
+
+        StreamingTypedInput(@NotNull final ResponseBody body) {
+            mBody = body;
+        }
+
+        @Nullable
+        @Override
+        public String mimeType() {
+            return CallEngine.mimeType(mBody.contentType());
+        }
+
+        @Override
+        public long length() {
+            try {
+                return mBody.contentLength();
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public InputStream in() throws IOException {
+            return new FilterInputStream(mBody.byteStream()) {
+                @Override
+                public void close() {
+                }
+            };
+        }
+    }
+
+    /**
+     * A client's prefix in the record store, with the Authorization header it was derived from.
+     */
+    private static final class StoreScope {
+        @Nullable
+        private final String mAuthorization;
+        @NotNull
+        private final String mPrefix;
+
+        StoreScope(@Nullable final String authorization, @NotNull final String prefix) {
+            mAuthorization = authorization;
+            mPrefix = prefix;
+        }
+    }
+
+    /**
+     * What is needed to make a request for a single API method, read once from its annotations.
+     */
+    private static final class MethodInfo {
+        private final String mHttpMethod;
+        private final String mPath;
+        private final boolean mRequiresBody;
+        private final String[] mPathParams;
+        private final int mBodyIndex;
+        private final Type mResponseType;
+        private final Endpoint mEndpoint;
+        private final Type mCallbackResponseType;
+
+        MethodInfo(@NotNull final Method method, @NotNull final Endpoint endpoint
+                , @Nullable final Type callbackResponseType) {
+            mEndpoint = endpoint;
+            String httpMethod = null;
+            String path = null;
+            if (method.isAnnotationPresent(GET.class)) {
+                httpMethod = "GET";
+                path = method.getAnnotation(GET.class).value();
+            } else if (method.isAnnotationPresent(POST.class)) {
+                httpMethod = "POST";
+                path = method.getAnnotation(POST.class).value();
+            } else if (method.isAnnotationPresent(PUT.class)) {
+                httpMethod = "PUT";
+                path = method.getAnnotation(PUT.class).value();
+            } else if (method.isAnnotationPresent(PATCH.class)) {
+                httpMethod = "PATCH";
+                path = method.getAnnotation(PATCH.class).value();
+            } else if (method.isAnnotationPresent(DELETE.class)) {
+                httpMethod = "DELETE";
+                path = method.getAnnotation(DELETE.class).value();
+            }
+            if (httpMethod == null) {
+                throw new IllegalArgumentException(method.getName() + " has no HTTP method annotation.");
+            }
+            mHttpMethod = httpMethod;
+            mPath = path;
+            mRequiresBody = "POST".equals(httpMethod) || "PUT".equals(httpMethod) || "PATCH".equals(httpMethod);
+
+            Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+            mPathParams = new String[parameterAnnotations.length];
+            int bodyIndex = -1;
+            for (int i = 0; i < parameterAnnotations.length; i++) {
+                for (Annotation annotation : parameterAnnotations[i]) {
+                    if (annotation instanceof Path) {
+                        mPathParams[i] = ((Path) annotation).value();
+                    } else if (annotation instanceof Body) {
+                        bodyIndex = i;
+                    }
+                }
+            }
+            mBodyIndex = bodyIndex;
+
+            Type returnType = method.getGenericReturnType();
+            if (!(returnType instanceof ParameterizedType)) {
+                throw new IllegalArgumentException(method.getName() + " must return a parameterized Observable.");
+            }
+            mResponseType = ((ParameterizedType) returnType).getActualTypeArguments()[0];
+            //Usually the same type, but the callback methods declare their own.
+            mCallbackResponseType = callbackResponseType == null ? mResponseType : callbackResponseType;
+        }
+    }
+}
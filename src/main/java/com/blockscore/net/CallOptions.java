@@ -0,0 +1,126 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Per-call settings carried by a {@link BlockscoreApiClient} view, such as one created by
+ * {@link BlockscoreApiClient#withDeadline(long, java.util.concurrent.TimeUnit)}.
+ */
+final class CallOptions {
+    static final long NO_DEADLINE = 0;
+    static final CallOptions DEFAULT = new CallOptions(NO_DEADLINE, null, null, null);
+
+    private final long mDeadlineMillis;
+    @Nullable
+    private final String mBulkhead;
+    @Nullable
+    private final Priority mPriority;
+    @Nullable
+    private final String mIdempotencyKey;
+
+    private CallOptions(final long deadlineMillis, @Nullable final String bulkhead, @Nullable final Priority priority
+            , @Nullable final String idempotencyKey) {
+        mDeadlineMillis = deadlineMillis;
+        mBulkhead = bulkhead;
+        mPriority = priority;
+        mIdempotencyKey = idempotencyKey;
+    }
+
+    /**
+     * Gets how long each call may take, counted from when it is made. (ms)
+     * @return Deadline, or {@link #NO_DEADLINE}.
+     */
+    long getDeadlineMillis() {
+        return mDeadlineMillis;
+    }
+
+    /**
+     * Gets the name of the bulkhead calls are made in.
+     * @return Bulkhead name, or null for the shared default.
+     */
+    @Nullable
+    String getBulkhead() {
+        return mBulkhead;
+    }
+
+    /**
+     * Gets the priority calls are scheduled with.
+     * @return Priority, or null for the endpoint's configured priority.
+     */
+    @Nullable
+    Priority getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * Gets the idempotency key sent with create calls.
+     * @return Idempotency key, or null if none is sent.
+     */
+    @Nullable
+    String getIdempotencyKey() {
+        return mIdempotencyKey;
+    }
+
+    /**
+     * Copies these options with a new deadline.
+     * @param deadlineMillis Deadline. (ms)
+     * @return New options.
+     */
+    @NotNull
+    CallOptions withDeadlineMillis(final long deadlineMillis) {
+        return new CallOptions(deadlineMillis, mBulkhead, mPriority, mIdempotencyKey);
+    }
+
+    /**
+     * Copies these options with a new bulkhead.
+     * @param bulkhead Bulkhead name.
+     * @return New options.
+     */
+    @NotNull
+    CallOptions withBulkhead(@NotNull final String bulkhead) {
+        return new CallOptions(mDeadlineMillis, bulkhead, mPriority, mIdempotencyKey);
+    }
+
+    /**
+     * Copies these options with a new priority.
+     * @param priority Priority.
+     * @return New options.
+     */
+    @NotNull
+    CallOptions withPriority(@NotNull final Priority priority) {
+        return new CallOptions(mDeadlineMillis, mBulkhead, priority, mIdempotencyKey);
+    }
+
+    /**
+     * Copies these options with a new idempotency key.
+     * @param idempotencyKey Idempotency key.
+     * @return New options.
+     */
+    @NotNull
+    CallOptions withIdempotencyKey(@NotNull final String idempotencyKey) {
+        return new CallOptions(mDeadlineMillis, mBulkhead, mPriority, idempotencyKey);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CallOptions)) {
+            return false;
+        }
+        CallOptions that = (CallOptions) o;
+        return mDeadlineMillis == that.mDeadlineMillis
+                && (mBulkhead == null ? that.mBulkhead == null : mBulkhead.equals(that.mBulkhead))
+                && mPriority == that.mPriority
+                && (mIdempotencyKey == null ? that.mIdempotencyKey == null : mIdempotencyKey.equals(that.mIdempotencyKey));
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(new Object[] {mDeadlineMillis, mBulkhead, mPriority, mIdempotencyKey});
+    }
+}
@@ -0,0 +1,185 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The circuit breaker for a single endpoint. Outcomes go into a ring buffer of the most recent calls; once the
+ * failure rate reaches the threshold the breaker opens, and after the open period one trial call decides
+ * whether it closes again.
+ */
+final class CircuitBreaker {
+    /**
+     * Permit refused by {@link #tryAcquire()}.
+     */
+    static final long REFUSED = -1;
+    /**
+     * Permit of a call let through while the breaker was closed.
+     */
+    static final long NOT_A_TRIAL = 0;
+
+    private final Endpoint mEndpoint;
+    private final CircuitBreakerPolicy mPolicy;
+    @Nullable
+    private final CircuitBreakerListener mListener;
+    private final boolean[] mFailures;
+    private int mNext;
+    private int mCount;
+    private int mFailureCount;
+    private CircuitState mState = CircuitState.CLOSED;
+    private long mOpenedAtNanos;
+    private long mTrialCount;
+    private long mTrial = NOT_A_TRIAL;
+
+    CircuitBreaker(@NotNull final Endpoint endpoint, @NotNull final CircuitBreakerPolicy policy
+            , @Nullable final CircuitBreakerListener listener) {
+        mEndpoint = endpoint;
+        mPolicy = policy;
+        mListener = listener;
+        mFailures = new boolean[policy.getWindowSize()];
+    }
+
+    /**
+     * Asks whether a call may be sent. Every call let through must later report its outcome with
+     * {@link #onSuccess(long)} or {@link #onFailure(long)}, or give up with {@link #onAbandoned(long)}, passing
+     * back the permit it was given.
+     * @return {@link #REFUSED}, {@link #NOT_A_TRIAL}, or the token of the trial call when the call is the one
+     * deciding whether a half-open breaker closes.
+     */
+    long tryAcquire() {
+        CircuitState from;
+        long trial;
+        synchronized (this) {
+            from = mState;
+            if (mState == CircuitState.CLOSED) {
+                return NOT_A_TRIAL;
+            }
+            if (mState == CircuitState.OPEN) {
+                if (getRemainingOpenNanos() > 0) {
+                    return REFUSED;
+                }
+                mState = CircuitState.HALF_OPEN;
+            } else if (mTrial != NOT_A_TRIAL) {
+                return REFUSED;
+            }
+            mTrial = ++mTrialCount;
+            trial = mTrial;
+        }
+        if (from != CircuitState.HALF_OPEN) {
+            notifyListener(from, CircuitState.HALF_OPEN);
+        }
+        return trial;
+    }
+
+    /**
+     * Gets how long a refused call should wait before trying again.
+     * @return How long until a trial call will be let through, or 1 while a trial call is in flight. (ms)
+     */
+    synchronized long getRetryAfterMillis() {
+        if (mState != CircuitState.OPEN) {
+            return 1;
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(getRemainingOpenNanos()));
+    }
+
+    /**
+     * Records a call that went through.
+     * @param permit Permit the call was given by {@link #tryAcquire()}.
+     */
+    void onSuccess(final long permit) {
+        record(permit, false);
+    }
+
+    /**
+     * Records a call that failed in a way that suggests the endpoint is unhealthy.
+     * @param permit Permit the call was given by {@link #tryAcquire()}.
+     */
+    void onFailure(final long permit) {
+        record(permit, true);
+    }
+
+    /**
+     * Records a call that was let through but never completed, such as one cancelled by its caller.
+     * @param permit Permit the call was given by {@link #tryAcquire()}.
+     */
+    synchronized void onAbandoned(final long permit) {
+        if (permit != NOT_A_TRIAL && permit == mTrial) {
+            mTrial = NOT_A_TRIAL;
+        }
+    }
+
+    /**
+     * Gets the current state.
+     * @return State.
+     */
+    @NotNull
+    synchronized CircuitState getState() {
+        return mState;
+    }
+
+    private void record(final long permit, final boolean failed) {
+        CircuitState from;
+        CircuitState to;
+        synchronized (this) {
+            from = mState;
+            if (mState == CircuitState.HALF_OPEN) {
+                //Only the trial call decides; calls let through before the breaker opened are late.
+                if (permit == NOT_A_TRIAL || permit != mTrial) {
+                    return;
+                }
+                mTrial = NOT_A_TRIAL;
+                if (failed) {
+                    open();
+                } else {
+                    mState = CircuitState.CLOSED;
+                }
+            } else if (mState == CircuitState.CLOSED) {
+                add(failed);
+                if (mCount >= mPolicy.getMinimumCalls()
+                        && mFailureCount >= mPolicy.getFailureRateThreshold() * mCount) {
+                    open();
+                }
+            }
+            //Outcomes of calls sent before the breaker opened don't change an open breaker.
+            to = mState;
+        }
+        if (from != to) {
+            notifyListener(from, to);
+        }
+    }
+
+    private void add(final boolean failed) {
+        if (mCount == mFailures.length) {
+            if (mFailures[mNext]) {
+                mFailureCount--;
+            }
+        } else {
+            mCount++;
+        }
+        mFailures[mNext] = failed;
+        if (failed) {
+            mFailureCount++;
+        }
+        mNext = (mNext + 1) % mFailures.length;
+    }
+
+    private long getRemainingOpenNanos() {
+        return mOpenedAtNanos + TimeUnit.MILLISECONDS.toNanos(mPolicy.getOpenDurationMillis()) - System.nanoTime();
+    }
+
+    private void open() {
+        mState = CircuitState.OPEN;
+        mOpenedAtNanos = System.nanoTime();
+        mNext = 0;
+        mCount = 0;
+        mFailureCount = 0;
+    }
+
+    private void notifyListener(@NotNull final CircuitState from, @NotNull final CircuitState to) {
+        if (mListener != null) {
+            mListener.onStateChange(mEndpoint, from, to);
+        }
+    }
+}
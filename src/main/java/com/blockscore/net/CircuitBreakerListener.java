@@ -0,0 +1,17 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Receives the state changes of an API client's circuit breakers. Called on the thread whose call caused the
+ * change, so implementations should return quickly.
+ */
+public interface CircuitBreakerListener {
+    /**
+     * Called when an endpoint's circuit breaker changes state.
+     * @param endpoint Endpoint of the circuit breaker.
+     * @param from Previous state.
+     * @param to New state.
+     */
+    void onStateChange(@NotNull Endpoint endpoint, @NotNull CircuitState from, @NotNull CircuitState to);
+}
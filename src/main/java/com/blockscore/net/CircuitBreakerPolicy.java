@@ -0,0 +1,79 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When an endpoint's circuit breaker opens and for how long. The breaker looks at the outcomes of the most
+ * recent calls; network failures, timeouts, server errors and 429 responses count as failures.
+ */
+public final class CircuitBreakerPolicy {
+    private final double mFailureRateThreshold;
+    private final int mWindowSize;
+    private final int mMinimumCalls;
+    private final long mOpenDurationMillis;
+
+    /**
+     * Creates a circuit breaker policy.
+     * @param failureRateThreshold Share of failed calls in the window, between 0 and 1, at which the breaker opens.
+     * @param windowSize Number of most recent calls the failure rate is computed over.
+     * @param minimumCalls Number of calls the window must hold before the breaker can open.
+     * @param openDuration How long the breaker stays open before letting a trial call through.
+     * @param timeUnit Unit of the open duration.
+     */
+    public CircuitBreakerPolicy(final double failureRateThreshold, final int windowSize, final int minimumCalls
+            , final long openDuration, @NotNull final TimeUnit timeUnit) {
+        if (!(failureRateThreshold > 0 && failureRateThreshold <= 1)) {
+            throw new IllegalArgumentException("failureRateThreshold must be in (0, 1]");
+        }
+        if (minimumCalls < 1 || windowSize < minimumCalls) {
+            throw new IllegalArgumentException("Sizes must satisfy 1 <= minimumCalls <= windowSize");
+        }
+        if (openDuration < 0) {
+            throw new IllegalArgumentException("openDuration < 0");
+        }
+        mFailureRateThreshold = failureRateThreshold;
+        mWindowSize = windowSize;
+        mMinimumCalls = minimumCalls;
+        mOpenDurationMillis = timeUnit.toMillis(openDuration);
+    }
+
+    /**
+     * Gets the share of failed calls at which the breaker opens.
+     * @return Failure rate threshold, between 0 and 1.
+     */
+    public double getFailureRateThreshold() {
+        return mFailureRateThreshold;
+    }
+
+    /**
+     * Gets the number of most recent calls the failure rate is computed over.
+     * @return Window size.
+     */
+    public int getWindowSize() {
+        return mWindowSize;
+    }
+
+    /**
+     * Gets the number of calls the window must hold before the breaker can open.
+     * @return Minimum calls.
+     */
+    public int getMinimumCalls() {
+        return mMinimumCalls;
+    }
+
+    /**
+     * Gets how long the breaker stays open. (ms)
+     * @return Open duration.
+     */
+    public long getOpenDurationMillis() {
+        return mOpenDurationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CircuitBreakerPolicy{threshold=%s, window=%d, minimumCalls=%d, open=%dms}"
+                , mFailureRateThreshold, mWindowSize, mMinimumCalls, mOpenDurationMillis);
+    }
+}
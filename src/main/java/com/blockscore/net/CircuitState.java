@@ -0,0 +1,21 @@
+package com.blockscore.net;
+
+/**
+ * The states of an endpoint's circuit breaker.
+ */
+public enum CircuitState {
+    /**
+     * Calls go through, and their outcomes are tracked.
+     */
+    CLOSED,
+
+    /**
+     * Too many recent calls failed, so calls fail fast without being sent.
+     */
+    OPEN,
+
+    /**
+     * The open period is over and a single trial call is let through. Its outcome closes or reopens the breaker.
+     */
+    HALF_OPEN
+}
@@ -0,0 +1,35 @@
+package com.blockscore.net;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the coalesced reads of a single API client.
+ */
+public final class CoalescingStatistics {
+    private final AtomicLong mSentCalls = new AtomicLong();
+    private final AtomicLong mCoalescedCalls = new AtomicLong();
+
+    /**
+     * Gets the number of reads that were sent, each on behalf of one or more callers.
+     * @return Sent calls.
+     */
+    public long getSentCalls() {
+        return mSentCalls.get();
+    }
+
+    /**
+     * Gets the number of reads that joined an identical read already in flight instead of being sent.
+     * @return Coalesced calls.
+     */
+    public long getCoalescedCalls() {
+        return mCoalescedCalls.get();
+    }
+
+    void addSentCall() {
+        mSentCalls.incrementAndGet();
+    }
+
+    void addCoalescedCall() {
+        mCoalescedCalls.incrementAndGet();
+    }
+}
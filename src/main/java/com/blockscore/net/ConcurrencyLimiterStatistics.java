@@ -0,0 +1,41 @@
+package com.blockscore.net;
+
+/**
+ * Gauges for the adaptive concurrency limiter of a single API client.
+ */
+public final class ConcurrencyLimiterStatistics {
+    private volatile int mLimit;
+    private volatile int mInFlightCalls;
+    private volatile int mQueuedCalls;
+
+    /**
+     * Gets the number of calls currently allowed in flight. It rises while latency stays flat and falls when
+     * latency or server errors climb.
+     * @return Current limit.
+     */
+    public int getLimit() {
+        return mLimit;
+    }
+
+    /**
+     * Gets the number of calls in flight right now.
+     * @return In-flight calls.
+     */
+    public int getInFlightCalls() {
+        return mInFlightCalls;
+    }
+
+    /**
+     * Gets the number of calls waiting for a slot right now.
+     * @return Queued calls.
+     */
+    public int getQueuedCalls() {
+        return mQueuedCalls;
+    }
+
+    void update(final int limit, final int inFlightCalls, final int queuedCalls) {
+        mLimit = limit;
+        mInFlightCalls = inFlightCalls;
+        mQueuedCalls = queuedCalls;
+    }
+}
@@ -0,0 +1,97 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The endpoints of the Blockscore API, one per method pair in {@link BlockscoreRetrofitAPI}.
+ */
+public enum Endpoint {
+    CREATE_VERIFICATION("createVerification", false),
+    GET_VERIFICATION("getVerification", true),
+    LIST_VERIFICATIONS("listVerifications", true),
+    CREATE_QUESTION_SET("createQuestionSet", false),
+    SCORE_QUESTION_SET("scoreQuestionSet", false),
+    GET_QUESTION_SET("getQuestionSet", true),
+    LIST_QUESTION_SETS("listQuestionSets", true),
+    CREATE_COMPANY("createCompany", false),
+    GET_COMPANY("getCompany", true),
+    LIST_COMPANIES("listCompanies", true),
+    CREATE_WATCHLIST_CANDIDATE("createWatchlistCandidate", false),
+    UPDATE_WATCHLIST_CANDIDATE("updateWatchlistCandidate", false),
+    DELETE_WATCHLIST_CANDIDATE("deleteWatchlistCandidate", false),
+    GET_WATCHLIST_CANDIDATE("getWatchlistCandidate", true),
+    LIST_WATCHLIST_CANDIDATES("listWatchlistCandidate", true),
+    GET_WATCHLIST_CANDIDATE_HISTORY("getWatchlistCandidateHistory", true),
+    GET_WATCHLIST_CANDIDATE_HITS("getWatchlistCandidateHits", true),
+    SEARCH_WATCHLISTS("searchWatchlists", false);
+
+    private static final Map<String, Endpoint> BY_METHOD_NAME = new HashMap<String, Endpoint>();
+
+    static {
+        for (Endpoint endpoint : values()) {
+            BY_METHOD_NAME.put(endpoint.mMethodName, endpoint);
+        }
+    }
+
+    private final String mMethodName;
+    private final boolean mIdempotent;
+
+    private Endpoint(@NotNull final String methodName, final boolean idempotent) {
+        mMethodName = methodName;
+        mIdempotent = idempotent;
+    }
+
+    /**
+     * Gets the name of the {@link BlockscoreRetrofitAPI} methods for this endpoint.
+     * @return Method name.
+     */
+    @NotNull
+    public String getMethodName() {
+        return mMethodName;
+    }
+
+    /**
+     * Indicates whether calling the endpoint twice has the same effect as calling it once, which makes it safe
+     * to retry. Only reads are; creates, updates, deletes and searches are not.
+     * @return True if the endpoint is idempotent.
+     */
+    public boolean isIdempotent() {
+        return mIdempotent;
+    }
+
+    /**
+     * Gets the endpoint that reads back a record this endpoint creates, by its ID. Only such creates take part in
+     * the idempotency journal.
+     * @return Read endpoint, or null if this endpoint doesn't create a record that can be read back.
+     * @see IdempotencyJournal
+     */
+    @Nullable
+    public Endpoint getReadEndpoint() {
+        switch (this) {
+            case CREATE_VERIFICATION:
+                return GET_VERIFICATION;
+            case CREATE_QUESTION_SET:
+                return GET_QUESTION_SET;
+            case CREATE_COMPANY:
+                return GET_COMPANY;
+            case CREATE_WATCHLIST_CANDIDATE:
+                return GET_WATCHLIST_CANDIDATE;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Converts a {@link BlockscoreRetrofitAPI} method name to an endpoint.
+     * @param methodName Method name.
+     * @return Endpoint, or null if the method is not an API call.
+     */
+    @Nullable
+    public static Endpoint forMethodName(@NotNull final String methodName) {
+        return BY_METHOD_NAME.get(methodName);
+    }
+}
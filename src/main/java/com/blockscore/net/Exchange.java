@@ -0,0 +1,329 @@
+package com.blockscore.net;
+
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single request/response exchange. Holds the per-host permits and the deadline timer, and lets them go
+ * exactly once when the exchange finishes. Blocking exchanges are also watched for interrupts of their caller
+ * until then.
+ */
+final class Exchange {
+    static final long NO_DEADLINE = Long.MIN_VALUE;
+    /**
+     * Send time of an exchange whose request never went out, such as one the HTTP cache answered.
+     */
+    static final long NOT_SENT = Long.MIN_VALUE;
+    //How often blocked callers are checked for an interrupt.
+    private static final long INTERRUPT_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final Set<Exchange> WATCHED = Collections.newSetFromMap(new ConcurrentHashMap<Exchange, Boolean>());
+    private static final Object WATCH_LOCK = new Object();
+    @Nullable
+    private static ScheduledFuture<?> sInterruptWatch;
+
+    private final String mHost;
+    private final HostLimiter mConnectionLimiter;
+    private final HostLimiter mStreamLimiter;
+    private final AtomicInteger mHeldPermits = new AtomicInteger();
+    private final AtomicBoolean mFinished = new AtomicBoolean();
+    private final AtomicBoolean mDeadlineExceeded = new AtomicBoolean();
+    private volatile boolean mCancelled;
+    private volatile boolean mInterrupted;
+    private volatile ScheduledFuture<?> mDeadlineTimer;
+    private volatile Thread mCaller;
+    private volatile Call mCall;
+    private volatile HostLimiter mPendingLimiter;
+    private volatile Runnable mPendingWaiter;
+    private volatile Runnable mOnCancelled;
+    private volatile long mSentNanos = NOT_SENT;
+
+    Exchange(@NotNull final String host, @NotNull final HostLimiter connectionLimiter
+            , @Nullable final HostLimiter streamLimiter) {
+        mHost = host;
+        mConnectionLimiter = connectionLimiter;
+        mStreamLimiter = streamLimiter;
+    }
+
+    /**
+     * Blocks until the exchange holds its host permits.
+     * @throws InterruptedIOException If interrupted while waiting.
+     */
+    void acquire() throws InterruptedIOException {
+        try {
+            mConnectionLimiter.acquire(mHost);
+            mHeldPermits.incrementAndGet();
+            if (mStreamLimiter != null) {
+                mStreamLimiter.acquire(mHost);
+                mHeldPermits.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            finish();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to " + mHost);
+        }
+    }
+
+    /**
+     * Runs the given action once the exchange holds its host permits, without blocking. If the exchange is
+     * cancelled first, the cancellation action runs instead. That can happen on the timer thread when the deadline
+     * passes, so the cancellation action must hand anything that might block off to another thread.
+     * @param onReady Action to run once the permits are held.
+     * @param onCancelled Action to run if the exchange is cancelled while waiting.
+     */
+    void acquireAsync(@NotNull final Runnable onReady, @NotNull final Runnable onCancelled) {
+        mOnCancelled = onCancelled;
+        await(mConnectionLimiter, new Runnable() {
+            @Override
+            public void run() {
+                mHeldPermits.incrementAndGet();
+                if (mStreamLimiter == null) {
+                    ready(onReady);
+                } else {
+                    await(mStreamLimiter, new Runnable() {
+                        @Override
+                        public void run() {
+                            mHeldPermits.incrementAndGet();
+                            ready(onReady);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private void await(@NotNull final HostLimiter limiter, @NotNull final Runnable waiter) {
+        mPendingLimiter = limiter;
+        mPendingWaiter = waiter;
+        limiter.acquireAsync(mHost, waiter);
+    }
+
+    private void ready(@NotNull final Runnable onReady) {
+        mPendingWaiter = null;
+        if (mCancelled) {
+            finish();
+            mOnCancelled.run();
+        } else {
+            onReady.run();
+        }
+    }
+
+    /**
+     * Tags a request with this exchange, so the network interceptor can tell it when the request goes out.
+     * @param request Request.
+     * @return Tagged copy of the request.
+     */
+    @NotNull
+    Request tag(@NotNull final Request request) {
+        return request.newBuilder().tag(this).build();
+    }
+
+    /**
+     * Records that the request has a connection and is being written, past every client-side queue.
+     */
+    void markSent() {
+        mSentNanos = System.nanoTime();
+    }
+
+    /**
+     * Indicates whether the request has gone out. Until it has, the server can't have seen it.
+     * @return True once the request has a connection and is being written.
+     */
+    boolean isSent() {
+        return mSentNanos != NOT_SENT;
+    }
+
+    /**
+     * Gets when the request of a response's exchange went out.
+     * @param response Response to a request tagged with {@link #tag(Request)}.
+     * @return Send time, on the {@link System#nanoTime()} clock, or {@link #NOT_SENT}.
+     */
+    static long getSentNanos(@NotNull final Response response) {
+        Object tag = response.request().tag();
+        return tag instanceof Exchange ? ((Exchange) tag).mSentNanos : NOT_SENT;
+    }
+
+    /**
+     * Sets the call carrying this exchange, so it can be cancelled on the wire.
+     * @param call Call.
+     */
+    void setCall(@NotNull final Call call) {
+        mCall = call;
+        if (mCancelled) {
+            call.cancel();
+        }
+    }
+
+    /**
+     * Cancels the exchange: stops waiting for a permit, or aborts the call on the wire.
+     */
+    void cancel() {
+        mCancelled = true;
+        Runnable waiter = mPendingWaiter;
+        HostLimiter limiter = mPendingLimiter;
+        if (waiter != null && limiter != null && limiter.cancelAsync(mHost, waiter)) {
+            mPendingWaiter = null;
+            finish();
+            mOnCancelled.run();
+            return;
+        }
+        Call call = mCall;
+        if (call != null) {
+            call.cancel();
+        }
+    }
+
+    /**
+     * Indicates whether the exchange was cancelled by its caller.
+     * @return True if cancelled.
+     */
+    boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Cancels the call on the wire once the deadline passes.
+     * @param remainingNanos Time left before the deadline.
+     */
+    void startDeadline(final long remainingNanos) {
+        Runnable expire = new Runnable() {
+            @Override
+            public void run() {
+                if (!mFinished.get()) {
+                    mDeadlineExceeded.set(true);
+                    cancel();
+                }
+            }
+        };
+        if (remainingNanos <= 0) {
+            expire.run();
+        } else {
+            mDeadlineTimer = Timers.schedule(expire, remainingNanos);
+        }
+    }
+
+    /**
+     * Cancels the call on the wire if the calling thread is interrupted before the exchange finishes. A platform
+     * thread blocked reading a socket doesn't notice interrupts, so it is checked every 50 ms, along with every
+     * other blocked caller, by a single timer that only runs while there are callers to check. Interrupting a
+     * virtual thread closes the socket by itself.
+     * @param caller Thread blocked on the exchange.
+     */
+    void cancelOnInterrupt(@NotNull final Thread caller) {
+        mCaller = caller;
+        if (ExecutionMode.isVirtual(caller)) {
+            return;
+        }
+        WATCHED.add(this);
+        synchronized (WATCH_LOCK) {
+            if (sInterruptWatch == null) {
+                sInterruptWatch = Timers.scheduleRepeating(new Runnable() {
+                    @Override
+                    public void run() {
+                        checkInterrupts();
+                    }
+                }, INTERRUPT_CHECK_NANOS);
+            }
+        }
+        if (mFinished.get()) {
+            WATCHED.remove(this);
+        }
+    }
+
+    /**
+     * Indicates whether the timer checking blocked callers for interrupts is running.
+     * @return True if it is running.
+     */
+    static boolean isWatchingForInterrupts() {
+        synchronized (WATCH_LOCK) {
+            return sInterruptWatch != null;
+        }
+    }
+
+    private static void checkInterrupts() {
+        for (Exchange exchange : WATCHED) {
+            if (exchange.mCaller.isInterrupted() && !exchange.mFinished.get()) {
+                //Recorded first: the I/O the cancel breaks may clear the caller's interrupt before it fails.
+                exchange.mInterrupted = true;
+                exchange.cancel();
+            }
+        }
+        if (WATCHED.isEmpty()) {
+            synchronized (WATCH_LOCK) {
+                //Checked again under the lock, since a caller registers before it looks for a running timer.
+                if (WATCHED.isEmpty() && sInterruptWatch != null) {
+                    sInterruptWatch.cancel(false);
+                    sInterruptWatch = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the exchange was cancelled because its caller was interrupted. The caller's own interrupt
+     * status may have been cleared by then, by the I/O that the cancel broke off.
+     * @return True if the caller was interrupted.
+     */
+    boolean isInterrupted() {
+        return mInterrupted || mCaller != null && mCaller.isInterrupted();
+    }
+
+    /**
+     * Indicates whether the exchange was cancelled because its deadline passed.
+     * @return True if the deadline was exceeded.
+     */
+    boolean isDeadlineExceeded() {
+        return mDeadlineExceeded.get();
+    }
+
+    /**
+     * Replaces an I/O failure caused by the deadline or by interrupting the caller with one that says so.
+     * @param cause Failure.
+     * @return Failure to report.
+     */
+    @NotNull
+    IOException translate(@NotNull final IOException cause) {
+        InterruptedIOException exception;
+        if (isDeadlineExceeded()) {
+            exception = new InterruptedIOException("Deadline exceeded, the call was cancelled");
+        } else if (isInterrupted() && !(cause instanceof InterruptedIOException)) {
+            exception = new InterruptedIOException("Interrupted, the call was cancelled");
+        } else {
+            return cause;
+        }
+        exception.initCause(cause);
+        return exception;
+    }
+
+    /**
+     * Releases the host permits, stops the deadline timer and stops watching the caller for interrupts.
+     */
+    void finish() {
+        if (mFinished.compareAndSet(false, true)) {
+            ScheduledFuture<?> deadlineTimer = mDeadlineTimer;
+            if (deadlineTimer != null) {
+                deadlineTimer.cancel(false);
+            }
+            WATCHED.remove(this);
+            int held = mHeldPermits.getAndSet(0);
+            if (held > 1 && mStreamLimiter != null) {
+                mStreamLimiter.release(mHost);
+            }
+            if (held > 0) {
+                mConnectionLimiter.release(mHost);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Which kind of threads an API client runs its network calls and callbacks on.
+ */
+public enum ExecutionMode {
+    /**
+     * Pooled platform threads, as used by OkHttp and Retrofit by default.
+     */
+    PLATFORM_THREADS,
+
+    /**
+     * A new virtual thread per call. Needs Java 21 or later; on older runtimes platform threads are used instead.
+     */
+    VIRTUAL_THREADS;
+
+    @Nullable
+    private static final Method IS_VIRTUAL = findIsVirtual();
+
+    /**
+     * Indicates whether the runtime supports virtual threads.
+     * @return True if {@link #VIRTUAL_THREADS} runs calls on virtual threads.
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return newVirtualThreadFactory("Blockscore-Probe-") != null;
+    }
+
+    /**
+     * Indicates whether a thread is a virtual thread.
+     * @param thread Thread to check.
+     * @return True if the thread is virtual; always false before Java 21.
+     */
+    static boolean isVirtual(@NotNull final Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (Boolean) IS_VIRTUAL.invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates the executor for this mode.
+     * @param namePrefix Prefix of the thread names.
+     * @return Executor, or null to keep the library's own platform-thread executor.
+     */
+    @Nullable
+    ExecutorService newExecutor(@NotNull final String namePrefix) {
+        if (this != VIRTUAL_THREADS) {
+            return null;
+        }
+        ThreadFactory factory = newVirtualThreadFactory(namePrefix);
+        if (factory == null) {
+            return null;
+        }
+        try {
+            //Virtual threads are cheap to create and are not pooled.
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private static Method findIsVirtual() {
+        try {
+            return Thread.class.getMethod("isVirtual");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates a factory for virtual threads. Looked up reflectively so the library still runs on Java 7.
+     * @param namePrefix Prefix of the thread names.
+     * @return Thread factory, or null if virtual threads are not supported.
+     */
+    @Nullable
+    private static ThreadFactory newVirtualThreadFactory(@NotNull final String namePrefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Method name = builderClass.getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.blockscore.net;
+
+import com.squareup.okhttp.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A read made once on behalf of every caller that asked for the same thing while it was in flight. Every
+ * member gets the same outcome, each with parsed objects of its own. A flight is cancelled once all of its
+ * members have left.
+ */
+final class Flight extends ParsingHandler<Object> {
+    private final Map<FlightKey, Flight> mFlights;
+    private final FlightKey mKey;
+    private final ParsingHandler<?> mLeader;
+    //Guarded by mFlights, like the map itself.
+    private final List<ParsingHandler<?>> mMembers = new ArrayList<ParsingHandler<?>>();
+    private boolean mClosed;
+    private final CountDownLatch mDelivered = new CountDownLatch(1);
+    private volatile Runnable mCancel;
+
+    /**
+     * Creates a flight led by the first caller to make a read.
+     * @param engine Engine making the call.
+     * @param flights Flights in progress, which the flight takes itself out of once it is over. Also guards
+     *                every flight's members.
+     * @param key What the read is.
+     * @param first Handler of the caller that leads the flight.
+     */
+    Flight(@NotNull final CallEngine engine, @NotNull final Map<FlightKey, Flight> flights
+            , @NotNull final FlightKey key, @NotNull final ParsingHandler<?> first) {
+        super(engine, first.getEndpoint(), first.getResponseType(), first.getUrl());
+        mFlights = flights;
+        mKey = key;
+        mLeader = first;
+        mMembers.add(first);
+    }
+
+    /**
+     * Indicates whether a handler created the flight, and so is the one to send it.
+     * @param handler Handler.
+     * @return True if the handler leads the flight.
+     */
+    boolean isLedBy(@NotNull final ParsingHandler<?> handler) {
+        return mLeader == handler;
+    }
+
+    /**
+     * Adds a caller to the flight. Must be called while holding the lock on the flights in progress.
+     * @param member Handler of the caller joining.
+     */
+    void add(@NotNull final ParsingHandler<?> member) {
+        mMembers.add(member);
+    }
+
+    /**
+     * Sets the action cancelling the flight's call once it has been sent without blocking.
+     * @param cancel Action cancelling the call.
+     */
+    void setCancelAction(@NotNull final Runnable cancel) {
+        mCancel = cancel;
+    }
+
+    /**
+     * Waits on the calling thread until the outcome has been delivered to a member. If interrupted first, the
+     * member leaves the flight and gets the interruption as its outcome.
+     * @param member Member that joined the flight.
+     */
+    void await(@NotNull final ParsingHandler<?> member) {
+        try {
+            mDelivered.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (leave(member)) {
+                member.onFailure(new InterruptedIOException("Interrupted while waiting for the response"));
+                return;
+            }
+            //The outcome is already on its way, which takes moments.
+            while (true) {
+                try {
+                    mDelivered.await();
+                    return;
+                } catch (InterruptedException ignored) {
+                    //Keep waiting, the interruption has been restored.
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes a member out of the flight, and cancels the call if it was the last one.
+     * @param member Member leaving.
+     * @return True if the member left before the outcome was delivered.
+     */
+    boolean leave(@NotNull final ParsingHandler<?> member) {
+        boolean cancel;
+        synchronized (mFlights) {
+            if (mClosed || !mMembers.remove(member)) {
+                return false;
+            }
+            cancel = mMembers.isEmpty();
+            if (cancel) {
+                close();
+            }
+        }
+        Runnable cancelAction = mCancel;
+        if (cancel && cancelAction != null) {
+            cancelAction.run();
+        }
+        return true;
+    }
+
+    @NotNull
+    @Override
+    @SuppressWarnings("unchecked")
+    Runnable success(@Nullable final Object value, @NotNull final Response response) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                List<Runnable> deliveries = new ArrayList<Runnable>();
+                //The first member gets the parsed objects themselves and the others copies of them.
+                boolean first = true;
+                for (ParsingHandler<?> member : takeMembers()) {
+                    deliveries.add(((ParsingHandler<Object>) member).success(first ? value : ModelCopier.copy(value)
+                            , response));
+                    first = false;
+                }
+                deliver(deliveries);
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    Runnable fail(@NotNull final Throwable failure) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                List<Runnable> deliveries = new ArrayList<Runnable>();
+                for (ParsingHandler<?> member : takeMembers()) {
+                    deliveries.add(member.fail(failure));
+                }
+                deliver(deliveries);
+            }
+        };
+    }
+
+    @NotNull
+    private List<ParsingHandler<?>> takeMembers() {
+        synchronized (mFlights) {
+            close();
+            List<ParsingHandler<?>> members = new ArrayList<ParsingHandler<?>>(mMembers);
+            mMembers.clear();
+            return members;
+        }
+    }
+
+    private void close() {
+        mClosed = true;
+        if (mFlights.get(mKey) == this) {
+            mFlights.remove(mKey);
+        }
+    }
+
+    private void deliver(@NotNull final List<Runnable> deliveries) {
+        //One member's callback throwing must not keep the outcome from the others.
+        RuntimeException thrown = null;
+        try {
+            for (Runnable delivery : deliveries) {
+                try {
+                    delivery.run();
+                } catch (RuntimeException e) {
+                    if (thrown == null) {
+                        thrown = e;
+                    }
+                }
+            }
+        } finally {
+            mDelivered.countDown();
+        }
+        if (thrown != null) {
+            throw thrown;
+        }
+    }
+}
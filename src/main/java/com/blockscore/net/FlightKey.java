@@ -0,0 +1,41 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+
+/**
+ * What makes two reads identical: the same request, parsed into the same type, with the same options.
+ */
+final class FlightKey {
+    private final Endpoint mEndpoint;
+    private final String mUrl;
+    private final Type mResponseType;
+    private final CallOptions mOptions;
+
+    FlightKey(@NotNull final ParsingHandler<?> handler, @NotNull final CallOptions options) {
+        mEndpoint = handler.getEndpoint();
+        mUrl = handler.getUrl();
+        mResponseType = handler.getResponseType();
+        mOptions = options;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FlightKey)) {
+            return false;
+        }
+        FlightKey that = (FlightKey) o;
+        return mEndpoint == that.mEndpoint && mUrl.equals(that.mUrl) && mResponseType.equals(that.mResponseType)
+                && mOptions.equals(that.mOptions);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(new Object[] {mEndpoint, mUrl, mResponseType, mOptions});
+    }
+}
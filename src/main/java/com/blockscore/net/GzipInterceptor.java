@@ -0,0 +1,225 @@
+package com.blockscore.net;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ForwardingSink;
+import okio.ForwardingSource;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.Okio;
+import okio.Sink;
+import okio.Source;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * Compresses request bodies (when turned on) and decompresses gzip responses, counting the bytes on
+ * both sides of the compression. Response decompression goes through {@link GzipSource}, which checks
+ * the gzip trailer's CRC and length once it is read; closing a body reads it to the end, so the check is made
+ * even when the parser stops early. Bodies read from the HTTP cache never went over the wire, so only their
+ * decompressed bytes are counted.
+ */
+final class GzipInterceptor implements Interceptor {
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String CONTENT_LENGTH = "Content-Length";
+    private static final String GZIP = "gzip";
+    private static final long MIN_COMPRESSED_REQUEST_BYTES = 1024;
+
+    private final boolean mCompressRequests;
+    private final TransferStatistics mStatistics;
+
+    GzipInterceptor(final boolean compressRequests, @NotNull final TransferStatistics statistics) {
+        mCompressRequests = compressRequests;
+        mStatistics = statistics;
+    }
+
+    @Override
+    public Response intercept(final Chain chain) throws IOException {
+        Request request = chain.request();
+        Request.Builder builder = request.newBuilder();
+
+        //Asking for gzip ourselves turns off OkHttp's transparent decompression, so the bytes can be counted.
+        if (request.header(ACCEPT_ENCODING) == null) {
+            builder.header(ACCEPT_ENCODING, GZIP);
+        }
+
+        RequestBody body = request.body();
+        if (body != null) {
+            //Small bodies grow once the gzip header and trailer are added, so they go out as they are.
+            long length = body.contentLength();
+            if (mCompressRequests && request.header(CONTENT_ENCODING) == null
+                    && (length < 0 || length >= MIN_COMPRESSED_REQUEST_BYTES)) {
+                builder.header(CONTENT_ENCODING, GZIP).method(request.method(), new GzipRequestBody(body, mStatistics));
+            } else if (length > 0) {
+                mStatistics.addRequestBytes(length, length);
+            }
+        }
+
+        return decompress(chain.proceed(builder.build()));
+    }
+
+    @NotNull
+    private Response decompress(@NotNull final Response response) throws IOException {
+        ResponseBody body = response.body();
+        if (body == null) {
+            return response;
+        }
+
+        boolean gzipped = GZIP.equalsIgnoreCase(response.header(CONTENT_ENCODING)) && body.contentLength() != 0;
+        Source source = new CountingSource(body.source(), mStatistics, !HttpCacheInterceptor.isFromCache(response)
+                , !gzipped);
+        long contentLength = body.contentLength();
+        Response.Builder builder = response.newBuilder();
+        if (gzipped) {
+            source = new TrailerCheckingSource(new CountingSource(new GzipSource(source), mStatistics, false, true));
+            contentLength = -1;
+            builder.removeHeader(CONTENT_ENCODING).removeHeader(CONTENT_LENGTH);
+        }
+        return builder.body(new StreamingResponseBody(body.contentType(), contentLength, Okio.buffer(source))).build();
+    }
+
+    /**
+     * Request body that is gzipped while it is written.
+     */
+    private static final class GzipRequestBody extends RequestBody {
+        private final RequestBody mBody;
+        private final TransferStatistics mStatistics;
+
+        GzipRequestBody(@NotNull final RequestBody body, @NotNull final TransferStatistics statistics) {
+            mBody = body;
+            mStatistics = statistics;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mBody.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            //Unknown until compressed, so the body is sent chunked.
+            return -1;
+        }
+
+        @Override
+        public void writeTo(final BufferedSink sink) throws IOException {
+            CountingSink compressed = new CountingSink(sink);
+            CountingSink uncompressed = new CountingSink(new GzipSink(compressed));
+            BufferedSink gzipSink = Okio.buffer(uncompressed);
+            mBody.writeTo(gzipSink);
+            gzipSink.close();
+            mStatistics.addRequestBytes(uncompressed.mCount, compressed.mCount);
+        }
+    }
+
+    /**
+     * Sink that counts the bytes written through it.
+     */
+    private static final class CountingSink extends ForwardingSink {
+        private long mCount;
+
+        CountingSink(@NotNull final Sink delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void write(final Buffer source, final long byteCount) throws IOException {
+            super.write(source, byteCount);
+            mCount += byteCount;
+        }
+    }
+
+    /**
+     * Source that adds the bytes read through it to the statistics.
+     */
+    private static final class CountingSource extends ForwardingSource {
+        private final TransferStatistics mStatistics;
+        private final boolean mCountCompressed;
+        private final boolean mCountUncompressed;
+
+        CountingSource(@NotNull final Source delegate, @NotNull final TransferStatistics statistics
+                , final boolean countCompressed, final boolean countUncompressed) {
+            super(delegate);
+            mStatistics = statistics;
+            mCountCompressed = countCompressed;
+            mCountUncompressed = countUncompressed;
+        }
+
+        @Override
+        public long read(final Buffer sink, final long byteCount) throws IOException {
+            long count = super.read(sink, byteCount);
+            if (count > 0) {
+                if (mCountCompressed) {
+                    mStatistics.addResponseBytesCompressed(count);
+                }
+                if (mCountUncompressed) {
+                    mStatistics.addResponseBytesUncompressed(count);
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Source that reads to the end of the gzip stream when it is closed. Parsers stop at the end of the JSON and
+     * close the stream, so without this the trailer would never be read and a corrupt body would go unnoticed.
+     */
+    private static final class TrailerCheckingSource extends ForwardingSource {
+        private static final long SKIP_BYTES = 8192;
+
+        TrailerCheckingSource(@NotNull final Source delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                Buffer skipped = new Buffer();
+                while (read(skipped, SKIP_BYTES) != -1) {
+                    skipped.clear();
+                }
+            } finally {
+                super.close();
+            }
+        }
+    }
+
+    /**
+     * Response body backed by an already wrapped source.
+     */
+    private static final class StreamingResponseBody extends ResponseBody {
+        private final MediaType mContentType;
+        private final long mContentLength;
+        private final BufferedSource mSource;
+
+        StreamingResponseBody(final MediaType contentType, final long contentLength, @NotNull final BufferedSource source) {
+            mContentType = contentType;
+            mContentLength = contentLength;
+            mSource = source;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mContentType;
+        }
+
+        @Override
+        public long contentLength() {
+            return mContentLength;
+        }
+
+        @Override
+        public BufferedSource source() {
+            return mSource;
+        }
+    }
+}
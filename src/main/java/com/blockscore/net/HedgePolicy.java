@@ -0,0 +1,90 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When a slow read gets a second, identical request. Once an endpoint has some latency history, a call that
+ * hasn't been answered by the given percentile of recent latencies is sent again, and whichever request answers
+ * first wins. Hedges are paid for out of a budget that grows with every call, so they add a bounded share of
+ * extra load.
+ */
+public final class HedgePolicy {
+    private final double mPercentile;
+    private final double mBudgetRatio;
+    private final long mMinDelayMillis;
+
+    /**
+     * Creates a hedge policy.
+     * @param percentile Latency percentile after which a call is hedged, between 0 and 1, such as 0.95.
+     * @param budgetRatio Most hedges per call, on average, such as 0.05 for at most 5% extra requests.
+     * @param minDelay Shortest wait before hedging, however fast recent calls were.
+     * @param timeUnit Unit of the minimum wait.
+     */
+    public HedgePolicy(final double percentile, final double budgetRatio, final long minDelay
+            , @NotNull final TimeUnit timeUnit) {
+        if (!(percentile > 0 && percentile < 1)) {
+            throw new IllegalArgumentException("percentile must be in (0, 1)");
+        }
+        if (!(budgetRatio > 0 && budgetRatio <= 1)) {
+            throw new IllegalArgumentException("budgetRatio must be in (0, 1]");
+        }
+        if (minDelay < 0) {
+            throw new IllegalArgumentException("minDelay < 0");
+        }
+        mPercentile = percentile;
+        mBudgetRatio = budgetRatio;
+        mMinDelayMillis = timeUnit.toMillis(minDelay);
+    }
+
+    /**
+     * Gets the latency percentile after which a call is hedged.
+     * @return Percentile, between 0 and 1.
+     */
+    public double getPercentile() {
+        return mPercentile;
+    }
+
+    /**
+     * Gets the most hedges per call, on average.
+     * @return Budget ratio.
+     */
+    public double getBudgetRatio() {
+        return mBudgetRatio;
+    }
+
+    /**
+     * Gets the shortest wait before hedging. (ms)
+     * @return Minimum delay.
+     */
+    public long getMinDelayMillis() {
+        return mMinDelayMillis;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof HedgePolicy)) {
+            return false;
+        }
+        HedgePolicy that = (HedgePolicy) o;
+        return Double.compare(mPercentile, that.mPercentile) == 0
+                && Double.compare(mBudgetRatio, that.mBudgetRatio) == 0
+                && mMinDelayMillis == that.mMinDelayMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(new double[] {mPercentile, mBudgetRatio, mMinDelayMillis});
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HedgePolicy{percentile=%s, budgetRatio=%s, minDelay=%dms}"
+                , mPercentile, mBudgetRatio, mMinDelayMillis);
+    }
+}
@@ -0,0 +1,235 @@
+package com.blockscore.net;
+
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A read sent once and, if it goes unanswered for longer than the hedger allows, sent again. The first of the
+ * two requests to be answered goes to the handler and the other is cancelled. A failure only goes to the
+ * handler once neither request can answer any more.
+ */
+final class HedgedCall {
+    private static final Object CANCELLED = new Object();
+
+    private final BlockscoreClient mClient;
+    private final RateLimiter mRateLimiter;
+    private final Endpoint mEndpoint;
+    private final Request mRequest;
+    private final long mDeadlineNanos;
+    @Nullable
+    private final String mBulkhead;
+    private final Hedger mHedger;
+    private final BlockscoreClient.ResponseHandler mHandler;
+    private final long mStartNanos = System.nanoTime();
+    private final AtomicReference<Object> mDecision = new AtomicReference<Object>();
+    private final AtomicInteger mOpenLegs = new AtomicInteger(1);
+    private final CountDownLatch mDelivered = new CountDownLatch(1);
+    private final Leg mPrimary = new Leg(false);
+    private final Leg mHedge = new Leg(true);
+    private volatile ScheduledFuture<?> mTimer;
+    //Only the hedge's permits come back here; the primary's are the caller's.
+    private final Runnable mRefund = new Runnable() {
+        @Override
+        public void run() {
+            mRateLimiter.refund(mEndpoint);
+        }
+    };
+
+    HedgedCall(@NotNull final BlockscoreClient client, @NotNull final RateLimiter rateLimiter
+            , @NotNull final Endpoint endpoint, @NotNull final Request request, final long deadlineNanos
+            , @Nullable final BulkheadLimiter bulkhead, @NotNull final Hedger hedger
+            , @NotNull final BlockscoreClient.ResponseHandler handler) {
+        mClient = client;
+        mRateLimiter = rateLimiter;
+        mEndpoint = endpoint;
+        mRequest = request;
+        mDeadlineNanos = deadlineNanos;
+        mBulkhead = bulkhead == null ? null : bulkhead.getName();
+        mHedger = hedger;
+        mHandler = handler;
+    }
+
+    /**
+     * Sends the first request and sets the timer for the second.
+     */
+    void start() {
+        long delayNanos = mHedger.onCall();
+        mPrimary.send();
+        if (delayNanos == Hedger.NO_HEDGE
+                || mDeadlineNanos != Exchange.NO_DEADLINE && mStartNanos + delayNanos - mDeadlineNanos >= 0) {
+            return;
+        }
+        mTimer = Timers.schedule(new Runnable() {
+            @Override
+            public void run() {
+                hedge();
+            }
+        }, delayNanos, mClient.getDispatchExecutor(mBulkhead));
+        if (mDecision.get() != null) {
+            cancelTimer();
+        }
+    }
+
+    private void hedge() {
+        if (mDecision.get() != null) {
+            return;
+        }
+        //The server counts hedges against the quota too, but they don't wait for a permit.
+        if (!mRateLimiter.tryReserve(mEndpoint)) {
+            mHedger.getStatistics().addSkippedHedge();
+            return;
+        }
+        if (!mHedger.tryHedge() || mDecision.get() != null) {
+            mRateLimiter.refund(mEndpoint);
+            return;
+        }
+        mOpenLegs.incrementAndGet();
+        mHedge.send();
+    }
+
+    /**
+     * Waits on the calling thread until the outcome has been delivered. If interrupted first, the call is
+     * cancelled and the handler told about the interruption instead.
+     */
+    void await() {
+        try {
+            mDelivered.await();
+        } catch (InterruptedException e) {
+            if (cancel()) {
+                Thread.currentThread().interrupt();
+                mHandler.onFailure(new InterruptedIOException("Interrupted while waiting for the response"));
+                return;
+            }
+            //The outcome is already on its way, which takes moments.
+            awaitUninterruptibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitUninterruptibly() {
+        while (true) {
+            try {
+                mDelivered.await();
+                return;
+            } catch (InterruptedException e) {
+                //Keep waiting, the interruption is restored by the caller.
+            }
+        }
+    }
+
+    /**
+     * Cancels both requests, unless one of them has already been answered.
+     * @return True if the call was stopped before any outcome went to the handler.
+     */
+    boolean cancel() {
+        if (!mDecision.compareAndSet(null, CANCELLED)) {
+            //The winner is left to finish, so its outcome is delivered.
+            return false;
+        }
+        cancelTimer();
+        mPrimary.cancel();
+        mHedge.cancel();
+        return true;
+    }
+
+    private boolean decide(@NotNull final Leg winner) {
+        if (!mDecision.compareAndSet(null, winner)) {
+            return false;
+        }
+        cancelTimer();
+        (winner == mPrimary ? mHedge : mPrimary).cancel();
+        return true;
+    }
+
+    private void cancelTimer() {
+        ScheduledFuture<?> timer = mTimer;
+        if (timer != null) {
+            timer.cancel(false);
+        }
+    }
+
+    /**
+     * One of the two requests.
+     */
+    private final class Leg implements BlockscoreClient.ResponseHandler {
+        private final boolean mIsHedge;
+        private volatile Exchange mExchange;
+
+        Leg(final boolean isHedge) {
+            mIsHedge = isHedge;
+        }
+
+        void send() {
+            Exchange exchange = mClient.enqueue(mEndpoint, mBulkhead, mRequest, mDeadlineNanos, this
+                    , mIsHedge ? mRefund : null);
+            mExchange = exchange;
+            Object decision = mDecision.get();
+            if (decision != null && decision != this) {
+                exchange.cancel();
+            }
+        }
+
+        void cancel() {
+            Exchange exchange = mExchange;
+            if (exchange != null) {
+                exchange.cancel();
+            }
+        }
+
+        @NotNull
+        @Override
+        public Runnable onResponse(@NotNull final Response response) throws IOException {
+            if (!decide(this)) {
+                return new Runnable() {
+                    @Override
+                    public void run() {
+                        //The other request was answered first.
+                    }
+                };
+            }
+            mHedger.addSample(System.nanoTime() - mStartNanos);
+            if (mIsHedge) {
+                mHedger.getStatistics().addHedgeWin();
+            }
+            final Runnable delivery = mHandler.onResponse(response);
+            return new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        delivery.run();
+                    } finally {
+                        mDelivered.countDown();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void onFailure(@NotNull final IOException e) {
+            //The winner can still fail while its body is read.
+            boolean wasWinner = mDecision.get() == this;
+            if (!wasWinner && (mOpenLegs.decrementAndGet() > 0 || !decide(this))) {
+                return;
+            }
+            try {
+                mHandler.onFailure(e);
+            } finally {
+                mDelivered.countDown();
+            }
+        }
+
+        @Override
+        public void onNotSent() {
+            //Only reads are hedged, and they leave nothing in the idempotency journal to clear.
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when calls to a single endpoint are hedged. It keeps the latencies of recent calls and a budget that
+ * each call adds a fraction of a hedge to.
+ */
+final class Hedger {
+    static final long NO_HEDGE = -1;
+
+    private static final int WINDOW_SIZE = 512;
+    private static final int MIN_SAMPLES = 20;
+    private static final int UPDATE_INTERVAL = 16;
+    //Caps the hedges saved up while calls are fast, so a slow spell can't set off a burst of them.
+    private static final double MAX_BUDGET = 10;
+
+    private final HedgePolicy mPolicy;
+    private final HedgingStatistics mStatistics;
+    private final long mMinDelayNanos;
+    private final long[] mSamples = new long[WINDOW_SIZE];
+    private int mNext;
+    private int mCount;
+    private int mSinceUpdate;
+    private double mBudget;
+    private volatile long mDelayNanos = NO_HEDGE;
+
+    Hedger(@NotNull final HedgePolicy policy, @NotNull final HedgingStatistics statistics) {
+        mPolicy = policy;
+        mStatistics = statistics;
+        mMinDelayNanos = TimeUnit.MILLISECONDS.toNanos(policy.getMinDelayMillis());
+    }
+
+    /**
+     * Counts a call towards the budget and gets how long it may go unanswered before it is hedged.
+     * @return Hedge delay, or {@link #NO_HEDGE} while there is too little latency history.
+     */
+    long onCall() {
+        synchronized (this) {
+            mBudget = Math.min(MAX_BUDGET, mBudget + mPolicy.getBudgetRatio());
+        }
+        return mDelayNanos;
+    }
+
+    /**
+     * Spends one hedge from the budget, if there is one left.
+     * @return True if the call may be hedged.
+     */
+    boolean tryHedge() {
+        synchronized (this) {
+            if (mBudget >= 1) {
+                mBudget -= 1;
+                mStatistics.addHedgedCall();
+                return true;
+            }
+        }
+        mStatistics.addSkippedHedge();
+        return false;
+    }
+
+    /**
+     * Records how long a call took to be answered.
+     * @param latencyNanos Latency.
+     */
+    synchronized void addSample(final long latencyNanos) {
+        mSamples[mNext] = latencyNanos;
+        mNext = (mNext + 1) % WINDOW_SIZE;
+        if (mCount < WINDOW_SIZE) {
+            mCount++;
+        }
+        if (mCount >= MIN_SAMPLES && (++mSinceUpdate >= UPDATE_INTERVAL || mDelayNanos == NO_HEDGE)) {
+            mSinceUpdate = 0;
+            long[] sorted = Arrays.copyOf(mSamples, mCount);
+            Arrays.sort(sorted);
+            long percentile = sorted[Math.min(mCount - 1, (int) (mPolicy.getPercentile() * mCount))];
+            mDelayNanos = Math.max(mMinDelayNanos, percentile);
+        }
+    }
+
+    @NotNull
+    HedgingStatistics getStatistics() {
+        return mStatistics;
+    }
+}
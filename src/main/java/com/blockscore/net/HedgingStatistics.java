@@ -0,0 +1,49 @@
+package com.blockscore.net;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the hedged reads of a single API client.
+ */
+public final class HedgingStatistics {
+    private final AtomicLong mHedgedCalls = new AtomicLong();
+    private final AtomicLong mHedgeWins = new AtomicLong();
+    private final AtomicLong mSkippedHedges = new AtomicLong();
+
+    /**
+     * Gets the number of calls that were slow enough to get a second request.
+     * @return Hedged calls.
+     */
+    public long getHedgedCalls() {
+        return mHedgedCalls.get();
+    }
+
+    /**
+     * Gets the number of hedged calls where the second request answered first.
+     * @return Hedge wins.
+     */
+    public long getHedgeWins() {
+        return mHedgeWins.get();
+    }
+
+    /**
+     * Gets the number of calls that were slow enough to hedge, but weren't because the budget was spent or
+     * the rate limiter had no permit to spare.
+     * @return Skipped hedges.
+     */
+    public long getSkippedHedges() {
+        return mSkippedHedges.get();
+    }
+
+    void addHedgedCall() {
+        mHedgedCalls.incrementAndGet();
+    }
+
+    void addHedgeWin() {
+        mHedgeWins.incrementAndGet();
+    }
+
+    void addSkippedHedge() {
+        mSkippedHedges.incrementAndGet();
+    }
+}
@@ -0,0 +1,169 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caps the number of requests in flight to each host. Blocking and asynchronous callers wait in the same
+ * first-come, first-served queue; asynchronous callers wait without holding a thread.
+ */
+final class HostLimiter {
+    static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private final int mLimit;
+    private final ConcurrentMap<String, HostPermits> mHostPermits = new ConcurrentHashMap<String, HostPermits>();
+
+    HostLimiter(final int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit < 1");
+        }
+        mLimit = limit;
+    }
+
+    /**
+     * Gets the maximum number of requests in flight to a single host.
+     * @return Limit per host.
+     */
+    int getLimit() {
+        return mLimit;
+    }
+
+    /**
+     * Blocks until a request to the given host may be started.
+     * @param host Host being requested.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    void acquire(@NotNull final String host) throws InterruptedException {
+        if (mLimit == UNLIMITED) {
+            return;
+        }
+
+        HostPermits permits = getHostPermits(host);
+        final CountDownLatch granted = new CountDownLatch(1);
+        Runnable waiter = new Runnable() {
+            @Override
+            public void run() {
+                granted.countDown();
+            }
+        };
+        if (permits.acquireOrEnqueue(waiter)) {
+            return;
+        }
+
+        try {
+            granted.await();
+        } catch (InterruptedException e) {
+            if (!permits.dequeue(waiter)) {
+                //The permit was granted while we were being interrupted.
+                permits.release();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the given action as soon as a request to the given host may be started, without blocking. The
+     * action runs on the calling thread if a permit is free, otherwise on the thread that frees one.
+     * @param host Host being requested.
+     * @param onAcquired Action to run once the permit is held.
+     */
+    void acquireAsync(@NotNull final String host, @NotNull final Runnable onAcquired) {
+        if (mLimit == UNLIMITED || getHostPermits(host).acquireOrEnqueue(onAcquired)) {
+            onAcquired.run();
+        }
+    }
+
+    /**
+     * Gives up waiting for a permit requested with {@link #acquireAsync(String, Runnable)}.
+     * @param host Host being requested.
+     * @param onAcquired Action that was waiting.
+     * @return True if the action was still waiting and will not run; false if it already holds the permit.
+     */
+    boolean cancelAsync(@NotNull final String host, @NotNull final Runnable onAcquired) {
+        return mLimit != UNLIMITED && getHostPermits(host).dequeue(onAcquired);
+    }
+
+    /**
+     * Signals that a request started with {@link #acquire(String)} or {@link #acquireAsync(String, Runnable)}
+     * has completed.
+     * @param host Host that was requested.
+     */
+    void release(@NotNull final String host) {
+        if (mLimit != UNLIMITED) {
+            getHostPermits(host).release();
+        }
+    }
+
+    @NotNull
+    private HostPermits getHostPermits(@NotNull final String host) {
+        HostPermits permits = mHostPermits.get(host);
+        if (permits == null) {
+            HostPermits created = new HostPermits(mLimit);
+            permits = mHostPermits.putIfAbsent(host, created);
+            if (permits == null) {
+                permits = created;
+            }
+        }
+        return permits;
+    }
+
+    /**
+     * Permits and waiters for a single host. The lock is only held to update counters, never while waiting,
+     * and is a {@link ReentrantLock} rather than a monitor so virtual threads contending for it don't pin
+     * their carrier threads.
+     */
+    private static final class HostPermits {
+        private final ReentrantLock mLock = new ReentrantLock();
+        private final ArrayDeque<Runnable> mWaiters = new ArrayDeque<Runnable>();
+        private int mAvailable;
+
+        HostPermits(final int limit) {
+            mAvailable = limit;
+        }
+
+        boolean acquireOrEnqueue(@NotNull final Runnable waiter) {
+            mLock.lock();
+            try {
+                if (mAvailable > 0 && mWaiters.isEmpty()) {
+                    mAvailable--;
+                    return true;
+                }
+                mWaiters.add(waiter);
+                return false;
+            } finally {
+                mLock.unlock();
+            }
+        }
+
+        boolean dequeue(@NotNull final Runnable waiter) {
+            mLock.lock();
+            try {
+                return mWaiters.remove(waiter);
+            } finally {
+                mLock.unlock();
+            }
+        }
+
+        void release() {
+            Runnable next;
+            mLock.lock();
+            try {
+                next = mWaiters.poll();
+                if (next == null) {
+                    mAvailable++;
+                }
+            } finally {
+                mLock.unlock();
+            }
+            if (next != null) {
+                //Hands the permit straight to the next waiter.
+                next.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.blockscore.net;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * Counts the responses the HTTP cache answered, whether on its own or after the API confirmed them with a 304, and
+ * the body bytes that stayed off the wire as a result. It sits between the other interceptors and the cache, so it
+ * sees responses before they are decompressed.
+ */
+final class HttpCacheInterceptor implements Interceptor {
+    private final HttpCacheStatistics mStatistics;
+
+    HttpCacheInterceptor(@NotNull final HttpCacheStatistics statistics) {
+        mStatistics = statistics;
+    }
+
+    @Override
+    public Response intercept(final Chain chain) throws IOException {
+        Response response = chain.proceed(chain.request());
+        if (!isFromCache(response)) {
+            return response;
+        }
+        if (response.networkResponse() == null) {
+            mStatistics.addCacheHit();
+        } else {
+            mStatistics.addNotModifiedResponse();
+        }
+        ResponseBody body = response.body();
+        long length = body == null ? 0 : body.contentLength();
+        if (length > 0) {
+            mStatistics.addBytesSaved(length);
+        }
+        return response;
+    }
+
+    /**
+     * Indicates whether a response's body comes from the cache rather than the wire.
+     * @param response Response.
+     * @return True for cache hits and for cached responses confirmed with a 304.
+     */
+    static boolean isFromCache(@NotNull final Response response) {
+        //OkHttp folds a 304 into the cached response it confirms, keeping the 304 as the network response.
+        return response.cacheResponse() != null
+                && (response.networkResponse() == null || response.networkResponse().code() == 304);
+    }
+}
@@ -0,0 +1,72 @@
+package com.blockscore.net;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the on-disk HTTP cache of a single API client.
+ */
+public final class HttpCacheStatistics {
+    private final AtomicLong mCacheHits = new AtomicLong();
+    private final AtomicLong mNotModifiedResponses = new AtomicLong();
+    private final AtomicLong mBytesSaved = new AtomicLong();
+    private final AtomicLong mSkippedParses = new AtomicLong();
+    private final AtomicLong mParseNanosSaved = new AtomicLong();
+
+    /**
+     * Gets the number of responses served from the cache without asking the API.
+     * @return Cache hits.
+     */
+    public long getCacheHits() {
+        return mCacheHits.get();
+    }
+
+    /**
+     * Gets the number of cached responses the API confirmed were still current, with a 304.
+     * @return Not modified responses.
+     */
+    public long getNotModifiedResponses() {
+        return mNotModifiedResponses.get();
+    }
+
+    /**
+     * Gets the number of response body bytes the cache kept off the wire, counted for bodies of known length.
+     * @return Bytes saved.
+     */
+    public long getBytesSaved() {
+        return mBytesSaved.get();
+    }
+
+    /**
+     * Gets the number of cached responses handed over as the objects they were parsed into before, without
+     * being parsed again.
+     * @return Skipped parses.
+     */
+    public long getSkippedParses() {
+        return mSkippedParses.get();
+    }
+
+    /**
+     * Gets the parse time the skipped parses would have taken, going by how long each took the first time.
+     * @return Parse time saved (ns).
+     */
+    public long getParseNanosSaved() {
+        return mParseNanosSaved.get();
+    }
+
+    void addCacheHit() {
+        mCacheHits.incrementAndGet();
+    }
+
+    void addNotModifiedResponse() {
+        mNotModifiedResponses.incrementAndGet();
+    }
+
+    void addBytesSaved(final long bytes) {
+        mBytesSaved.addAndGet(bytes);
+    }
+
+    void addSkippedParse(final long parseNanos) {
+        mSkippedParses.incrementAndGet();
+        mParseNanosSaved.addAndGet(parseNanos);
+    }
+}
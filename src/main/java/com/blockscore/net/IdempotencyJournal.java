@@ -0,0 +1,195 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An on-disk record of the creates made with idempotency keys, mapping each key to the ID of the record it
+ * created. A create repeated with a key that is already in the journal reads the record back instead of creating
+ * it again. Each key is written as pending before its create is sent, and with the ID once the create is
+ * answered; a create repeated while its key is pending fails with
+ * {@link com.blockscore.exceptions.IdempotencyOutcomeUnknownException} rather than being sent again. A key whose
+ * create the server turns down, or whose request never went out, is cleared again. Entries are appended one line
+ * at a time and synced to disk as they are made, so they survive a crash. Journals can be shared by several API
+ * clients, but not by several processes.
+ * @see BlockscoreApiClient#withIdempotencyKey(String)
+ */
+public final class IdempotencyJournal implements Closeable {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    //Record IDs are never empty, so an empty one marks a create that was sent but not answered yet.
+    private static final String PENDING = "";
+
+    private final FileChannel mChannel;
+    //A lock rather than a monitor, so a virtual thread waiting on the disk sync doesn't pin its carrier thread.
+    private final ReentrantLock mWriteLock = new ReentrantLock();
+    private final Map<String, String> mIds = new ConcurrentHashMap<String, String>();
+
+    private IdempotencyJournal(@NotNull final FileChannel channel) {
+        mChannel = channel;
+    }
+
+    /**
+     * Opens a journal, creating the file if it doesn't exist yet.
+     * @param file Journal file.
+     * @return Journal holding the file's entries.
+     * @throws IOException If the file can't be read or opened for writing.
+     */
+    @NotNull
+    public static IdempotencyJournal open(@NotNull final File file) throws IOException {
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        try {
+            IdempotencyJournal journal = new IdempotencyJournal(channel);
+            journal.load();
+            return journal;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Forgets a key, so a create with it is sent again. Use it once you know whether a create whose outcome was
+     * unknown made a record.
+     * @param endpoint Create endpoint.
+     * @param key Idempotency key.
+     * @throws IOException If the entry can't be written to disk. The key is forgotten in memory anyway.
+     */
+    public void forget(@NotNull final Endpoint endpoint, @NotNull final String key) throws IOException {
+        String entryKey = toEntryKey(endpoint, key);
+        if (mIds.remove(entryKey) != null) {
+            append(entryKey + "\t\n");
+        }
+    }
+
+    /**
+     * Gets the number of keys in the journal.
+     * @return Entry count.
+     */
+    public int size() {
+        return mIds.size();
+    }
+
+    /**
+     * Closes the journal file. Creates recorded afterwards are only kept in memory.
+     * @throws IOException If the file can't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+
+    /**
+     * Gets the ID a create was recorded with.
+     * @param endpoint Create endpoint.
+     * @param key Idempotency key.
+     * @return Record ID, or null if no create with the key has completed.
+     */
+    @Nullable
+    String getId(@NotNull final Endpoint endpoint, @NotNull final String key) {
+        String id = mIds.get(toEntryKey(endpoint, key));
+        return PENDING.equals(id) ? null : id;
+    }
+
+    /**
+     * Indicates whether a create was sent with a key but never answered with the record it made.
+     * @param endpoint Create endpoint.
+     * @param key Idempotency key.
+     * @return True if the key is pending.
+     */
+    boolean isPending(@NotNull final Endpoint endpoint, @NotNull final String key) {
+        return PENDING.equals(mIds.get(toEntryKey(endpoint, key)));
+    }
+
+    /**
+     * Records a key as pending, just before its create is sent.
+     * @param endpoint Create endpoint.
+     * @param key Idempotency key.
+     * @return False if the key is already in the journal, so the create must not be sent.
+     * @throws IOException If the entry can't be written to disk. The key is left out of the journal.
+     */
+    boolean begin(@NotNull final Endpoint endpoint, @NotNull final String key) throws IOException {
+        String entryKey = toEntryKey(endpoint, key);
+        if (mIds.putIfAbsent(entryKey, PENDING) != null) {
+            return false;
+        }
+        try {
+            append(entryKey + '\n');
+        } catch (IOException e) {
+            mIds.remove(entryKey, PENDING);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Records the ID of the record a create made. The ID is kept in memory even if it can't be written, so
+     * repeats in this process are still caught.
+     * @param endpoint Create endpoint.
+     * @param key Idempotency key.
+     * @param id Record ID.
+     * @throws IOException If the entry can't be written to disk.
+     */
+    void record(@NotNull final Endpoint endpoint, @NotNull final String key, @NotNull final String id)
+            throws IOException {
+        String entryKey = toEntryKey(endpoint, key);
+        if (id.isEmpty() || id.indexOf('\t') >= 0 || id.indexOf('\n') >= 0 || id.equals(mIds.put(entryKey, id))) {
+            return;
+        }
+        append(entryKey + '\t' + id + '\n');
+    }
+
+    private void append(@NotNull final String line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(UTF_8));
+        mWriteLock.lock();
+        try {
+            while (buffer.hasRemaining()) {
+                mChannel.write(buffer, mChannel.size());
+            }
+            mChannel.force(false);
+        } finally {
+            mWriteLock.unlock();
+        }
+    }
+
+    private void load() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) mChannel.size());
+        while (buffer.hasRemaining()) {
+            if (mChannel.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        String contents = new String(buffer.array(), 0, buffer.position(), UTF_8);
+        int end = contents.lastIndexOf('\n') + 1;
+        for (String line : contents.substring(0, end).split("\n")) {
+            //A key alone is pending, a key with an ID is done and a key with an empty ID was forgotten.
+            String[] fields = line.split("\t", -1);
+            if (fields.length == 2) {
+                mIds.put(fields[0] + '\t' + fields[1], PENDING);
+            } else if (fields.length == 3 && fields[2].isEmpty()) {
+                mIds.remove(fields[0] + '\t' + fields[1]);
+            } else if (fields.length == 3) {
+                mIds.put(fields[0] + '\t' + fields[1], fields[2]);
+            }
+        }
+        if (end < contents.length()) {
+            //A write cut short by a crash, before its create was sent or its result delivered, so it is dropped.
+            mChannel.truncate(contents.substring(0, end).getBytes(UTF_8).length);
+        }
+    }
+
+    @NotNull
+    private static String toEntryKey(@NotNull final Endpoint endpoint, @NotNull final String key) {
+        return endpoint.getMethodName() + '\t' + key;
+    }
+}
@@ -0,0 +1,65 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Holds a concurrency slot for a call and hands it back with the call's latency once the response arrives. The
+ * latency runs from when the request went out, so time spent queueing inside the client isn't taken for queueing
+ * on the server.
+ */
+final class LimitedHandler implements BlockscoreClient.ResponseHandler {
+    private final AdaptiveLimiter mLimiter;
+    private final BlockscoreClient.ResponseHandler mDelegate;
+    private final AtomicBoolean mReleased = new AtomicBoolean();
+
+    LimitedHandler(@NotNull final AdaptiveLimiter limiter, @NotNull final BlockscoreClient.ResponseHandler delegate) {
+        mLimiter = limiter;
+        mDelegate = delegate;
+    }
+
+    @NotNull
+    @Override
+    public Runnable onResponse(@NotNull final com.squareup.okhttp.Response response) throws IOException {
+        long sentNanos = Exchange.getSentNanos(response);
+        long rttNanos = System.nanoTime() - sentNanos;
+        boolean dropped = CallEngine.isOverloaded(response.code());
+        try {
+            return mDelegate.onResponse(response);
+        } finally {
+            if (mReleased.compareAndSet(false, true)) {
+                if (sentNanos == Exchange.NOT_SENT) {
+                    //Answered by the HTTP cache, which says nothing about the server.
+                    mLimiter.release();
+                } else {
+                    mLimiter.release(rttNanos, dropped);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onFailure(@NotNull final IOException e) {
+        if (mReleased.compareAndSet(false, true)) {
+            //A failure cuts the limit without a latency sample.
+            mLimiter.release(0, true);
+        }
+        mDelegate.onFailure(e);
+    }
+
+    @Override
+    public void onNotSent() {
+        mDelegate.onNotSent();
+    }
+
+    /**
+     * Hands the slot back without a latency sample, unless it was already handed back.
+     */
+    void abandon() {
+        if (mReleased.compareAndSet(false, true)) {
+            mLimiter.release();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.blockscore.net;
+
+import com.squareup.okhttp.Headers;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import org.jetbrains.annotations.NotNull;
+import retrofit.RestAdapter;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs requests and responses in the same format as Retrofit's own logs. Logging happens in OkHttp so
+ * that every call is logged once, whichever path sent it.
+ */
+final class LoggingInterceptor implements Interceptor {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final RestAdapter.LogLevel mLogLevel;
+    private final RestAdapter.Log mLog;
+
+    LoggingInterceptor(@NotNull final RestAdapter.LogLevel logLevel, @NotNull final RestAdapter.Log log) {
+        mLogLevel = logLevel;
+        mLog = log;
+    }
+
+    @Override
+    public Response intercept(final Chain chain) throws IOException {
+        Request request = chain.request();
+        if (mLogLevel == RestAdapter.LogLevel.NONE) {
+            return chain.proceed(request);
+        }
+
+        logRequest(request);
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            mLog.log("---- ERROR " + request.urlString());
+            mLog.log(String.valueOf(e));
+            mLog.log("---- END ERROR");
+            throw e;
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        logResponse(response, elapsedMillis);
+        return response;
+    }
+
+    private void logRequest(@NotNull final Request request) throws IOException {
+        mLog.log("---> HTTP " + request.method() + " " + request.urlString());
+        if (!logsHeaders()) {
+            return;
+        }
+
+        logHeaders(request.headers());
+        RequestBody body = request.body();
+        long length = 0;
+        if (body != null) {
+            length = body.contentLength();
+            if (mLogLevel == RestAdapter.LogLevel.FULL) {
+                Buffer buffer = new Buffer();
+                body.writeTo(buffer);
+                length = buffer.size();
+                mLog.log("");
+                mLog.log(buffer.readString(UTF_8));
+            }
+        }
+        mLog.log("---> END HTTP (" + length + "-byte body)");
+    }
+
+    private void logResponse(@NotNull final Response response, final long elapsedMillis) throws IOException {
+        mLog.log("<--- HTTP " + response.code() + " " + response.request().urlString() + " (" + elapsedMillis + "ms)");
+        if (!logsHeaders()) {
+            return;
+        }
+
+        logHeaders(response.headers());
+        ResponseBody body = response.body();
+        long length = body == null ? 0 : body.contentLength();
+        if (body != null && mLogLevel == RestAdapter.LogLevel.FULL) {
+            //Buffers the whole body so it can be logged and still be read by the caller.
+            BufferedSource source = body.source();
+            source.request(Long.MAX_VALUE);
+            Buffer buffer = source.buffer().clone();
+            length = buffer.size();
+            mLog.log("");
+            mLog.log(buffer.readString(UTF_8));
+        }
+        mLog.log("<--- END HTTP (" + length + "-byte body)");
+    }
+
+    private boolean logsHeaders() {
+        return mLogLevel.ordinal() >= RestAdapter.LogLevel.HEADERS.ordinal();
+    }
+
+    private void logHeaders(@NotNull final Headers headers) {
+        for (int i = 0, size = headers.size(); i < size; i++) {
+            mLog.log(headers.name(i) + ": " + headers.value(i));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deep copies of parsed responses, so that a response handed to more than one caller, whether from a cache or a
+ * coalesced read, gives each of them model objects of its own to modify. Models are copied field by field, which
+ * is much cheaper than parsing the body again; strings, boxed primitives and enums are immutable and shared.
+ */
+final class ModelCopier {
+    private static final Map<Class<?>, Layout> LAYOUTS = new ConcurrentHashMap<Class<?>, Layout>();
+
+    private ModelCopier() {
+        //Does nothing.
+    }
+
+    /**
+     * Copies a parsed response and everything it refers to.
+     * @param value Parsed response.
+     * @param <T> Type of the response.
+     * @return Copy, or null if the response is null.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    static <T> T copy(@Nullable final T value) {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof Character || value instanceof Enum) {
+            return value;
+        }
+        if (value instanceof Date) {
+            return (T) ((Date) value).clone();
+        }
+        if (value instanceof List) {
+            List<Object> copy = new ArrayList<Object>(((List<?>) value).size());
+            for (Object element : (List<?>) value) {
+                copy.add(copy(element));
+            }
+            return (T) copy;
+        }
+        if (value instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<Object, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), copy(entry.getValue()));
+            }
+            return (T) copy;
+        }
+        Class<?> type = value.getClass();
+        if (type.isArray()) {
+            int length = Array.getLength(value);
+            Object copy = Array.newInstance(type.getComponentType(), length);
+            for (int i = 0; i < length; i++) {
+                Object element = Array.get(value, i);
+                Array.set(copy, i, type.getComponentType().isPrimitive() ? element : copy(element));
+            }
+            return (T) copy;
+        }
+        return (T) getLayout(type).copy(value);
+    }
+
+    @NotNull
+    private static Layout getLayout(@NotNull final Class<?> type) {
+        Layout layout = LAYOUTS.get(type);
+        if (layout == null) {
+            layout = new Layout(type);
+            LAYOUTS.put(type, layout);
+        }
+        return layout;
+    }
+
+    /**
+     * How to copy a model class: the constructor the parser uses and every instance field, inherited ones included.
+     */
+    private static final class Layout {
+        private final Constructor<?> mConstructor;
+        private final List<Field> mFields = new ArrayList<Field>();
+
+        Layout(@NotNull final Class<?> type) {
+            try {
+                mConstructor = type.getDeclaredConstructor();
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(type.getName() + " can't be copied without a no-arg constructor", e);
+            }
+            mConstructor.setAccessible(true);
+            for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        field.setAccessible(true);
+                        mFields.add(field);
+                    }
+                }
+            }
+        }
+
+        @NotNull
+        Object copy(@NotNull final Object value) {
+            try {
+                Object copy = mConstructor.newInstance();
+                for (Field field : mFields) {
+                    Object fieldValue = field.get(value);
+                    field.set(copy, field.getType().isPrimitive() ? fieldValue : ModelCopier.copy(fieldValue));
+                }
+                return copy;
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Can't copy a " + value.getClass().getName(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Type;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The objects that recent responses with a validator were parsed into, so that when the HTTP cache answers with
+ * the same body again, a copy of them is handed over instead of parsing it. Entries are matched by URL, type and
+ * validator, so a changed body is always parsed. The least recently used entry makes room once the memo is full.
+ */
+final class ParsedResponseMemo {
+    private static final int MAX_ENTRIES = 256;
+    private static final String ETAG = "ETag";
+    private static final String LAST_MODIFIED = "Last-Modified";
+
+    private final HttpCacheStatistics mStatistics;
+    private final Map<String, Entry> mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    ParsedResponseMemo(@NotNull final HttpCacheStatistics statistics) {
+        mStatistics = statistics;
+    }
+
+    /**
+     * Gets what identifies a response's body: its ETag, or failing that its Last-Modified date.
+     * @param response Response.
+     * @return Validator, or null if the response has neither header.
+     */
+    @Nullable
+    static String getValidator(@NotNull final com.squareup.okhttp.Response response) {
+        String etag = response.header(ETAG);
+        if (etag != null) {
+            return ETAG + ':' + etag;
+        }
+        String lastModified = response.header(LAST_MODIFIED);
+        return lastModified == null ? null : LAST_MODIFIED + ':' + lastModified;
+    }
+
+    /**
+     * Looks up the object a body was parsed into, counting the parse saved if it is there.
+     * @param url Request URL.
+     * @param type Type the caller expects.
+     * @param validator Validator of the body.
+     * @return Copy of the parsed object, or null if the body has to be parsed.
+     */
+    @Nullable
+    Object get(@NotNull final String url, @NotNull final Type type, @NotNull final String validator) {
+        Object value;
+        synchronized (this) {
+            Entry entry = mEntries.get(url);
+            if (entry == null || !entry.mType.equals(type) || !entry.mValidator.equals(validator)) {
+                return null;
+            }
+            mStatistics.addSkippedParse(entry.mParseNanos);
+            value = entry.mValue;
+        }
+        return ModelCopier.copy(value);
+    }
+
+    /**
+     * Remembers a copy of what a body was parsed into, leaving the caller free to modify the original.
+     * @param url Request URL.
+     * @param type Type the body was parsed into.
+     * @param validator Validator of the body.
+     * @param value Parsed object.
+     * @param parseNanos How long the parse took.
+     */
+    void put(@NotNull final String url, @NotNull final Type type, @NotNull final String validator
+            , @NotNull final Object value, final long parseNanos) {
+        Entry entry = new Entry(type, validator, ModelCopier.copy(value), parseNanos);
+        synchronized (this) {
+            mEntries.put(url, entry);
+        }
+    }
+
+    private static final class Entry {
+        private final Type mType;
+        private final String mValidator;
+        private final Object mValue;
+        private final long mParseNanos;
+
+        Entry(@NotNull final Type type, @NotNull final String validator, @NotNull final Object value
+                , final long parseNanos) {
+            mType = type;
+            mValidator = validator;
+            mValue = value;
+            mParseNanos = parseNanos;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.blockscore.net;
+
+import com.blockscore.exceptions.IdempotencyOutcomeUnknownException;
+import com.blockscore.models.WatchlistCandidate;
+import com.blockscore.models.base.BasicResponse;
+import com.squareup.okhttp.ResponseBody;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import retrofit.RetrofitError;
+import retrofit.client.Header;
+import retrofit.client.Response;
+import retrofit.converter.ConversionException;
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses responses and maps failures the same way Retrofit would, leaving delivery to subclasses.
+ * @param <T> Type of the response.
+ */
+abstract class ParsingHandler<T> implements BlockscoreClient.ResponseHandler {
+    private final CallEngine mEngine;
+    @Nullable
+    private final IdempotencyJournal mJournal;
+    private final Endpoint mEndpoint;
+    private final Type mResponseType;
+    private final String mUrl;
+    @Nullable
+    private String mIdempotencyKey;
+    private volatile boolean mJournalPending;
+    @Nullable
+    private final ResponseCache mResponseCache;
+    private final long mCacheGeneration;
+    @Nullable
+    private String mCacheKey;
+    @Nullable
+    private volatile String mWrittenCandidateId;
+    //The generation to cache the candidate a write returns with, once the write is over.
+    private volatile long mWrittenCandidateGeneration;
+
+    /**
+     * Creates a handler for one call.
+     * @param engine Engine making the call.
+     * @param endpoint Endpoint called.
+     * @param responseType Type to parse the response into.
+     * @param url Request URL.
+     */
+    ParsingHandler(@NotNull final CallEngine engine, @NotNull final Endpoint endpoint, @NotNull final Type responseType
+            , @NotNull final String url) {
+        mEngine = engine;
+        mJournal = engine.getJournal();
+        mEndpoint = endpoint;
+        mResponseType = responseType;
+        mUrl = url;
+        mResponseCache = engine.getCache(mEndpoint);
+        mCacheGeneration = mResponseCache == null ? 0 : mResponseCache.getGeneration();
+        //Reads are cached by URL; searches, which all share one, get their key from the entry point.
+        mCacheKey = mEndpoint == Endpoint.SEARCH_WATCHLISTS ? null : url;
+        //A created candidate is cached like a read of it sent along with the create.
+        ResponseCache candidateCache = mEndpoint == Endpoint.CREATE_WATCHLIST_CANDIDATE
+                ? engine.getCache(Endpoint.GET_WATCHLIST_CANDIDATE) : null;
+        mWrittenCandidateGeneration = candidateCache == null ? 0 : candidateCache.getGeneration();
+    }
+
+    /**
+     * Makes the handler record the ID of what the call creates in the idempotency journal, if the endpoint
+     * creates a record that can be read back and there is a journal. If an earlier create with the key is
+     * still pending, the caller gets an {@link IdempotencyOutcomeUnknownException} instead.
+     * @param idempotencyKey Idempotency key the call is made with, or null.
+     * @return False if the caller got the failure, so the call must not be sent.
+     */
+    boolean journalAs(@Nullable final String idempotencyKey) {
+        if (idempotencyKey == null || mJournal == null || mEndpoint.getReadEndpoint() == null) {
+            return true;
+        }
+        mIdempotencyKey = idempotencyKey;
+        if (mJournal.isPending(mEndpoint, idempotencyKey)) {
+            fail(new IdempotencyOutcomeUnknownException(mEndpoint, idempotencyKey)).run();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the call's idempotency key to the journal as pending, just before the call is handed to the
+     * transport. If the request then never goes out, {@link #onNotSent()} clears it again. If the key is already
+     * there, or can't be written, the caller gets the failure.
+     * @return False if the caller got the failure, so the call must not be sent.
+     */
+    boolean beginJournalEntry() {
+        if (mIdempotencyKey == null) {
+            return true;
+        }
+        try {
+            if (mJournal.begin(mEndpoint, mIdempotencyKey)) {
+                mJournalPending = true;
+                return true;
+            }
+            //A create with the same key went out in the meantime.
+            fail(new IdempotencyOutcomeUnknownException(mEndpoint, mIdempotencyKey)).run();
+        } catch (IOException e) {
+            error(RetrofitError.networkError(mUrl, e)).run();
+        }
+        return false;
+    }
+
+    /**
+     * Sets the key the handler caches the response under.
+     * @param key Cache key.
+     */
+    void cacheAs(@NotNull final String key) {
+        mCacheKey = key;
+    }
+
+    @Nullable
+    String getCacheKey() {
+        return mCacheKey;
+    }
+
+    /**
+     * Makes the handler drop the cached responses for a candidate once the call is over, whatever its outcome.
+     * @param id ID of the candidate the call writes.
+     * @param generation Generation that dropping them as the call was sent started.
+     */
+    void invalidatesCandidate(@NotNull final String id, final long generation) {
+        mWrittenCandidateGeneration = generation;
+        mWrittenCandidateId = id;
+    }
+
+    @NotNull
+    Endpoint getEndpoint() {
+        return mEndpoint;
+    }
+
+    @NotNull
+    Type getResponseType() {
+        return mResponseType;
+    }
+
+    @NotNull
+    @Override
+    @SuppressWarnings("unchecked")
+    public Runnable onResponse(@NotNull final com.squareup.okhttp.Response response) throws IOException {
+        mEngine.getRateLimiter().onResponse(mEndpoint, response);
+        forgetWrittenCandidate();
+        int code = response.code();
+        ResponseBody body = response.body();
+        if (code < 200 || code >= 300) {
+            if (code >= 400 && code < 500) {
+                forgetJournalEntry();
+            }
+            //Error bodies are small and read by the error handler later, so they are buffered.
+            TypedInput buffered = body == null || body.contentLength() == 0 ? null
+                    : new TypedByteArray(CallEngine.mimeType(body.contentType()), body.bytes());
+            return error(RetrofitError.httpError(mUrl, toRetrofitResponse(response, buffered), mEngine.getConverter()
+                    , mResponseType));
+        }
+
+        if (body == null || body.contentLength() == 0) {
+            return success(null, response);
+        }
+        try {
+            T value = (T) mEngine.parse(this, response, body);
+            journal(value);
+            remember(value);
+            return success(value, response);
+        } catch (ConversionException e) {
+            //The converter wraps read failures too; those are network errors, not bad payloads.
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            return error(RetrofitError.conversionError(mUrl, toRetrofitResponse(response, null), mEngine.getConverter()
+                    , mResponseType, e));
+        } catch (RuntimeException e) {
+            return error(RetrofitError.unexpectedError(mUrl, e));
+        }
+    }
+
+    @Override
+    public void onFailure(@NotNull final IOException e) {
+        forgetWrittenCandidate();
+        error(RetrofitError.networkError(mUrl, e)).run();
+    }
+
+    @Override
+    public void onNotSent() {
+        forgetJournalEntry();
+    }
+
+    /**
+     * Creates the action delivering a parsed response.
+     * @param value Parsed response.
+     * @param response Response it was parsed from. Its body has been consumed.
+     * @return Delivery action.
+     */
+    @NotNull
+    abstract Runnable success(@Nullable T value, @NotNull com.squareup.okhttp.Response response);
+
+    /**
+     * Creates the action delivering a failure that still has to go through the error handler.
+     * @param error Failure.
+     * @return Delivery action.
+     */
+    @NotNull
+    Runnable error(@NotNull final RetrofitError error) {
+        return fail(mEngine.getErrorHandler().handleError(error));
+    }
+
+    /**
+     * Creates the action delivering a failure as is.
+     * @param failure Failure.
+     * @return Delivery action.
+     */
+    @NotNull
+    abstract Runnable fail(@NotNull Throwable failure);
+
+    @NotNull
+    String getUrl() {
+        return mUrl;
+    }
+
+    private void journal(@Nullable final Object value) {
+        if (mIdempotencyKey == null || mJournal == null || !(value instanceof BasicResponse)
+                || ((BasicResponse) value).getId() == null) {
+            return;
+        }
+        try {
+            mJournal.record(mEndpoint, mIdempotencyKey, ((BasicResponse) value).getId());
+        } catch (IOException e) {
+            //The record was created, so the result is delivered anyway. The journal still has the ID in memory.
+        }
+    }
+
+    /**
+     * Clears the call's pending journal entry once the create is known not to have been made, because the
+     * server turned it down or the request never went out, so it can be made again.
+     */
+    private void forgetJournalEntry() {
+        if (!mJournalPending) {
+            return;
+        }
+        mJournalPending = false;
+        try {
+            mJournal.forget(mEndpoint, mIdempotencyKey);
+        } catch (IOException e) {
+            //The key is forgotten in memory anyway; after a restart, a repeat fails as if the outcome were unknown.
+        }
+    }
+
+    /**
+     * Caches a parsed response. The candidates that creates and updates return are cached as reads of them.
+     * @param value Parsed response, or null.
+     */
+    void remember(@Nullable final Object value) {
+        if (value == null) {
+            return;
+        }
+        if (mResponseCache != null && mCacheKey != null) {
+            mResponseCache.put(mCacheKey, mResponseType, value, mCacheGeneration);
+        } else if ((mEndpoint == Endpoint.CREATE_WATCHLIST_CANDIDATE
+                || mEndpoint == Endpoint.UPDATE_WATCHLIST_CANDIDATE) && value instanceof WatchlistCandidate
+                && ((WatchlistCandidate) value).getId() != null) {
+            //The API answers writes with the whole candidate, just as a read would.
+            mEngine.cacheCandidate((WatchlistCandidate) value, mWrittenCandidateGeneration);
+        }
+    }
+
+    private void forgetWrittenCandidate() {
+        String id = mWrittenCandidateId;
+        if (id != null) {
+            mWrittenCandidateGeneration = mEngine.finishCandidateWrite(id, mWrittenCandidateGeneration);
+        }
+    }
+
+    @NotNull
+    Response toRetrofitResponse(@NotNull final com.squareup.okhttp.Response response, @Nullable final TypedInput body) {
+        List<Header> headers = new ArrayList<Header>(response.headers().size());
+        for (int i = 0, size = response.headers().size(); i < size; i++) {
+            headers.add(new Header(response.headers().name(i), response.headers().value(i)));
+        }
+        return new Response(mUrl, response.code(), response.message(), headers, body);
+    }
+}
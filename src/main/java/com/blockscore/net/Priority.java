@@ -0,0 +1,22 @@
+package com.blockscore.net;
+
+/**
+ * How urgently a call should be sent when the priority scheduler has a queue. Calls of the same priority go in
+ * the order they were made.
+ */
+public enum Priority {
+    /**
+     * Calls a person is waiting on, such as a verification during signup.
+     */
+    HIGH,
+
+    /**
+     * The default.
+     */
+    NORMAL,
+
+    /**
+     * Background work, such as rescreening a book of watchlist candidates.
+     */
+    LOW
+}
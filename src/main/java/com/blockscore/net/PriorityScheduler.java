@@ -0,0 +1,196 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.InterruptedIOException;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caps the number of calls in flight and, when the cap is reached, lets calls go in order of priority rather
+ * than arrival. Lower priorities age so they can't starve: each step down in priority counts as having arrived
+ * one aging interval later, so a low priority call that has waited two intervals goes ahead of a high priority
+ * call made just now. Asynchronous callers wait without holding a thread.
+ */
+final class PriorityScheduler {
+    private static final Comparator<Waiter> ORDER = new Comparator<Waiter>() {
+        @Override
+        public int compare(final Waiter a, final Waiter b) {
+            //Ranks are on the System.nanoTime() clock, so they are compared by difference.
+            long diff = a.mRankNanos - b.mRankNanos;
+            if (diff != 0) {
+                return diff < 0 ? -1 : 1;
+            }
+            return a.mSequence < b.mSequence ? -1 : (a.mSequence == b.mSequence ? 0 : 1);
+        }
+    };
+
+    private final int mMaxConcurrentCalls;
+    private final long mAgingNanos;
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final PriorityQueue<Waiter> mWaiters = new PriorityQueue<Waiter>(16, ORDER);
+    private final int[] mQueuedCalls = new int[Priority.values().length];
+    private final SchedulerStatistics mStatistics = new SchedulerStatistics();
+    private int mInFlight;
+    private long mSequence;
+
+    /**
+     * Creates a scheduler.
+     * @param maxConcurrentCalls Maximum number of calls in flight at once.
+     * @param agingNanos How long a call must wait to move up a priority.
+     */
+    PriorityScheduler(final int maxConcurrentCalls, final long agingNanos) {
+        if (maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("maxConcurrentCalls < 1");
+        }
+        if (agingNanos <= 0) {
+            throw new IllegalArgumentException("agingNanos <= 0");
+        }
+        mMaxConcurrentCalls = maxConcurrentCalls;
+        mAgingNanos = agingNanos;
+    }
+
+    /**
+     * Blocks until a call may be started.
+     * @param priority Priority of the call.
+     * @param deadlineNanos When the call must be finished, on the {@link System#nanoTime()} clock, or
+     *                      {@link Exchange#NO_DEADLINE}.
+     * @throws InterruptedIOException If the deadline passes first, or the thread is interrupted.
+     */
+    void acquire(@NotNull final Priority priority, final long deadlineNanos) throws InterruptedIOException {
+        final CountDownLatch granted = new CountDownLatch(1);
+        Runnable waiter = new Runnable() {
+            @Override
+            public void run() {
+                granted.countDown();
+            }
+        };
+        if (acquireOrEnqueue(priority, waiter)) {
+            return;
+        }
+
+        try {
+            if (deadlineNanos == Exchange.NO_DEADLINE) {
+                granted.await();
+            } else if (!granted.await(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                if (cancelAsync(waiter)) {
+                    throw new InterruptedIOException("Deadline exceeded while waiting in the scheduler");
+                }
+                //The slot was granted just as the deadline passed, so the call goes ahead and fails on the wire.
+            }
+        } catch (InterruptedException e) {
+            if (!cancelAsync(waiter)) {
+                release();
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting in the scheduler");
+        }
+    }
+
+    /**
+     * Runs the given action as soon as a call may be started, without blocking. The action runs on the calling
+     * thread if a slot is free, otherwise on the thread that frees one.
+     * @param priority Priority of the call.
+     * @param onAcquired Action to run once the slot is held.
+     */
+    void acquireAsync(@NotNull final Priority priority, @NotNull final Runnable onAcquired) {
+        if (acquireOrEnqueue(priority, onAcquired)) {
+            onAcquired.run();
+        }
+    }
+
+    /**
+     * Gives up waiting for a slot requested with {@link #acquireAsync(Priority, Runnable)}.
+     * @param onAcquired Action that was waiting.
+     * @return True if the action was still waiting and will not run; false if it already holds the slot.
+     */
+    boolean cancelAsync(@NotNull final Runnable onAcquired) {
+        mLock.lock();
+        try {
+            Iterator<Waiter> iterator = mWaiters.iterator();
+            while (iterator.hasNext()) {
+                Waiter waiter = iterator.next();
+                if (waiter.mAction == onAcquired) {
+                    iterator.remove();
+                    mQueuedCalls[waiter.mPriority.ordinal()]--;
+                    publish();
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Frees a slot, handing it straight to the most urgent waiter if there is one.
+     */
+    void release() {
+        Waiter next;
+        mLock.lock();
+        try {
+            next = mWaiters.poll();
+            if (next == null) {
+                mInFlight--;
+            } else {
+                mQueuedCalls[next.mPriority.ordinal()]--;
+            }
+            publish();
+        } finally {
+            mLock.unlock();
+        }
+        if (next != null) {
+            mStatistics.addWaitTime(next.mPriority, System.nanoTime() - next.mEnqueuedNanos);
+            next.mAction.run();
+        }
+    }
+
+    @NotNull
+    SchedulerStatistics getStatistics() {
+        return mStatistics;
+    }
+
+    private boolean acquireOrEnqueue(@NotNull final Priority priority, @NotNull final Runnable action) {
+        mLock.lock();
+        try {
+            if (mInFlight < mMaxConcurrentCalls && mWaiters.isEmpty()) {
+                mInFlight++;
+                mStatistics.addWaitTime(priority, 0);
+                return true;
+            }
+            long now = System.nanoTime();
+            mWaiters.add(new Waiter(action, priority, now, now + priority.ordinal() * mAgingNanos, mSequence++));
+            mQueuedCalls[priority.ordinal()]++;
+            return false;
+        } finally {
+            publish();
+            mLock.unlock();
+        }
+    }
+
+    private void publish() {
+        mStatistics.update(mInFlight, mQueuedCalls);
+    }
+
+    private static final class Waiter {
+        private final Runnable mAction;
+        private final Priority mPriority;
+        private final long mEnqueuedNanos;
+        private final long mRankNanos;
+        private final long mSequence;
+
+        Waiter(@NotNull final Runnable action, @NotNull final Priority priority, final long enqueuedNanos
+                , final long rankNanos, final long sequence) {
+            mAction = action;
+            mPriority = priority;
+            mEnqueuedNanos = enqueuedNanos;
+            mRankNanos = rankNanos;
+            mSequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A token-bucket rate limit: a steady rate of calls, plus a burst that can be spent at once after a quiet
+ * period.
+ */
+public final class RateLimit {
+    private final double mPermitsPerSecond;
+    private final int mBurst;
+
+    /**
+     * Creates a rate limit.
+     * @param permitsPerSecond Number of calls allowed per second, on average.
+     * @param burst Number of calls that may go out back to back once the bucket has filled up.
+     */
+    public RateLimit(final double permitsPerSecond, final int burst) {
+        if (!(permitsPerSecond > 0) || Double.isInfinite(permitsPerSecond)) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive and finite");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("burst < 1");
+        }
+        mPermitsPerSecond = permitsPerSecond;
+        mBurst = burst;
+    }
+
+    /**
+     * Gets the number of calls allowed per second.
+     * @return Calls per second.
+     */
+    public double getPermitsPerSecond() {
+        return mPermitsPerSecond;
+    }
+
+    /**
+     * Gets the number of calls that may go out back to back.
+     * @return Burst size.
+     */
+    public int getBurst() {
+        return mBurst;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RateLimit)) {
+            return false;
+        }
+        RateLimit that = (RateLimit) o;
+        return Double.compare(mPermitsPerSecond, that.mPermitsPerSecond) == 0 && mBurst == that.mBurst;
+    }
+
+    @Override
+    public int hashCode() {
+        long bits = Double.doubleToLongBits(mPermitsPerSecond);
+        return 31 * (int) (bits ^ (bits >>> 32)) + mBurst;
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return "RateLimit{" + mPermitsPerSecond + "/s, burst=" + mBurst + "}";
+    }
+}
@@ -0,0 +1,237 @@
+package com.blockscore.net;
+
+import com.squareup.okhttp.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.InterruptedIOException;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The client-side rate limiter. Every call takes a permit from the global bucket and from its endpoint's
+ * bucket, when those are configured, and gives it back if it is cancelled or rejected before it is sent. A 429
+ * response pauses calls to its endpoint until its Retry-After time and halves the endpoint's rate. When the config
+ * names a scope header and a 429 response sets it to {@code global}, every call is paused and the global rate is
+ * halved too. Successful responses bring the rates back up.
+ */
+final class RateLimiter {
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final long DEFAULT_RETRY_AFTER_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final String GLOBAL_SCOPE = "global";
+
+    @Nullable
+    private final TokenBucket mGlobalBucket;
+    private final Map<Endpoint, TokenBucket> mEndpointBuckets = new EnumMap<Endpoint, TokenBucket>(Endpoint.class);
+    private final AtomicLong mPausedUntilNanos;
+    private final Map<Endpoint, AtomicLong> mEndpointPausedUntilNanos = new EnumMap<Endpoint, AtomicLong>(Endpoint.class);
+    private final RateLimiterStatistics mStatistics = new RateLimiterStatistics();
+    @Nullable
+    private final String mScopeHeader;
+
+    RateLimiter(@NotNull final BlockscoreConfig config) {
+        long now = System.nanoTime();
+        RateLimit globalLimit = config.getRateLimit();
+        mGlobalBucket = globalLimit == null ? null : new TokenBucket(globalLimit, now);
+        for (Endpoint endpoint : Endpoint.values()) {
+            RateLimit limit = config.getRateLimit(endpoint);
+            if (limit != null) {
+                mEndpointBuckets.put(endpoint, new TokenBucket(limit, now));
+            }
+            mEndpointPausedUntilNanos.put(endpoint, new AtomicLong(now));
+        }
+        mPausedUntilNanos = new AtomicLong(now);
+        mScopeHeader = config.getRateLimitScopeHeader();
+    }
+
+    /**
+     * Takes the permits for a call.
+     * @param endpoint Endpoint being called.
+     * @return How long the call must wait before it is sent, or 0 to send it right away.
+     */
+    long reserve(@NotNull final Endpoint endpoint) {
+        long now = System.nanoTime();
+        long waitNanos = getPauseNanos(endpoint, now);
+        if (mGlobalBucket != null) {
+            waitNanos = Math.max(waitNanos, mGlobalBucket.reserve(now));
+        }
+        TokenBucket endpointBucket = mEndpointBuckets.get(endpoint);
+        if (endpointBucket != null) {
+            waitNanos = Math.max(waitNanos, endpointBucket.reserve(now));
+        }
+        if (waitNanos > 0) {
+            mStatistics.addThrottledCall(waitNanos);
+        }
+        return waitNanos;
+    }
+
+    /**
+     * Takes the permits for a call only if it may be sent right away, and otherwise takes none. For requests
+     * that can be skipped, such as hedges, which shouldn't queue up in front of the calls that need the permits.
+     * @param endpoint Endpoint being called.
+     * @return True if the permits were taken.
+     */
+    boolean tryReserve(@NotNull final Endpoint endpoint) {
+        long now = System.nanoTime();
+        if (getPauseNanos(endpoint, now) > 0) {
+            return false;
+        }
+        if (mGlobalBucket != null && !mGlobalBucket.tryReserve(now)) {
+            return false;
+        }
+        TokenBucket endpointBucket = mEndpointBuckets.get(endpoint);
+        if (endpointBucket != null && !endpointBucket.tryReserve(now)) {
+            if (mGlobalBucket != null) {
+                mGlobalBucket.refund(now);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gives back the permits of a call that was cancelled or rejected before it was sent.
+     * @param endpoint Endpoint the call was for.
+     */
+    void refund(@NotNull final Endpoint endpoint) {
+        long now = System.nanoTime();
+        if (mGlobalBucket != null) {
+            mGlobalBucket.refund(now);
+        }
+        TokenBucket endpointBucket = mEndpointBuckets.get(endpoint);
+        if (endpointBucket != null) {
+            endpointBucket.refund(now);
+        }
+    }
+
+    /**
+     * Takes the permits for a call, and blocks until it may be sent. The permits are given back if it fails.
+     * @param endpoint Endpoint being called.
+     * @param deadlineNanos When the call must be finished, on the {@link System#nanoTime()} clock, or
+     *                      {@link Exchange#NO_DEADLINE}.
+     * @throws InterruptedIOException If the wait would run past the deadline, or the thread is interrupted.
+     */
+    void acquire(@NotNull final Endpoint endpoint, final long deadlineNanos) throws InterruptedIOException {
+        long waitNanos = reserve(endpoint);
+        while (waitNanos > 0) {
+            try {
+                checkDeadline(waitNanos, deadlineNanos);
+            } catch (InterruptedIOException e) {
+                refund(endpoint);
+                throw e;
+            }
+            mStatistics.addQueuedCalls(1);
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                refund(endpoint);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the rate limit");
+            } finally {
+                mStatistics.addQueuedCalls(-1);
+            }
+            //A 429 may have come back while this call was waiting.
+            waitNanos = getPauseNanos(endpoint, System.nanoTime());
+        }
+    }
+
+    /**
+     * Fails a call that could not be sent before its deadline.
+     * @param waitNanos Time the call still has to wait.
+     * @param deadlineNanos When the call must be finished, on the {@link System#nanoTime()} clock, or
+     *                      {@link Exchange#NO_DEADLINE}.
+     * @throws InterruptedIOException If the wait would run past the deadline.
+     */
+    void checkDeadline(final long waitNanos, final long deadlineNanos) throws InterruptedIOException {
+        if (deadlineNanos != Exchange.NO_DEADLINE && System.nanoTime() + waitNanos - deadlineNanos > 0) {
+            mStatistics.addRejectedCall();
+            throw new InterruptedIOException("Deadline exceeded while waiting for the rate limit");
+        }
+    }
+
+    /**
+     * Gets how long calls to an endpoint are paused for after a 429 response.
+     * @param endpoint Endpoint.
+     * @param nowNanos Current time, on the {@link System#nanoTime()} clock.
+     * @return Time left in the pause, or 0 if calls are not paused.
+     */
+    long getPauseNanos(@NotNull final Endpoint endpoint, final long nowNanos) {
+        return Math.max(0, Math.max(mPausedUntilNanos.get(), mEndpointPausedUntilNanos.get(endpoint).get()) - nowNanos);
+    }
+
+    /**
+     * Adjusts the limits to a response from the server.
+     * @param endpoint Endpoint that was called.
+     * @param response Response.
+     */
+    void onResponse(@NotNull final Endpoint endpoint, @NotNull final Response response) {
+        long now = System.nanoTime();
+        TokenBucket endpointBucket = mEndpointBuckets.get(endpoint);
+        if (response.code() == TOO_MANY_REQUESTS) {
+            mStatistics.addRetryAfterResponse();
+            boolean global = mScopeHeader != null && GLOBAL_SCOPE.equalsIgnoreCase(response.header(mScopeHeader));
+            pauseUntil(global ? mPausedUntilNanos : mEndpointPausedUntilNanos.get(endpoint)
+                    , now + parseRetryAfter(response));
+            if (global && mGlobalBucket != null) {
+                mGlobalBucket.decrease(now);
+            }
+            if (endpointBucket != null) {
+                endpointBucket.decrease(now);
+            }
+        } else if (response.isSuccessful()) {
+            if (mGlobalBucket != null) {
+                mGlobalBucket.increase();
+            }
+            if (endpointBucket != null) {
+                endpointBucket.increase();
+            }
+        }
+    }
+
+    private static void pauseUntil(@NotNull final AtomicLong pausedUntilNanos, final long untilNanos) {
+        long current = pausedUntilNanos.get();
+        while (untilNanos - current > 0 && !pausedUntilNanos.compareAndSet(current, untilNanos)) {
+            current = pausedUntilNanos.get();
+        }
+    }
+
+    /**
+     * Gets the rate in effect for an endpoint, which is lower than configured after 429 responses.
+     * @param endpoint Endpoint.
+     * @return Calls per second, or {@link Double#POSITIVE_INFINITY} if the endpoint is not limited.
+     */
+    double getPermitsPerSecond(@NotNull final Endpoint endpoint) {
+        double rate = mGlobalBucket == null ? Double.POSITIVE_INFINITY : mGlobalBucket.getPermitsPerSecond();
+        TokenBucket endpointBucket = mEndpointBuckets.get(endpoint);
+        return endpointBucket == null ? rate : Math.min(rate, endpointBucket.getPermitsPerSecond());
+    }
+
+    @NotNull
+    RateLimiterStatistics getStatistics() {
+        return mStatistics;
+    }
+
+    /**
+     * Reads the Retry-After header, which holds either a number of seconds or an HTTP date.
+     * @param response 429 response.
+     * @return Time to pause for.
+     */
+    private static long parseRetryAfter(@NotNull final Response response) {
+        String value = response.header("Retry-After");
+        if (value == null) {
+            return DEFAULT_RETRY_AFTER_NANOS;
+        }
+        try {
+            return TimeUnit.SECONDS.toNanos(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            Date date = response.headers().getDate("Retry-After");
+            if (date == null) {
+                return DEFAULT_RETRY_AFTER_NANOS;
+            }
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, date.getTime() - System.currentTimeMillis()));
+        }
+    }
+}
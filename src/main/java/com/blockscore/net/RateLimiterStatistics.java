@@ -0,0 +1,72 @@
+package com.blockscore.net;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the client-side rate limiter of a single API client.
+ */
+public final class RateLimiterStatistics {
+    private final AtomicLong mQueuedCalls = new AtomicLong();
+    private final AtomicLong mThrottledCalls = new AtomicLong();
+    private final AtomicLong mRejectedCalls = new AtomicLong();
+    private final AtomicLong mRetryAfterResponses = new AtomicLong();
+    private final AtomicLong mWaitNanos = new AtomicLong();
+
+    /**
+     * Gets the number of calls waiting for the rate limiter right now.
+     * @return Queued calls.
+     */
+    public long getQueuedCalls() {
+        return mQueuedCalls.get();
+    }
+
+    /**
+     * Gets the number of calls that had to wait for the rate limiter.
+     * @return Throttled calls.
+     */
+    public long getThrottledCalls() {
+        return mThrottledCalls.get();
+    }
+
+    /**
+     * Gets the number of calls failed without being sent, because the wait would have run past their deadline.
+     * @return Rejected calls.
+     */
+    public long getRejectedCalls() {
+        return mRejectedCalls.get();
+    }
+
+    /**
+     * Gets the number of 429 responses, each of which paused calls and lowered the rate.
+     * @return 429 responses.
+     */
+    public long getRetryAfterResponses() {
+        return mRetryAfterResponses.get();
+    }
+
+    /**
+     * Gets the total time throttled calls spent waiting. (ms)
+     * @return Time spent waiting.
+     */
+    public long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(mWaitNanos.get());
+    }
+
+    void addThrottledCall(final long waitNanos) {
+        mThrottledCalls.incrementAndGet();
+        mWaitNanos.addAndGet(waitNanos);
+    }
+
+    void addQueuedCalls(final long delta) {
+        mQueuedCalls.addAndGet(delta);
+    }
+
+    void addRejectedCall() {
+        mRejectedCalls.incrementAndGet();
+    }
+
+    void addRetryAfterResponse() {
+        mRetryAfterResponses.incrementAndGet();
+    }
+}
@@ -0,0 +1,31 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * Encrypts the response bodies a {@link RecordStore} writes to disk, which hold the personal details of the people
+ * and companies verified, and decrypts them when they are read back. Called while the store is locked, so
+ * implementations should return quickly.
+ * @see RecordStore#open(java.io.File, long, RecordCipher)
+ */
+public interface RecordCipher {
+    /**
+     * Encrypts a response body before it is stored.
+     * @param body Response body.
+     * @return Encrypted body.
+     */
+    @NotNull
+    byte[] encrypt(@NotNull byte[] body);
+
+    /**
+     * Decrypts a stored body.
+     * @param stored Encrypted body, as it was stored.
+     * @return Response body.
+     * @throws IOException If the body can't be decrypted, such as after a change of key. The record is then
+     *                     fetched from the API again.
+     */
+    @NotNull
+    byte[] decrypt(@NotNull byte[] stored) throws IOException;
+}
@@ -0,0 +1,829 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * An on-disk store of the verifications and companies fetched or created, so that they can be read back after a
+ * restart without calling the API. Neither can be changed once created, so stored copies never go stale.
+ * <p>
+ * Records are appended to a memory-mapped file that takes up its full size from the start, each one as its
+ * response body behind a header with its length and checksum. Opening the file scans it once to index the records
+ * by ID; a record cut short by a crash fails its checksum and is dropped along with everything after it. Once the
+ * file is full, it is compacted into a new one holding only the latest copy of each record, dropping the oldest
+ * records if that still leaves no room. Compaction runs on a background thread, so the call that filled the store
+ * doesn't wait for it; records that don't fit in the meantime are held in memory, up to half the file size or 4 MiB,
+ * whichever is less, and written once the new file is swapped in, compacting again if some still don't fit. Records
+ * arriving while that much is held aren't stored. Records are left to the operating system to write out, so
+ * they survive the process being killed but not necessarily a power loss. Stores can be shared by several API
+ * clients, but not by several processes. Records are kept apart by the API key and endpoint of the client that stored them.
+ * <p>
+ * The records are the verified people and companies themselves: names, addresses, birth dates and identity
+ * numbers. Unless the store is opened with a {@link RecordCipher}, they are written to the file as the API sent
+ * them, so keep it somewhere only this application can read, or give it a cipher.
+ * @see BlockscoreApiClient.Builder#setRecordStore(RecordStore)
+ */
+public final class RecordStore implements Closeable {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int HEADER_BYTES = 12;
+    private static final int MAX_DEFERRED_BYTES = 4 * 1024 * 1024;
+
+    private final File mFile;
+    private final int mMaxSizeBytes;
+    private final int mMaxDeferredBytes;
+    @Nullable
+    private final RecordCipher mCipher;
+    private final Executor mCompactionExecutor;
+    private final Unmapper mUnmapper;
+    //A lock rather than the monitor, so that virtual threads waiting on it don't pin their carrier.
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final Condition mCompactionDone = mLock.newCondition();
+    private final Map<String, Integer> mOffsets = new HashMap<String, Integer>();
+    //Records waiting for the compaction in progress, newest last.
+    private final Map<String, byte[]> mDeferred = new LinkedHashMap<String, byte[]>();
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private FileChannel mChannel;
+    private MappedByteBuffer mBuffer;
+    private int mEnd;
+    private int mDeferredBytes;
+    private boolean mCompacting;
+    private boolean mClosed;
+    @Nullable
+    private IOException mCompactionFailure;
+
+    private RecordStore(@NotNull final File file, final int maxSizeBytes, @Nullable final RecordCipher cipher
+            , @NotNull final Executor compactionExecutor, @NotNull final Unmapper unmapper) {
+        mFile = file;
+        mMaxSizeBytes = maxSizeBytes;
+        mMaxDeferredBytes = Math.min(MAX_DEFERRED_BYTES, maxSizeBytes / 2);
+        mCipher = cipher;
+        mCompactionExecutor = compactionExecutor;
+        mUnmapper = unmapper;
+    }
+
+    /**
+     * Opens a store that writes its records to the file unencrypted, creating the file if it doesn't exist yet.
+     * A file larger than the new size is compacted right away. Besides the index, the store keeps up to half of
+     * maxSizeBytes or 4 MiB, whichever is less, of records on the heap while the file is being compacted.
+     * @param file Store file.
+     * @param maxSizeBytes Size of the file, which caps what it can hold.
+     * @return Store holding the file's records.
+     * @throws IOException If the file can't be mapped.
+     */
+    @NotNull
+    public static RecordStore open(@NotNull final File file, final long maxSizeBytes) throws IOException {
+        return open(file, maxSizeBytes, null);
+    }
+
+    /**
+     * Opens a store, creating the file if it doesn't exist yet. A file larger than the new size is compacted
+     * right away. Besides the index, the store keeps up to half of maxSizeBytes or 4 MiB, whichever is less, of
+     * records on the heap while the file is being compacted.
+     * @param file Store file.
+     * @param maxSizeBytes Size of the file, which caps what it can hold.
+     * @param cipher Cipher the records are encrypted with, or null to write them unencrypted.
+     * @return Store holding the file's records.
+     * @throws IOException If the file can't be mapped.
+     */
+    @NotNull
+    public static RecordStore open(@NotNull final File file, final long maxSizeBytes
+            , @Nullable final RecordCipher cipher) throws IOException {
+        return open(file, maxSizeBytes, cipher, new Executor() {
+            @Override
+            public void execute(@NotNull final Runnable command) {
+                Holder.EXECUTOR.execute(command);
+            }
+        });
+    }
+
+    /**
+     * Opens a store that compacts its file on the given executor.
+     * @param file Store file.
+     * @param maxSizeBytes Size of the file, which caps what it can hold.
+     * @param cipher Cipher the records are encrypted with, or null to write them unencrypted.
+     * @param compactionExecutor Executor that compacts the file once it is full.
+     * @return Store holding the file's records.
+     * @throws IOException If the file can't be mapped.
+     */
+    @NotNull
+    static RecordStore open(@NotNull final File file, final long maxSizeBytes, @Nullable final RecordCipher cipher
+            , @NotNull final Executor compactionExecutor) throws IOException {
+        return open(file, maxSizeBytes, cipher, compactionExecutor, CleanerUnmapper.INSTANCE);
+    }
+
+    /**
+     * Opens a store that compacts its file on the given executor and releases its mappings with the given unmapper.
+     * @param file Store file.
+     * @param maxSizeBytes Size of the file, which caps what it can hold.
+     * @param cipher Cipher the records are encrypted with, or null to write them unencrypted.
+     * @param compactionExecutor Executor that compacts the file once it is full.
+     * @param unmapper Releases mappings of the file.
+     * @return Store holding the file's records.
+     * @throws IOException If the file can't be mapped.
+     */
+    @NotNull
+    static RecordStore open(@NotNull final File file, final long maxSizeBytes, @Nullable final RecordCipher cipher
+            , @NotNull final Executor compactionExecutor, @NotNull final Unmapper unmapper) throws IOException {
+        if (maxSizeBytes <= HEADER_BYTES) {
+            throw new IllegalArgumentException("maxSizeBytes <= " + HEADER_BYTES);
+        }
+        if (maxSizeBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("maxSizeBytes > " + Integer.MAX_VALUE);
+        }
+        RecordStore store = new RecordStore(file, (int) maxSizeBytes, cipher, compactionExecutor, unmapper);
+        store.mLock.lock();
+        try {
+            store.map();
+            store.load();
+            if (store.mBuffer.capacity() > store.mMaxSizeBytes) {
+                Compaction compaction = store.startCompaction(0);
+                try {
+                    compaction.write();
+                    store.finishCompaction(compaction);
+                } catch (IOException e) {
+                    compaction.abandon();
+                    store.endCompaction();
+                    try {
+                        store.close();
+                    } catch (IOException closeFailure) {
+                        //Already failing.
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            store.mLock.unlock();
+        }
+        return store;
+    }
+
+    /**
+     * Gets the number of records in the store, including those held in memory during a compaction.
+     * @return Record count.
+     */
+    public int size() {
+        mLock.lock();
+        try {
+            int size = mOffsets.size();
+            for (String key : mDeferred.keySet()) {
+                if (!mOffsets.containsKey(key)) {
+                    size++;
+                }
+            }
+            return size;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of calls answered from the store.
+     * @return Hit count.
+     */
+    public long getHits() {
+        return mHits.get();
+    }
+
+    /**
+     * Gets the number of calls that looked for a record the store didn't have.
+     * @return Miss count.
+     */
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    /**
+     * Gets the failure that stopped the latest compaction run in the background. While compactions fail, the store
+     * stays full and records that don't fit aren't stored.
+     * @return Failure, or null if the latest compaction succeeded or none has run.
+     */
+    @Nullable
+    public IOException getCompactionFailure() {
+        mLock.lock();
+        try {
+            return mCompactionFailure;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Waits for a compaction in progress, then writes the store out and closes its file. Calls made afterwards go to
+     * the API and aren't stored.
+     * @throws IOException If the file can't be closed, or its mapping can't be released, in which case it is left
+     * to the garbage collector.
+     */
+    @Override
+    public void close() throws IOException {
+        mLock.lock();
+        try {
+            while (mCompacting) {
+                mCompactionDone.awaitUninterruptibly();
+            }
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            mBuffer.force();
+            mChannel.close();
+            MappedByteBuffer buffer = mBuffer;
+            mBuffer = null;
+            mUnmapper.unmap(buffer);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Gets a stored response body, counting a hit or a miss.
+     * @param key Client scope and path the record is read from.
+     * @return Body, or null if the record isn't stored or can't be decrypted.
+     */
+    @Nullable
+    byte[] get(@NotNull final String key) {
+        byte[] stored;
+        mLock.lock();
+        try {
+            stored = mClosed ? null : readStored(key);
+        } finally {
+            mLock.unlock();
+        }
+        byte[] value = stored == null ? null : decrypt(stored);
+        if (value == null) {
+            mMisses.incrementAndGet();
+            return null;
+        }
+        mHits.incrementAndGet();
+        return value;
+    }
+
+    /**
+     * Stores a response body, unless the same body is already there. If the file is full, the body is held in
+     * memory and the file is compacted in the background; if the memory set aside for that is used up, the body
+     * isn't stored.
+     * @param key Client scope and path the record is read from.
+     * @param value Body.
+     */
+    void put(@NotNull final String key, @NotNull final byte[] value) {
+        mLock.lock();
+        try {
+            putLocked(key, value);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private void putLocked(@NotNull final String key, @NotNull final byte[] value) {
+        byte[] current = mClosed ? null : readStored(key);
+        if (mClosed || (current != null && Arrays.equals(value, decrypt(current)))) {
+            return;
+        }
+        byte[] keyBytes = key.getBytes(UTF_8);
+        byte[] stored = mCipher == null ? value : mCipher.encrypt(value);
+        int length = HEADER_BYTES + keyBytes.length + stored.length;
+        if (length > mMaxSizeBytes) {
+            return;
+        }
+        if (mEnd + length <= mMaxSizeBytes) {
+            write(mBuffer, mEnd, keyBytes, stored);
+            mOffsets.put(key, mEnd);
+            mEnd += length;
+            byte[] deferred = mDeferred.remove(key);
+            if (deferred != null) {
+                mDeferredBytes -= HEADER_BYTES + keyBytes.length + deferred.length;
+            }
+            return;
+        }
+        if (mDeferredBytes + length > mMaxDeferredBytes) {
+            return;
+        }
+        byte[] replaced = mDeferred.remove(key);
+        if (replaced != null) {
+            mDeferredBytes -= HEADER_BYTES + keyBytes.length + replaced.length;
+        }
+        mDeferred.put(key, stored);
+        mDeferredBytes += length;
+        if (!mCompacting) {
+            compactInBackground(length);
+        }
+    }
+
+    /**
+     * Waits for a compaction in progress to be swapped in.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    void awaitCompaction() throws InterruptedException {
+        mLock.lock();
+        try {
+            while (mCompacting) {
+                mCompactionDone.await();
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Starts a compaction and writes its file on the compaction executor.
+     * @param needed Room to leave at the end for the records held in memory.
+     */
+    private void compactInBackground(final int needed) {
+        final Compaction compaction = startCompaction(needed);
+        mCompactionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compaction.write();
+                } catch (IOException e) {
+                    compaction.abandon();
+                    mLock.lock();
+                    try {
+                        //The store stays full, so the next record that doesn't fit tries again.
+                        mCompactionFailure = e;
+                        endCompaction();
+                    } finally {
+                        mLock.unlock();
+                    }
+                    return;
+                }
+                mLock.lock();
+                try {
+                    finishCompaction(compaction);
+                    mCompactionFailure = null;
+                } catch (IOException e) {
+                    compaction.abandon();
+                    mCompactionFailure = e;
+                    endCompaction();
+                } finally {
+                    mLock.unlock();
+                }
+            }
+        });
+    }
+
+    private void map() throws IOException {
+        mChannel = new RandomAccessFile(mFile, "rw").getChannel();
+        try {
+            mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(mMaxSizeBytes, mChannel.size()));
+        } catch (IOException e) {
+            mChannel.close();
+            throw e;
+        }
+    }
+
+    private void load() {
+        int position = 0;
+        int limit = mBuffer.capacity();
+        while (limit - position >= HEADER_BYTES) {
+            int keyLength = mBuffer.getInt(position);
+            int valueLength = mBuffer.getInt(position + 4);
+            if (keyLength <= 0 || valueLength < 0 || keyLength > limit - position - HEADER_BYTES
+                    || valueLength > limit - position - HEADER_BYTES - keyLength) {
+                break;
+            }
+            byte[] record = new byte[keyLength + valueLength];
+            ByteBuffer in = mBuffer.duplicate();
+            in.position(position + HEADER_BYTES);
+            in.get(record);
+            if (checksum(record) != mBuffer.getInt(position + 8)) {
+                break;
+            }
+            mOffsets.put(new String(record, 0, keyLength, UTF_8), position);
+            position += HEADER_BYTES + record.length;
+        }
+        mEnd = position;
+    }
+
+    /**
+     * Picks the records a compaction keeps: the latest copy of each, oldest first, dropping the oldest ones until
+     * there is room for the record about to be written.
+     * @param needed Room to leave at the end for the record about to be written.
+     * @return Compaction, whose file is written without holding the lock.
+     */
+    @NotNull
+    private Compaction startCompaction(final int needed) {
+        List<Integer> offsets = new ArrayList<Integer>(mOffsets.values());
+        Collections.sort(offsets);
+        int liveBytes = 0;
+        for (int offset : offsets) {
+            liveBytes += recordLength(mBuffer, offset);
+        }
+        int first = 0;
+        while (liveBytes + needed > mMaxSizeBytes && first < offsets.size()) {
+            liveBytes -= recordLength(mBuffer, offsets.get(first++));
+        }
+        mCompacting = true;
+        return new Compaction(new File(mFile.getPath() + ".compact"), mBuffer
+                , new ArrayList<Integer>(offsets.subList(first, offsets.size())), mEnd, mMaxSizeBytes, mUnmapper);
+    }
+
+    /**
+     * Adds the records written or held back since the compaction started to its file, as far as they fit, and
+     * swaps it in for the current one. Records that don't fit stay in memory for another compaction.
+     * @param compaction Compaction whose file is written.
+     * @throws IOException If the new file can't be swapped in.
+     */
+    private void finishCompaction(@NotNull final Compaction compaction) throws IOException {
+        List<Integer> written = new ArrayList<Integer>();
+        for (int offset : mOffsets.values()) {
+            if (offset >= compaction.mStartEnd) {
+                written.add(offset);
+            }
+        }
+        Collections.sort(written);
+        Map<String, byte[]> left = new LinkedHashMap<String, byte[]>();
+        for (int offset : written) {
+            byte[] key = readKey(mBuffer, offset);
+            byte[] value = readValue(mBuffer, offset);
+            if (!compaction.add(key, value)) {
+                left.put(new String(key, UTF_8), value);
+            }
+        }
+        for (Map.Entry<String, byte[]> record : mDeferred.entrySet()) {
+            left.remove(record.getKey());
+            if (!compaction.add(record.getKey().getBytes(UTF_8), record.getValue())) {
+                left.put(record.getKey(), record.getValue());
+            }
+        }
+        compaction.close();
+        swap(compaction);
+
+        mOffsets.clear();
+        mOffsets.putAll(compaction.mOffsets);
+        mEnd = compaction.mEnd;
+        int leftBytes = 0;
+        for (Map.Entry<String, byte[]> record : left.entrySet()) {
+            leftBytes += HEADER_BYTES + record.getKey().getBytes(UTF_8).length + record.getValue().length;
+        }
+        //As in put(), only so much is held in memory, so the oldest go first.
+        Iterator<Map.Entry<String, byte[]>> oldest = left.entrySet().iterator();
+        while (leftBytes > mMaxDeferredBytes) {
+            Map.Entry<String, byte[]> record = oldest.next();
+            leftBytes -= HEADER_BYTES + record.getKey().getBytes(UTF_8).length + record.getValue().length;
+            oldest.remove();
+        }
+        mDeferred.clear();
+        mDeferred.putAll(left);
+        mDeferredBytes = leftBytes;
+        if (mDeferred.isEmpty()) {
+            endCompaction();
+        } else {
+            compactInBackground(mDeferredBytes);
+        }
+    }
+
+    /**
+     * Replaces the store file with a compacted one. The old file is unmapped and closed first, since Windows won't
+     * replace a file that is still mapped. If the new file can't be moved in, the old one is mapped again. Where a
+     * mapping couldn't be released, the move is still tried, since other systems allow it; if it fails, the
+     * failure carries the unmapping failures along.
+     * @param compaction Compaction whose file is written and closed.
+     * @throws IOException If the new file can't be moved in, or if neither file can be mapped, which closes the store.
+     */
+    private void swap(@NotNull final Compaction compaction) throws IOException {
+        mChannel.close();
+        MappedByteBuffer buffer = mBuffer;
+        mBuffer = null;
+        IOException unmapFailure = null;
+        try {
+            mUnmapper.unmap(buffer);
+        } catch (IOException e) {
+            unmapFailure = e;
+        }
+        IOException failure = null;
+        try {
+            Files.move(compaction.mFile.toPath(), mFile.toPath(), StandardCopyOption.REPLACE_EXISTING
+                    , StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            failure = e;
+            if (unmapFailure != null) {
+                failure.addSuppressed(unmapFailure);
+            }
+            if (compaction.mUnmapFailure != null) {
+                failure.addSuppressed(compaction.mUnmapFailure);
+            }
+        }
+        try {
+            map();
+        } catch (IOException e) {
+            mClosed = true;
+            throw e;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void endCompaction() {
+        mDeferred.clear();
+        mDeferredBytes = 0;
+        mCompacting = false;
+        mCompactionDone.signalAll();
+    }
+
+    @Nullable
+    private byte[] readStored(@NotNull final String key) {
+        byte[] deferred = mDeferred.get(key);
+        if (deferred != null) {
+            return deferred;
+        }
+        Integer offset = mOffsets.get(key);
+        return offset == null ? null : readValue(mBuffer, offset);
+    }
+
+    private static void write(@NotNull final MappedByteBuffer buffer, final int offset, @NotNull final byte[] key
+            , @NotNull final byte[] value) {
+        ByteBuffer out = buffer.duplicate();
+        out.position(offset + HEADER_BYTES);
+        out.put(key);
+        out.put(value);
+        CRC32 crc = new CRC32();
+        crc.update(key);
+        crc.update(value);
+        buffer.putInt(offset + 4, value.length);
+        buffer.putInt(offset + 8, (int) crc.getValue());
+        //The key length goes in last, so a record is only seen once the rest of it is there.
+        buffer.putInt(offset, key.length);
+        int end = offset + HEADER_BYTES + key.length + value.length;
+        if (buffer.capacity() - end >= 4) {
+            buffer.putInt(end, 0);
+        }
+    }
+
+    private static int recordLength(@NotNull final ByteBuffer buffer, final int offset) {
+        return HEADER_BYTES + buffer.getInt(offset) + buffer.getInt(offset + 4);
+    }
+
+    @NotNull
+    private static byte[] readKey(@NotNull final ByteBuffer buffer, final int offset) {
+        byte[] key = new byte[buffer.getInt(offset)];
+        ByteBuffer in = buffer.duplicate();
+        in.position(offset + HEADER_BYTES);
+        in.get(key);
+        return key;
+    }
+
+    @NotNull
+    private static byte[] readValue(@NotNull final ByteBuffer buffer, final int offset) {
+        byte[] value = new byte[buffer.getInt(offset + 4)];
+        ByteBuffer in = buffer.duplicate();
+        in.position(offset + HEADER_BYTES + buffer.getInt(offset));
+        in.get(value);
+        return value;
+    }
+
+    @Nullable
+    private byte[] decrypt(@NotNull final byte[] stored) {
+        if (mCipher == null) {
+            return stored;
+        }
+        try {
+            return mCipher.decrypt(stored);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static int checksum(@NotNull final byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * A compaction in progress: the new file, with the records it keeps from the file as it was when it started.
+     * Records are only ever appended, so those can be copied without holding the lock.
+     */
+    private static final class Compaction {
+        private final File mFile;
+        private final ByteBuffer mSource;
+        private final List<Integer> mSourceOffsets;
+        private final int mStartEnd;
+        private final int mMaxSizeBytes;
+        private final Unmapper mUnmapper;
+        private final Map<String, Integer> mOffsets = new HashMap<String, Integer>();
+        private FileChannel mChannel;
+        private MappedByteBuffer mBuffer;
+        private int mEnd;
+        @Nullable
+        private IOException mUnmapFailure;
+
+        Compaction(@NotNull final File file, @NotNull final ByteBuffer source, @NotNull final List<Integer> sourceOffsets
+                , final int startEnd, final int maxSizeBytes, @NotNull final Unmapper unmapper) {
+            mFile = file;
+            mSource = source;
+            mSourceOffsets = sourceOffsets;
+            mStartEnd = startEnd;
+            mMaxSizeBytes = maxSizeBytes;
+            mUnmapper = unmapper;
+        }
+
+        /**
+         * Writes the kept records to the new file.
+         * @throws IOException If the file can't be written.
+         */
+        void write() throws IOException {
+            mChannel = new RandomAccessFile(mFile, "rw").getChannel();
+            mChannel.truncate(0);
+            mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, mMaxSizeBytes);
+            for (int offset : mSourceOffsets) {
+                add(readKey(mSource, offset), readValue(mSource, offset));
+            }
+        }
+
+        /**
+         * Appends a record to the new file, if there is room for it.
+         * @param key Key.
+         * @param value Stored body.
+         * @return Whether there was room.
+         */
+        boolean add(@NotNull final byte[] key, @NotNull final byte[] value) {
+            int length = HEADER_BYTES + key.length + value.length;
+            if (mEnd + length > mMaxSizeBytes) {
+                return false;
+            }
+            RecordStore.write(mBuffer, mEnd, key, value);
+            mOffsets.put(new String(key, UTF_8), mEnd);
+            mEnd += length;
+            return true;
+        }
+
+        /**
+         * Writes the new file out, unmaps it and closes it. A mapping that can't be released is left to the garbage
+         * collector, and the failure kept for {@link #swap(Compaction)}.
+         * @throws IOException If the file can't be closed.
+         */
+        void close() throws IOException {
+            mBuffer.force();
+            MappedByteBuffer buffer = mBuffer;
+            mBuffer = null;
+            try {
+                mUnmapper.unmap(buffer);
+            } catch (IOException e) {
+                mUnmapFailure = e;
+            }
+            mChannel.close();
+        }
+
+        /**
+         * Closes and deletes the new file after a failure.
+         */
+        void abandon() {
+            if (mBuffer != null) {
+                try {
+                    mUnmapper.unmap(mBuffer);
+                } catch (IOException e) {
+                    //Already failing; the mapping is left to the garbage collector.
+                }
+                mBuffer = null;
+            }
+            try {
+                if (mChannel != null) {
+                    mChannel.close();
+                }
+            } catch (IOException e) {
+                //Already failing; the file is deleted anyway.
+            }
+            if (!mFile.delete()) {
+                mFile.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Releases a mapping right away rather than once it is garbage collected. The buffer must not be touched
+     * afterwards.
+     */
+    interface Unmapper {
+        /**
+         * Releases a mapping.
+         * @param buffer Mapping to release.
+         * @throws IOException If it can't be released, in which case it is left to the garbage collector.
+         */
+        void unmap(@NotNull MappedByteBuffer buffer) throws IOException;
+    }
+
+    /**
+     * Releases mappings through their cleaner. Java has no public way to do it, so this uses Unsafe.invokeCleaner on
+     * Java 9 and later and the buffer's own cleaner on Java 8, both looked up on first use.
+     */
+    private static final class CleanerUnmapper implements Unmapper {
+        static final CleanerUnmapper INSTANCE = new CleanerUnmapper();
+
+        @Nullable
+        private final Object mUnsafe;
+        @Nullable
+        private final Method mInvokeCleaner;
+        @Nullable
+        private final Exception mLookupFailure;
+
+        private CleanerUnmapper() {
+            Object unsafe = null;
+            Method invokeCleaner = null;
+            Exception lookupFailure = null;
+            try {
+                Field field = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafe = field.get(null);
+                invokeCleaner = unsafe.getClass().getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                //Java 8, which has the buffer's cleaner instead.
+                lookupFailure = e;
+            } catch (ReflectiveOperationException e) {
+                lookupFailure = e;
+            } catch (RuntimeException e) {
+                lookupFailure = e;
+            }
+            mUnsafe = unsafe;
+            mInvokeCleaner = invokeCleaner;
+            mLookupFailure = lookupFailure;
+        }
+
+        @Override
+        public void unmap(@NotNull final MappedByteBuffer buffer) throws IOException {
+            try {
+                if (mInvokeCleaner != null) {
+                    mInvokeCleaner.invoke(mUnsafe, buffer);
+                    return;
+                }
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (ReflectiveOperationException e) {
+                throw failure(e);
+            } catch (RuntimeException e) {
+                //Not accessible on this runtime.
+                throw failure(e);
+            }
+        }
+
+        @NotNull
+        private IOException failure(@NotNull final Exception cause) {
+            IOException failure = new IOException("Can't release the store file's mapping on this runtime", cause);
+            if (mLookupFailure != null) {
+                failure.addSuppressed(mLookupFailure);
+            }
+            return failure;
+        }
+    }
+
+    /**
+     * Lazily creates the thread that compacts stores, which stops while there is nothing to compact.
+     */
+    private static final class Holder {
+        static final ThreadPoolExecutor EXECUTOR = createExecutor();
+
+        private Holder() {
+            //Does nothing.
+        }
+
+        @NotNull
+        private static ThreadPoolExecutor createExecutor() {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES
+                    , new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(@NotNull final Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Blockscore-RecordStore");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Type;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded in-memory cache of parsed responses, keyed by request URL. Once full, the least recently used entry
+ * makes room for the next one, and entries older than their time to live are dropped when they are next looked up.
+ * Entries remember the type they were parsed into, so a read expecting another type misses. Every invalidation
+ * starts a new generation, which is remembered for the URL it dropped, and a read only stores its response if
+ * its own URL wasn't invalidated while it was in flight, since what it read may predate the write behind the
+ * invalidation. A write's response stands in for a read of what it wrote, but only if no other write to it
+ * overlapped, since the server may have applied that one last. As many invalidations as there are entries are
+ * remembered; reads older than the ones forgotten since aren't stored. The cache keeps copies of what it is given
+ * and hands out copies of those, so that no caller can change what another one reads.
+ */
+final class ResponseCache {
+    /**
+     * A generation that {@link #put(String, Type, Object, long)} never stores a response with.
+     */
+    static final long STALE = -1;
+
+    private final int mMaxEntries;
+    private final long mTtlNanos;
+    private final CacheStatistics mStatistics = new CacheStatistics();
+    private final Map<String, Entry> mEntries;
+    private final Map<String, Long> mInvalidations;
+    private long mGeneration;
+    //The newest generation whose invalidation is no longer remembered.
+    private long mForgottenGeneration;
+
+    /**
+     * Creates an empty cache.
+     * @param maxEntries Maximum number of entries.
+     * @param ttlNanos How long an entry stays fresh after it is stored.
+     */
+    ResponseCache(final int maxEntries, final long ttlNanos) {
+        mMaxEntries = maxEntries;
+        mTtlNanos = ttlNanos;
+        mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                if (size() <= mMaxEntries) {
+                    return false;
+                }
+                mStatistics.addEviction();
+                return true;
+            }
+        };
+        mInvalidations = new LinkedHashMap<String, Long>() {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Long> eldest) {
+                if (size() <= mMaxEntries) {
+                    return false;
+                }
+                mForgottenGeneration = eldest.getValue();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Looks a response up, counting the hit or miss.
+     * @param url Request URL.
+     * @param type Type the caller expects.
+     * @return Copy of the cached response, or null if there is no fresh one of that type.
+     */
+    @Nullable
+    Object get(@NotNull final String url, @NotNull final Type type) {
+        Entry entry = getEntry(url, type);
+        return entry == null ? null : ModelCopier.copy(entry.mValue);
+    }
+
+    @Nullable
+    private synchronized Entry getEntry(@NotNull final String url, @NotNull final Type type) {
+        Entry entry = mEntries.get(url);
+        if (entry != null && System.nanoTime() - entry.mExpiresNanos >= 0) {
+            mEntries.remove(url);
+            mStatistics.addExpiration();
+            mStatistics.update(mEntries.size());
+            entry = null;
+        }
+        if (entry == null || !entry.mType.equals(type)) {
+            mStatistics.addMiss();
+            return null;
+        }
+        mStatistics.addHit();
+        return entry;
+    }
+
+    /**
+     * Gets the current generation, to be passed to {@link #put(String, Type, Object, long)} with the response of
+     * a read sent now.
+     * @return Generation.
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Stores a response, unless its URL was invalidated since the given generation.
+     * @param url Request URL.
+     * @param type Type the response was parsed into.
+     * @param value Parsed response.
+     * @param generation Generation when the read was sent, or the one {@link #invalidateWritten(String, long)}
+     *                   returned for a write.
+     */
+    void put(@NotNull final String url, @NotNull final Type type, @NotNull final Object value, final long generation) {
+        //Copied outside the lock, which every lookup takes.
+        Entry entry = new Entry(type, ModelCopier.copy(value), System.nanoTime() + mTtlNanos);
+        synchronized (this) {
+            Long invalidated = mInvalidations.get(url);
+            if (generation >= (invalidated == null ? mForgottenGeneration : invalidated)) {
+                mEntries.put(url, entry);
+                mStatistics.update(mEntries.size());
+            }
+        }
+    }
+
+    /**
+     * Drops the entry for a URL once a write to what it reads is over, like {@link #invalidate(String)}, and
+     * tells whether the write's response may be stored in its place.
+     * @param url Request URL.
+     * @param sentGeneration Generation that invalidating the URL started when the write was sent.
+     * @return Generation to store the write's response with, or {@link #STALE} if the URL was invalidated again
+     * while the write was in flight.
+     */
+    synchronized long invalidateWritten(@NotNull final String url, final long sentGeneration) {
+        Long invalidated = mInvalidations.get(url);
+        long generation = invalidate(url);
+        return invalidated != null && invalidated == sentGeneration ? generation : STALE;
+    }
+
+    /**
+     * Drops the entry for a URL, if there is one, and starts a new generation for it.
+     * @param url Request URL.
+     * @return Generation started.
+     */
+    synchronized long invalidate(@NotNull final String url) {
+        mGeneration++;
+        //Removed first, so the URL moves to the end of the eviction order.
+        mInvalidations.remove(url);
+        mInvalidations.put(url, mGeneration);
+        if (mEntries.remove(url) != null) {
+            mStatistics.update(mEntries.size());
+        }
+        return mGeneration;
+    }
+
+    @NotNull
+    CacheStatistics getStatistics() {
+        return mStatistics;
+    }
+
+    private static final class Entry {
+        private final Type mType;
+        private final Object mValue;
+        private final long mExpiresNanos;
+
+        Entry(@NotNull final Type type, @NotNull final Object value, final long expiresNanos) {
+            mType = type;
+            mValue = value;
+            mExpiresNanos = expiresNanos;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How calls to idempotent endpoints are retried after network failures, server errors and 429 responses.
+ * The wait before each retry doubles, up to a cap, and is jittered so that clients failing together don't
+ * retry together. Calls to other endpoints, and calls rejected as invalid, are never retried.
+ */
+public final class RetryPolicy {
+    /**
+     * Never retries.
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0, TimeUnit.MILLISECONDS);
+
+    /**
+     * Up to 3 attempts, waiting about 100 ms and then 200 ms between them. Clients only retry when given a policy
+     * such as this one.
+     */
+    public static final RetryPolicy STANDARD = new RetryPolicy(3, 100, 2000, TimeUnit.MILLISECONDS);
+
+    private final int mMaxAttempts;
+    private final long mInitialBackoffMillis;
+    private final long mMaxBackoffMillis;
+
+    /**
+     * Creates a retry policy.
+     * @param maxAttempts Maximum number of attempts per call, including the first one.
+     * @param initialBackoff Wait before the first retry.
+     * @param maxBackoff Longest wait before any retry.
+     * @param timeUnit Unit of the waits.
+     */
+    public RetryPolicy(final int maxAttempts, final long initialBackoff, final long maxBackoff
+            , @NotNull final TimeUnit timeUnit) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts < 1");
+        }
+        if (initialBackoff < 0 || maxBackoff < initialBackoff) {
+            throw new IllegalArgumentException("Backoffs must satisfy 0 <= initialBackoff <= maxBackoff");
+        }
+        mMaxAttempts = maxAttempts;
+        mInitialBackoffMillis = timeUnit.toMillis(initialBackoff);
+        mMaxBackoffMillis = timeUnit.toMillis(maxBackoff);
+    }
+
+    /**
+     * Gets the maximum number of attempts per call, including the first one.
+     * @return Maximum attempts.
+     */
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    /**
+     * Gets the wait before the first retry. (ms)
+     * @return Initial backoff.
+     */
+    public long getInitialBackoffMillis() {
+        return mInitialBackoffMillis;
+    }
+
+    /**
+     * Gets the longest wait before any retry. (ms)
+     * @return Maximum backoff.
+     */
+    public long getMaxBackoffMillis() {
+        return mMaxBackoffMillis;
+    }
+
+    /**
+     * Picks the wait before a retry: the doubled backoff, capped, then randomly cut by up to half.
+     * @param failedAttempts Number of attempts made so far.
+     * @return Wait before the next attempt.
+     */
+    long getBackoffNanos(final int failedAttempts) {
+        long backoffMillis = mInitialBackoffMillis << Math.min(failedAttempts - 1, 30);
+        if (backoffMillis > mMaxBackoffMillis || backoffMillis < 0) {
+            backoffMillis = mMaxBackoffMillis;
+        }
+        long backoffNanos = TimeUnit.MILLISECONDS.toNanos(backoffMillis);
+        return backoffNanos / 2 + (long) (ThreadLocalRandom.current().nextDouble() * (backoffNanos / 2));
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RetryPolicy)) {
+            return false;
+        }
+        RetryPolicy that = (RetryPolicy) o;
+        return mMaxAttempts == that.mMaxAttempts
+                && mInitialBackoffMillis == that.mInitialBackoffMillis
+                && mMaxBackoffMillis == that.mMaxBackoffMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(new long[] {mMaxAttempts, mInitialBackoffMillis, mMaxBackoffMillis});
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RetryPolicy{maxAttempts=%d, initialBackoff=%dms, maxBackoff=%dms}"
+                , mMaxAttempts, mInitialBackoffMillis, mMaxBackoffMillis);
+    }
+}
@@ -0,0 +1,61 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Gauges and wait-time histograms for the priority scheduler of a single API client, kept per priority.
+ */
+public final class SchedulerStatistics {
+    private final AtomicIntegerArray mQueuedCalls = new AtomicIntegerArray(Priority.values().length);
+    private final Map<Priority, WaitTimeHistogram> mWaitTimes = new EnumMap<Priority, WaitTimeHistogram>(Priority.class);
+    private volatile int mInFlightCalls;
+
+    SchedulerStatistics() {
+        for (Priority priority : Priority.values()) {
+            mWaitTimes.put(priority, new WaitTimeHistogram());
+        }
+    }
+
+    /**
+     * Gets the number of calls past the scheduler right now.
+     * @return In-flight calls.
+     */
+    public int getInFlightCalls() {
+        return mInFlightCalls;
+    }
+
+    /**
+     * Gets the number of calls of a priority waiting in the scheduler right now.
+     * @param priority Priority.
+     * @return Queued calls.
+     */
+    public int getQueuedCalls(@NotNull final Priority priority) {
+        return mQueuedCalls.get(priority.ordinal());
+    }
+
+    /**
+     * Gets how long calls of a priority waited in the scheduler before going ahead, including calls that didn't
+     * have to wait.
+     * @param priority Priority.
+     * @return Wait-time histogram.
+     */
+    @NotNull
+    public WaitTimeHistogram getWaitTimes(@NotNull final Priority priority) {
+        return mWaitTimes.get(priority);
+    }
+
+    void update(final int inFlightCalls, @NotNull final int[] queuedCalls) {
+        mInFlightCalls = inFlightCalls;
+        for (int i = 0; i < queuedCalls.length; i++) {
+            mQueuedCalls.set(i, queuedCalls[i]);
+        }
+    }
+
+    void addWaitTime(@NotNull final Priority priority, final long waitNanos) {
+        mWaitTimes.get(priority).add(waitNanos);
+    }
+}
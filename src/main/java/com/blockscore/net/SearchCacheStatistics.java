@@ -0,0 +1,37 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Counters for the watchlist search cache of a single API client, including the search time it saved.
+ */
+public final class SearchCacheStatistics {
+    private final CacheStatistics mCacheStatistics;
+    private double mSavedSearchTime;
+
+    SearchCacheStatistics(@NotNull final CacheStatistics cacheStatistics) {
+        mCacheStatistics = cacheStatistics;
+    }
+
+    /**
+     * Gets the hit, miss and eviction counters of the search cache.
+     * @return Cache statistics.
+     */
+    @NotNull
+    public CacheStatistics getCacheStatistics() {
+        return mCacheStatistics;
+    }
+
+    /**
+     * Gets the API search time of every search answered from the cache, added up. It is in the same unit as
+     * {@link com.blockscore.models.results.WatchlistSearchResults#getSearchTime()}.
+     * @return Search time saved.
+     */
+    public synchronized double getSavedSearchTime() {
+        return mSavedSearchTime;
+    }
+
+    synchronized void addSavedSearchTime(final double searchTime) {
+        mSavedSearchTime += searchTime;
+    }
+}
@@ -0,0 +1,23 @@
+package com.blockscore.net;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+
+/**
+ * Stamps an exchange with the time its request goes out. As a network interceptor it only runs once the request
+ * has left the dispatcher's queue, holds its host permits and has a connection, so latency measured from here is
+ * the server's and the network's alone.
+ */
+final class SendTimeInterceptor implements Interceptor {
+    @Override
+    public Response intercept(final Chain chain) throws IOException {
+        Request request = chain.request();
+        if (request.tag() instanceof Exchange) {
+            ((Exchange) request.tag()).markSent();
+        }
+        return chain.proceed(request);
+    }
+}
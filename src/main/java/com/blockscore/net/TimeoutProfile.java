@@ -0,0 +1,82 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Socket timeouts for an endpoint. Interactive endpoints usually want short timeouts, while list
+ * endpoints that return large bodies want long ones.
+ */
+public final class TimeoutProfile {
+    private final long mConnectTimeoutMillis;
+    private final long mReadTimeoutMillis;
+    private final long mWriteTimeoutMillis;
+
+    /**
+     * Creates a timeout profile. A timeout of zero means no timeout.
+     * @param connectTimeout Connect timeout.
+     * @param readTimeout Read timeout.
+     * @param writeTimeout Write timeout.
+     * @param timeUnit Unit of the timeouts.
+     */
+    public TimeoutProfile(final long connectTimeout, final long readTimeout, final long writeTimeout
+            , @NotNull final TimeUnit timeUnit) {
+        if (connectTimeout < 0 || readTimeout < 0 || writeTimeout < 0) {
+            throw new IllegalArgumentException("timeout < 0");
+        }
+        mConnectTimeoutMillis = timeUnit.toMillis(connectTimeout);
+        mReadTimeoutMillis = timeUnit.toMillis(readTimeout);
+        mWriteTimeoutMillis = timeUnit.toMillis(writeTimeout);
+    }
+
+    /**
+     * Gets the connect timeout. (ms)
+     * @return Connect timeout.
+     */
+    public long getConnectTimeoutMillis() {
+        return mConnectTimeoutMillis;
+    }
+
+    /**
+     * Gets the read timeout. (ms)
+     * @return Read timeout.
+     */
+    public long getReadTimeoutMillis() {
+        return mReadTimeoutMillis;
+    }
+
+    /**
+     * Gets the write timeout. (ms)
+     * @return Write timeout.
+     */
+    public long getWriteTimeoutMillis() {
+        return mWriteTimeoutMillis;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TimeoutProfile)) {
+            return false;
+        }
+        TimeoutProfile that = (TimeoutProfile) o;
+        return mConnectTimeoutMillis == that.mConnectTimeoutMillis
+                && mReadTimeoutMillis == that.mReadTimeoutMillis
+                && mWriteTimeoutMillis == that.mWriteTimeoutMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(new long[] {mConnectTimeoutMillis, mReadTimeoutMillis, mWriteTimeoutMillis});
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TimeoutProfile{connect=%dms, read=%dms, write=%dms}"
+                , mConnectTimeoutMillis, mReadTimeoutMillis, mWriteTimeoutMillis);
+    }
+}
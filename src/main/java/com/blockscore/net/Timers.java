@@ -0,0 +1,87 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The single daemon thread that fires deadlines and delayed calls for every client. Scheduled actions must be
+ * short and must not block, since they all share the one thread. Anything that might, such as an action that
+ * can end up delivering an outcome to user code, is scheduled with {@link #schedule(Runnable, long, Executor)}
+ * so the timer thread only hands it over.
+ */
+final class Timers {
+    private Timers() {
+        //Does nothing.
+    }
+
+    /**
+     * Runs an action after a delay.
+     * @param action Action to run.
+     * @param delayNanos Delay before running it.
+     * @return Future that can cancel the action.
+     */
+    @NotNull
+    static ScheduledFuture<?> schedule(@NotNull final Runnable action, final long delayNanos) {
+        return Holder.SCHEDULER.schedule(action, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Runs an action on an executor after a delay. The timer thread only hands the action over, so the action may
+     * block or call back into user code without holding up any other timer.
+     * @param action Action to run.
+     * @param delayNanos Delay before running it.
+     * @param executor Executor to run it on.
+     * @return Future that can cancel the action before it is handed over.
+     */
+    @NotNull
+    static ScheduledFuture<?> schedule(@NotNull final Runnable action, final long delayNanos
+            , @NotNull final Executor executor) {
+        return schedule(new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(action);
+            }
+        }, delayNanos);
+    }
+
+    /**
+     * Runs an action over and over, with a fixed delay between runs, until it is cancelled.
+     * @param action Action to run.
+     * @param delayNanos Delay before the first run and between runs.
+     * @return Future that cancels the action.
+     */
+    @NotNull
+    static ScheduledFuture<?> scheduleRepeating(@NotNull final Runnable action, final long delayNanos) {
+        return Holder.SCHEDULER.scheduleWithFixedDelay(action, delayNanos, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Lazily creates the scheduler on first use.
+     */
+    private static final class Holder {
+        static final ScheduledThreadPoolExecutor SCHEDULER = createScheduler();
+
+        private Holder() {
+            //Does nothing.
+        }
+
+        @NotNull
+        private static ScheduledThreadPoolExecutor createScheduler() {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(@NotNull final Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Blockscore-Timer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            return scheduler;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.blockscore.net;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket that hands out reservations instead of blocking. Each call takes a permit straight away and
+ * is told how long to wait for it, so calls queue up in arrival order without any thread waiting on the bucket.
+ * The bucket is tracked as the time at which it will next be empty, which needs no refill bookkeeping.
+ * The rate can be lowered when the server pushes back and recovers step by step afterwards.
+ */
+final class TokenBucket {
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final double MIN_RATE_FRACTION = 0.1;
+    private static final double RECOVERY_FRACTION = 0.05;
+
+    private final double mMaxPermitsPerSecond;
+    private final int mBurst;
+    private double mPermitsPerSecond;
+    private long mEmptyAtNanos;
+
+    /**
+     * Creates a bucket that starts full.
+     * @param limit Rate limit.
+     * @param nowNanos Current time, on the {@link System#nanoTime()} clock.
+     */
+    TokenBucket(@NotNull final RateLimit limit, final long nowNanos) {
+        mMaxPermitsPerSecond = limit.getPermitsPerSecond();
+        mPermitsPerSecond = mMaxPermitsPerSecond;
+        mBurst = limit.getBurst();
+        mEmptyAtNanos = nowNanos;
+    }
+
+    /**
+     * Takes a permit.
+     * @param nowNanos Current time, on the {@link System#nanoTime()} clock.
+     * @return How long the caller must wait before using the permit, or 0 to go right away.
+     */
+    synchronized long reserve(final long nowNanos) {
+        long intervalNanos = getIntervalNanos();
+        long emptyAt = mEmptyAtNanos - nowNanos > 0 ? mEmptyAtNanos : nowNanos;
+        mEmptyAtNanos = emptyAt + intervalNanos;
+        //The permit is due once the bucket, drained to this call, has room for the whole burst again.
+        return Math.max(0, emptyAt - (mBurst - 1) * intervalNanos - nowNanos);
+    }
+
+    /**
+     * Takes a permit only if it can be used right away.
+     * @param nowNanos Current time, on the {@link System#nanoTime()} clock.
+     * @return True if the permit was taken.
+     */
+    synchronized boolean tryReserve(final long nowNanos) {
+        long intervalNanos = getIntervalNanos();
+        long emptyAt = mEmptyAtNanos - nowNanos > 0 ? mEmptyAtNanos : nowNanos;
+        if (emptyAt - (mBurst - 1) * intervalNanos - nowNanos > 0) {
+            return false;
+        }
+        mEmptyAtNanos = emptyAt + intervalNanos;
+        return true;
+    }
+
+    /**
+     * Gives back a permit taken by a call that was never sent, so the next call can have it. Later reservations
+     * keep the wait they were given.
+     * @param nowNanos Current time, on the {@link System#nanoTime()} clock.
+     */
+    synchronized void refund(final long nowNanos) {
+        long emptyAt = mEmptyAtNanos - getIntervalNanos();
+        mEmptyAtNanos = emptyAt - nowNanos > 0 ? emptyAt : nowNanos;
+    }
+
+    /**
+     * Halves the rate, down to a tenth of the configured rate, and drops any saved-up burst.
+     * @param nowNanos Current time, on the {@link System#nanoTime()} clock.
+     */
+    synchronized void decrease(final long nowNanos) {
+        mPermitsPerSecond = Math.max(mMaxPermitsPerSecond * MIN_RATE_FRACTION, mPermitsPerSecond / 2);
+        long drainedAt = nowNanos + (mBurst - 1) * getIntervalNanos();
+        if (drainedAt - mEmptyAtNanos > 0) {
+            mEmptyAtNanos = drainedAt;
+        }
+    }
+
+    /**
+     * Raises a lowered rate by a small step, up to the configured rate.
+     */
+    synchronized void increase() {
+        mPermitsPerSecond = Math.min(mMaxPermitsPerSecond, mPermitsPerSecond + mMaxPermitsPerSecond * RECOVERY_FRACTION);
+    }
+
+    /**
+     * Gets the rate currently in effect.
+     * @return Permits per second.
+     */
+    synchronized double getPermitsPerSecond() {
+        return mPermitsPerSecond;
+    }
+
+    private long getIntervalNanos() {
+        return (long) (NANOS_PER_SECOND / mPermitsPerSecond);
+    }
+}
@@ -0,0 +1,68 @@
+package com.blockscore.net;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Byte counters for the traffic of a single API client. Compressed counts are what went over the wire,
+ * uncompressed counts are what was serialized or parsed.
+ */
+public final class TransferStatistics {
+    private final AtomicLong mRequestBytesUncompressed = new AtomicLong();
+    private final AtomicLong mRequestBytesCompressed = new AtomicLong();
+    private final AtomicLong mResponseBytesUncompressed = new AtomicLong();
+    private final AtomicLong mResponseBytesCompressed = new AtomicLong();
+
+    /**
+     * Gets the number of request body bytes before compression.
+     * @return Uncompressed request bytes.
+     */
+    public long getRequestBytesUncompressed() {
+        return mRequestBytesUncompressed.get();
+    }
+
+    /**
+     * Gets the number of request body bytes sent over the wire.
+     * @return Compressed request bytes.
+     */
+    public long getRequestBytesCompressed() {
+        return mRequestBytesCompressed.get();
+    }
+
+    /**
+     * Gets the number of response body bytes after decompression.
+     * @return Uncompressed response bytes.
+     */
+    public long getResponseBytesUncompressed() {
+        return mResponseBytesUncompressed.get();
+    }
+
+    /**
+     * Gets the number of response body bytes received over the wire.
+     * @return Compressed response bytes.
+     */
+    public long getResponseBytesCompressed() {
+        return mResponseBytesCompressed.get();
+    }
+
+    /**
+     * Gets the number of body bytes that compression kept off the wire, in both directions.
+     * @return Bytes saved.
+     */
+    public long getBytesSaved() {
+        return getRequestBytesUncompressed() - getRequestBytesCompressed()
+                + getResponseBytesUncompressed() - getResponseBytesCompressed();
+    }
+
+    void addRequestBytes(final long uncompressed, final long compressed) {
+        mRequestBytesUncompressed.addAndGet(uncompressed);
+        mRequestBytesCompressed.addAndGet(compressed);
+    }
+
+    void addResponseBytesUncompressed(final long count) {
+        mResponseBytesUncompressed.addAndGet(count);
+    }
+
+    void addResponseBytesCompressed(final long count) {
+        mResponseBytesCompressed.addAndGet(count);
+    }
+}
@@ -0,0 +1,61 @@
+package com.blockscore.net;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how long calls waited, in buckets with fixed upper bounds. Bucket i holds waits longer than the bound of
+ * bucket i - 1 and no longer than its own; the last bucket has no upper bound.
+ */
+public final class WaitTimeHistogram {
+    private static final long[] UPPER_BOUNDS_MILLIS = {1, 5, 10, 50, 100, 500, 1000, 5000, 10000, Long.MAX_VALUE};
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(UPPER_BOUNDS_MILLIS.length);
+
+    /**
+     * Gets the number of buckets.
+     * @return Bucket count.
+     */
+    public int getBucketCount() {
+        return UPPER_BOUNDS_MILLIS.length;
+    }
+
+    /**
+     * Gets the longest wait a bucket holds. (ms)
+     * @param bucket Bucket index.
+     * @return Upper bound, or {@link Long#MAX_VALUE} for the last bucket.
+     */
+    public long getUpperBoundMillis(final int bucket) {
+        return UPPER_BOUNDS_MILLIS[bucket];
+    }
+
+    /**
+     * Gets the number of calls whose wait fell in a bucket.
+     * @param bucket Bucket index.
+     * @return Call count.
+     */
+    public long getCount(final int bucket) {
+        return mCounts.get(bucket);
+    }
+
+    /**
+     * Gets the number of calls counted in every bucket.
+     * @return Call count.
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < mCounts.length(); i++) {
+            total += mCounts.get(i);
+        }
+        return total;
+    }
+
+    void add(final long waitNanos) {
+        long waitMillis = TimeUnit.NANOSECONDS.toMillis(waitNanos);
+        int bucket = 0;
+        while (waitMillis > UPPER_BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+        mCounts.incrementAndGet(bucket);
+    }
+}
@@ -0,0 +1,57 @@
+package com.blockscore.net;
+
+/**
+ * Outcome of warming up an API client's connections.
+ */
+public final class WarmUpResult {
+    private final int mRequestedConnections;
+    private final int mOpenedConnections;
+    private final int mIdleConnections;
+    private final long mElapsedMillis;
+
+    WarmUpResult(final int requestedConnections, final int openedConnections, final int idleConnections
+            , final long elapsedMillis) {
+        mRequestedConnections = requestedConnections;
+        mOpenedConnections = openedConnections;
+        mIdleConnections = idleConnections;
+        mElapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Gets the number of connections that were asked for.
+     * @return Requested connections.
+     */
+    public int getRequestedConnections() {
+        return mRequestedConnections;
+    }
+
+    /**
+     * Gets the number of warm-up requests that reached the server.
+     * @return Opened connections.
+     */
+    public int getOpenedConnections() {
+        return mOpenedConnections;
+    }
+
+    /**
+     * Gets the number of idle connections held by the pool once warm-up finished.
+     * @return Idle connections.
+     */
+    public int getIdleConnections() {
+        return mIdleConnections;
+    }
+
+    /**
+     * Gets how long warm-up took. (ms)
+     * @return Elapsed time.
+     */
+    public long getElapsedMillis() {
+        return mElapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WarmUpResult{requested=%d, opened=%d, idle=%d, elapsedMillis=%d}"
+                , mRequestedConnections, mOpenedConnections, mIdleConnections, mElapsedMillis);
+    }
+}
@@ -1,8 +1,13 @@
 import com.blockscore.exceptions.NoApiKeyFoundException;
 import com.blockscore.net.BlockscoreApiClient;
+import com.blockscore.net.BlockscoreConfig;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Base64;
+
 /**
  * Basic API client tests.
  * Created by Tony Dieppa on 10/1/14.
@@ -19,4 +24,31 @@ public class APIClientTest {
         }
         Assert.assertNotNull(error);
     }
+
+    @Test
+    public void testClientsKeepTheirOwnAPIKeys() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody("[]"));
+        server.enqueue(new MockResponse().setBody("[]"));
+        server.start();
+        try {
+            String endpoint = server.url("/").toString();
+            BlockscoreApiClient first = new BlockscoreApiClient(new BlockscoreConfig.Builder("sk_test_first")
+                    .setEndpoint(endpoint).build());
+            BlockscoreApiClient second = new BlockscoreApiClient(new BlockscoreConfig.Builder("sk_test_second")
+                    .setEndpoint(endpoint).build());
+
+            first.listCompaniesSync();
+            second.listCompaniesSync();
+
+            Assert.assertEquals(basicAuth("sk_test_first"), server.takeRequest().getHeader("Authorization"));
+            Assert.assertEquals(basicAuth("sk_test_second"), server.takeRequest().getHeader("Authorization"));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    private String basicAuth(final String apiKey) throws Exception {
+        return "Basic " + Base64.getEncoder().encodeToString((apiKey + ":").getBytes("utf-8"));
+    }
 }
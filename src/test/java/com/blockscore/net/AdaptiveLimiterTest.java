@@ -0,0 +1,192 @@
+package com.blockscore.net;
+
+import com.blockscore.models.Company;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.junit.Assert;
+import org.junit.Test;
+import rx.Subscription;
+import rx.functions.Action1;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the adaptive concurrency limiter on its own and behind an API client.
+ */
+public class AdaptiveLimiterTest {
+    private static final long RTT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void limitGrowsWhileLatencyIsFlat() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 10, 100);
+        for (int round = 0; round < 20; round++) {
+            int limit = limiter.getStatistics().getLimit();
+            for (int i = 0; i < limit; i++) {
+                limiter.acquire(Exchange.NO_DEADLINE);
+            }
+            for (int i = 0; i < limit; i++) {
+                limiter.release(RTT_NANOS, false);
+            }
+        }
+        Assert.assertEquals(100, limiter.getStatistics().getLimit());
+        Assert.assertEquals(0, limiter.getStatistics().getInFlightCalls());
+    }
+
+    @Test
+    public void limitDoesNotGrowWhenIdle() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 10, 100);
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire(Exchange.NO_DEADLINE);
+            limiter.release(RTT_NANOS, false);
+        }
+        Assert.assertEquals(10, limiter.getStatistics().getLimit());
+    }
+
+    @Test
+    public void limitShrinksWhenLatencyClimbs() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 20, 100);
+        limiter.acquire(Exchange.NO_DEADLINE);
+        limiter.release(RTT_NANOS, false);
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire(Exchange.NO_DEADLINE);
+            limiter.release(RTT_NANOS * 10, false);
+        }
+        Assert.assertEquals(10, limiter.getStatistics().getLimit());
+    }
+
+    @Test
+    public void overloadCutsTheLimit() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(5, 20, 100);
+        for (int i = 0; i < 30; i++) {
+            limiter.acquire(Exchange.NO_DEADLINE);
+            limiter.release(RTT_NANOS, true);
+        }
+        Assert.assertEquals(5, limiter.getStatistics().getLimit());
+    }
+
+    @Test
+    public void waitersGetFreedSlotsInOrder() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 1);
+        final AtomicInteger order = new AtomicInteger();
+        final int[] ran = new int[2];
+        limiter.acquire(Exchange.NO_DEADLINE);
+        limiter.acquireAsync(new Runnable() {
+            @Override
+            public void run() {
+                ran[0] = order.incrementAndGet();
+            }
+        });
+        Runnable cancelled = new Runnable() {
+            @Override
+            public void run() {
+                Assert.fail();
+            }
+        };
+        limiter.acquireAsync(cancelled);
+        limiter.acquireAsync(new Runnable() {
+            @Override
+            public void run() {
+                ran[1] = order.incrementAndGet();
+            }
+        });
+        Assert.assertEquals(3, limiter.getStatistics().getQueuedCalls());
+        Assert.assertTrue(limiter.cancelAsync(cancelled));
+
+        limiter.release();
+        Assert.assertEquals(1, ran[0]);
+        limiter.release();
+        Assert.assertEquals(2, ran[1]);
+        limiter.release();
+        Assert.assertEquals(0, limiter.getStatistics().getInFlightCalls());
+    }
+
+    @Test
+    public void deadlineStopsTheWait() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 1);
+        limiter.acquire(Exchange.NO_DEADLINE);
+        try {
+            limiter.acquire(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50));
+            Assert.fail();
+        } catch (InterruptedIOException e) {
+            //Expected.
+        }
+        Assert.assertEquals(0, limiter.getStatistics().getQueuedCalls());
+    }
+
+    @Test
+    public void queueingForAConnectionIsNotReadAsServerLatency() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) throws InterruptedException {
+                Thread.sleep(20);
+                return new MockResponse().setBody("{\"id\":\"c1\"}");
+            }
+        });
+        server.start();
+        try {
+            //One request at a time reaches the server, so the other nine queue up inside the client.
+            BlockscoreApiClient client = TestClients.builder(server)
+                    .setConnectionPool(new BlockscoreConnectionPool(2, 1, TimeUnit.MINUTES, 1))
+                    .enableAdaptiveConcurrency(1, 10)
+                    .build();
+            final CountDownLatch done = new CountDownLatch(10);
+            for (int i = 0; i < 10; i++) {
+                client.getCompany("c1").subscribe(new Action1<Company>() {
+                    @Override
+                    public void call(final Company company) {
+                        done.countDown();
+                    }
+                });
+            }
+            Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+
+            Assert.assertEquals(10, client.getConcurrencyLimiterStatistics().getLimit());
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void clientHandsBackEverySlot() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}"));
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setBody("{\"id\":\"c3\"}").setBodyDelay(1, TimeUnit.SECONDS));
+        server.start();
+        try {
+            BlockscoreApiClient client = TestClients.builder(server)
+                    .enableAdaptiveConcurrency(1, 4)
+                    .build();
+            Assert.assertEquals(4, client.getConcurrencyLimiterStatistics().getLimit());
+
+            Assert.assertEquals("c1", client.getCompanySync("c1").getId());
+            try {
+                client.getCompanySync("c2");
+                Assert.fail();
+            } catch (RuntimeException e) {
+                //Expected.
+            }
+            Subscription subscription = client.getCompany("c3").subscribe(new Action1<Company>() {
+                @Override
+                public void call(final Company company) {
+                    Assert.fail();
+                }
+            });
+            server.takeRequest();
+            server.takeRequest();
+            server.takeRequest();
+            subscription.unsubscribe();
+
+            Assert.assertEquals(0, client.getConcurrencyLimiterStatistics().getInFlightCalls());
+            Assert.assertTrue(client.getConcurrencyLimiterStatistics().getLimit() < 4);
+        } finally {
+            server.shutdown();
+        }
+    }
+}
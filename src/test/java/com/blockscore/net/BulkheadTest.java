@@ -0,0 +1,115 @@
+package com.blockscore.net;
+
+import com.blockscore.exceptions.BulkheadFullException;
+import com.blockscore.models.Company;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import rx.functions.Action1;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests bulkheads against a local stand-in server that holds batch calls until released.
+ */
+public class BulkheadTest {
+    private MockWebServer mServer;
+    private final CountDownLatch mReleaseBatch = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) throws InterruptedException {
+                if (request.getPath().endsWith("/batch")) {
+                    mReleaseBatch.await(5, TimeUnit.SECONDS);
+                }
+                return new MockResponse().setBody("{\"id\":\"c1\"}");
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mReleaseBatch.countDown();
+        mServer.shutdown();
+    }
+
+    @Test
+    public void fullQueueRejectsAtOnce() throws Exception {
+        BlockscoreApiClient batch = createClient().withBulkhead("batch");
+        CountDownLatch done = new CountDownLatch(2);
+        batch.getCompany("batch").subscribe(countDown(done));
+        batch.getCompany("batch").subscribe(countDown(done));
+        mServer.takeRequest();
+
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        batch.getCompany("batch").subscribe(countDown(done), new Action1<Throwable>() {
+            @Override
+            public void call(final Throwable throwable) {
+                error.set(throwable);
+            }
+        });
+        Assert.assertTrue(error.get() instanceof BulkheadFullException);
+        Assert.assertEquals("batch", ((BulkheadFullException) error.get()).getBulkhead());
+
+        BulkheadStatistics statistics = batch.getBulkheadStatistics("batch");
+        Assert.assertEquals(1, statistics.getInFlightCalls());
+        Assert.assertEquals(1, statistics.getQueuedCalls());
+        Assert.assertEquals(1, statistics.getRejectedCalls());
+
+        mReleaseBatch.countDown();
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, statistics.getInFlightCalls());
+        Assert.assertEquals(0, statistics.getQueuedCalls());
+    }
+
+    @Test
+    public void saturatedBulkheadDoesNotDelayAnother() throws Exception {
+        BlockscoreApiClient client = createClient();
+        BlockscoreApiClient batch = client.withBulkhead("batch");
+        CountDownLatch done = new CountDownLatch(2);
+        batch.getCompany("batch").subscribe(countDown(done));
+        batch.getCompany("batch").subscribe(countDown(done));
+        mServer.takeRequest();
+
+        long start = System.nanoTime();
+        Assert.assertEquals("c1", client.withBulkhead("interactive").getCompanySync("c1").getId());
+        Assert.assertEquals("c1", client.getCompanySync("c1").getId());
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        Assert.assertEquals(1, batch.getBulkheadStatistics("batch").getQueuedCalls());
+
+        mReleaseBatch.countDown();
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownBulkheadIsRejected() {
+        createClient().withBulkhead("reports");
+    }
+
+    private static Action1<Company> countDown(final CountDownLatch latch) {
+        return new Action1<Company>() {
+            @Override
+            public void call(final Company company) {
+                latch.countDown();
+            }
+        };
+    }
+
+    private BlockscoreApiClient createClient() {
+        return TestClients.builder(mServer)
+                .addBulkhead(new Bulkhead("batch", 1, 1))
+                .addBulkhead(new Bulkhead("interactive", 4, 16))
+                .build();
+    }
+}
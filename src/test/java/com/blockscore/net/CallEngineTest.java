@@ -0,0 +1,310 @@
+package com.blockscore.net;
+
+import com.blockscore.common.Constants;
+import com.blockscore.exceptions.InvalidRequestException;
+import com.blockscore.models.Company;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import retrofit.Callback;
+import retrofit.RetrofitError;
+import retrofit.client.Response;
+import rx.functions.Action1;
+
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests the non-blocking engine behind the Observable methods against a local stand-in server.
+ */
+public class CallEngineTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void observableCallsAreParsedAndMapped() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}"));
+        mServer.enqueue(new MockResponse().setBody("[{\"id\":\"c1\"},{\"id\":\"c2\"}]"));
+        mServer.enqueue(new MockResponse().setResponseCode(400)
+                .setBody("{\"error\":{\"type\":\"invalid_request_error\",\"message\":\"Bad\"}}"));
+        mServer.start();
+        BlockscoreApiClient client = createClient(4);
+
+        Assert.assertEquals("c1", client.getCompanySync("c 1/x").getId());
+        RecordedRequest request = mServer.takeRequest();
+        Assert.assertEquals("/companies/c%201%2Fx", request.getPath());
+        Assert.assertEquals("Basic c2tfdGVzdDo=", request.getHeader("Authorization"));
+
+        List<Company> companies = client.listCompaniesSync();
+        Assert.assertEquals(2, companies.size());
+
+        try {
+            client.getCompanySync("c3");
+            Assert.fail();
+        } catch (InvalidRequestException e) {
+            //Expected.
+        }
+    }
+
+    @Test
+    public void deadlineCancelsObservableCall() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("{}").setBodyDelay(2, TimeUnit.SECONDS));
+        mServer.start();
+
+        try {
+            createClient(4).withDeadline(200, TimeUnit.MILLISECONDS).getCompanySync("c1");
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Throwable cause = e;
+            while (cause != null && !(cause instanceof InterruptedIOException)) {
+                cause = cause.getCause();
+            }
+            Assert.assertNotNull(cause);
+        }
+    }
+
+    @Test
+    public void callsBeyondTheLimitAreQueued() throws Exception {
+        final int calls = 100;
+        for (int i = 0; i < calls; i++) {
+            mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}").setBodyDelay(10, TimeUnit.MILLISECONDS));
+        }
+        mServer.start();
+        BlockscoreApiClient client = createClient(4);
+
+        final CountDownLatch done = new CountDownLatch(calls);
+        final AtomicInteger succeeded = new AtomicInteger();
+        for (int i = 0; i < calls; i++) {
+            client.getCompany("c1").subscribe(new Action1<Company>() {
+                @Override
+                public void call(final Company company) {
+                    succeeded.incrementAndGet();
+                    done.countDown();
+                }
+            }, new Action1<Throwable>() {
+                @Override
+                public void call(final Throwable throwable) {
+                    done.countDown();
+                }
+            });
+        }
+
+        Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+        Assert.assertEquals(calls, succeeded.get());
+    }
+    @Test
+    public void dispatcherThreadsStayWithinTheLimit() throws Exception {
+        final int calls = 500;
+        final int maxAsyncRequests = 8;
+        for (int i = 0; i < calls; i++) {
+            mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}").setBodyDelay(5, TimeUnit.MILLISECONDS));
+        }
+        mServer.start();
+        BlockscoreApiClient client = createClient(maxAsyncRequests);
+        Set<Thread> before = Thread.getAllStackTraces().keySet();
+
+        final CountDownLatch done = new CountDownLatch(calls);
+        final AtomicInteger succeeded = new AtomicInteger();
+        for (int i = 0; i < calls; i++) {
+            client.getCompany("c1").subscribe(new Action1<Company>() {
+                @Override
+                public void call(final Company company) {
+                    succeeded.incrementAndGet();
+                    done.countDown();
+                }
+            }, new Action1<Throwable>() {
+                @Override
+                public void call(final Throwable throwable) {
+                    done.countDown();
+                }
+            });
+        }
+        //Calls on the wire each hold a dispatcher thread; the rest wait in the dispatcher's queue without one.
+        int peak = 0;
+        while (!done.await(2, TimeUnit.MILLISECONDS)) {
+            int dispatcherThreads = 0;
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (!before.contains(thread) && thread.getName().startsWith("OkHttp Dispatcher")) {
+                    dispatcherThreads++;
+                }
+            }
+            peak = Math.max(peak, dispatcherThreads);
+        }
+
+        Assert.assertEquals(calls, succeeded.get());
+        //A thread finishing a call hands the next one to the pool before it is idle itself, so a few more can start.
+        Assert.assertTrue("Peak of " + peak + " dispatcher threads", peak > 0 && peak <= 2 * maxAsyncRequests);
+    }
+
+    @Test
+    public void blockedCallbackDoesNotHoldUpOtherDeadlines() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) throws InterruptedException {
+                if (request.getPath().endsWith("/slow")) {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                return new MockResponse().setBody("{\"id\":\"c1\"}");
+            }
+        });
+        mServer.start();
+        try {
+            //The only permit to the host is taken, so the next call's deadline passes while it waits for one.
+            BlockscoreApiClient client = TestClients.builder(mServer)
+                    .setConnectionPool(new BlockscoreConnectionPool(2, 1, TimeUnit.MINUTES, 1))
+                    .setMaxAsyncRequests(4)
+                    .build();
+            client.getCompany("slow", new Callback<Company>() {
+                @Override
+                public void success(final Company company, final Response response) {
+                }
+
+                @Override
+                public void failure(final RetrofitError error) {
+                }
+            });
+            mServer.takeRequest();
+            final CountDownLatch blocked = new CountDownLatch(1);
+            final AtomicReference<String> callbackThread = new AtomicReference<String>();
+            client.withDeadline(100, TimeUnit.MILLISECONDS).getCompany("c1", new Callback<Company>() {
+                @Override
+                public void success(final Company company, final Response response) {
+                }
+
+                @Override
+                public void failure(final RetrofitError error) {
+                    callbackThread.set(Thread.currentThread().getName());
+                    blocked.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            Assert.assertTrue(blocked.await(2, TimeUnit.SECONDS));
+
+            //A call from another client shares nothing but the timer thread.
+            long start = System.nanoTime();
+            try {
+                createClient(4).withDeadline(200, TimeUnit.MILLISECONDS).getCompanySync("slow");
+                Assert.fail();
+            } catch (RetrofitError e) {
+                Assert.assertTrue(e.getCause() instanceof InterruptedIOException);
+            }
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+            Assert.assertNotEquals("Blockscore-Timer", callbackThread.get());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void virtualThreadModeMakesCalls() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}"));
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c2\"}"));
+        mServer.start();
+        BlockscoreApiClient client = TestClients.builder(mServer)
+                .setMaxAsyncRequests(4)
+                .setExecutionMode(ExecutionMode.VIRTUAL_THREADS)
+                .build();
+
+        Assert.assertEquals("c1", client.getCompanySync("c1").getId());
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicInteger succeeded = new AtomicInteger();
+        client.getCompany("c2", new Callback<Company>() {
+            @Override
+            public void success(final Company company, final Response response) {
+                succeeded.incrementAndGet();
+                done.countDown();
+            }
+
+            @Override
+            public void failure(final RetrofitError error) {
+                done.countDown();
+            }
+        });
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, succeeded.get());
+    }
+
+    @Test
+    public void virtualThreadModeRunsCallsOnVirtualThreads() throws Exception {
+        Assume.assumeTrue("Virtual threads need Java 21 or later", ExecutionMode.isVirtualThreadsSupported());
+        final int calls = 200;
+        //The calls reach the server in any order, so each create's ID is made from its key: k7 creates c7.
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) {
+                String key = request.getHeader(Constants.IDEMPOTENCY_KEY_HEADER);
+                return new MockResponse().setBody("{\"id\":\"c" + key.substring(1) + "\"}")
+                        .setBodyDelay(20, TimeUnit.MILLISECONDS);
+            }
+        });
+        mServer.start();
+        IdempotencyJournal journal = IdempotencyJournal.open(mFolder.newFile());
+        BlockscoreApiClient client = TestClients.builder(mServer)
+                .setMaxAsyncRequests(calls)
+                .setExecutionMode(ExecutionMode.VIRTUAL_THREADS)
+                .setIdempotencyJournal(journal)
+                .build();
+
+        //Every call is on the wire at once, each recording its create in the journal from its own virtual thread.
+        final CountDownLatch done = new CountDownLatch(calls);
+        final AtomicInteger onVirtualThreads = new AtomicInteger();
+        for (int i = 0; i < calls; i++) {
+            client.withIdempotencyKey("k" + i).createCompany(new Company(), new Callback<Company>() {
+                @Override
+                public void success(final Company company, final Response response) {
+                    if (ExecutionMode.isVirtual(Thread.currentThread())) {
+                        onVirtualThreads.incrementAndGet();
+                    }
+                    done.countDown();
+                }
+
+                @Override
+                public void failure(final RetrofitError error) {
+                    done.countDown();
+                }
+            });
+        }
+
+        Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+        Assert.assertEquals(calls, onVirtualThreads.get());
+        Assert.assertEquals(calls, journal.size());
+        Assert.assertEquals("c0", journal.getId(Endpoint.CREATE_COMPANY, "k0"));
+        Assert.assertEquals("c199", journal.getId(Endpoint.CREATE_COMPANY, "k199"));
+        journal.close();
+    }
+
+    private BlockscoreApiClient createClient(final int maxAsyncRequests) {
+        return TestClients.builder(mServer).setMaxAsyncRequests(maxAsyncRequests).build();
+    }
+}
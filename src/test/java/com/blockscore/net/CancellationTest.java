@@ -0,0 +1,194 @@
+package com.blockscore.net;
+
+import com.blockscore.models.Company;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import rx.Subscription;
+import rx.functions.Action1;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests that cancelling a call frees its connection and worker at once, against a local stand-in server that
+ * never answers reads of company c1. The client allows a single call in flight, so the second call only goes
+ * through if the first one let go of everything it held.
+ */
+public class CancellationTest {
+    private static final long FREED_WITHIN_MILLIS = 2000;
+
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        //Answers by path: the server queues a request before taking its response, so queued responses could swap.
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) {
+                if (request.getPath().endsWith("/c1")) {
+                    return new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE);
+                }
+                if (request.getPath().endsWith("/slow-body")) {
+                    return new MockResponse().setBody("{\"id\":\"slow-body\"}").setBodyDelay(3, TimeUnit.SECONDS);
+                }
+                return new MockResponse().setBody("{\"id\":\"c2\"}");
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void unsubscribingAbortsTheCall() throws Exception {
+        BlockscoreApiClient client = createClient();
+        Subscription subscription = client.getCompany("c1").subscribe(new Action1<Company>() {
+            @Override
+            public void call(final Company company) {
+                Assert.fail();
+            }
+        });
+        mServer.takeRequest();
+        subscription.unsubscribe();
+
+        assertNextCallIsQuick(client);
+    }
+
+    @Test
+    public void timeoutOperatorAbortsTheCall() throws Exception {
+        BlockscoreApiClient client = createClient();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        final CountDownLatch failed = new CountDownLatch(1);
+        client.getCompany("c1").timeout(200, TimeUnit.MILLISECONDS).subscribe(new Action1<Company>() {
+            @Override
+            public void call(final Company company) {
+                Assert.fail();
+            }
+        }, new Action1<Throwable>() {
+            @Override
+            public void call(final Throwable throwable) {
+                error.set(throwable);
+                failed.countDown();
+            }
+        });
+        Assert.assertTrue(failed.await(FREED_WITHIN_MILLIS, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(error.get() instanceof TimeoutException);
+
+        assertNextCallIsQuick(client);
+    }
+
+    @Test
+    public void interruptingABlockingCallerAbortsTheCall() throws Exception {
+        final BlockscoreApiClient client = createClient();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread caller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    client.getCompanySync("c1");
+                } catch (RuntimeException e) {
+                    error.set(e);
+                }
+            }
+        });
+        caller.start();
+        mServer.takeRequest();
+        caller.interrupt();
+        caller.join(FREED_WITHIN_MILLIS);
+
+        Assert.assertFalse(caller.isAlive());
+        Throwable cause = error.get();
+        while (cause != null && !(cause instanceof InterruptedIOException)) {
+            cause = cause.getCause();
+        }
+        Assert.assertNotNull(cause);
+        assertNextCallIsQuick(client);
+    }
+
+    @Test
+    public void interruptDuringTheBodyReadIsReportedAndKept() throws Exception {
+        final BlockscoreApiClient client = createClient();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        final AtomicBoolean stillInterrupted = new AtomicBoolean();
+        Thread caller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    client.getCompanySync("slow-body");
+                } catch (RuntimeException e) {
+                    error.set(e);
+                    stillInterrupted.set(Thread.currentThread().isInterrupted());
+                }
+            }
+        });
+        caller.start();
+        mServer.takeRequest();
+        //The headers are out at once, so by now the caller is blocked reading the body.
+        Thread.sleep(200);
+        caller.interrupt();
+        caller.join(FREED_WITHIN_MILLIS);
+
+        Assert.assertFalse(caller.isAlive());
+        Throwable cause = error.get();
+        while (cause != null && !(cause instanceof InterruptedIOException)) {
+            cause = cause.getCause();
+        }
+        Assert.assertNotNull(String.valueOf(error.get()), cause);
+        Assert.assertTrue(stillInterrupted.get());
+        assertNextCallIsQuick(client);
+    }
+
+    @Test
+    public void interruptWatchOnlyRunsWhileCallersAreBlocked() throws Exception {
+        final BlockscoreApiClient client = createClient();
+        Thread caller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    client.getCompanySync("c1");
+                } catch (RuntimeException e) {
+                    //Interrupted below.
+                }
+            }
+        });
+        caller.start();
+        mServer.takeRequest();
+        Assert.assertTrue(Exchange.isWatchingForInterrupts());
+        caller.interrupt();
+        caller.join(FREED_WITHIN_MILLIS);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FREED_WITHIN_MILLIS);
+        while (Exchange.isWatchingForInterrupts() && System.nanoTime() - deadline < 0) {
+            Thread.sleep(10);
+        }
+        Assert.assertFalse(Exchange.isWatchingForInterrupts());
+    }
+
+    private void assertNextCallIsQuick(final BlockscoreApiClient client) {
+        long start = System.nanoTime();
+        Assert.assertEquals("c2", client.getCompanySync("c2").getId());
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < FREED_WITHIN_MILLIS);
+    }
+
+    private BlockscoreApiClient createClient() {
+        return TestClients.builder(mServer)
+                .setConnectionPool(new BlockscoreConnectionPool(1, 1, TimeUnit.MINUTES, 1))
+                .setMaxAsyncRequests(1)
+                .build();
+    }
+}
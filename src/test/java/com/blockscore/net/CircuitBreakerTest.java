@@ -0,0 +1,265 @@
+package com.blockscore.net;
+
+import com.blockscore.exceptions.CircuitOpenException;
+import com.blockscore.models.Company;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit.RetrofitError;
+import rx.functions.Action1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests the per-endpoint circuit breakers against a local stand-in server.
+ */
+public class CircuitBreakerTest {
+    private MockWebServer mServer;
+    private List<String> mTransitions;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mTransitions = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void failuresOpenTheBreakerAndCallsFailFast() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            mServer.enqueue(new MockResponse().setResponseCode(503));
+        }
+        mServer.start();
+        BlockscoreApiClient client = createClient(new CircuitBreakerPolicy(0.5, 4, 2, 1, TimeUnit.MINUTES));
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                client.getCompanySync("c1");
+                Assert.fail();
+            } catch (RuntimeException e) {
+                Assert.assertFalse(e instanceof CircuitOpenException);
+            }
+        }
+        Assert.assertEquals(CircuitState.OPEN, client.getCircuitState(Endpoint.GET_COMPANY));
+
+        try {
+            client.getCompanySync("c1");
+            Assert.fail();
+        } catch (CircuitOpenException e) {
+            Assert.assertEquals(Endpoint.GET_COMPANY, e.getEndpoint());
+            Assert.assertTrue(e.getRetryAfterMillis() > 0);
+        }
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch done = new CountDownLatch(1);
+        client.getCompany("c1").subscribe(new Action1<Company>() {
+            @Override
+            public void call(final Company company) {
+                done.countDown();
+            }
+        }, new Action1<Throwable>() {
+            @Override
+            public void call(final Throwable throwable) {
+                failure.set(throwable);
+                done.countDown();
+            }
+        });
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(failure.get() instanceof CircuitOpenException);
+
+        //Other endpoints have breakers of their own.
+        Assert.assertEquals(CircuitState.CLOSED, client.getCircuitState(Endpoint.LIST_COMPANIES));
+        Assert.assertEquals(2, mServer.getRequestCount());
+        Assert.assertEquals(Collections.singletonList("getCompany CLOSED->OPEN"), mTransitions);
+    }
+
+    @Test
+    public void successfulTrialCallClosesTheBreaker() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(500));
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}"));
+        mServer.start();
+        BlockscoreApiClient client = createClient(new CircuitBreakerPolicy(1, 1, 1, 200, TimeUnit.MILLISECONDS));
+
+        try {
+            client.getCompanySync("c1");
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertFalse(e instanceof CircuitOpenException);
+        }
+        Thread.sleep(300);
+        Assert.assertEquals("c1", client.getCompanySync("c1").getId());
+
+        Assert.assertEquals(CircuitState.CLOSED, client.getCircuitState(Endpoint.GET_COMPANY));
+        Assert.assertEquals(3, mTransitions.size());
+        Assert.assertEquals("getCompany OPEN->HALF_OPEN", mTransitions.get(1));
+        Assert.assertEquals("getCompany HALF_OPEN->CLOSED", mTransitions.get(2));
+    }
+
+    @Test
+    public void failedTrialCallReopensTheBreaker() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(500));
+        mServer.enqueue(new MockResponse().setResponseCode(502));
+        mServer.start();
+        BlockscoreApiClient client = createClient(new CircuitBreakerPolicy(1, 1, 1, 200, TimeUnit.MILLISECONDS));
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                client.getCompanySync("c1");
+                Assert.fail();
+            } catch (RuntimeException e) {
+                Assert.assertFalse(e instanceof CircuitOpenException);
+            }
+            Thread.sleep(300);
+        }
+
+        Assert.assertEquals(CircuitState.OPEN, client.getCircuitState(Endpoint.GET_COMPANY));
+        Assert.assertEquals("getCompany HALF_OPEN->OPEN", mTransitions.get(mTransitions.size() - 1));
+        Assert.assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void callsDuringTheTrialCallFailFast() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        mServer.setDispatcher(new Dispatcher() {
+            private int mRequests;
+
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) throws InterruptedException {
+                if (++mRequests == 1) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                release.await(5, TimeUnit.SECONDS);
+                return new MockResponse().setBody("{\"id\":\"c1\"}");
+            }
+        });
+        mServer.start();
+        BlockscoreApiClient client = createClient(new CircuitBreakerPolicy(1, 1, 1, 200, TimeUnit.MILLISECONDS));
+        try {
+            client.getCompanySync("c1");
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertFalse(e instanceof CircuitOpenException);
+        }
+        Thread.sleep(300);
+
+        final CountDownLatch done = new CountDownLatch(1);
+        client.getCompany("c1").subscribe(new Action1<Company>() {
+            @Override
+            public void call(final Company company) {
+                done.countDown();
+            }
+        });
+        mServer.takeRequest();
+        mServer.takeRequest();
+        try {
+            client.getCompanySync("c1");
+            Assert.fail();
+        } catch (CircuitOpenException e) {
+            //When the trial call ends is unknown, so callers are told to come back right away.
+            Assert.assertEquals(1, e.getRetryAfterMillis());
+        } finally {
+            release.countDown();
+        }
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(CircuitState.CLOSED, client.getCircuitState(Endpoint.GET_COMPANY));
+    }
+
+    @Test
+    public void clientErrorsDoNotOpenTheBreaker() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            mServer.enqueue(new MockResponse().setResponseCode(404));
+        }
+        mServer.start();
+        BlockscoreApiClient client = createClient(new CircuitBreakerPolicy(1, 2, 2, 1, TimeUnit.MINUTES));
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                client.getCompanySync("c1");
+                Assert.fail();
+            } catch (RetrofitError e) {
+                Assert.assertEquals(404, e.getResponse().getStatus());
+            }
+        }
+        Assert.assertEquals(CircuitState.CLOSED, client.getCircuitState(Endpoint.GET_COMPANY));
+        Assert.assertTrue(mTransitions.isEmpty());
+    }
+
+    @Test
+    public void lateOutcomesDoNotDecideTheTrialCall() throws Exception {
+        CircuitBreaker breaker = createBreaker();
+        long early = breaker.tryAcquire();
+        long failing = breaker.tryAcquire();
+        Assert.assertEquals(CircuitBreaker.NOT_A_TRIAL, early);
+        breaker.onFailure(failing);
+        Thread.sleep(100);
+
+        long trial = breaker.tryAcquire();
+        Assert.assertTrue(trial > 0);
+        //The call sent while the breaker was still closed finishes during the trial.
+        breaker.onSuccess(early);
+        Assert.assertEquals(CircuitState.HALF_OPEN, breaker.getState());
+        breaker.onAbandoned(early);
+        Assert.assertEquals(CircuitBreaker.REFUSED, breaker.tryAcquire());
+
+        breaker.onFailure(trial);
+        Assert.assertEquals(CircuitState.OPEN, breaker.getState());
+        Assert.assertEquals(Arrays.asList("getCompany CLOSED->OPEN", "getCompany OPEN->HALF_OPEN"
+                , "getCompany HALF_OPEN->OPEN"), mTransitions);
+    }
+
+    @Test
+    public void abandonedTrialCallsLetAnotherTrialThroughQuietly() throws Exception {
+        CircuitBreaker breaker = createBreaker();
+        breaker.onFailure(breaker.tryAcquire());
+        Thread.sleep(100);
+
+        long first = breaker.tryAcquire();
+        breaker.onAbandoned(first);
+        long second = breaker.tryAcquire();
+        Assert.assertTrue(second > 0);
+        Assert.assertNotEquals(first, second);
+        //Abandoning the first trial again must not free the second one's place.
+        breaker.onAbandoned(first);
+        Assert.assertEquals(CircuitBreaker.REFUSED, breaker.tryAcquire());
+
+        breaker.onSuccess(second);
+        Assert.assertEquals(CircuitState.CLOSED, breaker.getState());
+        Assert.assertEquals(Arrays.asList("getCompany CLOSED->OPEN", "getCompany OPEN->HALF_OPEN"
+                , "getCompany HALF_OPEN->CLOSED"), mTransitions);
+    }
+
+    private CircuitBreaker createBreaker() {
+        return new CircuitBreaker(Endpoint.GET_COMPANY, new CircuitBreakerPolicy(1, 1, 1, 50, TimeUnit.MILLISECONDS)
+                , new CircuitBreakerListener() {
+                    @Override
+                    public void onStateChange(final Endpoint endpoint, final CircuitState from, final CircuitState to) {
+                        mTransitions.add(endpoint.getMethodName() + " " + from + "->" + to);
+                    }
+                });
+    }
+
+    private BlockscoreApiClient createClient(final CircuitBreakerPolicy policy) {
+        return TestClients.builder(TestClients.config(mServer).setCircuitBreakerPolicy(policy))
+                .setCircuitBreakerListener(new CircuitBreakerListener() {
+                    @Override
+                    public void onStateChange(final Endpoint endpoint, final CircuitState from, final CircuitState to) {
+                        mTransitions.add(endpoint.getMethodName() + " " + from + "->" + to);
+                    }
+                })
+                .build();
+    }
+}
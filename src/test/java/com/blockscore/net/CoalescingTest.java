@@ -0,0 +1,240 @@
+package com.blockscore.net;
+
+import com.blockscore.models.Company;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit.Callback;
+import retrofit.RetrofitError;
+import retrofit.client.Response;
+import rx.Subscription;
+import rx.functions.Action1;
+
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests coalescing of identical reads against a local stand-in server.
+ */
+public class CoalescingTest {
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void identicalReadsShareOneRequest() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}").setBodyDelay(300, TimeUnit.MILLISECONDS));
+        mServer.start();
+        final BlockscoreApiClient client = createClient(true);
+
+        final List<Company> results = new CopyOnWriteArrayList<Company>();
+        final CountDownLatch done = new CountDownLatch(4);
+        client.getCompany("c1").subscribe(new Action1<Company>() {
+            @Override
+            public void call(final Company company) {
+                results.add(company);
+                done.countDown();
+            }
+        });
+        client.getCompany("c1").subscribe(new Action1<Company>() {
+            @Override
+            public void call(final Company company) {
+                results.add(company);
+                done.countDown();
+            }
+        });
+        client.getCompany("c1", new Callback<Company>() {
+            @Override
+            public void success(final Company company, final Response response) {
+                results.add(company);
+                done.countDown();
+            }
+
+            @Override
+            public void failure(final RetrofitError error) {
+                done.countDown();
+            }
+        });
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                results.add(client.getCompanySync("c1"));
+                done.countDown();
+            }
+        }).start();
+
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(4, results.size());
+        //The same outcome, but each caller can change its own copy without the others seeing it.
+        for (int i = 0; i < results.size(); i++) {
+            Assert.assertEquals("c1", results.get(i).getId());
+            for (int j = 0; j < i; j++) {
+                Assert.assertNotSame(results.get(j), results.get(i));
+            }
+        }
+        Assert.assertEquals(1, mServer.getRequestCount());
+        Assert.assertEquals(1, client.getCoalescingStatistics().getSentCalls());
+        Assert.assertEquals(3, client.getCoalescingStatistics().getCoalescedCalls());
+    }
+
+    @Test
+    public void differentReadsAreSentSeparately() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}").setBodyDelay(200, TimeUnit.MILLISECONDS));
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c2\"}").setBodyDelay(200, TimeUnit.MILLISECONDS));
+        mServer.start();
+        BlockscoreApiClient client = createClient(true);
+
+        final CountDownLatch done = new CountDownLatch(2);
+        Action1<Company> onCompany = new Action1<Company>() {
+            @Override
+            public void call(final Company company) {
+                done.countDown();
+            }
+        };
+        client.getCompany("c1").subscribe(onCompany);
+        client.getCompany("c2").subscribe(onCompany);
+
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, mServer.getRequestCount());
+        Assert.assertEquals(0, client.getCoalescingStatistics().getCoalescedCalls());
+    }
+
+    @Test
+    public void flightIsCancelledOnceEveryoneLeaves() throws Exception {
+        //The server queues a request before taking its response, so the test waits for the response to be taken.
+        final CountDownLatch firstTaken = new CountDownLatch(1);
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) {
+                if (firstTaken.getCount() > 0) {
+                    firstTaken.countDown();
+                    return new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE);
+                }
+                return new MockResponse().setBody("{\"id\":\"c1\"}");
+            }
+        });
+        mServer.start();
+        BlockscoreApiClient client = createClient(true);
+
+        Action1<Company> onCompany = new Action1<Company>() {
+            @Override
+            public void call(final Company company) {
+                Assert.fail();
+            }
+        };
+        Subscription first = client.getCompany("c1").subscribe(onCompany);
+        Subscription second = client.getCompany("c1").subscribe(onCompany);
+        Assert.assertTrue(firstTaken.await(5, TimeUnit.SECONDS));
+        first.unsubscribe();
+        second.unsubscribe();
+
+        //With the old flight gone, this one is sent on its own.
+        Assert.assertEquals("c1", client.getCompanySync("c1").getId());
+        Assert.assertEquals(2, client.getCoalescingStatistics().getSentCalls());
+        Assert.assertEquals(1, client.getCoalescingStatistics().getCoalescedCalls());
+    }
+
+    @Test
+    public void interruptingABlockingLeaderOnlyTakesItOutOfTheFlight() throws Exception {
+        final CountDownLatch taken = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) throws InterruptedException {
+                taken.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return new MockResponse().setBody("{\"id\":\"c1\"}");
+            }
+        });
+        mServer.start();
+        final BlockscoreApiClient client = createClient(true);
+
+        final AtomicReference<Throwable> leaderError = new AtomicReference<Throwable>();
+        Thread leader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    client.getCompanySync("c1");
+                } catch (RuntimeException e) {
+                    leaderError.set(e);
+                }
+            }
+        });
+        leader.start();
+        Assert.assertTrue(taken.await(5, TimeUnit.SECONDS));
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Object> outcome = new AtomicReference<Object>();
+        client.getCompany("c1").subscribe(new Action1<Company>() {
+            @Override
+            public void call(final Company company) {
+                outcome.set(company);
+                done.countDown();
+            }
+        }, new Action1<Throwable>() {
+            @Override
+            public void call(final Throwable throwable) {
+                outcome.set(throwable);
+                done.countDown();
+            }
+        });
+        Assert.assertEquals(1, client.getCoalescingStatistics().getCoalescedCalls());
+
+        leader.interrupt();
+        leader.join(5000);
+        Assert.assertFalse(leader.isAlive());
+        Assert.assertTrue(leaderError.get().getCause() instanceof InterruptedIOException);
+
+        //The subscriber is still in the flight, so the call goes on for it.
+        release.countDown();
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(String.valueOf(outcome.get()), outcome.get() instanceof Company);
+        Assert.assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void readsAreNotCoalescedByDefault() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}").setBodyDelay(200, TimeUnit.MILLISECONDS));
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}").setBodyDelay(200, TimeUnit.MILLISECONDS));
+        mServer.start();
+        BlockscoreApiClient client = createClient(false);
+
+        final CountDownLatch done = new CountDownLatch(2);
+        Action1<Company> onCompany = new Action1<Company>() {
+            @Override
+            public void call(final Company company) {
+                done.countDown();
+            }
+        };
+        client.getCompany("c1").subscribe(onCompany);
+        client.getCompany("c1").subscribe(onCompany);
+
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, mServer.getRequestCount());
+    }
+
+    private BlockscoreApiClient createClient(final boolean coalesce) {
+        BlockscoreApiClient.Builder builder = TestClients.builder(mServer);
+        if (coalesce) {
+            builder.enableRequestCoalescing();
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,147 @@
+package com.blockscore.net;
+
+import com.blockscore.models.Company;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.Okio;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit.RetrofitError;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Tests request compression, response decompression and the transfer statistics against a local stand-in server.
+ */
+public class CompressionTest {
+    private static final String BODY = "{\"id\":\"c1\"}";
+
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void largeRequestBodiesAreCompressed() throws Exception {
+        mServer.enqueue(new MockResponse().setBody(BODY));
+        BlockscoreApiClient client = createClient(true);
+        char[] name = new char[2048];
+        Arrays.fill(name, 'a');
+
+        client.createCompanySync(new Company().setEntityName(new String(name)));
+
+        RecordedRequest request = mServer.takeRequest();
+        Assert.assertEquals("gzip", request.getHeader("Content-Encoding"));
+        String sent = gunzip(request.getBody()).readUtf8();
+        Assert.assertTrue(sent.contains("\"entity_name\":\"" + new String(name) + "\""));
+        TransferStatistics statistics = client.getTransferStatistics();
+        Assert.assertEquals(sent.length(), statistics.getRequestBytesUncompressed());
+        Assert.assertEquals(request.getBodySize(), statistics.getRequestBytesCompressed());
+        Assert.assertTrue(statistics.getRequestBytesCompressed() < statistics.getRequestBytesUncompressed());
+    }
+
+    @Test
+    public void smallRequestBodiesAreSentAsTheyAre() throws Exception {
+        mServer.enqueue(new MockResponse().setBody(BODY));
+        BlockscoreApiClient client = createClient(true);
+
+        client.createCompanySync(new Company().setEntityName("Acme"));
+
+        RecordedRequest request = mServer.takeRequest();
+        Assert.assertNull(request.getHeader("Content-Encoding"));
+        Assert.assertTrue(request.getBody().readUtf8().contains("\"entity_name\":\"Acme\""));
+        TransferStatistics statistics = client.getTransferStatistics();
+        Assert.assertEquals(request.getBodySize(), statistics.getRequestBytesUncompressed());
+        Assert.assertEquals(request.getBodySize(), statistics.getRequestBytesCompressed());
+    }
+
+    @Test
+    public void requestBodiesAreNotCompressedUnlessTurnedOn() throws Exception {
+        mServer.enqueue(new MockResponse().setBody(BODY));
+        char[] name = new char[2048];
+        Arrays.fill(name, 'a');
+
+        createClient(false).createCompanySync(new Company().setEntityName(new String(name)));
+
+        Assert.assertNull(mServer.takeRequest().getHeader("Content-Encoding"));
+    }
+
+    @Test
+    public void gzipResponsesAreDecompressed() throws Exception {
+        Buffer gzipped = gzip(BODY);
+        long compressedBytes = gzipped.size();
+        mServer.enqueue(new MockResponse().setBody(gzipped).setHeader("Content-Encoding", "gzip"));
+        BlockscoreApiClient client = createClient(false);
+
+        Assert.assertEquals("c1", client.getCompanySync("c1").getId());
+
+        Assert.assertEquals("gzip", mServer.takeRequest().getHeader("Accept-Encoding"));
+        TransferStatistics statistics = client.getTransferStatistics();
+        Assert.assertEquals(compressedBytes, statistics.getResponseBytesCompressed());
+        Assert.assertEquals(BODY.length(), statistics.getResponseBytesUncompressed());
+        Assert.assertEquals(BODY.length() - compressedBytes, statistics.getBytesSaved());
+    }
+
+    @Test
+    public void plainResponsesAreCountedOnBothSides() throws Exception {
+        mServer.enqueue(new MockResponse().setBody(BODY));
+        BlockscoreApiClient client = createClient(false);
+
+        client.getCompanySync("c1");
+
+        TransferStatistics statistics = client.getTransferStatistics();
+        Assert.assertEquals(BODY.length(), statistics.getResponseBytesCompressed());
+        Assert.assertEquals(BODY.length(), statistics.getResponseBytesUncompressed());
+        Assert.assertEquals(0, statistics.getBytesSaved());
+    }
+
+    @Test
+    public void corruptTrailerIsRejected() throws Exception {
+        Buffer gzipped = gzip(BODY);
+        byte[] bytes = gzipped.readByteArray();
+        //The trailer is the CRC of the uncompressed body followed by its length.
+        bytes[bytes.length - 8] ^= 0xff;
+        mServer.enqueue(new MockResponse().setBody(new Buffer().write(bytes)).setHeader("Content-Encoding", "gzip"));
+
+        try {
+            createClient(false).getCompanySync("c1");
+            Assert.fail();
+        } catch (RetrofitError e) {
+            Assert.assertEquals(RetrofitError.Kind.NETWORK, e.getKind());
+        }
+    }
+
+    private BlockscoreApiClient createClient(final boolean compressRequests) {
+        return TestClients.builder(TestClients.config(mServer).setRequestCompression(compressRequests)).build();
+    }
+
+    private static Buffer gzip(final String body) throws IOException {
+        Buffer gzipped = new Buffer();
+        BufferedSink sink = Okio.buffer(new GzipSink(gzipped));
+        sink.writeUtf8(body);
+        sink.close();
+        return gzipped;
+    }
+
+    private static Buffer gunzip(final Buffer gzipped) throws IOException {
+        Buffer body = new Buffer();
+        body.writeAll(new GzipSource(gzipped));
+        return body;
+    }
+}
@@ -0,0 +1,205 @@
+package com.blockscore.net;
+
+import com.blockscore.models.Company;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import rx.functions.Action1;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests sharing a connection pool, its idle, keep-alive and per-host settings, and warming it up against a local
+ * stand-in server.
+ * The server holds each request until as many as it expects have arrived, or for a while at most, and keeps track
+ * of how many it holds at once.
+ */
+public class ConnectionPoolTest {
+    private MockWebServer mServer;
+    private final AtomicInteger mInFlight = new AtomicInteger();
+    private final AtomicInteger mMaxInFlight = new AtomicInteger();
+    private volatile CountDownLatch mArrived = new CountDownLatch(0);
+    private volatile long mHoldMillis = 1000;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) throws InterruptedException {
+                int inFlight = mInFlight.incrementAndGet();
+                while (true) {
+                    int max = mMaxInFlight.get();
+                    if (inFlight <= max || mMaxInFlight.compareAndSet(max, inFlight)) {
+                        break;
+                    }
+                }
+                CountDownLatch arrived = mArrived;
+                arrived.countDown();
+                arrived.await(mHoldMillis, TimeUnit.MILLISECONDS);
+                mInFlight.decrementAndGet();
+                //Unlike a real server, MockWebServer would write a body after the headers of a HEAD response.
+                return "HEAD".equals(request.getMethod()) ? new MockResponse()
+                        : new MockResponse().setBody("{\"id\":\"c1\"}");
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void clientsSharingAPoolShareItsConnections() throws Exception {
+        BlockscoreConnectionPool pool = new BlockscoreConnectionPool(2, 1, TimeUnit.MINUTES
+                , BlockscoreConnectionPool.UNLIMITED);
+        createClient(pool).getCompanySync("c1");
+        createClient(pool).getCompanySync("c1");
+
+        Assert.assertEquals(0, mServer.takeRequest().getSequenceNumber());
+        Assert.assertEquals(1, mServer.takeRequest().getSequenceNumber());
+        Assert.assertEquals(1, pool.getConnectionCount());
+    }
+
+    @Test
+    public void clientsWithPoolsOfTheirOwnDoNot() throws Exception {
+        createClient(TestClients.newPool()).getCompanySync("c1");
+        createClient(TestClients.newPool()).getCompanySync("c1");
+
+        Assert.assertEquals(0, mServer.takeRequest().getSequenceNumber());
+        Assert.assertEquals(0, mServer.takeRequest().getSequenceNumber());
+    }
+
+    @Test
+    public void idleConnectionsOverTheLimitAreClosed() throws Exception {
+        BlockscoreConnectionPool pool = new BlockscoreConnectionPool(1, 1, TimeUnit.MINUTES
+                , BlockscoreConnectionPool.UNLIMITED);
+        //Both requests are held until the other arrives, so they need a connection each.
+        mArrived = new CountDownLatch(2);
+        callConcurrently(2, createClient(pool));
+
+        Assert.assertEquals(2, mMaxInFlight.get());
+        Assert.assertTrue(awaitConnectionCount(pool, 1));
+        Assert.assertEquals(1, pool.getIdleConnectionCount());
+    }
+
+    @Test
+    public void idleConnectionsAreClosedAfterTheKeepAlive() throws Exception {
+        BlockscoreConnectionPool pool = new BlockscoreConnectionPool(2, 200, TimeUnit.MILLISECONDS
+                , BlockscoreConnectionPool.UNLIMITED);
+        createClient(pool).getCompanySync("c1");
+        Assert.assertEquals(1, pool.getConnectionCount());
+
+        Assert.assertTrue(awaitConnectionCount(pool, 0));
+    }
+
+    @Test
+    public void requestsPerHostAreCappedAcrossClients() throws Exception {
+        BlockscoreConnectionPool pool = new BlockscoreConnectionPool(2, 1, TimeUnit.MINUTES, 1);
+        //The server holds each request a while, so any sent together would overlap.
+        mArrived = new CountDownLatch(4);
+        mHoldMillis = 100;
+        callConcurrently(2, createClient(pool), createClient(pool));
+
+        Assert.assertEquals(1, mMaxInFlight.get());
+        Assert.assertEquals(1, pool.getMaxRequestsPerHost());
+    }
+
+    @Test
+    public void warmUpOpensConnectionsThatLaterCallsReuse() throws Exception {
+        BlockscoreConnectionPool pool = new BlockscoreConnectionPool(4, 1, TimeUnit.MINUTES
+                , BlockscoreConnectionPool.UNLIMITED);
+        BlockscoreApiClient client = createClient(pool);
+        //The warm-up requests are held until all of them arrive, so each needs a connection of its own.
+        mArrived = new CountDownLatch(3);
+        WarmUpResult result = client.warmUp(3);
+
+        Assert.assertEquals(3, result.getRequestedConnections());
+        Assert.assertEquals(3, result.getOpenedConnections());
+        Assert.assertEquals(3, result.getIdleConnections());
+        Assert.assertEquals(result.getOpenedConnections(), pool.getConnectionCount());
+        Assert.assertEquals(3, mMaxInFlight.get());
+        for (int i = 0; i < 3; i++) {
+            RecordedRequest request = mServer.takeRequest();
+            Assert.assertEquals("HEAD", request.getMethod());
+            Assert.assertEquals(0, request.getSequenceNumber());
+        }
+
+        client.getCompanySync("c1");
+        Assert.assertEquals(4, mServer.getRequestCount());
+        Assert.assertEquals(1, mServer.takeRequest().getSequenceNumber());
+        Assert.assertEquals(3, pool.getConnectionCount());
+    }
+
+    @Test
+    public void warmUpIsCappedByTheIdleLimit() throws Exception {
+        BlockscoreConnectionPool pool = new BlockscoreConnectionPool(2, 1, TimeUnit.MINUTES
+                , BlockscoreConnectionPool.UNLIMITED);
+        mArrived = new CountDownLatch(2);
+        WarmUpResult result = createClient(pool).warmUp(5);
+
+        Assert.assertEquals(5, result.getRequestedConnections());
+        Assert.assertEquals(2, result.getOpenedConnections());
+        Assert.assertEquals(2, result.getIdleConnections());
+        Assert.assertEquals(2, pool.getConnectionCount());
+        Assert.assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeIdleLimitIsRejected() {
+        new BlockscoreConnectionPool(-1, 1, TimeUnit.MINUTES, BlockscoreConnectionPool.UNLIMITED);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroRequestsPerHostIsRejected() {
+        new BlockscoreConnectionPool(2, 1, TimeUnit.MINUTES, 0);
+    }
+
+    private static void callConcurrently(final int callsPerClient, final BlockscoreApiClient... clients)
+            throws Exception {
+        final CountDownLatch done = new CountDownLatch(callsPerClient * clients.length);
+        final AtomicInteger failures = new AtomicInteger();
+        for (int i = 0; i < callsPerClient * clients.length; i++) {
+            clients[i % clients.length].getCompany("c1").subscribe(new Action1<Company>() {
+                @Override
+                public void call(final Company company) {
+                    done.countDown();
+                }
+            }, new Action1<Throwable>() {
+                @Override
+                public void call(final Throwable throwable) {
+                    failures.incrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, failures.get());
+    }
+
+    private static boolean awaitConnectionCount(final BlockscoreConnectionPool pool, final int count)
+            throws InterruptedException {
+        //The pool closes connections on a background thread of its own.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+        while (pool.getConnectionCount() != count) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            Thread.sleep(20);
+        }
+        return true;
+    }
+
+    private BlockscoreApiClient createClient(final BlockscoreConnectionPool pool) {
+        return TestClients.builder(mServer).setConnectionPool(pool).build();
+    }
+}
@@ -0,0 +1,149 @@
+package com.blockscore.net;
+
+import com.blockscore.models.Company;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import rx.functions.Action1;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests hedged reads against a local stand-in server.
+ */
+public class HedgingTest {
+    private static final int WARM_UP_CALLS = 20;
+
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void slowCallIsHedgedAndTheFirstResponseWins() throws Exception {
+        enqueueWarmUp();
+        mServer.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"hedge\"}"));
+        mServer.start();
+        BlockscoreApiClient client = createClient(new HedgePolicy(0.9, 0.5, 10, TimeUnit.MILLISECONDS));
+        warmUp(client);
+        Assert.assertEquals(0, client.getHedgingStatistics().getHedgedCalls());
+
+        long start = System.nanoTime();
+        Assert.assertEquals("hedge", client.getCompanySync("c1").getId());
+
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        Assert.assertEquals(1, client.getHedgingStatistics().getHedgedCalls());
+        Assert.assertEquals(1, client.getHedgingStatistics().getHedgeWins());
+        Assert.assertEquals(WARM_UP_CALLS + 2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void observableCallsAreHedgedToo() throws Exception {
+        enqueueWarmUp();
+        mServer.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"hedge\"}"));
+        mServer.start();
+        BlockscoreApiClient client = createClient(new HedgePolicy(0.9, 0.5, 10, TimeUnit.MILLISECONDS));
+        warmUp(client);
+
+        final AtomicReference<Company> result = new AtomicReference<Company>();
+        final CountDownLatch done = new CountDownLatch(1);
+        client.getCompany("c1").subscribe(new Action1<Company>() {
+            @Override
+            public void call(final Company company) {
+                result.set(company);
+                done.countDown();
+            }
+        }, new Action1<Throwable>() {
+            @Override
+            public void call(final Throwable throwable) {
+                done.countDown();
+            }
+        });
+
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals("hedge", result.get().getId());
+        Assert.assertEquals(1, client.getHedgingStatistics().getHedgeWins());
+    }
+
+    @Test
+    public void spentBudgetStopsHedging() throws Exception {
+        enqueueWarmUp();
+        mServer.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        mServer.start();
+        //20 calls only earn a fifth of a hedge.
+        BlockscoreApiClient client = createClient(new HedgePolicy(0.9, 0.01, 10, TimeUnit.MILLISECONDS));
+        warmUp(client);
+
+        try {
+            client.withDeadline(500, TimeUnit.MILLISECONDS).getCompanySync("c1");
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getCause() instanceof InterruptedIOException);
+        }
+        Assert.assertEquals(0, client.getHedgingStatistics().getHedgedCalls());
+        Assert.assertEquals(1, client.getHedgingStatistics().getSkippedHedges());
+        Assert.assertEquals(WARM_UP_CALLS + 1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void hedgesNeedASparePermitFromTheRateLimiter() throws Exception {
+        enqueueWarmUp();
+        mServer.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        mServer.start();
+        //The next permit is 50 ms away when the hedge comes due, so the hedge is skipped instead of waiting.
+        BlockscoreApiClient client = TestClients.builder(TestClients.config(mServer)
+                .setHedgePolicy(Endpoint.GET_COMPANY, new HedgePolicy(0.9, 0.5, 10, TimeUnit.MILLISECONDS))
+                .setRateLimit(Endpoint.GET_COMPANY, new RateLimit(20, 1)))
+                .build();
+        warmUp(client);
+
+        try {
+            client.withDeadline(500, TimeUnit.MILLISECONDS).getCompanySync("c1");
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getCause() instanceof InterruptedIOException);
+        }
+        Assert.assertEquals(0, client.getHedgingStatistics().getHedgedCalls());
+        Assert.assertEquals(1, client.getHedgingStatistics().getSkippedHedges());
+        Assert.assertEquals(WARM_UP_CALLS + 1, mServer.getRequestCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void writesCannotBeHedged() {
+        new BlockscoreConfig.Builder("sk_test")
+                .setHedgePolicy(Endpoint.CREATE_COMPANY, new HedgePolicy(0.9, 0.05, 10, TimeUnit.MILLISECONDS));
+    }
+
+    private void enqueueWarmUp() {
+        for (int i = 0; i < WARM_UP_CALLS; i++) {
+            mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}"));
+        }
+    }
+
+    private static void warmUp(final BlockscoreApiClient client) {
+        //Hedging starts once the endpoint has this much latency history.
+        for (int i = 0; i < WARM_UP_CALLS; i++) {
+            client.getCompanySync("c1");
+        }
+    }
+
+    private BlockscoreApiClient createClient(final HedgePolicy policy) {
+        return TestClients.builder(TestClients.config(mServer).setHedgePolicy(Endpoint.GET_COMPANY, policy)).build();
+    }
+}
@@ -0,0 +1,127 @@
+package com.blockscore.net;
+
+import com.blockscore.models.results.Verification;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the HTTP/2 mode of the network layer against a local TLS stand-in server.
+ */
+public class Http2TransportTest {
+    private static final char[] PASSWORD = "password".toCharArray();
+
+    private MockWebServer mServer;
+    private SSLContext mSslContext;
+
+    @Before
+    public void setUp() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        InputStream in = getClass().getResourceAsStream("/localhost.p12");
+        try {
+            keyStore.load(in, PASSWORD);
+        } finally {
+            in.close();
+        }
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, PASSWORD);
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore);
+        mSslContext = SSLContext.getInstance("TLS");
+        mSslContext.init(keyManagers.getKeyManagers(), trustManagers.getTrustManagers(), null);
+
+        mServer = new MockWebServer();
+        mServer.useHttps(mSslContext.getSocketFactory(), false);
+        mServer.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void http2ModeTalksToTlsServer() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("[]").addHeader("Content-Type", "application/json"));
+        mServer.start();
+
+        List<Verification> verifications = createClient(4).listVerificationsSync();
+        Assert.assertTrue(verifications.isEmpty());
+
+        RecordedRequest request = mServer.takeRequest();
+        Assert.assertEquals("/verifications", request.getPath());
+        Assert.assertNotNull(request.getTlsVersion());
+    }
+
+    @Test
+    public void http2ModeCapsConcurrentStreams() throws Exception {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) throws InterruptedException {
+                int current = inFlight.incrementAndGet();
+                maxInFlight.set(Math.max(maxInFlight.get(), current));
+                Thread.sleep(50);
+                inFlight.decrementAndGet();
+                return new MockResponse().setBody("[]");
+            }
+        });
+        mServer.start();
+
+        final BlockscoreApiClient client = createClient(2);
+        final int callCount = 8;
+        final CountDownLatch done = new CountDownLatch(callCount);
+        final AtomicInteger failures = new AtomicInteger();
+        for (int i = 0; i < callCount; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        client.listCompaniesSync();
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, failures.get());
+        Assert.assertEquals(callCount, mServer.getRequestCount());
+        Assert.assertTrue(maxInFlight.get() <= 2);
+    }
+
+    private BlockscoreApiClient createClient(final int maxConcurrentStreams) {
+        return TestClients.builder(mServer)
+                .enableHttp2(maxConcurrentStreams)
+                .setSsl(mSslContext.getSocketFactory(), new HostnameVerifier() {
+                    @Override
+                    public boolean verify(final String hostname, final SSLSession session) {
+                        return true;
+                    }
+                })
+                .build();
+    }
+}
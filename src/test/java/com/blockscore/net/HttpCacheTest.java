@@ -0,0 +1,118 @@
+package com.blockscore.net;
+
+import com.blockscore.models.Company;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the on-disk HTTP cache and its conditional requests against a local stand-in server.
+ */
+public class HttpCacheTest {
+    private static final String BODY = "{\"id\":\"c1\"}";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void notModifiedResponseReusesTheParsedObject() throws Exception {
+        mServer.enqueue(new MockResponse().setBody(BODY).setHeader("ETag", "\"v1\"")
+                .setHeader("Cache-Control", "no-cache"));
+        mServer.enqueue(new MockResponse().setResponseCode(304).setHeader("ETag", "\"v1\""));
+        mServer.start();
+        BlockscoreApiClient client = createClient();
+
+        Company first = client.getCompanySync("c1");
+        first.setEntityName("Changed");
+        Company second = client.getCompanySync("c1");
+        Assert.assertEquals("c1", second.getId());
+        Assert.assertNull(second.getEntityName());
+
+        Assert.assertNull(mServer.takeRequest().getHeader("If-None-Match"));
+        Assert.assertEquals("\"v1\"", mServer.takeRequest().getHeader("If-None-Match"));
+        HttpCacheStatistics statistics = client.getHttpCacheStatistics();
+        Assert.assertEquals(1, statistics.getNotModifiedResponses());
+        Assert.assertEquals(0, statistics.getCacheHits());
+        Assert.assertEquals(BODY.length(), statistics.getBytesSaved());
+        Assert.assertEquals(1, statistics.getSkippedParses());
+    }
+
+    @Test
+    public void changedBodyIsParsedAgain() throws Exception {
+        mServer.enqueue(new MockResponse().setBody(BODY).setHeader("ETag", "\"v1\"")
+                .setHeader("Cache-Control", "no-cache"));
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\",\"entity_name\":\"Acme\"}")
+                .setHeader("ETag", "\"v2\"").setHeader("Cache-Control", "no-cache"));
+        mServer.start();
+        BlockscoreApiClient client = createClient();
+
+        client.getCompanySync("c1");
+        Assert.assertEquals("Acme", client.getCompanySync("c1").getEntityName());
+        Assert.assertEquals(0, client.getHttpCacheStatistics().getSkippedParses());
+    }
+
+    @Test
+    public void freshResponseIsServedWithoutARequest() throws Exception {
+        mServer.enqueue(new MockResponse().setBody(BODY).setHeader("Last-Modified", "Mon, 05 Oct 2026 10:00:00 GMT")
+                .setHeader("Cache-Control", "max-age=60"));
+        mServer.start();
+        BlockscoreApiClient client = createClient();
+
+        client.getCompanySync("c1");
+        Assert.assertEquals("c1", client.getCompany("c1").toBlocking().first().getId());
+
+        Assert.assertEquals(1, mServer.getRequestCount());
+        HttpCacheStatistics statistics = client.getHttpCacheStatistics();
+        Assert.assertEquals(1, statistics.getCacheHits());
+        Assert.assertEquals(1, statistics.getSkippedParses());
+    }
+
+    @Test
+    public void writesAreNotCached() throws Exception {
+        mServer.enqueue(new MockResponse().setBody(BODY).setHeader("ETag", "\"v1\"")
+                .setHeader("Cache-Control", "max-age=60"));
+        mServer.enqueue(new MockResponse().setBody(BODY).setHeader("ETag", "\"v1\"")
+                .setHeader("Cache-Control", "max-age=60"));
+        mServer.start();
+        BlockscoreApiClient client = createClient();
+
+        client.createCompanySync(new Company());
+        client.createCompanySync(new Company());
+
+        Assert.assertEquals(2, mServer.getRequestCount());
+        mServer.takeRequest();
+        RecordedRequest second = mServer.takeRequest();
+        Assert.assertEquals("POST", second.getMethod());
+        Assert.assertNull(second.getHeader("If-None-Match"));
+        Assert.assertEquals(0, client.getHttpCacheStatistics().getCacheHits());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyCacheIsRejected() throws Exception {
+        new BlockscoreApiClient.Builder().setHttpCache(mFolder.newFolder(), 0);
+    }
+
+    private BlockscoreApiClient createClient() throws Exception {
+        return TestClients.builder(mServer)
+                .setHttpCache(mFolder.newFolder(), 1024 * 1024)
+                .build();
+    }
+}
@@ -0,0 +1,288 @@
+package com.blockscore.net;
+
+import com.blockscore.common.Constants;
+import com.blockscore.exceptions.IdempotencyOutcomeUnknownException;
+import com.blockscore.models.Company;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import retrofit.RetrofitError;
+import rx.functions.Action1;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.ServerSocket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests idempotency keys and the journal of creates against a local stand-in server.
+ */
+public class IdempotencyTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void repeatedCreateReadsTheRecordBack() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}"));
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}"));
+        mServer.start();
+        IdempotencyJournal journal = IdempotencyJournal.open(mFolder.newFile());
+        BlockscoreApiClient client = createClient(journal).withIdempotencyKey("signup-42");
+
+        Assert.assertEquals("c1", client.createCompanySync(new Company()).getId());
+        Assert.assertEquals("c1", client.createCompanySync(new Company()).getId());
+
+        RecordedRequest create = mServer.takeRequest();
+        Assert.assertEquals("POST", create.getMethod());
+        Assert.assertEquals("signup-42", create.getHeader(Constants.IDEMPOTENCY_KEY_HEADER));
+        RecordedRequest read = mServer.takeRequest();
+        Assert.assertEquals("GET", read.getMethod());
+        Assert.assertEquals("/companies/c1", read.getPath());
+        Assert.assertNull(read.getHeader(Constants.IDEMPOTENCY_KEY_HEADER));
+        journal.close();
+    }
+
+    @Test
+    public void journalSurvivesReopening() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}"));
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}"));
+        mServer.start();
+        File file = mFolder.newFile();
+        IdempotencyJournal journal = IdempotencyJournal.open(file);
+        createClient(journal).withIdempotencyKey("signup-42").createCompanySync(new Company());
+        journal.close();
+
+        journal = IdempotencyJournal.open(file);
+        Assert.assertEquals(1, journal.size());
+        createClient(journal).withIdempotencyKey("signup-42").createCompanySync(new Company());
+        mServer.takeRequest();
+        Assert.assertEquals("GET", mServer.takeRequest().getMethod());
+        journal.close();
+    }
+
+    @Test
+    public void differentKeysCreateSeparately() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}"));
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c2\"}"));
+        mServer.start();
+        IdempotencyJournal journal = IdempotencyJournal.open(mFolder.newFile());
+        BlockscoreApiClient client = createClient(journal);
+
+        Assert.assertEquals("c1", client.withIdempotencyKey("a").createCompanySync(new Company()).getId());
+        Assert.assertEquals("c2", client.withIdempotencyKey("b").createCompanySync(new Company()).getId());
+        Assert.assertEquals(2, journal.size());
+        journal.close();
+    }
+
+    @Test
+    public void unansweredCreateIsNotSentAgain() throws Exception {
+        mServer.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}"));
+        mServer.start();
+        File file = mFolder.newFile();
+        IdempotencyJournal journal = IdempotencyJournal.open(file);
+        BlockscoreApiClient client = createClient(journal).withIdempotencyKey("signup-42");
+        try {
+            client.createCompanySync(new Company());
+            Assert.fail();
+        } catch (RetrofitError e) {
+            Assert.assertEquals(RetrofitError.Kind.NETWORK, e.getKind());
+        }
+        journal.close();
+
+        //The key is still pending after a restart.
+        journal = IdempotencyJournal.open(file);
+        client = createClient(journal).withIdempotencyKey("signup-42");
+        try {
+            client.createCompanySync(new Company());
+            Assert.fail();
+        } catch (IdempotencyOutcomeUnknownException e) {
+            Assert.assertEquals(Endpoint.CREATE_COMPANY, e.getEndpoint());
+            Assert.assertEquals("signup-42", e.getKey());
+        }
+        Assert.assertEquals(1, mServer.getRequestCount());
+
+        journal.forget(Endpoint.CREATE_COMPANY, "signup-42");
+        Assert.assertEquals("c1", client.createCompanySync(new Company()).getId());
+        Assert.assertEquals(2, mServer.getRequestCount());
+        journal.close();
+    }
+
+    @Test
+    public void rejectedCreateCanBeMadeAgain() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(400).setBody("{\"error\":{\"type\":\"invalid_request_error\"}}"));
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}"));
+        mServer.start();
+        IdempotencyJournal journal = IdempotencyJournal.open(mFolder.newFile());
+        BlockscoreApiClient client = createClient(journal).withIdempotencyKey("signup-42");
+        try {
+            client.createCompanySync(new Company());
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertFalse(e instanceof IdempotencyOutcomeUnknownException);
+        }
+
+        Assert.assertEquals("c1", client.createCompanySync(new Company()).getId());
+        Assert.assertEquals("POST", mServer.takeRequest().getMethod());
+        Assert.assertEquals("POST", mServer.takeRequest().getMethod());
+        journal.close();
+    }
+
+    @Test
+    public void tornEntryIsDropped() throws Exception {
+        File file = mFolder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("createCompany\ta\tc1\ncreateCompany\tb\tc".getBytes("UTF-8"));
+        out.close();
+
+        IdempotencyJournal journal = IdempotencyJournal.open(file);
+        Assert.assertEquals(1, journal.size());
+        Assert.assertEquals("c1", journal.getId(Endpoint.CREATE_COMPANY, "a"));
+        Assert.assertNull(journal.getId(Endpoint.CREATE_COMPANY, "b"));
+        journal.record(Endpoint.CREATE_COMPANY, "b", "c2");
+        journal.close();
+
+        journal = IdempotencyJournal.open(file);
+        Assert.assertEquals("c2", journal.getId(Endpoint.CREATE_COMPANY, "b"));
+        journal.close();
+    }
+
+    @Test
+    public void createDroppedWhileWaitingForAHostPermitCanBeMadeAgain() throws Exception {
+        final CountDownLatch slowTaken = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) throws InterruptedException {
+                if (request.getPath().endsWith("/slow")) {
+                    slowTaken.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                return new MockResponse().setBody("{\"id\":\"c1\"}");
+            }
+        });
+        mServer.start();
+        IdempotencyJournal journal = IdempotencyJournal.open(mFolder.newFile());
+        BlockscoreApiClient client = TestClients.builder(mServer)
+                .setConnectionPool(new BlockscoreConnectionPool(2, 1, TimeUnit.MINUTES, 1))
+                .setIdempotencyJournal(journal)
+                .build();
+        client.getCompany("slow").subscribe(new Action1<Company>() {
+            @Override
+            public void call(final Company company) {
+            }
+        }, new Action1<Throwable>() {
+            @Override
+            public void call(final Throwable throwable) {
+            }
+        });
+        Assert.assertTrue(slowTaken.await(5, TimeUnit.SECONDS));
+
+        //The only permit to the host is taken, so the create's deadline passes before it goes out.
+        try {
+            client.withIdempotencyKey("signup-42").withDeadline(200, TimeUnit.MILLISECONDS)
+                    .createCompany(new Company()).toBlocking().first();
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertFalse(e instanceof IdempotencyOutcomeUnknownException);
+        }
+        Assert.assertFalse(journal.isPending(Endpoint.CREATE_COMPANY, "signup-42"));
+
+        release.countDown();
+        Assert.assertEquals("c1", client.withIdempotencyKey("signup-42").createCompanySync(new Company()).getId());
+        Assert.assertEquals(2, mServer.getRequestCount());
+        journal.close();
+    }
+
+    @Test
+    public void createThatCouldNotConnectCanBeMadeAgain() throws Exception {
+        ServerSocket socket = new ServerSocket(0);
+        int closedPort = socket.getLocalPort();
+        socket.close();
+        IdempotencyJournal journal = IdempotencyJournal.open(mFolder.newFile());
+        BlockscoreApiClient client = TestClients.builder(new BlockscoreConfig.Builder("sk_test")
+                .setEndpoint("http://localhost:" + closedPort + "/"))
+                .setIdempotencyJournal(journal)
+                .build();
+
+        try {
+            client.withIdempotencyKey("signup-42").createCompanySync(new Company());
+            Assert.fail();
+        } catch (RetrofitError e) {
+            Assert.assertEquals(RetrofitError.Kind.NETWORK, e.getKind());
+        }
+        Assert.assertFalse(journal.isPending(Endpoint.CREATE_COMPANY, "signup-42"));
+        Assert.assertEquals(0, journal.size());
+        journal.close();
+    }
+
+    @Test
+    public void concurrentRecordsAllSurviveReopening() throws Exception {
+        File file = mFolder.newFile();
+        final IdempotencyJournal journal = IdempotencyJournal.open(file);
+        final int threads = 8;
+        final int recordsPerThread = 50;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicInteger failures = new AtomicInteger();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < recordsPerThread; i++) {
+                            journal.record(Endpoint.CREATE_COMPANY, thread + "-" + i, "c" + thread + "-" + i);
+                        }
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+        Assert.assertEquals(0, failures.get());
+        journal.close();
+
+        //Appends from different threads must not land on top of each other in the file.
+        IdempotencyJournal reopened = IdempotencyJournal.open(file);
+        Assert.assertEquals(threads * recordsPerThread, reopened.size());
+        Assert.assertEquals("c7-49", reopened.getId(Endpoint.CREATE_COMPANY, "7-49"));
+        reopened.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keysWithSpacesAreRejected() {
+        new BlockscoreApiClient(new BlockscoreConfig.Builder("sk_test").build()).withIdempotencyKey("signup 42");
+    }
+
+    private BlockscoreApiClient createClient(final IdempotencyJournal journal) {
+        return TestClients.builder(mServer).setIdempotencyJournal(journal).build();
+    }
+}
@@ -0,0 +1,165 @@
+package com.blockscore.net;
+
+import com.blockscore.models.Company;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.junit.Assert;
+import org.junit.Test;
+import retrofit.Callback;
+import retrofit.RetrofitError;
+import retrofit.client.Response;
+import rx.functions.Action1;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the priority scheduler on its own and behind an API client.
+ */
+public class PrioritySchedulerTest {
+    private static final long AGING_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    @Test
+    public void urgentCallsJumpTheQueue() throws Exception {
+        PriorityScheduler scheduler = new PriorityScheduler(1, AGING_NANOS);
+        List<String> order = new CopyOnWriteArrayList<String>();
+        scheduler.acquire(Priority.NORMAL, Exchange.NO_DEADLINE);
+        scheduler.acquireAsync(Priority.LOW, record(order, "low1"));
+        scheduler.acquireAsync(Priority.LOW, record(order, "low2"));
+        scheduler.acquireAsync(Priority.NORMAL, record(order, "normal"));
+        scheduler.acquireAsync(Priority.HIGH, record(order, "high"));
+        Assert.assertEquals(2, scheduler.getStatistics().getQueuedCalls(Priority.LOW));
+        Assert.assertEquals(1, scheduler.getStatistics().getQueuedCalls(Priority.HIGH));
+
+        for (int i = 0; i < 4; i++) {
+            scheduler.release();
+        }
+        Assert.assertEquals(Arrays.asList("high", "normal", "low1", "low2"), order);
+        Assert.assertEquals(0, scheduler.getStatistics().getQueuedCalls(Priority.LOW));
+        Assert.assertEquals(1, scheduler.getStatistics().getInFlightCalls());
+    }
+
+    @Test
+    public void waitingCallsAge() throws Exception {
+        PriorityScheduler scheduler = new PriorityScheduler(1, TimeUnit.MILLISECONDS.toNanos(10));
+        List<String> order = new CopyOnWriteArrayList<String>();
+        scheduler.acquire(Priority.NORMAL, Exchange.NO_DEADLINE);
+        scheduler.acquireAsync(Priority.LOW, record(order, "low"));
+        Thread.sleep(50);
+        scheduler.acquireAsync(Priority.HIGH, record(order, "high"));
+
+        scheduler.release();
+        scheduler.release();
+        Assert.assertEquals(Arrays.asList("low", "high"), order);
+    }
+
+    @Test
+    public void cancelledCallsLeaveTheQueue() throws Exception {
+        PriorityScheduler scheduler = new PriorityScheduler(1, AGING_NANOS);
+        List<String> order = new CopyOnWriteArrayList<String>();
+        scheduler.acquire(Priority.NORMAL, Exchange.NO_DEADLINE);
+        Runnable high = record(order, "high");
+        scheduler.acquireAsync(Priority.HIGH, high);
+        scheduler.acquireAsync(Priority.LOW, record(order, "low"));
+
+        Assert.assertTrue(scheduler.cancelAsync(high));
+        Assert.assertEquals(0, scheduler.getStatistics().getQueuedCalls(Priority.HIGH));
+        scheduler.release();
+        Assert.assertEquals(Arrays.asList("low"), order);
+    }
+
+    @Test
+    public void waitTimesAreRecordedPerPriority() throws Exception {
+        PriorityScheduler scheduler = new PriorityScheduler(1, AGING_NANOS);
+        scheduler.acquire(Priority.HIGH, Exchange.NO_DEADLINE);
+        scheduler.acquireAsync(Priority.LOW, record(new CopyOnWriteArrayList<String>(), "low"));
+        Thread.sleep(20);
+        scheduler.release();
+
+        WaitTimeHistogram high = scheduler.getStatistics().getWaitTimes(Priority.HIGH);
+        WaitTimeHistogram low = scheduler.getStatistics().getWaitTimes(Priority.LOW);
+        Assert.assertEquals(1, high.getCount(0));
+        Assert.assertEquals(1, low.getTotalCount());
+        Assert.assertEquals(0, low.getCount(0));
+        Assert.assertEquals(0, scheduler.getStatistics().getWaitTimes(Priority.NORMAL).getTotalCount());
+        Assert.assertEquals(Long.MAX_VALUE, low.getUpperBoundMillis(low.getBucketCount() - 1));
+    }
+
+    @Test
+    public void clientSendsUrgentCallsFirst() throws Exception {
+        final CountDownLatch releaseFirst = new CountDownLatch(1);
+        final List<String> paths = new CopyOnWriteArrayList<String>();
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) throws InterruptedException {
+                paths.add(request.getPath());
+                if (request.getPath().endsWith("/first")) {
+                    releaseFirst.await(5, TimeUnit.SECONDS);
+                }
+                return new MockResponse().setBody("{\"id\":\"c1\"}");
+            }
+        });
+        server.start();
+        try {
+            final BlockscoreApiClient client = TestClients.builder(server)
+                    .enablePriorityScheduling(1, 1, TimeUnit.MINUTES)
+                    .build();
+
+            final CountDownLatch done = new CountDownLatch(4);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    client.getCompanySync("first");
+                    done.countDown();
+                }
+            }).start();
+            while (paths.isEmpty()) {
+                Thread.sleep(10);
+            }
+            Action1<Company> onCompany = new Action1<Company>() {
+                @Override
+                public void call(final Company company) {
+                    done.countDown();
+                }
+            };
+            BlockscoreApiClient background = client.withPriority(Priority.LOW);
+            background.getCompany("low1").subscribe(onCompany);
+            background.getCompany("low2").subscribe(onCompany);
+            client.withPriority(Priority.HIGH).getCompany("high", new Callback<Company>() {
+                @Override
+                public void success(final Company company, final Response response) {
+                    done.countDown();
+                }
+
+                @Override
+                public void failure(final RetrofitError error) {
+                    done.countDown();
+                }
+            });
+            Assert.assertEquals(2, client.getSchedulerStatistics().getQueuedCalls(Priority.LOW));
+
+            releaseFirst.countDown();
+            Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(Arrays.asList("/companies/first", "/companies/high", "/companies/low1"
+                    , "/companies/low2"), paths);
+        } finally {
+            releaseFirst.countDown();
+            server.shutdown();
+        }
+    }
+
+    private static Runnable record(final List<String> order, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+            }
+        };
+    }
+}
@@ -0,0 +1,218 @@
+package com.blockscore.net;
+
+import com.blockscore.models.Company;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit.RetrofitError;
+import rx.Subscription;
+import rx.functions.Action1;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the client-side rate limiter against a local stand-in server.
+ */
+public class RateLimiterTest {
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void callsPastTheBurstWaitForTheRate() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("[]"));
+        for (int i = 0; i < 5; i++) {
+            mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}"));
+        }
+        mServer.start();
+        BlockscoreApiClient client = TestClients.builder(TestClients.config(mServer)
+                .setRateLimit(Endpoint.GET_COMPANY, new RateLimit(5, 2))).build();
+        //Other endpoints are not limited, and this call gets the connection set up.
+        client.listCompaniesSync();
+        Assert.assertEquals(0, client.getRateLimiterStatistics().getThrottledCalls());
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            client.getCompanySync("c1");
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        //Two calls use the burst, the other three go out 200 ms apart.
+        Assert.assertTrue("Took " + elapsedMillis + "ms", elapsedMillis >= 550);
+        Assert.assertEquals(3, client.getRateLimiterStatistics().getThrottledCalls());
+        Assert.assertEquals(0, client.getRateLimiterStatistics().getQueuedCalls());
+    }
+
+    @Test
+    public void retryAfterPausesCalls() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}"));
+        mServer.start();
+        BlockscoreApiClient client = TestClients.builder(mServer).build();
+
+        try {
+            client.getCompanySync("c1");
+            Assert.fail();
+        } catch (RetrofitError e) {
+            Assert.assertEquals(429, e.getResponse().getStatus());
+        }
+        long start = System.nanoTime();
+        Assert.assertEquals("c1", client.getCompanySync("c1").getId());
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        Assert.assertTrue("Took " + elapsedMillis + "ms", elapsedMillis >= 900);
+        Assert.assertEquals(1, client.getRateLimiterStatistics().getRetryAfterResponses());
+    }
+
+    @Test
+    public void unsubscribingDropsAQueuedCall() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}"));
+        mServer.start();
+        BlockscoreApiClient client = TestClients.builder(TestClients.config(mServer)
+                .setRateLimit(new RateLimit(1, 1))).build();
+
+        Assert.assertEquals("c1", client.getCompanySync("c1").getId());
+        Subscription subscription = client.getCompany("c2").subscribe(new Action1<Company>() {
+            @Override
+            public void call(final Company company) {
+                Assert.fail();
+            }
+        });
+        Assert.assertEquals(1, client.getRateLimiterStatistics().getQueuedCalls());
+
+        subscription.unsubscribe();
+        Assert.assertEquals(0, client.getRateLimiterStatistics().getQueuedCalls());
+        Thread.sleep(1500);
+        Assert.assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void callsThatWouldMissTheirDeadlineFailFast() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}"));
+        mServer.start();
+        BlockscoreApiClient client = TestClients.builder(TestClients.config(mServer)
+                .setRateLimit(new RateLimit(0.5, 1))).build();
+
+        client.getCompanySync("c1");
+        long start = System.nanoTime();
+        try {
+            client.withDeadline(100, TimeUnit.MILLISECONDS).getCompanySync("c1");
+            Assert.fail();
+        } catch (RetrofitError e) {
+            Assert.assertTrue(e.getCause() instanceof InterruptedIOException);
+        }
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100);
+        Assert.assertEquals(1, client.getRateLimiterStatistics().getRejectedCalls());
+        Assert.assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void callsThatAreNeverSentGiveTheirPermitsBack() throws Exception {
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) {
+                return new MockResponse().setBody("{\"id\":\"c1\"}");
+            }
+        });
+        mServer.start();
+        BlockscoreApiClient client = TestClients.builder(TestClients.config(mServer)
+                .setRateLimit(new RateLimit(5, 1))).build();
+        client.getCompanySync("c1");
+
+        //Each of these takes the next permit, 200 ms after the one before, then gives it back.
+        for (int i = 0; i < 3; i++) {
+            client.getCompany("c2").subscribe().unsubscribe();
+        }
+        try {
+            client.withDeadline(50, TimeUnit.MILLISECONDS).getCompanySync("c3");
+            Assert.fail();
+        } catch (RetrofitError e) {
+            Assert.assertTrue(e.getCause() instanceof InterruptedIOException);
+        }
+
+        long start = System.nanoTime();
+        client.getCompanySync("c4");
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue("Took " + elapsedMillis + "ms", elapsedMillis < 400);
+        Assert.assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void retryAfterOnlyPausesItsEndpoint() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+        mServer.enqueue(new MockResponse().setBody("[]"));
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\"}"));
+        mServer.start();
+        BlockscoreApiClient client = TestClients.builder(mServer).build();
+
+        try {
+            client.getCompanySync("c1");
+            Assert.fail();
+        } catch (RetrofitError e) {
+            Assert.assertEquals(429, e.getResponse().getStatus());
+        }
+        long start = System.nanoTime();
+        client.listCompaniesSync();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue("Took " + elapsedMillis + "ms", elapsedMillis < 500);
+
+        client.getCompanySync("c1");
+        elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue("Took " + elapsedMillis + "ms", elapsedMillis >= 900);
+    }
+
+    @Test
+    public void globalRetryAfterPausesEveryEndpoint() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1")
+                .setHeader("X-RateLimit-Scope", "global"));
+        mServer.enqueue(new MockResponse().setBody("[]"));
+        mServer.start();
+        BlockscoreApiClient client = TestClients.builder(TestClients.config(mServer)
+                .setRateLimitScopeHeader("X-RateLimit-Scope")).build();
+
+        try {
+            client.getCompanySync("c1");
+            Assert.fail();
+        } catch (RetrofitError e) {
+            Assert.assertEquals(429, e.getResponse().getStatus());
+        }
+        long start = System.nanoTime();
+        client.listCompaniesSync();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue("Took " + elapsedMillis + "ms", elapsedMillis >= 900);
+    }
+
+    @Test
+    public void scopeHeaderIsIgnoredUnlessConfigured() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1")
+                .setHeader("X-RateLimit-Scope", "global"));
+        mServer.enqueue(new MockResponse().setBody("[]"));
+        mServer.start();
+        BlockscoreApiClient client = TestClients.builder(mServer).build();
+
+        try {
+            client.getCompanySync("c1");
+            Assert.fail();
+        } catch (RetrofitError e) {
+            Assert.assertEquals(429, e.getResponse().getStatus());
+        }
+        long start = System.nanoTime();
+        client.listCompaniesSync();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue("Took " + elapsedMillis + "ms", elapsedMillis < 500);
+    }
+}
@@ -0,0 +1,388 @@
+package com.blockscore.net;
+
+import com.blockscore.models.Company;
+import com.blockscore.models.Person;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests the record store, on its own and against a local stand-in server that answers every read with the ID it
+ * was asked for and every create with the ID "new".
+ */
+public class RecordStoreTest {
+    private static final byte[] BODY = "{\"id\":\"x\"}".getBytes();
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) {
+                String path = request.getPath();
+                String id = "POST".equals(request.getMethod()) ? "new" : path.substring(path.lastIndexOf('/') + 1);
+                return new MockResponse().setBody("{\"id\":\"" + id + "\"}");
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void readsAreAnsweredFromTheStoreAfterReopening() throws Exception {
+        File file = mFolder.newFile();
+        RecordStore store = RecordStore.open(file, 4096);
+        createClient(store).getCompanySync("c1");
+        store.close();
+
+        store = RecordStore.open(file, 4096);
+        Assert.assertEquals(1, store.size());
+        Company company = createClient(store).getCompanySync("c1");
+        Assert.assertEquals("c1", company.getId());
+        Assert.assertEquals(1, mServer.getRequestCount());
+        Assert.assertEquals(1, store.getHits());
+        store.close();
+    }
+
+    @Test
+    public void createsAreStoredUnderTheirRead() throws Exception {
+        RecordStore store = RecordStore.open(mFolder.newFile(), 4096);
+        BlockscoreApiClient client = createClient(store);
+        client.createVerificationSync(new Person());
+
+        Assert.assertEquals("new", client.getVerification("new").toBlocking().first().getId());
+        Assert.assertEquals(1, mServer.getRequestCount());
+        store.close();
+    }
+
+    @Test
+    public void otherCallsAreNotStored() throws Exception {
+        RecordStore store = RecordStore.open(mFolder.newFile(), 4096);
+        BlockscoreApiClient client = createClient(store);
+        client.getWatchlistCandidateSync("wc1");
+        client.getWatchlistCandidateSync("wc1");
+
+        Assert.assertEquals(2, mServer.getRequestCount());
+        Assert.assertEquals(0, store.size());
+        Assert.assertEquals(0, store.getMisses());
+        store.close();
+    }
+
+    @Test
+    public void clientsWithAnotherApiKeyOrEndpointDontShareRecords() throws Exception {
+        RecordStore store = RecordStore.open(mFolder.newFile(), 4096);
+        createClient(store).getCompanySync("c1");
+        createClient(store, otherKey()).getCompanySync("c1");
+        createClient(store, TestClients.config(mServer).setEndpoint(mServer.url("/v2/").toString())).getCompanySync("c1");
+        Assert.assertEquals(3, mServer.getRequestCount());
+        Assert.assertEquals(3, store.size());
+
+        createClient(store, otherKey()).getCompanySync("c1");
+        Assert.assertEquals(3, mServer.getRequestCount());
+        store.close();
+    }
+
+    @Test
+    public void cipherKeepsRecordsOutOfTheFile() throws Exception {
+        File file = mFolder.newFile();
+        RecordStore store = RecordStore.open(file, 4096, new XorCipher((byte) 0x5a));
+        createClient(store).getCompanySync("c1");
+        store.close();
+        Assert.assertFalse(new String(Files.readAllBytes(file.toPath()), "ISO-8859-1").contains("\"id\""));
+
+        store = RecordStore.open(file, 4096, new XorCipher((byte) 0x5a));
+        Assert.assertEquals("c1", createClient(store).getCompanySync("c1").getId());
+        Assert.assertEquals(1, mServer.getRequestCount());
+        store.close();
+
+        //Records that can't be decrypted are fetched again.
+        store = RecordStore.open(file, 4096, new XorCipher((byte) 0x33));
+        Assert.assertEquals("c1", createClient(store).getCompanySync("c1").getId());
+        Assert.assertEquals(2, mServer.getRequestCount());
+        Assert.assertEquals(1, store.getMisses());
+        store.close();
+    }
+
+    @Test
+    public void fullStoreKeepsTheLatestRecords() throws Exception {
+        File file = mFolder.newFile();
+        byte[] changed = "{\"id\":\"y\"}".getBytes();
+        //Each record takes up 12 + 2 + 10 bytes, so five fit.
+        RecordStore store = RecordStore.open(file, 120);
+        for (int i = 0; i < 4; i++) {
+            store.put("r" + i, BODY);
+        }
+        store.put("r0", changed);
+        store.put("r4", BODY);
+        Assert.assertEquals(5, store.size());
+        Assert.assertArrayEquals(changed, store.get("r0"));
+
+        //The store is full, so the record is held in memory while the file is compacted in the background.
+        store.put("r5", BODY);
+        Assert.assertArrayEquals(BODY, store.get("r5"));
+        store.awaitCompaction();
+        Assert.assertNull(store.getCompactionFailure());
+        Assert.assertEquals(5, store.size());
+        Assert.assertNull(store.get("r1"));
+        Assert.assertArrayEquals(BODY, store.get("r5"));
+        store.close();
+
+        store = RecordStore.open(file, 120);
+        Assert.assertEquals(5, store.size());
+        Assert.assertArrayEquals(changed, store.get("r0"));
+        Assert.assertArrayEquals(BODY, store.get("r5"));
+        Assert.assertEquals(120, file.length());
+        store.close();
+    }
+
+    @Test
+    public void recordsThatDontFitACompactionAreWrittenByTheNext() throws Exception {
+        File file = mFolder.newFile();
+        final List<Runnable> compactions = new ArrayList<Runnable>();
+        RecordStore store = RecordStore.open(file, 120, null, new Executor() {
+            @Override
+            public void execute(@NotNull final Runnable command) {
+                compactions.add(command);
+            }
+        });
+        for (int i = 0; i < 7; i++) {
+            store.put("r" + i, BODY);
+        }
+        Assert.assertEquals(7, store.size());
+
+        //The first compaction only made room for r5, so r6 waits for another one.
+        compactions.get(0).run();
+        Assert.assertEquals(2, compactions.size());
+        Assert.assertEquals(6, store.size());
+        Assert.assertArrayEquals(BODY, store.get("r6"));
+        compactions.get(1).run();
+        store.awaitCompaction();
+        Assert.assertEquals(5, store.size());
+        Assert.assertNull(store.get("r1"));
+        Assert.assertArrayEquals(BODY, store.get("r6"));
+        store.close();
+    }
+
+    @Test
+    public void recordsHeldInMemoryAreCapped() throws Exception {
+        final List<Runnable> compactions = new ArrayList<Runnable>();
+        RecordStore store = RecordStore.open(mFolder.newFile(), 120, null, new Executor() {
+            @Override
+            public void execute(@NotNull final Runnable command) {
+                compactions.add(command);
+            }
+        });
+        for (int i = 0; i < 8; i++) {
+            store.put("r" + i, BODY);
+        }
+
+        //Half the file, room for two records, is held while the compaction runs; the third isn't stored.
+        Assert.assertEquals(7, store.size());
+        Assert.assertArrayEquals(BODY, store.get("r6"));
+        Assert.assertNull(store.get("r7"));
+        compactions.get(0).run();
+        compactions.get(1).run();
+        store.close();
+    }
+
+    @Test
+    public void unmappingFailuresAreReported() throws Exception {
+        final File file = mFolder.newFile();
+        final List<Runnable> compactions = new ArrayList<Runnable>();
+        RecordStore store = RecordStore.open(file, 120, null, new Executor() {
+            @Override
+            public void execute(@NotNull final Runnable command) {
+                compactions.add(command);
+            }
+        }, new RecordStore.Unmapper() {
+            @Override
+            public void unmap(@NotNull final MappedByteBuffer buffer) throws IOException {
+                //Stands in for Windows, where a mapped file can't be moved, by taking the compacted file away.
+                Files.deleteIfExists(new File(file.getPath() + ".compact").toPath());
+                throw new IOException("No cleaner");
+            }
+        });
+        for (int i = 0; i < 6; i++) {
+            store.put("r" + i, BODY);
+        }
+        compactions.get(0).run();
+
+        IOException failure = store.getCompactionFailure();
+        Assert.assertNotNull(failure);
+        Assert.assertEquals(2, failure.getSuppressed().length);
+        Assert.assertEquals("No cleaner", failure.getSuppressed()[0].getMessage());
+        //The old file is mapped again, still full.
+        Assert.assertEquals(5, store.size());
+        Assert.assertArrayEquals(BODY, store.get("r0"));
+        try {
+            store.close();
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals("No cleaner", e.getMessage());
+        }
+    }
+
+    @Test
+    public void closeWaitsForCompactionInProgress() throws Exception {
+        File file = mFolder.newFile();
+        final List<Runnable> compactions = new ArrayList<Runnable>();
+        final RecordStore store = RecordStore.open(file, 120, null, new Executor() {
+            @Override
+            public void execute(@NotNull final Runnable command) {
+                compactions.add(command);
+            }
+        });
+        for (int i = 0; i < 6; i++) {
+            store.put("r" + i, BODY);
+        }
+        Assert.assertEquals(1, compactions.size());
+        Assert.assertEquals(6, store.size());
+
+        final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+        Thread closer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    store.close();
+                } catch (IOException e) {
+                    failure.set(e);
+                }
+            }
+        });
+        closer.start();
+        closer.join(100);
+        Assert.assertTrue(closer.isAlive());
+        compactions.get(0).run();
+        closer.join(TimeUnit.SECONDS.toMillis(5));
+        Assert.assertFalse(closer.isAlive());
+        Assert.assertNull(failure.get());
+        Assert.assertFalse(new File(file.getPath() + ".compact").exists());
+
+        RecordStore reopened = RecordStore.open(file, 120);
+        Assert.assertEquals(5, reopened.size());
+        Assert.assertNull(reopened.get("r0"));
+        Assert.assertArrayEquals(BODY, reopened.get("r5"));
+        Assert.assertEquals(120, file.length());
+        reopened.close();
+    }
+
+    @Test
+    public void shrunkStoreIsCompactedOnOpening() throws Exception {
+        File file = mFolder.newFile();
+        RecordStore store = RecordStore.open(file, 4096);
+        for (int i = 0; i < 5; i++) {
+            store.put("r" + i, BODY);
+        }
+        store.close();
+
+        store = RecordStore.open(file, 48);
+        Assert.assertEquals(2, store.size());
+        Assert.assertNull(store.get("r2"));
+        Assert.assertArrayEquals(BODY, store.get("r4"));
+        Assert.assertEquals(48, file.length());
+        store.close();
+    }
+
+    @Test
+    public void tornRecordIsDropped() throws Exception {
+        File file = mFolder.newFile();
+        RecordStore store = RecordStore.open(file, 4096);
+        store.put("r0", BODY);
+        store.put("r1", BODY);
+        store.close();
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        out.seek(24 + 20);
+        out.write('?');
+        out.close();
+
+        store = RecordStore.open(file, 4096);
+        Assert.assertEquals(1, store.size());
+        Assert.assertNull(store.get("r1"));
+        store.put("r2", BODY);
+        store.close();
+
+        store = RecordStore.open(file, 4096);
+        Assert.assertArrayEquals(BODY, store.get("r2"));
+        store.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tinyStoreIsRejected() throws Exception {
+        RecordStore.open(mFolder.newFile(), 12);
+    }
+
+    private BlockscoreConfig.Builder otherKey() {
+        return new BlockscoreConfig.Builder("sk_other").setEndpoint(mServer.url("/").toString());
+    }
+
+    private BlockscoreApiClient createClient(final RecordStore store) {
+        return createClient(store, TestClients.config(mServer));
+    }
+
+    private BlockscoreApiClient createClient(final RecordStore store, final BlockscoreConfig.Builder config) {
+        return TestClients.builder(config).setRecordStore(store).build();
+    }
+
+    /**
+     * Stands in for real encryption: XORs every byte with a key, behind a byte telling which key it was.
+     */
+    private static final class XorCipher implements RecordCipher {
+        private final byte mKey;
+
+        XorCipher(final byte key) {
+            mKey = key;
+        }
+
+        @NotNull
+        @Override
+        public byte[] encrypt(@NotNull final byte[] body) {
+            byte[] stored = new byte[body.length + 1];
+            stored[0] = mKey;
+            for (int i = 0; i < body.length; i++) {
+                stored[i + 1] = (byte) (body[i] ^ mKey);
+            }
+            return stored;
+        }
+
+        @NotNull
+        @Override
+        public byte[] decrypt(@NotNull final byte[] stored) throws IOException {
+            if (stored.length == 0 || stored[0] != mKey) {
+                throw new IOException("Encrypted with another key");
+            }
+            byte[] body = new byte[stored.length - 1];
+            for (int i = 0; i < body.length; i++) {
+                body[i] = (byte) (stored[i + 1] ^ mKey);
+            }
+            return body;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.blockscore.net;
+
+import com.blockscore.models.Company;
+import com.blockscore.models.WatchlistCandidate;
+import com.blockscore.models.request.SearchRequest;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit.Callback;
+import retrofit.RetrofitError;
+import retrofit.client.Response;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests the response and search caches against a local stand-in server that answers every read with the ID it was
+ * asked for, every create with the ID "new", every list with an empty one, and every search with no matches. Writes
+ * of a candidate whose note is "held" are held back until the test lets them through.
+ */
+public class ResponseCacheTest {
+    private final CountDownLatch mReleaseHeldWrites = new CountDownLatch(1);
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) throws InterruptedException {
+                String path = request.getPath();
+                if (request.getBody().readUtf8().contains("held")) {
+                    mReleaseHeldWrites.await(5, TimeUnit.SECONDS);
+                }
+                if (path.endsWith("/hits") || path.endsWith("/history")) {
+                    return new MockResponse().setBody("[]");
+                }
+                if (path.equals("/watchlists")) {
+                    return new MockResponse().setBody("{\"search_time\":0.25,\"searched_lists\":[],\"matches\":[]}");
+                }
+                String id = "POST".equals(request.getMethod()) ? "new" : path.substring(path.lastIndexOf('/') + 1);
+                return new MockResponse().setBody("{\"id\":\"" + id + "\"}");
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void repeatedReadsAreAnsweredFromTheCacheInEveryStyle() throws Exception {
+        BlockscoreApiClient client = createClient(10, TimeUnit.MINUTES.toMillis(1));
+        client.getCompanySync("c1");
+
+        Assert.assertEquals("c1", client.getCompanySync("c1").getId());
+        Assert.assertEquals("c1", client.getCompany("c1").toBlocking().first().getId());
+        final AtomicReference<Company> fromCallback = new AtomicReference<Company>();
+        client.getCompany("c1", new Callback<Company>() {
+            @Override
+            public void success(final Company company, final Response response) {
+                Assert.assertEquals(200, response.getStatus());
+                fromCallback.set(company);
+            }
+
+            @Override
+            public void failure(final RetrofitError error) {
+                Assert.fail();
+            }
+        });
+        Assert.assertEquals("c1", fromCallback.get().getId());
+
+        Assert.assertEquals(1, mServer.getRequestCount());
+        CacheStatistics statistics = client.getCacheStatistics();
+        Assert.assertEquals(3, statistics.getHits());
+        Assert.assertEquals(1, statistics.getMisses());
+        Assert.assertEquals(1, statistics.getSize());
+    }
+
+    @Test
+    public void staleEntriesAreReadAgain() throws Exception {
+        BlockscoreApiClient client = createClient(10, 50);
+        client.getCompanySync("c1");
+        Thread.sleep(100);
+        client.getCompanySync("c1");
+
+        Assert.assertEquals(2, mServer.getRequestCount());
+        Assert.assertEquals(1, client.getCacheStatistics().getExpirations());
+        Assert.assertEquals(0, client.getCacheStatistics().getHits());
+    }
+
+    @Test
+    public void leastRecentlyReadEntryIsEvicted() throws Exception {
+        BlockscoreApiClient client = createClient(2, TimeUnit.MINUTES.toMillis(1));
+        client.getCompanySync("c1");
+        client.getCompanySync("c2");
+        client.getCompanySync("c1");
+        client.getCompanySync("c3");
+        Assert.assertEquals(3, mServer.getRequestCount());
+
+        client.getCompanySync("c1");
+        Assert.assertEquals(3, mServer.getRequestCount());
+        client.getCompanySync("c2");
+        Assert.assertEquals(4, mServer.getRequestCount());
+        Assert.assertEquals(2, client.getCacheStatistics().getEvictions());
+        Assert.assertEquals(2, client.getCacheStatistics().getSize());
+    }
+
+    @Test
+    public void otherCallsAreNotCached() throws Exception {
+        BlockscoreApiClient client = createClient(10, TimeUnit.MINUTES.toMillis(1));
+        client.createCompanySync(new Company());
+        client.createCompanySync(new Company());
+
+        Assert.assertEquals(2, mServer.getRequestCount());
+        Assert.assertEquals(0, client.getCacheStatistics().getMisses());
+    }
+
+    @Test
+    public void writtenCandidatesAreCached() throws Exception {
+        BlockscoreApiClient client = createClient(10, TimeUnit.MINUTES.toMillis(1));
+        client.createWatchlistCandidateSync(new WatchlistCandidate());
+        Assert.assertEquals("new", client.getWatchlistCandidateSync("new").getId());
+
+        client.updateWatchlistCandidateSync("new", new WatchlistCandidate());
+        Assert.assertEquals("new", client.getWatchlistCandidate("new").toBlocking().first().getId());
+        Assert.assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void anUpdateOverlappingAnotherIsNotCached() throws Exception {
+        final BlockscoreApiClient client = createClient(10, TimeUnit.MINUTES.toMillis(1));
+        Thread first = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                client.updateWatchlistCandidateSync("wc1", new WatchlistCandidate().setNote("held"));
+            }
+        });
+        first.start();
+        mServer.takeRequest();
+        client.updateWatchlistCandidateSync("wc1", new WatchlistCandidate());
+        mReleaseHeldWrites.countDown();
+        first.join(5000);
+        Assert.assertFalse(first.isAlive());
+
+        //The first update answers last, but the server may have applied the second one after it.
+        client.getWatchlistCandidateSync("wc1");
+        Assert.assertEquals(3, mServer.getRequestCount());
+    }
+
+    @Test
+    public void writesOverlappingAnotherWriteAreNotStored() {
+        ResponseCache cache = new ResponseCache(10, TimeUnit.MINUTES.toNanos(1));
+        long first = cache.invalidate("/watchlist_candidates/wc1");
+        long second = cache.invalidate("/watchlist_candidates/wc1");
+        cache.put("/watchlist_candidates/wc1", WatchlistCandidate.class, new WatchlistCandidate()
+                , cache.invalidateWritten("/watchlist_candidates/wc1", second));
+        Assert.assertNotNull(cache.get("/watchlist_candidates/wc1", WatchlistCandidate.class));
+
+        long generation = cache.invalidateWritten("/watchlist_candidates/wc1", first);
+        Assert.assertEquals(ResponseCache.STALE, generation);
+        cache.put("/watchlist_candidates/wc1", WatchlistCandidate.class, new WatchlistCandidate(), generation);
+        Assert.assertNull(cache.get("/watchlist_candidates/wc1", WatchlistCandidate.class));
+    }
+
+    @Test
+    public void changingWhatACallGotDoesNotChangeTheCache() throws Exception {
+        BlockscoreApiClient client = createClient(10, TimeUnit.MINUTES.toMillis(1));
+        client.getCompanySync("c1").setEntityName("Changed");
+        Company hit = client.getCompanySync("c1");
+        Assert.assertNull(hit.getEntityName());
+        hit.setEntityName("Changed");
+        Assert.assertNull(client.getCompany("c1").toBlocking().first().getEntityName());
+
+        client.createWatchlistCandidateSync(new WatchlistCandidate()).setNote("Changed");
+        Assert.assertNull(client.getWatchlistCandidateSync("new").getNote());
+        client.searchWatchlistsSync(search("wc1", null)).getMatches().add(null);
+        Assert.assertTrue(client.searchWatchlistsSync(search("wc1", null)).getMatches().isEmpty());
+        Assert.assertEquals(3, mServer.getRequestCount());
+    }
+
+    @Test
+    public void writesDropTheCandidatesCachedReads() throws Exception {
+        BlockscoreApiClient client = createClient(10, TimeUnit.MINUTES.toMillis(1));
+        readCandidate(client, "wc1");
+        readCandidate(client, "wc1");
+        Assert.assertEquals(3, mServer.getRequestCount());
+
+        client.deleteWatchlistCandidateSync("wc1");
+        readCandidate(client, "wc1");
+        Assert.assertEquals(7, mServer.getRequestCount());
+
+        client.updateWatchlistCandidateSync("wc1", new WatchlistCandidate());
+        readCandidate(client, "wc1");
+        //The update's response stands in for the candidate, so only the hits and history are read again.
+        Assert.assertEquals(10, mServer.getRequestCount());
+    }
+
+    @Test
+    public void readsOverlappingAnInvalidationAreNotStored() {
+        ResponseCache cache = new ResponseCache(10, TimeUnit.MINUTES.toNanos(1));
+        long generation = cache.getGeneration();
+        cache.invalidate("/watchlist_candidates/wc1");
+        cache.put("/watchlist_candidates/wc1", WatchlistCandidate.class, new WatchlistCandidate(), generation);
+
+        Assert.assertNull(cache.get("/watchlist_candidates/wc1", WatchlistCandidate.class));
+        Assert.assertEquals(0, cache.getStatistics().getSize());
+    }
+
+    @Test
+    public void invalidationsOnlyTurnAwayReadsOfTheirOwnUrl() {
+        ResponseCache cache = new ResponseCache(2, TimeUnit.MINUTES.toNanos(1));
+        long generation = cache.getGeneration();
+        cache.invalidate("/watchlist_candidates/wc1");
+        cache.put("/watchlist_candidates/wc2", WatchlistCandidate.class, new WatchlistCandidate(), generation);
+        Assert.assertNotNull(cache.get("/watchlist_candidates/wc2", WatchlistCandidate.class));
+
+        //Once more URLs are invalidated than the cache holds entries, the oldest are forgotten and older reads refused.
+        cache.invalidate("/watchlist_candidates/wc3");
+        cache.invalidate("/watchlist_candidates/wc4");
+        cache.put("/watchlist_candidates/wc5", WatchlistCandidate.class, new WatchlistCandidate(), generation);
+        Assert.assertNull(cache.get("/watchlist_candidates/wc5", WatchlistCandidate.class));
+    }
+
+    @Test
+    public void repeatedSearchesAreAnsweredFromTheCache() throws Exception {
+        BlockscoreApiClient client = createClient(10, TimeUnit.MINUTES.toMillis(1));
+        client.searchWatchlistsSync(search("wc1", SearchRequest.MatchType.PERSON));
+        client.searchWatchlists(search("wc1", SearchRequest.MatchType.PERSON)).toBlocking().first();
+        client.searchWatchlistsSync(search("wc1", SearchRequest.MatchType.COMPANY));
+        client.searchWatchlistsSync(search("wc2", SearchRequest.MatchType.PERSON));
+        client.searchWatchlistsSync(search("wc2", SearchRequest.MatchType.PERSON));
+
+        Assert.assertEquals(3, mServer.getRequestCount());
+        SearchCacheStatistics statistics = client.getSearchCacheStatistics();
+        Assert.assertEquals(2, statistics.getCacheStatistics().getHits());
+        Assert.assertEquals(3, statistics.getCacheStatistics().getMisses());
+        Assert.assertEquals(0.5, statistics.getSavedSearchTime(), 1e-9);
+    }
+
+    @Test
+    public void updatingACandidateDropsItsSearches() throws Exception {
+        BlockscoreApiClient client = createClient(10, TimeUnit.MINUTES.toMillis(1));
+        client.searchWatchlistsSync(search("wc1", null));
+        client.searchWatchlistsSync(search("wc1", SearchRequest.MatchType.PERSON));
+        client.searchWatchlistsSync(search("wc2", SearchRequest.MatchType.PERSON));
+        client.updateWatchlistCandidateSync("wc1", new WatchlistCandidate());
+
+        client.searchWatchlistsSync(search("wc1", null));
+        client.searchWatchlistsSync(search("wc1", SearchRequest.MatchType.PERSON));
+        client.searchWatchlistsSync(search("wc2", SearchRequest.MatchType.PERSON));
+        Assert.assertEquals(6, mServer.getRequestCount());
+    }
+
+    private static SearchRequest search(final String candidateId, final SearchRequest.MatchType matchType) {
+        SearchRequest request = new SearchRequest(candidateId);
+        request.setMatchType(matchType);
+        return request;
+    }
+
+    private static void readCandidate(final BlockscoreApiClient client, final String id) {
+        client.getWatchlistCandidateSync(id);
+        client.getWatchlistCandidateHitsSync(id);
+        client.getWatchlistCandidateHistorySync(id);
+    }
+
+    private BlockscoreApiClient createClient(final int maxEntries, final long ttlMillis) {
+        return TestClients.builder(mServer)
+                .enableResponseCache(maxEntries, ttlMillis, TimeUnit.MILLISECONDS)
+                .enableSearchCache(10, 1, TimeUnit.MINUTES)
+                .build();
+    }
+}
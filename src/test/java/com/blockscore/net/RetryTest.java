@@ -0,0 +1,152 @@
+package com.blockscore.net;
+
+import com.blockscore.exceptions.InvalidRequestException;
+import com.blockscore.models.Company;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit.RetrofitError;
+import rx.Subscription;
+import rx.functions.Action1;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests which calls are retried against a local stand-in server.
+ */
+public class RetryTest {
+    private static final String COMPANY = "{\"id\":\"c1\"}";
+
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void idempotentCallsAreRetried() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(503));
+        mServer.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        mServer.enqueue(new MockResponse().setBody(COMPANY));
+        mServer.start();
+
+        Assert.assertEquals("c1", createClient(new RetryPolicy(3, 10, 100, TimeUnit.MILLISECONDS))
+                .getCompanySync("c1").getId());
+        Assert.assertEquals(3, mServer.getRequestCount());
+    }
+
+    @Test
+    public void retriesStopAtMaxAttempts() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            mServer.enqueue(new MockResponse().setResponseCode(500));
+        }
+        mServer.start();
+
+        try {
+            createClient(new RetryPolicy(2, 10, 100, TimeUnit.MILLISECONDS)).listCompaniesSync();
+            Assert.fail();
+        } catch (RetrofitError e) {
+            Assert.assertEquals(500, e.getResponse().getStatus());
+        }
+        Assert.assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void callsAreNotRetriedByDefault() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(503));
+        mServer.enqueue(new MockResponse().setBody(COMPANY));
+        mServer.start();
+        BlockscoreApiClient client = TestClients.builder(mServer).build();
+
+        try {
+            client.getCompanySync("c1");
+            Assert.fail();
+        } catch (RetrofitError e) {
+            Assert.assertEquals(503, e.getResponse().getStatus());
+        }
+        Assert.assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void createsAreNotRetried() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(500));
+        mServer.enqueue(new MockResponse().setBody(COMPANY));
+        mServer.start();
+
+        try {
+            createClient(RetryPolicy.STANDARD).createCompanySync(new Company());
+            Assert.fail();
+        } catch (RetrofitError e) {
+            Assert.assertEquals(500, e.getResponse().getStatus());
+        }
+        Assert.assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void invalidRequestsAreNotRetried() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(400)
+                .setBody("{\"error\":{\"type\":\"invalid_request_error\",\"message\":\"Bad\"}}"));
+        mServer.enqueue(new MockResponse().setBody(COMPANY));
+        mServer.start();
+
+        try {
+            createClient(RetryPolicy.STANDARD).getCompanySync("c1");
+            Assert.fail();
+        } catch (InvalidRequestException e) {
+            //Expected.
+        }
+        Assert.assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void unsubscribingStopsRetries() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(500));
+        mServer.enqueue(new MockResponse().setBody(COMPANY));
+        mServer.start();
+        BlockscoreApiClient client = createClient(new RetryPolicy(3, 500, 500, TimeUnit.MILLISECONDS));
+
+        Subscription subscription = client.getCompany("c1").subscribe(new Action1<Company>() {
+            @Override
+            public void call(final Company company) {
+                Assert.fail();
+            }
+        });
+        mServer.takeRequest();
+        subscription.unsubscribe();
+        Thread.sleep(700);
+        Assert.assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void observableCallsAreRetried() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(502));
+        mServer.enqueue(new MockResponse().setBody(COMPANY));
+        mServer.start();
+
+        final CountDownLatch done = new CountDownLatch(1);
+        createClient(new RetryPolicy(3, 10, 100, TimeUnit.MILLISECONDS)).getCompany("c1")
+                .subscribe(new Action1<Company>() {
+                    @Override
+                    public void call(final Company company) {
+                        done.countDown();
+                    }
+                });
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(2, mServer.getRequestCount());
+    }
+
+    private BlockscoreApiClient createClient(final RetryPolicy retryPolicy) {
+        return TestClients.builder(TestClients.config(mServer).setRetryPolicy(retryPolicy)).build();
+    }
+}
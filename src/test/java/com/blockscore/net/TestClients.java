@@ -0,0 +1,52 @@
+package com.blockscore.net;
+
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the clients the tests run against a local stand-in server. Each client gets a connection pool of its own,
+ * so no test reuses another's connections; tests set only the feature they exercise on top.
+ */
+final class TestClients {
+    private TestClients() {
+    }
+
+    /**
+     * @param server Server to call.
+     * @return A config builder with a test key, pointed at the server.
+     */
+    @NotNull
+    static BlockscoreConfig.Builder config(@NotNull final MockWebServer server) {
+        return new BlockscoreConfig.Builder("sk_test").setEndpoint(server.url("/").toString());
+    }
+
+    /**
+     * @param server Server to call.
+     * @return A client builder pointed at the server, with a connection pool of its own.
+     */
+    @NotNull
+    static BlockscoreApiClient.Builder builder(@NotNull final MockWebServer server) {
+        return builder(config(server));
+    }
+
+    /**
+     * @param config Config to build the client with.
+     * @return A client builder using the config, with a connection pool of its own.
+     */
+    @NotNull
+    static BlockscoreApiClient.Builder builder(@NotNull final BlockscoreConfig.Builder config) {
+        return new BlockscoreApiClient.Builder()
+                .setConfig(config.build())
+                .setConnectionPool(newPool());
+    }
+
+    /**
+     * @return A connection pool with no per-host limit, shared with no other client.
+     */
+    @NotNull
+    static BlockscoreConnectionPool newPool() {
+        return new BlockscoreConnectionPool(2, 1, TimeUnit.MINUTES, BlockscoreConnectionPool.UNLIMITED);
+    }
+}
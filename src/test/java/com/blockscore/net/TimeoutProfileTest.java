@@ -0,0 +1,64 @@
+package com.blockscore.net;
+
+import com.blockscore.models.Person;
+import com.blockscore.models.results.Verification;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit.RetrofitError;
+
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests per-endpoint timeout profiles against a local stand-in server that is slow to send every body.
+ */
+public class TimeoutProfileTest {
+    private static final long BODY_DELAY_MILLIS = 600;
+
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) {
+                String body = "GET".equals(request.getMethod()) ? "[{\"id\":\"v1\"}]" : "{\"id\":\"v1\"}";
+                return new MockResponse().setBody(body).setBodyDelay(BODY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void endpointWithALongProfileOutlastsTheDefault() throws Exception {
+        BlockscoreApiClient client = TestClients.builder(TestClients.config(mServer)
+                .setReadTimeout(200, TimeUnit.MILLISECONDS)
+                .setTimeoutProfile(Endpoint.LIST_VERIFICATIONS, new TimeoutProfile(5, 5, 5, TimeUnit.SECONDS)))
+                .build();
+
+        List<Verification> verifications = client.listVerificationsSync();
+        Assert.assertEquals(1, verifications.size());
+
+        try {
+            client.createVerificationSync(new Person());
+            Assert.fail();
+        } catch (RetrofitError e) {
+            Assert.assertEquals(RetrofitError.Kind.NETWORK, e.getKind());
+            Assert.assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+        Assert.assertEquals(2, mServer.getRequestCount());
+    }
+}
@@ -0,0 +1,93 @@
+package com.blockscore.net;
+
+import com.blockscore.models.Company;
+import com.blockscore.models.WatchlistCandidate;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit.RestAdapter;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests how requests and responses are carried over OkHttp's call API against a local stand-in server.
+ */
+public class TransportTest {
+    private MockWebServer mServer;
+    private BlockscoreConfig mConfig;
+    private BlockscoreApiClient mClient;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.start();
+        mConfig = TestClients.config(mServer).build();
+        mClient = new BlockscoreApiClient.Builder().setConfig(mConfig).setConnectionPool(TestClients.newPool()).build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void postSendsItsBody() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"c1\",\"entity_name\":\"Acme\"}"));
+
+        Company company = mClient.createCompanySync(new Company().setEntityName("Acme"));
+
+        Assert.assertEquals("c1", company.getId());
+        RecordedRequest request = mServer.takeRequest();
+        Assert.assertEquals("POST", request.getMethod());
+        Assert.assertEquals("/companies", request.getPath());
+        Assert.assertTrue(request.getHeader("Content-Type").startsWith("application/json"));
+        Assert.assertEquals(request.getBodySize(), Long.parseLong(request.getHeader("Content-Length")));
+        Assert.assertTrue(request.getBody().readUtf8().contains("\"entity_name\":\"Acme\""));
+        Assert.assertEquals(mConfig.getAuthorizationHeader(), request.getHeader("Authorization"));
+    }
+
+    @Test
+    public void deleteSendsNoBody() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("{\"id\":\"wc1\"}"));
+
+        WatchlistCandidate candidate = mClient.deleteWatchlistCandidateSync("wc1");
+
+        Assert.assertEquals("wc1", candidate.getId());
+        RecordedRequest request = mServer.takeRequest();
+        Assert.assertEquals("DELETE", request.getMethod());
+        Assert.assertEquals("/watchlist_candidates/wc1", request.getPath());
+        Assert.assertEquals(0, request.getBodySize());
+    }
+
+    @Test
+    public void noContentGivesNull() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(204));
+        mServer.enqueue(new MockResponse().setResponseCode(204));
+        mServer.enqueue(new MockResponse().setBody("[]"));
+
+        Assert.assertNull(mClient.deleteWatchlistCandidateSync("wc1"));
+        Assert.assertNull(mClient.deleteWatchlistCandidate("wc1").timeout(5, TimeUnit.SECONDS).toBlocking().first());
+
+        //The connection is still usable afterwards.
+        List<Company> companies = mClient.listCompaniesSync();
+        Assert.assertTrue(companies.isEmpty());
+        Assert.assertEquals(3, mServer.getRequestCount());
+    }
+
+    @Test
+    public void legacyClientUsesTheKeyGivenAfterItWasCreated() {
+        BlockscoreConfig config = BlockscoreConfig.fromLegacySettings(RestAdapter.LogLevel.NONE);
+        try {
+            BlockscoreConfig.setLegacyApiKey("sk_test");
+
+            Assert.assertEquals(mConfig.getAuthorizationHeader(), config.getAuthorizationHeader());
+        } finally {
+            BlockscoreConfig.setLegacyApiKey("");
+        }
+    }
+}